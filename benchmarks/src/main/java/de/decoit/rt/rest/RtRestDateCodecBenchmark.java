@@ -0,0 +1,130 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Compares RtRestDateCodec with the shared SimpleDateFormat used by the ticket parser before.
+ * Every invocation parses the seven date fields of 100 tickets. In the "search" data set the tickets share a few
+ * Created/LastUpdated values and most other fields are "Not set", like in a typical search result. In the "unique"
+ * data set every timestamp occurs only once, so the codec cache never hits.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtRestDateCodecBenchmark {
+	private static final int TICKETS = 100;
+	private static final int DATE_FIELDS = 7;
+
+	private final SimpleDateFormat legacyFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy", Locale.US);
+	private String[] searchDates;
+	private String[] uniqueDates;
+
+
+	@Setup
+	public void setUp() {
+		SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy", Locale.US);
+		long base = 1393426796000L;
+
+		this.searchDates = new String[TICKETS * DATE_FIELDS];
+		this.uniqueDates = new String[TICKETS * DATE_FIELDS];
+
+		for(int i = 0; i < TICKETS; i++) {
+			for(int f = 0; f < DATE_FIELDS; f++) {
+				int index = i * DATE_FIELDS + f;
+
+				// Created, Started and LastUpdated are set, 10 distinct values each
+				if(f == 0 || f == 2 || f == 6) {
+					this.searchDates[index] = sdf.format(new Date(base + (f * 10 + i % 10) * 3600000L));
+				}
+				else {
+					this.searchDates[index] = "Not set";
+				}
+
+				this.uniqueDates[index] = sdf.format(new Date(base + index * 61000L));
+			}
+		}
+	}
+
+
+	@Benchmark
+	public void legacySearch(Blackhole bh) {
+		parseLegacy(this.searchDates, bh);
+	}
+
+
+	@Benchmark
+	public void codecSearch(Blackhole bh) {
+		parseCodec(this.searchDates, bh);
+	}
+
+
+	@Benchmark
+	public void legacyUnique(Blackhole bh) {
+		parseLegacy(this.uniqueDates, bh);
+	}
+
+
+	@Benchmark
+	public void codecUnique(Blackhole bh) {
+		parseCodec(this.uniqueDates, bh);
+	}
+
+
+	/**
+	 * Parse like RtRestTicketResponseParser did before: shared SimpleDateFormat, unset values caught as ParseException
+	 */
+	private void parseLegacy(String[] dates, Blackhole bh) {
+		for(String date : dates) {
+			try {
+				bh.consume(this.legacyFormat.parse(date));
+			}
+			catch(ParseException ex) {
+				bh.consume(null);
+			}
+		}
+	}
+
+
+	private void parseCodec(String[] dates, Blackhole bh) {
+		for(String date : dates) {
+			bh.consume(RtRestDateCodec.TICKET_DATE.parse(date));
+		}
+	}
+}
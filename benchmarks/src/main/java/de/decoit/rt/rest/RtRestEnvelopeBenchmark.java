@@ -0,0 +1,136 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Compares the memory allocated per response by the single pass envelope with splitting the body into parts and
+ * lines, as the parsers did before. The "split" benchmarks reproduce the old approach, the "cursor" benchmarks
+ * use RtRestResponse.getBodyCursor() like the client does.<br>
+ * Run with "-prof gc" and compare gc.alloc.rate.norm, the bytes allocated per response.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtRestEnvelopeBenchmark {
+	private static final String LIST_DELIMITER = "--\n";
+
+	private String ticketSearch;
+	private String history;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.ticketSearch = RtRestPayloads.ticketSearch(RtRestParserBenchmark.SEARCH_SIZE);
+		this.history = RtRestPayloads.history(RtRestParserBenchmark.HISTORY_ITEMS, RtRestParserBenchmark.CONTENT_LINES);
+	}
+
+
+	@Benchmark
+	public void historyLinesSplit(Blackhole blackhole) {
+		RtRestResponseParser.parseStatus(this.history);
+
+		for (String part : this.history.split(LIST_DELIMITER)) {
+			for (String line : part.split("\n")) {
+				blackhole.consume(line);
+			}
+		}
+	}
+
+
+	@Benchmark
+	public void historyLinesCursor(Blackhole blackhole) {
+		RtRestLineCursor cursor = envelope(this.history).getBodyCursor();
+
+		while (cursor.hasNext()) {
+			if (!cursor.skipDelimiter()) {
+				blackhole.consume(cursor.nextLine());
+			}
+		}
+	}
+
+
+	@Benchmark
+	public List<RtTicketHistoryItem> historyCursor() throws RtException {
+		return RtRestTicketHistoryResponseParser.parseHistoryItems(envelope(this.history).getBodyCursor());
+	}
+
+
+	@Benchmark
+	public List<RtTicket> ticketSearchSplit() throws RtException {
+		RtRestResponseParser.parseStatus(this.ticketSearch);
+
+		ArrayList<RtTicket> ticketList = new ArrayList<>();
+
+		for (String part : this.ticketSearch.split(LIST_DELIMITER)) {
+			RtTicket ticket = new RtTicket();
+
+			for (String line : part.split("\n")) {
+				RtRestTicketResponseParser.parseTicketLine(ticket, line);
+			}
+
+			ticket.markUnchanged();
+			ticketList.add(ticket);
+		}
+
+		return ticketList;
+	}
+
+
+	@Benchmark
+	public List<RtTicket> ticketSearchCursor() throws RtException {
+		return RtRestTicketResponseParser.parseTickets(envelope(this.ticketSearch).getBodyCursor());
+	}
+
+
+	/**
+	 * Read the status line of a response body the same way the client does.
+	 *
+	 * @param body Response body
+	 * @return Response envelope
+	 */
+	private static RtRestResponse envelope(String body) {
+		RtRestLineCursor cursor = new RtRestLineCursor(body);
+		RtRestStatus status = RtRestResponseParser.parseStatusLine(cursor.nextLine());
+
+		return new RtRestResponse(status, null, body, cursor.position());
+	}
+}
@@ -0,0 +1,116 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtUser;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures the throughput of the response parsers on generated REST/1.0 payloads.
+ * Run with "-prof gc" to report the allocation rate per operation as well.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtRestParserBenchmark {
+	static final int SEARCH_SIZE = 10000;
+	static final int HISTORY_ITEMS = 20;
+	static final int CONTENT_LINES = 500;
+	static final int SIGNATURE_LINES = 200;
+
+	private String ticket;
+	private String ticketSearch;
+	private String history;
+	private String user;
+	private String queue;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.ticket = RtRestPayloads.ticket(4711L);
+		this.ticketSearch = RtRestPayloads.ticketSearch(SEARCH_SIZE);
+		this.history = RtRestPayloads.history(HISTORY_ITEMS, CONTENT_LINES);
+		this.user = RtRestPayloads.user(SIGNATURE_LINES);
+		this.queue = RtRestPayloads.queue();
+	}
+
+
+	@Benchmark
+	public RtTicket ticket() throws RtException {
+		return RtRestTicketResponseParser.parseTicket(this.ticket);
+	}
+
+
+	@Benchmark
+	public List<RtTicket> ticketSearch() throws RtException {
+		return RtRestTicketResponseParser.parseTickets(this.ticketSearch);
+	}
+
+
+	@Benchmark
+	public void ticketSearchStreaming(Blackhole blackhole) throws RtException, IOException {
+		RtRestTicketStreamParser parser = new RtRestTicketStreamParser(new StringReader(this.ticketSearch));
+		RtTicket ticket;
+
+		while((ticket = parser.nextTicket()) != null) {
+			blackhole.consume(ticket);
+		}
+	}
+
+
+	@Benchmark
+	public List<RtTicketHistoryItem> history() throws RtException {
+		return RtRestTicketHistoryResponseParser.parseHistoryItems(this.history);
+	}
+
+
+	@Benchmark
+	public RtUser user() throws RtException {
+		return RtRestUserResponseParser.parseUser(this.user);
+	}
+
+
+	@Benchmark
+	public RtQueue queue() throws RtException {
+		return RtRestQueueResponseParser.parseQueue(this.queue);
+	}
+}
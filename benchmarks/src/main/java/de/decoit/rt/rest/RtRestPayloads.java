@@ -0,0 +1,347 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import de.decoit.rt.model.RtUser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Generator for REST/1.0 responses and model objects used by the benchmarks.
+ * The payloads follow the format of RT 4.2 responses. Values are drawn from a seeded random generator, so every
+ * run of a benchmark works on the same data while the single tickets of a search still differ from each other.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestPayloads {
+	private static final String STATUS_LINE = "RT/4.2.3 200 Ok\n\n";
+	private static final List<String> QUEUES = Arrays.asList("General", "Support", "Security Incidents", "Network Operations");
+	private static final List<String> USERS = Arrays.asList("root", "rix", "nobody", "support", "noc");
+	private static final List<String> STATUS = Arrays.asList("new", "open", "stalled", "resolved");
+	private static final List<String> WORDS = Arrays.asList("mail", "server", "not", "reachable", "after", "update",
+			"the", "firewall", "blocks", "traffic", "from", "subnet", "please", "check", "VPN", "tunnel", "certificate",
+			"expired", "on", "gateway", "backup", "failed", "disk", "quota", "exceeded", "login", "denied");
+
+	// Sun Feb 23 2014 12:00:00 UTC, tickets are spread over the following months
+	private static final long BASE_TIME = 1393156800000L;
+
+
+	private RtRestPayloads() {
+	}
+
+
+	/**
+	 * Generate the response of a ticket properties request.
+	 *
+	 * @param id Ticket ID
+	 * @return Response text
+	 */
+	static String ticket(long id) {
+		StringBuilder sb = new StringBuilder(STATUS_LINE);
+		appendTicket(sb, new Random(id), id);
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Generate the response of a long format ticket search (format=l).
+	 *
+	 * @param count Number of tickets in the result
+	 * @return Response text
+	 */
+	static String ticketSearch(int count) {
+		StringBuilder sb = new StringBuilder(STATUS_LINE);
+		Random random = new Random(count);
+
+		for(int i = 1; i <= count; i++) {
+			if(i > 1) {
+				sb.append("\n--\n\n");
+			}
+
+			appendTicket(sb, random, i);
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Generate the response of a long format ticket history request.
+	 * Every item is a correspondence with a multi-line Content block.
+	 *
+	 * @param items Number of history items
+	 * @param contentLines Number of lines of the Content field of every item
+	 * @return Response text
+	 */
+	static String history(int items, int contentLines) {
+		StringBuilder sb = new StringBuilder(STATUS_LINE);
+		Random random = new Random(items * 31 + contentLines);
+
+		for(int i = 1; i <= items; i++) {
+			if(i > 1) {
+				sb.append("\n--\n\n");
+			}
+
+			long id = 1000L + i;
+
+			sb.append("# ").append(i).append("/").append(items).append(" (id/").append(id).append("/total)\n\n");
+			sb.append("id: ").append(id).append("\n");
+			sb.append("Ticket: 4711\n");
+			sb.append("TimeTaken: ").append(random.nextInt(60)).append("\n");
+			sb.append("Type: Correspond\n");
+			sb.append("Field: \n");
+			sb.append("OldValue: \n");
+			sb.append("NewValue: \n");
+			sb.append("Data: \n");
+			sb.append("Description: Correspondence added by ").append(pick(random, USERS)).append("\n\n");
+			sb.append("Content: ");
+			appendMultiline(sb, random, contentLines, 9);
+			sb.append("\n");
+			sb.append("Creator: ").append(pick(random, USERS)).append("\n");
+			sb.append("Created: ").append(RtRestDateCodec.HISTORY_DATE.format(date(random))).append("\n\n");
+			sb.append("Attachments: \n");
+			sb.append("             ").append(id * 2).append(": untitled (").append(contentLines * 60).append("b)\n");
+			sb.append("             ").append(id * 2 + 1).append(": report.pdf (48.2k)\n");
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Generate the response of a user properties request.
+	 *
+	 * @param signatureLines Number of lines of the Signature field
+	 * @return Response text
+	 */
+	static String user(int signatureLines) {
+		StringBuilder sb = new StringBuilder(STATUS_LINE);
+		Random random = new Random(signatureLines);
+
+		sb.append("id: user/100\n");
+		sb.append("Password: ********\n");
+		sb.append("Name: rix\n");
+		sb.append("EmailAddress: rix@decoit.de\n");
+		sb.append("RealName: Thomas Rix\n");
+		sb.append("NickName: tr\n");
+		sb.append("Gecos: rix\n");
+		sb.append("Organization: DECOIT GmbH\n");
+		sb.append("Address1: Fahrenheitstrasse 9\n");
+		sb.append("Address2: \n");
+		sb.append("City: Bremen\n");
+		sb.append("State: HB\n");
+		sb.append("Zip: 28359\n");
+		sb.append("Country: Germany\n");
+		sb.append("HomePhone: \n");
+		sb.append("WorkPhone: +49 421 596064-0\n");
+		sb.append("MobilePhone: \n");
+		sb.append("PagerPhone: \n\n");
+		sb.append("ContactInfo: ");
+		appendMultiline(sb, random, 3, 13);
+		sb.append("\n");
+		sb.append("Comments: ");
+		appendMultiline(sb, random, 2, 10);
+		sb.append("\n");
+		sb.append("Signature: ");
+		appendMultiline(sb, random, signatureLines, 11);
+		sb.append("\n");
+		sb.append("Lang: de\n");
+		sb.append("Privileged: 1\n");
+		sb.append("Disabled: 0\n");
+		sb.append("CF-Department: IT Security\n");
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Generate the response of a queue properties request.
+	 *
+	 * @return Response text
+	 */
+	static String queue() {
+		return STATUS_LINE +
+				"id: queue/3\n" +
+				"Name: Security Incidents\n" +
+				"Description: Incidents reported by the monitoring systems\n" +
+				"CorrespondAddress: incidents@decoit.de\n" +
+				"CommentAddress: incidents-comment@decoit.de\n" +
+				"InitialPriority: 10\n" +
+				"FinalPriority: 90\n" +
+				"DefaultDueIn: 2\n" +
+				"Disabled: 0\n" +
+				"CF.{Severity}: high\n";
+	}
+
+
+	/**
+	 * Create a ticket object like it is returned by the parser for a ticket properties request.
+	 *
+	 * @param id Ticket ID
+	 * @return Ticket object, all fields marked as unchanged
+	 */
+	static RtTicket ticketObject(long id) {
+		Random random = new Random(id);
+		RtTicket ticket = new RtTicket();
+
+		ticket.setId(id);
+		ticket.setQueue(pick(random, QUEUES));
+		ticket.setOwner(pick(random, USERS));
+		ticket.setCreator(pick(random, USERS));
+		ticket.setSubject(words(random, 8));
+		ticket.setStatus(RtTicketStatus.fromStatusText(pick(random, STATUS)));
+		ticket.setPriority(random.nextInt(100));
+		ticket.setFinalPriority(90);
+		ticket.setRequestors(new ArrayList<>(Arrays.asList("rix@decoit.de", "support@decoit.de")));
+		ticket.setCc(new ArrayList<>(Arrays.asList("noc@decoit.de")));
+		ticket.setCreated(date(random));
+		ticket.setStarts(date(random));
+		ticket.setDue(date(random));
+		ticket.setLastUpdated(date(random));
+		ticket.setTimeEstimated(120);
+		ticket.setTimeWorked(random.nextInt(120));
+		ticket.addCustomField("Risk", Integer.toString(random.nextInt(100)));
+		ticket.addCustomField("Customer", "DECOIT GmbH");
+		ticket.addCustomField("Incident", Integer.toString(random.nextInt(1000)));
+		ticket.markUnchanged();
+
+		return ticket;
+	}
+
+
+	/**
+	 * Create a user object like it is returned by the parser for a user properties request.
+	 *
+	 * @param signatureLines Number of lines of the signature
+	 * @return User object, all fields marked as unchanged
+	 */
+	static RtUser userObject(int signatureLines) {
+		Random random = new Random(signatureLines);
+		RtUser user = new RtUser();
+
+		user.setId(100L);
+		user.setName("rix");
+		user.setEmailAddress("rix@decoit.de");
+		user.setRealName("Thomas Rix");
+		user.setOrganization("DECOIT GmbH");
+		user.setAddress1("Fahrenheitstrasse 9");
+		user.setCity("Bremen");
+		user.setZip("28359");
+		user.setCountry("Germany");
+		user.setWorkPhone("+49 421 596064-0");
+		user.setSignature(lines(random, signatureLines));
+		user.setLang("de");
+		user.setPrivileged(true);
+		user.addCustomField("Department", "IT Security");
+		user.markUnchanged();
+
+		return user;
+	}
+
+
+	private static void appendTicket(StringBuilder sb, Random random, long id) {
+		sb.append("id: ticket/").append(id).append("\n");
+		sb.append("Queue: ").append(pick(random, QUEUES)).append("\n");
+		sb.append("Owner: ").append(pick(random, USERS)).append("\n");
+		sb.append("Creator: ").append(pick(random, USERS)).append("\n");
+		sb.append("Subject: ").append(words(random, 4 + random.nextInt(8))).append("\n");
+		sb.append("Status: ").append(pick(random, STATUS)).append("\n");
+		sb.append("Priority: ").append(random.nextInt(100)).append("\n");
+		sb.append("InitialPriority: 0\n");
+		sb.append("FinalPriority: 90\n");
+		sb.append("Requestors: ").append(pick(random, USERS)).append("@decoit.de, support@decoit.de\n");
+		sb.append("Cc:\n");
+		sb.append("AdminCc: noc@decoit.de\n");
+		sb.append("Created: ").append(RtRestDateCodec.TICKET_DATE.format(date(random))).append("\n");
+		sb.append("Starts: Not set\n");
+		sb.append("Started: ").append(RtRestDateCodec.TICKET_DATE.format(date(random))).append("\n");
+		sb.append("Due: Not set\n");
+		sb.append("Resolved: Not set\n");
+		sb.append("Told: Not set\n");
+		sb.append("LastUpdated: ").append(RtRestDateCodec.TICKET_DATE.format(date(random))).append("\n");
+		sb.append("TimeEstimated: 2 hours\n");
+		sb.append("TimeWorked: ").append(random.nextInt(120)).append(" minutes\n");
+		sb.append("TimeLeft: 0\n");
+		sb.append("CF.{Risk}: ").append(random.nextInt(100)).append("\n");
+		sb.append("CF.{Customer}: DECOIT GmbH\n");
+		sb.append("CF-Incident: ").append(random.nextInt(1000)).append("\n");
+	}
+
+
+	/**
+	 * Append a multi-line value, continuation lines are indented like in RT responses.
+	 */
+	private static void appendMultiline(StringBuilder sb, Random random, int lineCount, int indent) {
+		for(int i = 0; i < lineCount; i++) {
+			if(i > 0) {
+				for(int j = 0; j < indent; j++) {
+					sb.append(' ');
+				}
+			}
+
+			sb.append(words(random, 6 + random.nextInt(8))).append("\n");
+		}
+	}
+
+
+	private static String lines(Random random, int lineCount) {
+		StringBuilder sb = new StringBuilder();
+
+		for(int i = 0; i < lineCount; i++) {
+			if(i > 0) {
+				sb.append("\n");
+			}
+
+			sb.append(words(random, 6 + random.nextInt(8)));
+		}
+
+		return sb.toString();
+	}
+
+
+	private static String words(Random random, int count) {
+		StringBuilder sb = new StringBuilder();
+
+		for(int i = 0; i < count; i++) {
+			if(i > 0) {
+				sb.append(' ');
+			}
+
+			sb.append(pick(random, WORDS));
+		}
+
+		return sb.toString();
+	}
+
+
+	private static String pick(Random random, List<String> values) {
+		return values.get(random.nextInt(values.size()));
+	}
+
+
+	private static Date date(Random random) {
+		// Full seconds, RT does not return milliseconds
+		return new Date(BASE_TIME + random.nextInt(180 * 24 * 3600) * 1000L);
+	}
+}
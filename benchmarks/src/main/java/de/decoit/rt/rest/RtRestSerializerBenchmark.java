@@ -0,0 +1,103 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import de.decoit.rt.model.RtUser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the throughput of building the content of create and edit requests for tickets and users.
+ * The edited objects differ from their loaded state in a few fields, like a typical triage update.
+ * Run with "-prof gc" to report the allocation rate per operation as well.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtRestSerializerBenchmark {
+	private RtTicket loadedTicket;
+	private RtTicket editedTicket;
+	private RtUser loadedUser;
+	private RtUser editedUser;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.loadedTicket = RtRestPayloads.ticketObject(4711L);
+
+		this.editedTicket = new RtTicket(this.loadedTicket);
+		this.editedTicket.setStatus(RtTicketStatus.OPEN);
+		this.editedTicket.setOwner("support");
+		this.editedTicket.setPriority(80);
+		this.editedTicket.addCustomField("Risk", "95");
+
+		this.loadedUser = RtRestPayloads.userObject(RtRestParserBenchmark.SIGNATURE_LINES);
+
+		this.editedUser = new RtUser(this.loadedUser);
+		this.editedUser.setRealName("Thomas Rix (DECOIT)");
+		this.editedUser.setWorkPhone("+49 421 596064-55");
+	}
+
+
+	@Benchmark
+	public String newTicket() throws RtException {
+		return RtRestTicketResponseParser.ticketToString(this.loadedTicket, true, null);
+	}
+
+
+	@Benchmark
+	public String editTicketCompare() throws RtException {
+		return RtRestTicketResponseParser.ticketToString(this.editedTicket, false, this.loadedTicket);
+	}
+
+
+	@Benchmark
+	public String editTicketChangedFields() {
+		return RtRestTicketResponseParser.changedFieldsToString(this.editedTicket);
+	}
+
+
+	@Benchmark
+	public String editUserCompare() throws RtException {
+		return RtRestUserResponseParser.userToString(this.editedUser, false, this.loadedUser);
+	}
+
+
+	@Benchmark
+	public String editUserChangedFields() {
+		return RtRestUserResponseParser.changedFieldsToString(this.editedUser);
+	}
+}
@@ -0,0 +1,258 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the cost of parsing a single ticket from a ticket properties response.
+ * The legacy variant is a copy of the line parser which compiled its regular expressions for every line, it is
+ * kept here as baseline for the current RtRestTicketResponseParser.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtRestTicketParserBenchmark {
+	private static final String TICKET = "RT/4.2.3 200 Ok\n" +
+		"\n" +
+		"id: ticket/4711\n" +
+		"Queue: General\n" +
+		"Owner: root\n" +
+		"Creator: root\n" +
+		"Subject: Mail server not reachable\n" +
+		"Status: open\n" +
+		"Priority: 10\n" +
+		"InitialPriority: 0\n" +
+		"FinalPriority: 50\n" +
+		"Requestors: rix@decoit.de, support@decoit.de\n" +
+		"Cc:\n" +
+		"AdminCc:\n" +
+		"Created: Wed Feb 26 15:59:56 2014\n" +
+		"Starts: Not set\n" +
+		"Started: Wed Feb 26 16:00:12 2014\n" +
+		"Due: Not set\n" +
+		"Resolved: Not set\n" +
+		"Told: Not set\n" +
+		"LastUpdated: Wed Feb 26 16:00:57 2014\n" +
+		"TimeEstimated: 30 minutes\n" +
+		"TimeWorked: 15 minutes\n" +
+		"TimeLeft: 0\n" +
+		"CF.{Risk}: 10\n" +
+		"CF.{Customer}: DECOIT GmbH\n" +
+		"CF-Incident: 101\n";
+
+
+	@Benchmark
+	public RtTicket legacy() throws RtException {
+		RtTicket ticket = new RtTicket();
+
+		for(String line : TICKET.split("\n")) {
+			LegacyTicketParser.parseTicketLine(ticket, line);
+		}
+
+		return ticket;
+	}
+
+
+	@Benchmark
+	public RtTicket current() throws RtException {
+		return RtRestTicketResponseParser.parseTicket(TICKET);
+	}
+
+
+	/**
+	 * Ticket line parser as it was before the parsers were changed to work without regular expressions
+	 */
+	private static class LegacyTicketParser {
+		private static final Logger LOG = Logger.getLogger(LegacyTicketParser.class);
+
+
+		static void parseTicketLine(RtTicket ticket, String line) throws RtException {
+			if (StringUtils.isBlank(line)) {
+				// Blank line, ignore
+			}
+			else if (line.startsWith("RT/")) {
+				// Status line, ignore
+			}
+			else if (line.startsWith("#")) {
+				// Message line, in case of ticket query means something went wrong, raise exception
+				throw new RtException(line.substring(2));
+			}
+			else if (line.startsWith("CF.{")) {
+				// New style custom field line, parse and add to custom fields of the ticket
+				String[] lineParts = line.split(":", 2);
+				lineParts[1] = lineParts[1].trim();
+
+				Pattern cfNamePattern = Pattern.compile("^CF\\.\\{(.+?)\\}$");
+				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
+				if(cfNameMatcher.matches()) {
+					String cfName = cfNameMatcher.group(1);
+
+					ticket.addCustomField(cfName, lineParts[1]);
+				}
+				else {
+					LOG.warn("Invalid custom field line detected: " + line);
+				}
+			}
+			else if (line.startsWith("CF-")) {
+				// Old style custom field line, parse and add to custom fields of the ticket
+				String[] lineParts = line.split(":", 2);
+				lineParts[1] = lineParts[1].trim();
+
+				Pattern cfNamePattern = Pattern.compile("^CF-(.+?)$");
+				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
+				if(cfNameMatcher.matches()) {
+					String cfName = cfNameMatcher.group(1);
+
+					ticket.addCustomField(cfName, lineParts[1]);
+				}
+				else {
+					LOG.warn("Invalid custom field line detected: " + line);
+				}
+			}
+			else {
+				Pattern idPattern = Pattern.compile("^ticket/(\\d+)$");
+				Matcher idMatcher;
+				Pattern timePattern = Pattern.compile("^(\\d+?) (minutes)?$");
+				Matcher timeMatcher;
+
+				String[] lineParts = line.split(":", 2);
+				lineParts[1] = lineParts[1].trim();
+
+				switch(lineParts[0]) {
+					case "id":
+						idMatcher = idPattern.matcher(lineParts[1]);
+
+						if(idMatcher.matches()) {
+							ticket.setId(Long.parseLong(idMatcher.group(1)));
+						}
+						else {
+							throw new RtException("Invalid ticket ID pattern: " + lineParts[1]);
+						}
+						break;
+					case "Queue":
+						ticket.setQueue(lineParts[1]);
+						break;
+					case "Owner":
+						ticket.setOwner(lineParts[1]);
+						break;
+					case "Creator":
+						ticket.setCreator(lineParts[1]);
+						break;
+					case "Subject":
+						ticket.setSubject(lineParts[1]);
+						break;
+					case "Status":
+						ticket.setStatus(RtTicketStatus.fromStatusText(lineParts[1]));
+						break;
+					case "Priority":
+						ticket.setPriority(Integer.parseInt(lineParts[1]));
+						break;
+					case "InitialPriority":
+						ticket.setInitialPriority(Integer.parseInt(lineParts[1]));
+						break;
+					case "FinalPriority":
+						ticket.setFinalPriority(Integer.parseInt(lineParts[1]));
+						break;
+					case "Requestors":
+						ticket.setRequestors(Lists.newArrayList(Splitter.on(",").trimResults().split(lineParts[1])));
+						break;
+					case "Cc":
+						ticket.setCc(Lists.newArrayList(Splitter.on(",").trimResults().split(lineParts[1])));
+						break;
+					case "AdminCc":
+						ticket.setAdminCc(Lists.newArrayList(Splitter.on(",").trimResults().split(lineParts[1])));
+						break;
+					case "Created":
+						ticket.setCreated(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "Starts":
+						ticket.setStarts(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "Started":
+						ticket.setStarted(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "Due":
+						ticket.setDue(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "Resolved":
+						ticket.setResolved(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "Told":
+						ticket.setTold(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "LastUpdated":
+						ticket.setLastUpdated(RtRestDateCodec.TICKET_DATE.parse(lineParts[1]));
+						break;
+					case "TimeEstimated":
+						timeMatcher = timePattern.matcher(lineParts[1]);
+						if(timeMatcher.matches()) {
+							ticket.setTimeEstimated(Integer.parseInt(timeMatcher.group(1)));
+						}
+						else {
+							ticket.setTimeEstimated(0);
+						}
+						break;
+					case "TimeWorked":
+						timeMatcher = timePattern.matcher(lineParts[1]);
+						if(timeMatcher.matches()) {
+							ticket.setTimeWorked(Integer.parseInt(timeMatcher.group(1)));
+						}
+						else {
+							ticket.setTimeWorked(0);
+						}
+						break;
+					case "TimeLeft":
+						timeMatcher = timePattern.matcher(lineParts[1]);
+						if(timeMatcher.matches()) {
+							ticket.setTimeLeft(Integer.parseInt(timeMatcher.group(1)));
+						}
+						else {
+							ticket.setTimeLeft(0);
+						}
+						break;
+					default:
+						/* Ignore */
+				}
+			}
+		}
+	}
+}
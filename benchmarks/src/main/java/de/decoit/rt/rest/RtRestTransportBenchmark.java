@@ -0,0 +1,126 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares the transports against the fake RT server running in the same JVM.
+ * Eight threads share one connector, like the threads of an application server. The throughput mode reports
+ * requests per millisecond, the sample time mode reports the latency percentiles of the requests.<br>
+ * "httpclient" is the default pooled Apache HttpClient transport, "spring" sends the requests through the
+ * RestTemplate request factory of the same pool and "jdk" uses the java.net.http client, which requires Java 11.<br>
+ * Without TCP_NODELAY the server of the JDK waits for the delayed ACK of the client after the response headers,
+ * which adds 40 ms to every request and hides all differences between the transports.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class RtRestTransportBenchmark {
+	private static final int TICKET_COUNT = 50;
+
+	@Param({ "httpclient", "spring", "jdk" })
+	private String transport;
+
+	private FakeRtServer server;
+	private RtRestConnectionPool springPool;
+	private RtRestConnector connector;
+	private String sessionId;
+	private long ticketId;
+
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, RtException {
+		this.server = new FakeRtServer();
+
+		for(int i = 0; i < TICKET_COUNT; i++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setSubject("Benchmark ticket " + i);
+			this.ticketId = this.server.addTicket(ticket);
+		}
+
+		this.server.start();
+
+		RtRestConnector.Builder builder = RtRestConnector.builder(this.server.getBaseUri());
+
+		switch(this.transport) {
+			case "httpclient":
+				break;
+			case "spring":
+				this.springPool = new RtRestConnectionPool(20, 20, 60000L, 30000L);
+				builder.transport(new RtRestSpringTransport(this.springPool.getRequestFactory()));
+				break;
+			case "jdk":
+				builder.jdkTransport();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown transport: " + this.transport);
+		}
+
+		this.connector = builder.build();
+		this.sessionId = this.connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		this.connector.close();
+
+		if(this.springPool != null) {
+			this.springPool.close();
+		}
+
+		this.server.close();
+	}
+
+
+	@Benchmark
+	public RtTicket getTicket() throws RtException {
+		return this.connector.getTicket(this.sessionId, this.ticketId);
+	}
+
+
+	@Benchmark
+	public List<RtTicket> searchTickets() throws RtException {
+		return this.connector.searchTickets(this.sessionId, "Subject LIKE 'Benchmark ticket'");
+	}
+}
@@ -0,0 +1,188 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures how the throughput of the blocking getTicket() call scales with 10000 concurrent callers.
+ * Every invocation starts 10000 callers at once and waits until all of them received their ticket. The fake RT
+ * server delays every response by 10 ms, and the connector sends at most 200 requests at the same time, so the
+ * best possible throughput is 20 requests per millisecond.<br>
+ * "virtual" runs every caller on its own virtual thread and requires Java 21, "platform-pool" runs the callers on
+ * 200 platform threads like a servlet container and "platform-per-task" runs every caller on its own platform thread.
+ * The callers use the pooled HttpClient transport or the JDK transport, the unpooled transport is not measured
+ * since it pins virtual threads.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dsun.net.httpserver.nodelay=true", "-Xss512k" })
+public class RtRestVirtualThreadBenchmark {
+	private static final int CALLERS = 10000;
+	private static final int MAX_CONCURRENT_REQUESTS = 200;
+	private static final int PLATFORM_POOL_SIZE = 200;
+
+	@Param({ "virtual", "platform-pool", "platform-per-task" })
+	private String executor;
+
+	@Param({ "httpclient", "jdk" })
+	private String transport;
+
+	private FakeRtServer server;
+	private RtRestConnector connector;
+	private ExecutorService callerExecutor;
+	private String sessionId;
+	private long ticketId;
+
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, RtException {
+		this.server = new FakeRtServer();
+
+		RtTicket ticket = new RtTicket();
+		ticket.setSubject("Benchmark ticket");
+		this.ticketId = this.server.addTicket(ticket);
+
+		this.server.setLatency(10L, TimeUnit.MILLISECONDS);
+		this.server.start();
+
+		// The throttle keeps the JDK transport from opening a connection for every caller, the deadline of a call
+		// includes the wait for the throttle and is disabled
+		RtRestConnector.Builder builder = RtRestConnector.builder(this.server.getBaseUri())
+				.timeoutPolicy(RtRestTimeoutPolicy.NONE)
+				.maxConnectionsTotal(MAX_CONCURRENT_REQUESTS)
+				.maxConnectionsPerRoute(MAX_CONCURRENT_REQUESTS)
+				.throttlePolicy(RtRestThrottlePolicy.builder().maxConcurrentRequests(MAX_CONCURRENT_REQUESTS).build());
+
+		switch(this.executor) {
+			case "virtual":
+				builder.virtualThreads();
+				this.callerExecutor = RtRestVirtualThreads.newThreadPerTaskExecutor("caller-");
+				break;
+			case "platform-pool":
+				this.callerExecutor = Executors.newFixedThreadPool(PLATFORM_POOL_SIZE, new CallerThreadFactory());
+				break;
+			case "platform-per-task":
+				this.callerExecutor = Executors.newCachedThreadPool(new CallerThreadFactory());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown executor: " + this.executor);
+		}
+
+		if(this.transport.equals("jdk")) {
+			builder.jdkTransport();
+		}
+
+		this.connector = builder.build();
+		this.sessionId = this.connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException, InterruptedException {
+		this.callerExecutor.shutdown();
+		this.callerExecutor.awaitTermination(10L, TimeUnit.SECONDS);
+		this.connector.close();
+		this.server.close();
+	}
+
+
+	@Benchmark
+	@OperationsPerInvocation(CALLERS)
+	public int getTicket() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(CALLERS);
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+
+		for(int i = 0; i < CALLERS; i++) {
+			this.callerExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+
+						if(connector.getTicket(sessionId, ticketId) != null) {
+							received.incrementAndGet();
+						}
+					}
+					catch(Exception ex) {
+						failure.compareAndSet(null, ex);
+					}
+					finally {
+						finished.countDown();
+					}
+				}
+			});
+		}
+
+		start.countDown();
+		finished.await();
+
+		if(failure.get() != null) {
+			throw failure.get();
+		}
+
+		return received.get();
+	}
+
+
+	/**
+	 * Thread factory of the platform caller threads, named like the virtual caller threads.
+	 */
+	private static class CallerThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "caller-" + this.threadCount.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
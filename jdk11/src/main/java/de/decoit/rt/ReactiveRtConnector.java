@@ -0,0 +1,210 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtUser;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+
+/**
+ * This interface defines a non-blocking variant of the RtConnector interface.
+ * Requests for single objects return immediately with a future that will be completed when RT answered the request.
+ * If the request fails, the future fails with the exception the RtConnector would have thrown.<br>
+ * Searches and the ticket history are returned as publishers. Every subscription sends its own request, which is
+ * sent when the subscriber requests the first item. The items are emitted while the response is read and the
+ * response is only read as fast as the subscriber requests items.
+ * See RtConnector for a description of the single operations.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface ReactiveRtConnector {
+	/**
+	 * Login into RT with the specified credentials.
+	 *
+	 * @param uname RT username
+	 * @param password Password for username
+	 * @return Future for the RT session ID
+	 */
+	public CompletableFuture<String> login(String uname, String password);
+
+
+	/**
+	 * Logout from RT
+	 *
+	 * @param sessionId ID of the session if log out
+	 * @return Future that completes when the session was logged out
+	 */
+	public CompletableFuture<Void> logout(String sessionId);
+
+
+	/**
+	 * Get the ticket with ID id from RT.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param id Ticket ID
+	 * @return Future for the ticket object
+	 */
+	public CompletableFuture<RtTicket> getTicket(String sessionId, long id);
+
+
+	/**
+	 * Search for tickets matching the provided query string and ordering them using the provided custom ordering.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @return Publisher of the tickets matching the query, in the order returned by RT
+	 */
+	public Flow.Publisher<RtTicket> searchTickets(String sessionId, String query, String orderby);
+
+
+	/**
+	 * Create a ticket in RT from a ticket object.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticket Object holding information about the new ticket
+	 * @return Future for the ID of the newly created ticket
+	 */
+	public CompletableFuture<Long> createTicket(String sessionId, RtTicket ticket);
+
+
+	/**
+	 * Update an existing ticket in RT with new information.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticket Ticket object with the updated information
+	 * @return Future for the result of the edit action
+	 */
+	public CompletableFuture<Boolean> editTicket(String sessionId, RtTicket ticket);
+
+
+	/**
+	 * Get the history items stored by RT for the ticket with the provided ID.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId Ticket of which the history shall be returned
+	 * @return Publisher of the history items, in the order returned by RT
+	 */
+	public Flow.Publisher<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId);
+
+
+	/**
+	 * Add a comment to an existing ticket in RT.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId Ticket which shall be commented
+	 * @param item   Comment which will be written
+	 * @return Future for the result of the comment action
+	 */
+	public CompletableFuture<Boolean> commentTicket(String sessionId, long ticketId, RtTicketHistoryItem item);
+
+
+	/**
+	 * Add an answer to an existing ticket in RT.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId Ticket which shall be answered
+	 * @param item   Answer which will be written
+	 * @return Future for the result of the answer action
+	 */
+	public CompletableFuture<Boolean> answerTicket(String sessionId, long ticketId, RtTicketHistoryItem item);
+
+
+	/**
+	 * Get the RT queue with the provided ID.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param id ID of the requested RT queue
+	 * @return Future for the queue object
+	 */
+	public CompletableFuture<RtQueue> getQueue(String sessionId, long id);
+
+
+	/**
+	 * Get the RT queue with the provided name.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param name Name of the requested RT queue
+	 * @return Future for the queue object
+	 */
+	public CompletableFuture<RtQueue> getQueueByName(String sessionId, String name);
+
+
+	/**
+	 * List all queues which are defined in RT.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @return Future for a map with queueId=&gt;queueName mappings
+	 */
+	public CompletableFuture<Map<Long, String>> listQueues(String sessionId);
+
+
+	/**
+	 * Create a new queue in RT with the provided information.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param queue A queue object filled with information for the new queue.
+	 * @return Future for the queue ID of the newly created queue
+	 */
+	public CompletableFuture<Long> createQueue(String sessionId, RtQueue queue);
+
+
+	/**
+	 * Get information about a specific user.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param uname Username of the requested user
+	 * @return Future for the user object
+	 */
+	public CompletableFuture<RtUser> getUser(String sessionId, String uname);
+
+
+	/**
+	 * Get information about a specific user.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param uid User ID of the requested user
+	 * @return Future for the user object
+	 */
+	public CompletableFuture<RtUser> getUser(String sessionId, long uid);
+
+
+	/**
+	 * Search for users matching the provided query string and ordering them using the provided custom ordering.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @return Publisher of the users matching the query, in the order returned by RT
+	 */
+	public Flow.Publisher<RtUser> searchUsers(String sessionId, String query, String orderby);
+
+
+	/**
+	 * Update an existing user with new information.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param user User object with the updated information
+	 * @return Future for the result of the edit action
+	 */
+	public CompletableFuture<Boolean> editUser(String sessionId, RtUser user);
+}
@@ -0,0 +1,411 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtException;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Publisher of the objects of a RT list response, i.e. the tickets of a ticket search.
+ * Every subscription sends the request once the subscriber requested the first object. The body is split into
+ * lines by the JDK client while it is received, and every object is parsed as soon as its list delimiter was read.<br>
+ * Lines are only requested from the connection while the subscriber has outstanding demand and no parsed objects
+ * are waiting, so a slow subscriber stops the client from reading the response and the objects held in memory are
+ * limited to those parsed from one batch of lines.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class RtRestEntityPublisher<T> implements Flow.Publisher<T> {
+	private static final String LIST_DELIMITER_LINE = "--";
+	private static final String NO_RESULTS_LINE = "No matching results.";
+	private static final int LINE_BATCH_SIZE = 64;
+
+	private final HttpClient httpClient;
+	private final HttpRequest request;
+	private final String uri;
+	private final String requestName;
+	private final EntityParser<T> parser;
+
+
+	/**
+	 * Create a publisher for a list request.
+	 *
+	 * @param httpClient Client used to send the request
+	 * @param request Request which is sent for every subscription
+	 * @param uri URI template of the request, used in error messages
+	 * @param requestName Name of the request used in error messages, i.e. "Search tickets"
+	 * @param parser Parser for a single object of the list
+	 */
+	RtRestEntityPublisher(HttpClient httpClient, HttpRequest request, String uri, String requestName, EntityParser<T> parser) {
+		this.httpClient = httpClient;
+		this.request = request;
+		this.uri = uri;
+		this.requestName = requestName;
+		this.parser = parser;
+	}
+
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if(subscriber == null) {
+			throw new NullPointerException("Subscriber cannot be null");
+		}
+
+		subscriber.onSubscribe(new EntitySubscription(subscriber));
+	}
+
+
+	/**
+	 * Parser for the lines of a single object of the list.
+	 */
+	interface EntityParser<T> {
+		/**
+		 * Parse an object from the lines of the cursor.
+		 *
+		 * @param cursor Cursor over the lines between two list delimiters
+		 * @return The parsed object
+		 * @throws RtException if the lines contain invalid values
+		 */
+		T parse(RtRestLineCursor cursor) throws RtException;
+	}
+
+
+	/**
+	 * Subscription of a single subscriber. It receives the lines of the response body from the JDK client and
+	 * emits the parsed objects to the subscriber.<br>
+	 * Lines are received on one thread at a time, while demand may be signalled from any thread. Only the drain
+	 * loop calls the subscriber, the work-in-progress counter makes sure it runs on one thread at a time.
+	 */
+	private class EntitySubscription implements Flow.Subscription, Flow.Subscriber<String> {
+		private final Flow.Subscriber<? super T> downstream;
+		private final Queue<T> entities = new ConcurrentLinkedQueue<>();
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private final AtomicInteger pendingLines = new AtomicInteger();
+		private final AtomicBoolean sent = new AtomicBoolean();
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+		private volatile Flow.Subscription upstream = null;
+		private volatile CompletableFuture<HttpResponse<Void>> exchange = null;
+		private volatile boolean done = false;
+		private volatile boolean cancelled = false;
+
+		// Only used by the thread receiving the lines
+		private boolean statusRead = false;
+		private final StringBuilder entityText = new StringBuilder();
+
+
+		EntitySubscription(Flow.Subscriber<? super T> downstream) {
+			this.downstream = downstream;
+		}
+
+
+		@Override
+		public void request(long n) {
+			if(n <= 0L) {
+				fail(new IllegalArgumentException("Number of requested items must be greater than 0: " + n));
+				return;
+			}
+
+			long current;
+			long next;
+
+			do {
+				current = this.requested.get();
+				next = current + n;
+
+				if(next < 0L) {
+					// Demand of Long.MAX_VALUE or more is unbounded
+					next = Long.MAX_VALUE;
+				}
+			}
+			while(!this.requested.compareAndSet(current, next));
+
+			if(this.sent.compareAndSet(false, true)) {
+				send();
+			}
+
+			drain();
+		}
+
+
+		@Override
+		public void cancel() {
+			this.cancelled = true;
+
+			Flow.Subscription currentUpstream = this.upstream;
+			CompletableFuture<HttpResponse<Void>> currentExchange = this.exchange;
+
+			if(currentUpstream != null) {
+				// Cancelling the body subscription closes the connection
+				currentUpstream.cancel();
+			}
+			else if(currentExchange != null) {
+				currentExchange.cancel(true);
+			}
+
+			drain();
+		}
+
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.upstream = subscription;
+
+			if(this.cancelled) {
+				subscription.cancel();
+			}
+			else {
+				drain();
+			}
+		}
+
+
+		@Override
+		public void onNext(String line) {
+			this.pendingLines.decrementAndGet();
+
+			if(this.done) {
+				return;
+			}
+
+			try {
+				readLine(line);
+			}
+			catch(RtException | RuntimeException ex) {
+				this.upstream.cancel();
+				fail(ex);
+				return;
+			}
+
+			drain();
+		}
+
+
+		@Override
+		public void onError(Throwable throwable) {
+			fail(throwable);
+		}
+
+
+		@Override
+		public void onComplete() {
+			try {
+				if(!this.statusRead) {
+					throw new RtException("Empty response received");
+				}
+
+				flushEntity();
+			}
+			catch(RtException | RuntimeException ex) {
+				fail(ex);
+				return;
+			}
+
+			this.done = true;
+			drain();
+		}
+
+
+		/**
+		 * Send the request. The body is passed to this subscription line by line if RT answered with HTTP status
+		 * 200, otherwise the subscriber receives the same exception RtConnector would have thrown.
+		 */
+		private void send() {
+			this.exchange = httpClient.sendAsync(request, responseInfo -> {
+				try {
+					RtRestClient.checkHttpStatus(responseInfo.statusCode(), "");
+
+					if(responseInfo.statusCode() != 200) {
+						throw new RtException("REST API call failed with HTTP status code: " + responseInfo.statusCode());
+					}
+				}
+				catch(RtException | RuntimeException ex) {
+					fail(ex);
+					return HttpResponse.BodySubscribers.replacing(null);
+				}
+
+				return HttpResponse.BodySubscribers.fromLineSubscriber(this, subscriber -> null, RtRestReactiveConnector.getCharset(responseInfo.headers()), null);
+			});
+
+			this.exchange.whenComplete((response, ex) -> {
+				if(ex != null) {
+					fail(ex);
+				}
+			});
+		}
+
+
+		/**
+		 * Process a line of the response body. The first line is the status line, the following lines are
+		 * collected until a list delimiter ends the current object.
+		 *
+		 * @param line Line without line break
+		 * @throws RtException if RT reported an error or the object contains invalid values
+		 */
+		private void readLine(String line) throws RtException {
+			if(!this.statusRead) {
+				this.statusRead = true;
+
+				RtRestStatus status = RtRestResponseParser.parseStatusLine(line);
+
+				if(status == RtRestStatus.STATUS_401) {
+					throw new RtAuthenticationException("Session was rejected by RT, login required");
+				}
+				else if(status != RtRestStatus.STATUS_200) {
+					throw new RtException(requestName + " request failed with RT REST status: " + status);
+				}
+			}
+			else if(line.equals(LIST_DELIMITER_LINE)) {
+				flushEntity();
+			}
+			else {
+				this.entityText.append(line);
+				this.entityText.append('\n');
+			}
+		}
+
+
+		/**
+		 * Parse the collected lines into an object and queue it for the subscriber. Lines containing nothing but
+		 * blanks or the message of an empty result do not produce an object.
+		 *
+		 * @throws RtException if the object contains invalid values
+		 */
+		private void flushEntity() throws RtException {
+			String text = this.entityText.toString();
+			this.entityText.setLength(0);
+
+			String trimmedText = text.trim();
+
+			if(trimmedText.isEmpty() || trimmedText.equals(NO_RESULTS_LINE)) {
+				return;
+			}
+
+			this.entities.offer(parser.parse(new RtRestLineCursor(text)));
+		}
+
+
+		/**
+		 * Terminate the subscription with an error. Only the first error is passed to the subscriber.
+		 *
+		 * @param throwable Cause of the failure
+		 */
+		private void fail(Throwable throwable) {
+			Throwable cause = throwable;
+
+			if(cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+
+			if(cause instanceof IOException) {
+				cause = RtRestClient.ioError(uri, (IOException) cause);
+			}
+
+			this.failure.compareAndSet(null, cause);
+			this.done = true;
+
+			drain();
+		}
+
+
+		/**
+		 * Emit the queued objects as long as the subscriber has demand, signal the end of the stream and request
+		 * more lines if all queued objects were emitted and the subscriber still has demand.
+		 */
+		private void drain() {
+			if(this.wip.getAndIncrement() != 0) {
+				return;
+			}
+
+			int missed = 1;
+
+			do {
+				if(this.cancelled) {
+					this.entities.clear();
+				}
+				else {
+					long demand = this.requested.get();
+					long emitted = 0L;
+
+					while(emitted != demand && this.failure.get() == null && !this.cancelled) {
+						T entity = this.entities.poll();
+
+						if(entity == null) {
+							break;
+						}
+
+						this.downstream.onNext(entity);
+						emitted++;
+					}
+
+					if(emitted > 0L && demand != Long.MAX_VALUE) {
+						this.requested.addAndGet(-emitted);
+					}
+
+					Throwable currentFailure = this.failure.get();
+
+					if(this.cancelled) {
+						this.entities.clear();
+					}
+					else if(currentFailure != null) {
+						this.cancelled = true;
+						this.entities.clear();
+						cancelUpstream();
+						this.downstream.onError(currentFailure);
+					}
+					else if(this.done && this.entities.isEmpty()) {
+						this.cancelled = true;
+						this.downstream.onComplete();
+					}
+					else if(this.entities.isEmpty() && this.requested.get() > 0L && this.upstream != null && this.pendingLines.get() == 0) {
+						this.pendingLines.set(LINE_BATCH_SIZE);
+						this.upstream.request(LINE_BATCH_SIZE);
+					}
+				}
+
+				missed = this.wip.addAndGet(-missed);
+			}
+			while(missed != 0);
+		}
+
+
+		/**
+		 * Stop receiving the response after a failure.
+		 */
+		private void cancelUpstream() {
+			Flow.Subscription currentUpstream = this.upstream;
+
+			if(currentUpstream != null) {
+				currentUpstream.cancel();
+			}
+		}
+	}
+}
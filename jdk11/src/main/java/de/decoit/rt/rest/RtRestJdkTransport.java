@@ -0,0 +1,221 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Transport which sends the requests through the java.net.http client of the JDK.
+ * The client keeps connections alive without further configuration, the number of connections is not limited.
+ * It is selected with RtRestConnector.Builder.jdkTransport(), which loads this class only if it is available.<br>
+ * The JDK client has no separate connect and read timeouts. The sum of both is applied as timeout for the response
+ * headers, a body which stops while it is read is only aborted by the deadline of the call.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestJdkTransport implements RtRestTransport {
+	private static final Logger LOG = Logger.getLogger(RtRestJdkTransport.class);
+
+	private final HttpClient httpClient;
+	private final ExecutorService executor;
+
+
+	/**
+	 * Create a transport with a HTTP/1.1 client which does not follow redirects, like the other transports.
+	 */
+	public RtRestJdkTransport() {
+		this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("rt-jdk-http-"));
+		this.httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.followRedirects(HttpClient.Redirect.NEVER)
+				.executor(this.executor)
+				.build();
+	}
+
+
+	/**
+	 * Create a transport sending the requests through the provided client, i.e. to use HTTP/2 or a custom
+	 * SSLContext. Closing the transport does not release the client.
+	 *
+	 * @param httpClient Client used to send the requests
+	 */
+	public RtRestJdkTransport(HttpClient httpClient) {
+		if(httpClient == null) {
+			throw new IllegalArgumentException("HTTP client cannot be null");
+		}
+
+		this.httpClient = httpClient;
+		this.executor = null;
+	}
+
+
+	@Override
+	public RtRestTransportResponse post(RtRestTransportRequest request) throws IOException {
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(request.getUri())
+				.POST(HttpRequest.BodyPublishers.ofByteArray(request.getBody()))
+				.header("Content-Type", RtRestTransportRequest.CONTENT_TYPE);
+
+		for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			requestBuilder.header(header.getKey(), header.getValue());
+		}
+
+		if(request.getConnectTimeoutMillis() > 0 && request.getReadTimeoutMillis() > 0) {
+			requestBuilder.timeout(Duration.ofMillis((long) request.getConnectTimeoutMillis() + request.getReadTimeoutMillis()));
+		}
+
+		CompletableFuture<HttpResponse<InputStream>> future = this.httpClient.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+		request.registerAbort(() -> {
+			// Closing the body of a received response cancels the exchange and closes the connection
+			if(!future.cancel(true)) {
+				future.thenAccept(response -> closeQuietly(response.body()));
+			}
+		});
+
+		try {
+			return new JdkResponse(future.get());
+		}
+		catch(ExecutionException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+
+			throw new IOException(ex.getCause());
+		}
+		catch(CancellationException ex) {
+			throw new IOException("Request was aborted", ex);
+		}
+		catch(InterruptedException ex) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while waiting for the response");
+		}
+	}
+
+
+	/**
+	 * Shut down the threads of the client created by this transport. Connections are closed by the JDK client
+	 * when they are idle.
+	 */
+	@Override
+	public void close() {
+		if(this.executor != null) {
+			this.executor.shutdown();
+		}
+	}
+
+
+	private static void closeQuietly(InputStream body) {
+		try {
+			body.close();
+		}
+		catch(IOException ex) {
+			LOG.warn("Closing the response body failed: " + ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Response of the JDK client with a body which is read from the connection.
+	 */
+	private static class JdkResponse implements RtRestTransportResponse {
+		private final HttpResponse<InputStream> response;
+
+
+		JdkResponse(HttpResponse<InputStream> response) {
+			this.response = response;
+		}
+
+
+		@Override
+		public int getStatusCode() {
+			return this.response.statusCode();
+		}
+
+
+		@Override
+		public String getStatusText() {
+			// The JDK client does not provide the reason phrase
+			return "";
+		}
+
+
+		@Override
+		public String getHeader(String name) {
+			return this.response.headers().firstValue(name).orElse(null);
+		}
+
+
+		@Override
+		public InputStream getBody() {
+			return this.response.body();
+		}
+
+
+		@Override
+		public void abort() {
+			// Closing the body before it was read completely closes the connection
+			closeQuietly(this.response.body());
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			this.response.body().close();
+		}
+	}
+
+
+	/**
+	 * Thread factory of the client threads, the threads must not keep the JVM running.
+	 */
+	static class DaemonThreadFactory implements ThreadFactory {
+		private final String namePrefix;
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+
+		DaemonThreadFactory(String namePrefix) {
+			this.namePrefix = namePrefix;
+		}
+
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, this.namePrefix + this.threadCount.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
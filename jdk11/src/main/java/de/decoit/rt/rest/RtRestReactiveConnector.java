@@ -0,0 +1,811 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.ReactiveRtConnector;
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtConflictException;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTransientException;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtTicketHistoryItem.RtTicketHistoryItemType;
+import de.decoit.rt.model.RtUser;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.log4j.Logger;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriTemplate;
+
+
+/**
+ * Implementation of the ReactiveRtConnector interface on the non-blocking java.net.http client of the JDK.
+ * No thread waits for a response. The client reads all connections on its selector thread and completes the futures
+ * and publishers on the threads of its executor, so a single client can keep thousands of requests in flight.<br>
+ * Requests fail with the same exceptions as the requests of RtRestConnector. Retry, throttle and circuit breaker
+ * policies are not applied, since they wait on the calling thread. The connect and read timeouts of the timeout
+ * policy are used, a deadline can be set by cancelling the future or the subscription.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestReactiveConnector implements ReactiveRtConnector, Closeable {
+	private static final Logger LOG = Logger.getLogger(RtRestReactiveConnector.class);
+	private static final String URI_RT_REST_LOGIN = "REST/1.0/user/{username}";
+	private static final String URI_RT_REST_LOGOUT = "REST/1.0/logout";
+	private static final String URI_RT_REST_TICKET_PROPERTIES = "REST/1.0/{ticket-id}/show";
+	private static final String URI_RT_REST_TICKET_PROPERTIES_FIELDS = "REST/1.0/{ticket-id}/show?fields={fields}";
+	private static final String URI_RT_REST_TICKET_SEARCH = "REST/1.0/search/ticket?query={query}&orderby={order-by}&format=l";
+	private static final String URI_RT_REST_TICKET_ID_SEARCH = "REST/1.0/search/ticket?query={query}&orderby={order-by}&format=i";
+	private static final String URI_RT_REST_TICKET_CREATE = "REST/1.0/ticket/new";
+	private static final String URI_RT_REST_TICKET_EDIT = "REST/1.0/{ticket-id}/edit";
+	private static final String URI_RT_REST_TICKET_HISTORY = "REST/1.0/{ticket-id}/history?format=l";
+	private static final String URI_RT_REST_TICKET_COMMENT = "REST/1.0/{ticket-id}/comment";
+	private static final String URI_RT_REST_QUEUE_PROPERTIES = "REST/1.0/{queue-id}/show";
+	private static final String URI_RT_REST_QUEUE_LIST = "REST/1.0/search/queue?query=";
+	private static final String URI_RT_REST_QUEUE_CREATE = "REST/1.0/queue/new";
+	private static final String URI_RT_REST_USER_PROPERTIES = "REST/1.0/{user-id}/show";
+	private static final String URI_RT_REST_USER_SEARCH = "REST/1.0/search/user?query={query}&orderby={order-by}&format=l";
+	private static final String URI_RT_REST_USER_EDIT = "REST/1.0/{user-id}/edit";
+
+	/**
+	 * This is required to make sure we always get US format for timestamps and english translation for status texts.
+	 */
+	private static final String HTTP_HEADERS_ACCEPT_LANGUAGE = "en-US;q=0.8,en;q=0.6";
+
+	private final String baseUri;
+	private final HttpClient httpClient;
+	private final ExecutorService executor;
+	private final RtRestTimeoutPolicy timeoutPolicy;
+	private final RtRestEditMode editMode;
+
+
+	/**
+	 * Create a connector with the default settings of the builder.
+	 *
+	 * @param rtBaseUri Base URI of the RT installation, i.e. http://10.10.10.10/
+	 */
+	public RtRestReactiveConnector(String rtBaseUri) {
+		this(builder(rtBaseUri));
+	}
+
+
+	private RtRestReactiveConnector(Builder builder) {
+		Matcher m = Pattern.compile("^http(s)?://.+/?$").matcher(builder.rtBaseUri);
+
+		if(!m.matches()) {
+			throw new IllegalArgumentException("Provided base URI was not valid");
+		}
+
+		this.baseUri = builder.rtBaseUri.endsWith("/") ? builder.rtBaseUri : builder.rtBaseUri + "/";
+		this.timeoutPolicy = builder.timeoutPolicy;
+		this.editMode = builder.editMode;
+
+		if(builder.httpClient != null) {
+			this.httpClient = builder.httpClient;
+			this.executor = null;
+		}
+		else {
+			this.executor = Executors.newCachedThreadPool(new RtRestJdkTransport.DaemonThreadFactory("rt-reactive-"));
+
+			HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.followRedirects(HttpClient.Redirect.NEVER)
+					.executor(this.executor);
+
+			if(this.timeoutPolicy.getConnectTimeoutMillis() > 0) {
+				clientBuilder.connectTimeout(Duration.ofMillis(this.timeoutPolicy.getConnectTimeoutMillis()));
+			}
+
+			this.httpClient = clientBuilder.build();
+		}
+	}
+
+
+	/**
+	 * Create a builder for a connector.
+	 *
+	 * @param rtBaseUri Base URI of the RT installation, i.e. http://10.10.10.10/
+	 * @return A new builder object
+	 */
+	public static Builder builder(String rtBaseUri) {
+		return new Builder(rtBaseUri);
+	}
+
+
+	/**
+	 * Shut down the threads of the client created by this connector. A client passed to the builder is not
+	 * released.
+	 */
+	@Override
+	public void close() {
+		if(this.executor != null) {
+			this.executor.shutdown();
+		}
+	}
+
+
+	@Override
+	public CompletableFuture<String> login(String uname, String password) {
+		LinkedMultiValueMap<String, String> postParams = new LinkedMultiValueMap<>();
+		postParams.add("user", uname);
+		postParams.add("pass", password);
+
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("username", uname);
+
+		return call(RtRestEndpoint.LOGIN, null, URI_RT_REST_LOGIN, uriParams, postParams, response -> {
+			if(response.getRtStatus() == RtRestStatus.STATUS_200) {
+				if(response.getSessionId() == null) {
+					// A successful login must set the session cookie, RT may have been restarting
+					throw new RtTransientException("RT did not send a session cookie");
+				}
+
+				return response.getSessionId();
+			}
+			else if(response.getRtStatus() == RtRestStatus.STATUS_401) {
+				throw new RtAuthenticationException("Login failed, credentials were rejected by RT");
+			}
+			else {
+				throw new RtException("Login failed with RT REST status: " + response.getRtStatus());
+			}
+		});
+	}
+
+
+	@Override
+	public CompletableFuture<Void> logout(String sessionId) {
+		return call(RtRestEndpoint.LOGOUT, sessionId, URI_RT_REST_LOGOUT, Collections.emptyMap(), null, response -> {
+			if(response.getRtStatus() != RtRestStatus.STATUS_200) {
+				throw new RtException("Logout failed with RT REST status: " + response.getRtStatus());
+			}
+
+			return null;
+		});
+	}
+
+
+	@Override
+	public CompletableFuture<RtTicket> getTicket(String sessionId, long id) {
+		return getTicket(sessionId, "ticket/" + id);
+	}
+
+
+	@Override
+	public Flow.Publisher<RtTicket> searchTickets(String sessionId, String query, String orderby) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("query", query);
+		uriParams.put("order-by", orderby);
+
+		return publish(RtRestEndpoint.TICKET_SEARCH, sessionId, URI_RT_REST_TICKET_SEARCH, uriParams, "Search tickets", RtRestTicketResponseParser::parseTicket);
+	}
+
+
+	@Override
+	public CompletableFuture<Long> createTicket(String sessionId, RtTicket ticket) {
+		try {
+			String content = RtRestTicketResponseParser.ticketToString(ticket, true, null);
+
+			return call(RtRestEndpoint.TICKET_CREATE, sessionId, URI_RT_REST_TICKET_CREATE, Collections.emptyMap(), contentParams(content), response -> {
+				checkStatus(response, "Create ticket");
+				return RtRestTicketResponseParser.parseTicketCreated(response.getBodyCursor());
+			});
+		}
+		catch(RtException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * The fields sent to RT depend on the edit mode configured for this connector, the requests needed by the mode
+	 * are chained without waiting. In the modes CHANGED_FIELDS and COMPARE_AND_SET no request is sent if no field
+	 * was changed, and the fields of the ticket are marked as unchanged after a successful edit. In mode
+	 * COMPARE_AND_SET the LastUpdated value of the ticket is read from RT after a successful edit. Partially loaded
+	 * tickets are always edited like in mode CHANGED_FIELDS.
+	 */
+	@Override
+	public CompletableFuture<Boolean> editTicket(String sessionId, RtTicket ticket) {
+		String ticketId = "ticket/" + ticket.getId();
+
+		if(this.editMode == RtRestEditMode.FETCH_AND_COMPARE && !ticket.isPartiallyLoaded()) {
+			return getTicket(sessionId, ticketId).thenCompose(oldTicket -> {
+				try {
+					return sendTicketEdit(sessionId, ticketId, RtRestTicketResponseParser.ticketToString(ticket, false, oldTicket));
+				}
+				catch(RtException ex) {
+					throw new CompletionException(ex);
+				}
+			});
+		}
+
+		String content = RtRestTicketResponseParser.changedFieldsToString(ticket);
+		if(content.isEmpty()) {
+			return CompletableFuture.completedFuture(Boolean.TRUE);
+		}
+
+		CompletableFuture<Boolean> result;
+
+		if(this.editMode == RtRestEditMode.COMPARE_AND_SET) {
+			result = checkTicketUnchanged(sessionId, ticket).thenCompose(unchanged -> sendTicketEdit(sessionId, ticketId, content));
+			result = result.thenCompose(edited -> edited ? refreshLastUpdated(sessionId, ticketId, ticket).thenApply(refreshed -> edited) : CompletableFuture.completedFuture(edited));
+		}
+		else {
+			result = sendTicketEdit(sessionId, ticketId, content);
+		}
+
+		return result.thenApply(edited -> {
+			if(edited) {
+				ticket.markUnchanged();
+			}
+
+			return edited;
+		});
+	}
+
+
+	@Override
+	public Flow.Publisher<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", "ticket/" + ticketId);
+
+		return publish(RtRestEndpoint.TICKET_HISTORY, sessionId, URI_RT_REST_TICKET_HISTORY, uriParams, "Ticket history", RtRestTicketHistoryResponseParser::parseHistoryItem);
+	}
+
+
+	@Override
+	public CompletableFuture<Boolean> commentTicket(String sessionId, long ticketId, RtTicketHistoryItem item) {
+		if(item.getType() != RtTicketHistoryItemType.COMMENT) {
+			return CompletableFuture.failedFuture(new RtException("Unsupported history item type for comment action: " + item.getType()));
+		}
+
+		return writeTicketHistoryItem(sessionId, ticketId, item);
+	}
+
+
+	@Override
+	public CompletableFuture<Boolean> answerTicket(String sessionId, long ticketId, RtTicketHistoryItem item) {
+		if(item.getType() != RtTicketHistoryItemType.CORRESPOND) {
+			return CompletableFuture.failedFuture(new RtException("Unsupported history item type for answer action: " + item.getType()));
+		}
+
+		return writeTicketHistoryItem(sessionId, ticketId, item);
+	}
+
+
+	@Override
+	public CompletableFuture<RtQueue> getQueue(String sessionId, long id) {
+		return getQueue(sessionId, "queue/" + id);
+	}
+
+
+	@Override
+	public CompletableFuture<RtQueue> getQueueByName(String sessionId, String name) {
+		return getQueue(sessionId, "queue/" + name);
+	}
+
+
+	@Override
+	public CompletableFuture<Map<Long, String>> listQueues(String sessionId) {
+		return call(RtRestEndpoint.QUEUE_LIST, sessionId, URI_RT_REST_QUEUE_LIST, Collections.emptyMap(), null, response -> {
+			checkStatus(response, "Search queues");
+			return RtRestQueueResponseParser.parseQueueList(response.getBodyCursor());
+		});
+	}
+
+
+	@Override
+	public CompletableFuture<Long> createQueue(String sessionId, RtQueue queue) {
+		String content = RtRestQueueResponseParser.queueToString(queue, true);
+
+		return call(RtRestEndpoint.QUEUE_CREATE, sessionId, URI_RT_REST_QUEUE_CREATE, Collections.emptyMap(), contentParams(content), response -> {
+			checkStatus(response, "Create queue");
+			return RtRestQueueResponseParser.parseQueueCreated(response.getBodyCursor());
+		});
+	}
+
+
+	@Override
+	public CompletableFuture<RtUser> getUser(String sessionId, String uname) {
+		return getUserById(sessionId, "user/" + uname);
+	}
+
+
+	@Override
+	public CompletableFuture<RtUser> getUser(String sessionId, long uid) {
+		return getUserById(sessionId, "user/" + uid);
+	}
+
+
+	@Override
+	public Flow.Publisher<RtUser> searchUsers(String sessionId, String query, String orderby) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("query", query);
+		uriParams.put("order-by", orderby);
+
+		return publish(RtRestEndpoint.USER_SEARCH, sessionId, URI_RT_REST_USER_SEARCH, uriParams, "Search users", RtRestUserResponseParser::parseUser);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * The fields sent to RT depend on the edit mode configured for this connector. In the modes CHANGED_FIELDS and
+	 * COMPARE_AND_SET no request is sent if no field was changed, and the fields of the user are marked as
+	 * unchanged after a successful edit.
+	 */
+	@Override
+	public CompletableFuture<Boolean> editUser(String sessionId, RtUser user) {
+		String userId = "user/" + user.getId();
+
+		if(this.editMode == RtRestEditMode.FETCH_AND_COMPARE) {
+			return getUserById(sessionId, userId).thenCompose(oldUser -> {
+				try {
+					return sendUserEdit(sessionId, userId, RtRestUserResponseParser.userToString(user, false, oldUser));
+				}
+				catch(RtException ex) {
+					throw new CompletionException(ex);
+				}
+			});
+		}
+
+		String content = RtRestUserResponseParser.changedFieldsToString(user);
+		if(content.isEmpty()) {
+			return CompletableFuture.completedFuture(Boolean.TRUE);
+		}
+
+		return sendUserEdit(sessionId, userId, content).thenApply(edited -> {
+			if(edited) {
+				user.markUnchanged();
+			}
+
+			return edited;
+		});
+	}
+
+
+	/**
+	 * Get the charset of a response body. This is the charset of the Content-Type header or ISO-8859-1 if the
+	 * header does not define one, like RtRestClient does.
+	 *
+	 * @param headers Headers of the response
+	 * @return Charset of the body
+	 */
+	static Charset getCharset(HttpHeaders headers) {
+		Optional<String> contentTypeHeader = headers.firstValue("Content-Type");
+
+		if(contentTypeHeader.isPresent()) {
+			try {
+				MediaType contentType = MediaType.parseMediaType(contentTypeHeader.get());
+
+				if(contentType.getCharSet() != null) {
+					return contentType.getCharSet();
+				}
+			}
+			catch(IllegalArgumentException ex) {
+				LOG.warn("Invalid Content-Type header ignored: " + contentTypeHeader.get());
+			}
+		}
+
+		return StringHttpMessageConverter.DEFAULT_CHARSET;
+	}
+
+
+	private CompletableFuture<RtTicket> getTicket(String sessionId, String ticketId) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", ticketId);
+
+		return call(RtRestEndpoint.TICKET_PROPERTIES, sessionId, URI_RT_REST_TICKET_PROPERTIES, uriParams, null, response -> {
+			checkStatus(response, "Ticket properties");
+			return RtRestTicketResponseParser.parseTicket(response.getBodyCursor());
+		});
+	}
+
+
+	private CompletableFuture<Boolean> sendTicketEdit(String sessionId, String ticketId, String content) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", ticketId);
+
+		return call(RtRestEndpoint.TICKET_EDIT, sessionId, URI_RT_REST_TICKET_EDIT, uriParams, contentParams(content), response -> {
+			checkEditStatus(response, "Edit ticket");
+			return RtRestTicketResponseParser.parseTicketEdited(response.getBodyCursor());
+		});
+	}
+
+
+	/**
+	 * Check that a ticket was not changed in RT since it was loaded by searching for the ticket with a newer
+	 * LastUpdated value, like RtRestConnector does for compare-and-set edits.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticket Ticket loaded from RT
+	 * @return Future that fails with a RtConflictException if the ticket was changed in RT
+	 */
+	private CompletableFuture<Void> checkTicketUnchanged(String sessionId, RtTicket ticket) {
+		if(ticket.getLastUpdated() == null) {
+			return CompletableFuture.failedFuture(new RtException("Ticket " + ticket.getId() + " has no LastUpdated value, it must be loaded from RT for compare-and-set edits"));
+		}
+
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("query", "id = " + ticket.getId() + " AND LastUpdated > '" + RtRestDateCodec.HISTORY_DATE.format(ticket.getLastUpdated()) + "'");
+		uriParams.put("order-by", "+id");
+
+		return call(RtRestEndpoint.TICKET_ID_SEARCH, sessionId, URI_RT_REST_TICKET_ID_SEARCH, uriParams, null, response -> {
+			checkStatus(response, "Search tickets");
+
+			if(response.getBodyCursor().remainingContains("ticket/")) {
+				throw new RtConflictException("Ticket " + ticket.getId() + " was changed in RT after it was loaded");
+			}
+
+			return null;
+		});
+	}
+
+
+	/**
+	 * Read the LastUpdated value of an edited ticket from RT, like RtRestConnector does after compare-and-set edits.
+	 * A failure is only logged, the ticket then keeps its old value.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId ID of the ticket, must be provided as 'ticket/[id]'
+	 * @param ticket Edited ticket
+	 * @return Future that completes when the ticket was updated
+	 */
+	private CompletableFuture<Void> refreshLastUpdated(String sessionId, String ticketId, RtTicket ticket) {
+		EnumSet<RtTicketField> fields = EnumSet.of(RtTicketField.LAST_UPDATED);
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", ticketId);
+		uriParams.put("fields", RtRestClient.fieldsParameter(fields));
+
+		CompletableFuture<RtTicket> current = call(RtRestEndpoint.TICKET_PROPERTIES, sessionId, URI_RT_REST_TICKET_PROPERTIES_FIELDS, uriParams, null, response -> {
+			checkStatus(response, "Ticket properties");
+			return RtRestTicketResponseParser.parseTicket(response.getBodyCursor(), fields);
+		});
+
+		return current.handle((loaded, ex) -> {
+			if(ex != null) {
+				LOG.warn("Could not read LastUpdated of edited ticket " + ticket.getId() + ": " + ex.getMessage());
+			}
+			else {
+				ticket.setLastUpdated(loaded.getLastUpdated());
+			}
+
+			return null;
+		});
+	}
+
+
+	private CompletableFuture<Boolean> writeTicketHistoryItem(String sessionId, long ticketId, RtTicketHistoryItem item) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", "ticket/" + ticketId);
+
+		String content = RtRestTicketHistoryResponseParser.historyItemToString(item, null, null);
+
+		return call(RtRestEndpoint.TICKET_COMMENT, sessionId, URI_RT_REST_TICKET_COMMENT, uriParams, contentParams(content), response -> {
+			checkStatus(response, "Edit ticket");
+			return RtRestTicketHistoryResponseParser.parseTicketCommented(response.getBodyCursor());
+		});
+	}
+
+
+	private CompletableFuture<RtQueue> getQueue(String sessionId, String queueId) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("queue-id", queueId);
+
+		return call(RtRestEndpoint.QUEUE_PROPERTIES, sessionId, URI_RT_REST_QUEUE_PROPERTIES, uriParams, null, response -> {
+			checkStatus(response, "Queue properties");
+			return RtRestQueueResponseParser.parseQueue(response.getBodyCursor());
+		});
+	}
+
+
+	private CompletableFuture<RtUser> getUserById(String sessionId, String userId) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("user-id", userId);
+
+		return call(RtRestEndpoint.USER_PROPERTIES, sessionId, URI_RT_REST_USER_PROPERTIES, uriParams, null, response -> {
+			checkStatus(response, "User properties");
+			return RtRestUserResponseParser.parseUser(response.getBodyCursor());
+		});
+	}
+
+
+	private CompletableFuture<Boolean> sendUserEdit(String sessionId, String userId, String content) {
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("user-id", userId);
+
+		return call(RtRestEndpoint.USER_EDIT, sessionId, URI_RT_REST_USER_EDIT, uriParams, contentParams(content), response -> {
+			checkEditStatus(response, "Edit user");
+			return RtRestUserResponseParser.parseUserEdited(response.getBodyCursor());
+		});
+	}
+
+
+	/**
+	 * Send a request and parse the response when it was received completely.
+	 *
+	 * @param endpoint Endpoint of the request, selects the read timeout
+	 * @param sessionId RT session ID to use for the request, may be null if credentials are provided as POST data
+	 * @param uri URI template of the REST API endpoint, relative to the base URI
+	 * @param uriParams Map of URI variables
+	 * @param postParams Map of POST data, may be null
+	 * @param parser Parser for the response
+	 * @return Future for the parsed response
+	 */
+	private <T> CompletableFuture<T> call(RtRestEndpoint endpoint, String sessionId, String uri, Map<String, String> uriParams, MultiValueMap<String, String> postParams, ResponseParser<T> parser) {
+		HttpRequest request = createRequest(endpoint, sessionId, uri, uriParams, postParams);
+
+		return this.httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).handle((response, ex) -> {
+			if(ex != null) {
+				throw failure(uri, ex);
+			}
+
+			try {
+				return parser.parse(readResponse(sessionId, response));
+			}
+			catch(RtException rtEx) {
+				throw new CompletionException(rtEx);
+			}
+		});
+	}
+
+
+	/**
+	 * Create a publisher for a list request. The request is sent for every subscription.
+	 *
+	 * @param endpoint Endpoint of the request, selects the read timeout
+	 * @param sessionId RT session ID to use for the request
+	 * @param uri URI template of the REST API endpoint, relative to the base URI
+	 * @param uriParams Map of URI variables
+	 * @param requestName Name of the request used in error messages
+	 * @param parser Parser for a single object of the list
+	 * @return Publisher of the objects of the list
+	 */
+	private <T> Flow.Publisher<T> publish(RtRestEndpoint endpoint, String sessionId, String uri, Map<String, String> uriParams, String requestName, RtRestEntityPublisher.EntityParser<T> parser) {
+		HttpRequest request = createRequest(endpoint, sessionId, uri, uriParams, null);
+
+		return new RtRestEntityPublisher<>(this.httpClient, request, uri, requestName, parser);
+	}
+
+
+	/**
+	 * Create the HTTP request for a call to the REST API. All requests are sent as form POST requests.
+	 *
+	 * @param endpoint Endpoint of the request, selects the read timeout
+	 * @param sessionId RT session ID to use for the request, may be null
+	 * @param uri URI template of the REST API endpoint, relative to the base URI
+	 * @param uriParams Map of URI variables
+	 * @param postParams Map of POST data, may be null
+	 * @return Request to send
+	 */
+	private HttpRequest createRequest(RtRestEndpoint endpoint, String sessionId, String uri, Map<String, String> uriParams, MultiValueMap<String, String> postParams) {
+		URI expandedUri = new UriTemplate(this.baseUri + uri).expand(uriParams);
+		byte[] body = RtRestClient.encodeForm(postParams != null ? postParams : new LinkedMultiValueMap<String, String>());
+
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(expandedUri)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+				.header("Content-Type", RtRestTransportRequest.CONTENT_TYPE)
+				.header("Accept-Language", HTTP_HEADERS_ACCEPT_LANGUAGE);
+
+		if(sessionId != null) {
+			requestBuilder.header("Cookie", sessionId);
+		}
+
+		int readTimeoutMillis = this.timeoutPolicy.getReadTimeoutMillis(endpoint.getOperationClass());
+
+		if(readTimeoutMillis > 0) {
+			// The JDK client applies the timeout until the response headers were received
+			requestBuilder.timeout(Duration.ofMillis(readTimeoutMillis));
+		}
+
+		return requestBuilder.build();
+	}
+
+
+	/**
+	 * Check the HTTP status, read the session cookie and parse the status line of a response.
+	 *
+	 * @param sessionId Session ID sent with the request, may be null
+	 * @param response Received response
+	 * @return Response object with session ID and body text
+	 * @throws RtException if RT rejected the session or did not answer with HTTP status 200
+	 */
+	private RtRestResponse readResponse(String sessionId, HttpResponse<byte[]> response) throws RtException {
+		RtRestClient.checkHttpStatus(response.statusCode(), "");
+
+		if(response.statusCode() != 200) {
+			throw new RtException("REST API call failed with HTTP status code: " + response.statusCode());
+		}
+
+		// Only the name=value part of the cookie is sent back to RT
+		String rtSessionId = response.headers().firstValue("Set-Cookie").map(cookie -> {
+			int attributesIndex = cookie.indexOf(';');
+			return attributesIndex >= 0 ? cookie.substring(0, attributesIndex) : cookie;
+		}).orElse(null);
+
+		String bodyText = new String(response.body(), getCharset(response.headers()));
+
+		RtRestLineCursor cursor = new RtRestLineCursor(bodyText);
+		RtRestStatus rtStatus = RtRestResponseParser.parseStatusLine(cursor.nextLine());
+
+		if(LOG.isDebugEnabled() && rtStatus != RtRestStatus.STATUS_200) {
+			LOG.debug("Received error response from RT REST:");
+			LOG.debug(bodyText);
+		}
+
+		if(sessionId != null && rtStatus == RtRestStatus.STATUS_401) {
+			throw new RtAuthenticationException("Session was rejected by RT, login required");
+		}
+
+		return new RtRestResponse(rtStatus, rtSessionId, bodyText, cursor.position());
+	}
+
+
+	private static MultiValueMap<String, String> contentParams(String content) {
+		LinkedMultiValueMap<String, String> postParams = new LinkedMultiValueMap<>();
+		postParams.add("content", content);
+
+		return postParams;
+	}
+
+
+	private static void checkStatus(RtRestResponse response, String requestName) throws RtException {
+		if(response.getRtStatus() != RtRestStatus.STATUS_200) {
+			throw new RtException(requestName + " request failed with RT REST status: " + response.getRtStatus());
+		}
+	}
+
+
+	private static void checkEditStatus(RtRestResponse response, String requestName) throws RtException {
+		if(response.getRtStatus() != RtRestStatus.STATUS_200 && response.getRtStatus() != RtRestStatus.STATUS_409) {
+			throw new RtException(requestName + " request failed with RT REST status: " + response.getRtStatus());
+		}
+	}
+
+
+	/**
+	 * Unwrap the failure of a request and replace I/O errors by the exception RtRestConnector raises for them.
+	 *
+	 * @param uri URI template of the request
+	 * @param ex Failure of the request
+	 * @return Exception to complete the future with
+	 */
+	private static CompletionException failure(String uri, Throwable ex) {
+		Throwable cause = ex;
+
+		if(cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+
+		if(cause instanceof IOException) {
+			cause = RtRestClient.ioError(uri, (IOException) cause);
+		}
+
+		return new CompletionException(cause);
+	}
+
+
+	/**
+	 * Parser for a complete response.
+	 */
+	private interface ResponseParser<T> {
+		T parse(RtRestResponse response) throws RtException;
+	}
+
+
+	/**
+	 * Builder for RtRestReactiveConnector objects.
+	 */
+	public static class Builder {
+		private final String rtBaseUri;
+		private HttpClient httpClient = null;
+		private RtRestTimeoutPolicy timeoutPolicy = RtRestTimeoutPolicy.DEFAULT;
+		private RtRestEditMode editMode = RtRestEditMode.FETCH_AND_COMPARE;
+
+
+		private Builder(String rtBaseUri) {
+			if(rtBaseUri == null) {
+				throw new IllegalArgumentException("RT base URI cannot be null");
+			}
+
+			this.rtBaseUri = rtBaseUri;
+		}
+
+
+		/**
+		 * Send the requests through the provided client, i.e. to use HTTP/2 or a custom SSLContext. The connect
+		 * timeout of the timeout policy is not applied to this client.
+		 *
+		 * @param httpClient Client used to send the requests
+		 * @return This builder
+		 */
+		public Builder httpClient(HttpClient httpClient) {
+			if(httpClient == null) {
+				throw new IllegalArgumentException("HTTP client cannot be null");
+			}
+
+			this.httpClient = httpClient;
+			return this;
+		}
+
+
+		/**
+		 * Set the timeouts of the requests. The read timeout limits the wait for the response headers, the
+		 * deadline is not applied.
+		 *
+		 * @param timeoutPolicy Timeouts to use, RtRestTimeoutPolicy.NONE to wait forever
+		 * @return This builder
+		 */
+		public Builder timeoutPolicy(RtRestTimeoutPolicy timeoutPolicy) {
+			if(timeoutPolicy == null) {
+				throw new IllegalArgumentException("Timeout policy cannot be null, use RtRestTimeoutPolicy.NONE instead");
+			}
+
+			this.timeoutPolicy = timeoutPolicy;
+			return this;
+		}
+
+
+		/**
+		 * Set the way edited tickets and users are sent to RT, see RtRestEditMode. Default is FETCH_AND_COMPARE.
+		 *
+		 * @param editMode Edit mode to use
+		 * @return This builder
+		 */
+		public Builder editMode(RtRestEditMode editMode) {
+			if(editMode == null) {
+				throw new IllegalArgumentException("Edit mode cannot be null");
+			}
+
+			this.editMode = editMode;
+			return this;
+		}
+
+
+		/**
+		 * Create the connector.
+		 *
+		 * @return A new connector
+		 */
+		public RtRestReactiveConnector build() {
+			return new RtRestReactiveConnector(this);
+		}
+	}
+}
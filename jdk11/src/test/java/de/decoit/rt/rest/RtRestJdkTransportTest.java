@@ -0,0 +1,131 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtDeadlineExceededException;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtTicket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.springframework.web.client.HttpServerErrorException;
+
+
+/**
+ * This test file contains test cases for the RtRestJdkTransport class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestJdkTransportTest extends TestCase {
+	private static final String SUBJECT = "Transport über & = ticket";
+
+	private FakeRtServer server;
+
+
+	public RtRestJdkTransportTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		for(int i = 0; i < 5; i++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setSubject("Search ticket " + i);
+			server.addTicket(ticket);
+		}
+
+		server.start();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		server.close();
+	}
+
+
+	public void testRequests() throws Exception {
+		System.out.println("Testing RtRestJdkTransport.post()");
+
+		assertTrue("JDK transport not available", RtRestConnector.isJdkTransportAvailable());
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).jdkTransport().build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			assertNotNull("No session cookie read", sessionId);
+
+			RtTicket ticket = new RtTicket();
+			ticket.setQueue("General");
+			ticket.setSubject(SUBJECT);
+			long id = connector.createTicket(sessionId, ticket);
+
+			assertEquals("Form data not encoded correctly", SUBJECT, connector.getTicket(sessionId, id).getSubject());
+
+			final List<RtTicket> found = new ArrayList<>();
+
+			connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'", "+id", new RtTicketHandler() {
+				@Override
+				public boolean handleTicket(RtTicket ticket) {
+					found.add(ticket);
+					return found.size() < 3;
+				}
+			});
+
+			assertEquals("Streaming search not stopped by the handler", 3, found.size());
+			assertEquals("Request after aborted search failed", 5, connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'").size());
+
+			server.failNextRequests(1, 503);
+
+			try {
+				connector.getTicket(sessionId, id);
+				fail("HTTP 503 not raised");
+			}
+			catch(HttpServerErrorException ex) {
+				assertEquals("Wrong status", 503, ex.getStatusCode().value());
+			}
+		}
+	}
+
+
+	public void testDeadline() throws Exception {
+		System.out.println("Testing deadline of RtRestJdkTransport");
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).jdkTransport().timeoutPolicy(RtRestTimeoutPolicy.NONE).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			server.setLatency(2L, TimeUnit.SECONDS);
+
+			long start = System.nanoTime();
+
+			try {
+				connector.withDeadline(200L, TimeUnit.MILLISECONDS).getTicket(sessionId, 1L);
+				fail("Deadline not applied");
+			}
+			catch(RtDeadlineExceededException ex) {
+				// expected
+			}
+
+			assertTrue("Request not aborted at the deadline", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500L));
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtConflictException;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtTicketHistoryItem.RtTicketHistoryItemType;
+import de.decoit.rt.model.RtUser;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.springframework.web.client.HttpServerErrorException;
+
+
+/**
+ * This test file contains test cases for the RtRestReactiveConnector class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestReactiveConnectorTest extends TestCase {
+	private static final int TICKET_COUNT = 300;
+
+	private FakeRtServer server;
+	private RtRestReactiveConnector connector;
+
+
+	public RtRestReactiveConnectorTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		for(int i = 0; i < TICKET_COUNT; i++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setSubject("Search ticket " + i);
+			server.addTicket(ticket);
+		}
+
+		server.start();
+
+		connector = new RtRestReactiveConnector(server.getBaseUri());
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		connector.close();
+		server.close();
+	}
+
+
+	public void testFutures() throws Exception {
+		System.out.println("Testing RtRestReactiveConnector futures");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD).get();
+		assertNotNull("No session cookie read", sessionId);
+
+		RtTicket ticket = new RtTicket();
+		ticket.setQueue("General");
+		ticket.setSubject("Reactive über & = ticket");
+		long id = connector.createTicket(sessionId, ticket).get();
+
+		RtTicket loaded = connector.getTicket(sessionId, id).get();
+		assertEquals("Wrong subject", "Reactive über & = ticket", loaded.getSubject());
+
+		loaded.setSubject("Edited");
+		assertTrue("Edit failed", connector.editTicket(sessionId, loaded).get());
+		assertEquals("Edit not sent", "Edited", connector.getTicket(sessionId, id).get().getSubject());
+
+		RtTicketHistoryItem comment = new RtTicketHistoryItem();
+		comment.setType(RtTicketHistoryItemType.COMMENT);
+		comment.setContent("Reactive comment");
+		assertTrue("Comment failed", connector.commentTicket(sessionId, id, comment).get());
+
+		RtQueue queue = connector.getQueueByName(sessionId, "General").get();
+		assertTrue("Queue not listed", connector.listQueues(sessionId).get().containsKey(queue.getId()));
+
+		RtUser root = connector.getUser(sessionId, FakeRtServer.ROOT_USER).get();
+		assertEquals("Wrong user", FakeRtServer.ROOT_USER, root.getName());
+
+		connector.logout(sessionId).get();
+
+		try {
+			connector.getTicket(sessionId, id).get();
+			fail("Logged out session accepted");
+		}
+		catch(ExecutionException ex) {
+			assertTrue("Wrong exception: " + ex.getCause(), ex.getCause() instanceof RtAuthenticationException);
+		}
+	}
+
+
+	public void testCompareAndSet() throws Exception {
+		System.out.println("Testing RtRestReactiveConnector compare-and-set edits");
+
+		RtTicket old = new RtTicket();
+		old.setQueue("General");
+		old.setSubject("Old ticket");
+		old.setLastUpdated(RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:23:44 2014"));
+		long id = server.addTicket(old);
+
+		try(RtRestReactiveConnector compareAndSet = RtRestReactiveConnector.builder(server.getBaseUri()).editMode(RtRestEditMode.COMPARE_AND_SET).build()) {
+			String sessionId = compareAndSet.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD).get();
+			RtTicket ticket = compareAndSet.getTicket(sessionId, id).get();
+
+			// The second edit must not conflict with the first one
+			ticket.setStatus(RtTicketStatus.OPEN);
+			assertTrue("First edit failed", compareAndSet.editTicket(sessionId, ticket).get());
+			ticket.setSubject("Second edit");
+			assertTrue("Second edit failed", compareAndSet.editTicket(sessionId, ticket).get());
+			assertEquals("Subject mismatch", "Second edit", server.getTicket(id).getSubject());
+
+			// A stale copy loaded before the edits is rejected
+			RtTicket stale = new RtTicket(ticket);
+			stale.setLastUpdated(old.getLastUpdated());
+			stale.setSubject("Stale subject");
+
+			try {
+				compareAndSet.editTicket(sessionId, stale).get();
+				fail("Concurrent edit not detected");
+			}
+			catch(ExecutionException ex) {
+				assertTrue("Wrong exception: " + ex.getCause(), ex.getCause() instanceof RtConflictException);
+			}
+		}
+	}
+
+
+	public void testPublishers() throws Exception {
+		System.out.println("Testing RtRestReactiveConnector publishers");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD).get();
+
+		CollectingSubscriber<RtTicket> tickets = new CollectingSubscriber<>(Long.MAX_VALUE);
+		connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'", "+id").subscribe(tickets);
+		tickets.await();
+
+		assertNull("Search failed", tickets.error);
+		assertEquals("Wrong number of tickets", TICKET_COUNT, tickets.items.size());
+		assertEquals("Wrong order", "Search ticket 0", tickets.items.get(0).getSubject());
+		assertEquals("Wrong order", "Search ticket " + (TICKET_COUNT - 1), tickets.items.get(TICKET_COUNT - 1).getSubject());
+
+		CollectingSubscriber<RtTicket> empty = new CollectingSubscriber<>(1L);
+		connector.searchTickets(sessionId, "Subject = 'Missing'", "+id").subscribe(empty);
+		empty.await();
+
+		assertNull("Empty search failed", empty.error);
+		assertTrue("Empty search returned tickets", empty.items.isEmpty());
+
+		CollectingSubscriber<RtTicketHistoryItem> history = new CollectingSubscriber<>(1L);
+		connector.getTicketHistory(sessionId, 1L).subscribe(history);
+		history.await();
+
+		assertNull("History failed", history.error);
+		assertEquals("Wrong history", RtTicketHistoryItemType.CREATE, history.items.get(0).getType());
+
+		CollectingSubscriber<RtUser> users = new CollectingSubscriber<>(1L);
+		connector.searchUsers(sessionId, "", "+id").subscribe(users);
+		users.await();
+
+		assertNull("User search failed", users.error);
+		assertEquals("Wrong user", FakeRtServer.ROOT_USER, users.items.get(0).getName());
+	}
+
+
+	public void testBackpressure() throws Exception {
+		System.out.println("Testing backpressure of RtRestReactiveConnector publishers");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD).get();
+
+		// Request 5 tickets and nothing more, the publisher must not emit more than requested
+		CollectingSubscriber<RtTicket> tickets = new CollectingSubscriber<>(0L);
+		connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'", "+id").subscribe(tickets);
+		tickets.subscription.request(5L);
+
+		long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while(tickets.items.size() < 5 && System.nanoTime() < timeout) {
+			Thread.sleep(10L);
+		}
+
+		Thread.sleep(200L);
+		assertEquals("Demand not respected", 5, tickets.items.size());
+
+		tickets.subscription.cancel();
+		Thread.sleep(100L);
+
+		assertEquals("Items emitted after cancel", 5, tickets.items.size());
+		assertEquals("Subscription terminated after cancel", 1L, tickets.done.getCount());
+		assertEquals("Request after cancelled search failed", 1, connector.getTicket(sessionId, 1L).thenApply(ticket -> 1).get().intValue());
+	}
+
+
+	public void testErrors() throws Exception {
+		System.out.println("Testing errors of RtRestReactiveConnector");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD).get();
+
+		server.failNextRequests(1, 503);
+
+		try {
+			connector.getTicket(sessionId, 1L).get();
+			fail("HTTP 503 not raised");
+		}
+		catch(ExecutionException ex) {
+			assertTrue("Wrong exception: " + ex.getCause(), ex.getCause() instanceof HttpServerErrorException);
+		}
+
+		server.failNextRequests(1, 503);
+
+		CollectingSubscriber<RtTicket> failed = new CollectingSubscriber<>(1L);
+		connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'", "+id").subscribe(failed);
+		failed.await();
+
+		assertTrue("Wrong exception: " + failed.error, failed.error instanceof HttpServerErrorException);
+
+		CollectingSubscriber<RtTicket> rejected = new CollectingSubscriber<>(1L);
+		connector.searchTickets("RT_SID_fake=invalid", "Subject LIKE 'Search ticket'", "+id").subscribe(rejected);
+		rejected.await();
+
+		assertTrue("Wrong exception: " + rejected.error, rejected.error instanceof RtAuthenticationException);
+	}
+
+
+	/**
+	 * Subscriber collecting the items. It requests the initial demand when subscribed and another item for every
+	 * received item if the initial demand is 1.
+	 */
+	private static class CollectingSubscriber<T> implements Flow.Subscriber<T> {
+		private final long initialDemand;
+		private final List<T> items = new CopyOnWriteArrayList<>();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable error;
+
+
+		CollectingSubscriber(long initialDemand) {
+			this.initialDemand = initialDemand;
+		}
+
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+
+			if(this.initialDemand > 0L) {
+				subscription.request(this.initialDemand);
+			}
+		}
+
+
+		@Override
+		public void onNext(T item) {
+			this.items.add(item);
+
+			if(this.initialDemand == 1L) {
+				this.subscription.request(1L);
+			}
+		}
+
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.error = throwable;
+			this.done.countDown();
+		}
+
+
+		@Override
+		public void onComplete() {
+			this.done.countDown();
+		}
+
+
+		void await() throws InterruptedException {
+			assertTrue("Publisher did not terminate", this.done.await(10L, TimeUnit.SECONDS));
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+
+/**
+ * Exception for requests which were not sent to RT because the circuit breaker of the connector is open.
+ * The breaker opens when too many requests failed or were too slow, and lets trial requests through after
+ * a waiting time.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtCircuitOpenException extends RtException {
+	public RtCircuitOpenException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,30 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+
+/**
+ * Exception for edits which were not sent to RT because the object was changed in RT after it was loaded.
+ * The object should be loaded again and the changes applied to the current state.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtConflictException extends RtException {
+	public RtConflictException(String msg) {
+		super(msg);
+	}
+}
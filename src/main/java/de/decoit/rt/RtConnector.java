@@ -18,10 +18,13 @@ package de.decoit.rt;
 
 import de.decoit.rt.model.RtTicket;
 import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicketField;
 import de.decoit.rt.model.RtTicketHistoryItem;
 import de.decoit.rt.model.RtUser;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -63,6 +66,36 @@ public interface RtConnector {
 	public RtTicket getTicket(String sessionId, long id) throws RtException;
 
 
+	/**
+	 * Get the ticket with ID id from RT, loading only the selected fields.
+	 * Fields which were not selected keep their default values, RtTicket.getLoadedFields() returns the selected
+	 * fields. Edits of such a ticket send only the changed fields to RT.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param id Ticket ID
+	 * @param fields Fields to load, the ticket ID is always loaded
+	 * @return Object of the ticket containing the selected fields
+	 *
+	 * @throws RtException
+	 */
+	public RtTicket getTicket(String sessionId, long id, Set<RtTicketField> fields) throws RtException;
+
+
+	/**
+	 * Get the tickets with the provided IDs from RT.
+	 * Implementations may fetch the tickets in batches instead of requesting them one by one. The returned map
+	 * iterates in the order of the provided IDs, duplicate IDs are requested only once. IDs of tickets that do not
+	 * exist or are not visible for the session are mapped to null instead of failing the whole request.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ids Ticket IDs
+	 * @return A map with ticketId=&gt;ticket mappings in input order
+	 *
+	 * @throws RtException if a request to RT failed
+	 */
+	public Map<Long, RtTicket> getTickets(String sessionId, Collection<Long> ids) throws RtException;
+
+
 	/**
 	 * Search for tickets matching the provided query string.
 	 * The results are ordered by creation time, with newest ticket first.
@@ -89,6 +122,53 @@ public interface RtConnector {
 	public List<RtTicket> searchTickets(String sessionId, String query, String orderby) throws RtException;
 
 
+	/**
+	 * Search for tickets matching the provided query string, loading only the selected fields of the tickets.
+	 * Requesting fewer fields reduces the size of the response for large results.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @param fields Fields to load, the ticket ID is always loaded
+	 * @return A list of tickets matching the query, containing the selected fields
+	 *
+	 * @throws RtException
+	 * @see #getTicket(java.lang.String, long, java.util.Set)
+	 */
+	public List<RtTicket> searchTickets(String sessionId, String query, String orderby, Set<RtTicketField> fields) throws RtException;
+
+
+	/**
+	 * Search for tickets matching the provided query string and pass them to the handler one by one.
+	 * The tickets are handed to the handler while the result is still being read, so the complete result is never
+	 * held in memory. This makes the method suitable for very large search results.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @param handler Handler which receives the tickets, it may stop the search by returning false
+	 *
+	 * @throws RtException if the request failed or the handler raised an exception
+	 */
+	public void searchTickets(String sessionId, String query, String orderby, RtTicketHandler handler) throws RtException;
+
+
+	/**
+	 * Search for tickets matching the provided query string and return a cursor which fetches the result page by page.
+	 * The tickets are ordered by ID, ascending. Only a small number of pages is held in memory at any time, so the
+	 * caller can start processing the first tickets immediately and read result sets of any size.
+	 * The cursor must be closed if it is not read to its end.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param query    Search query, using the language generated by the RT query builder
+	 * @param pageSize Maximum number of tickets requested from RT with a single request
+	 * @return Cursor over the tickets matching the query
+	 *
+	 * @throws RtException if the search could not be started
+	 */
+	public RtTicketCursor searchTicketsPaged(String sessionId, String query, int pageSize) throws RtException;
+
+
 	/**
 	 * Create a ticket in RT from a ticket object and return the ID of the new ticket.
 	 *
@@ -124,6 +204,19 @@ public interface RtConnector {
 	public List<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId) throws RtException;
 
 
+	/**
+	 * Get a list of the history items of the ticket with the provided ID which are newer than a known item.
+	 * History item IDs are increasing, so this returns the items added since the known item was read.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId Ticket of which the history shall be returned
+	 * @param afterItemId ID of the newest known history item, 0 to get the complete history
+	 * @return A ordered list of the history items with an ID greater than afterItemId
+	 * @throws RtException if the list history failed
+	 */
+	public List<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId, long afterItemId) throws RtException;
+
+
 	/**
 	 * Add a comment to an existing ticket in RT.
 	 * The history item to write must be of type COMMENT to use this method.
@@ -0,0 +1,31 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+
+/**
+ * Exception for calls which did not finish within their deadline or were cancelled.
+ * The request to RT may have been processed anyway, a modifying call which failed with this exception may or
+ * may not have changed the data in RT.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtDeadlineExceededException extends RtException {
+	public RtDeadlineExceededException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,39 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+
+/**
+ * Callback which performs requests to RT using a session provided by a session pool.
+ *
+ * @param <T> Type of the result of the callback
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface RtSessionCallback<T> {
+	/**
+	 * Perform the requests using the provided session.
+	 * If RT rejects the session, the callback may be called a second time with a new session. Callbacks which
+	 * modify data in RT should therefore only send one modifying request.
+	 *
+	 * @param connector Connector used to send the requests
+	 * @param sessionId Session ID to use for all requests
+	 * @return Result of the callback
+	 * @throws RtException if a request failed
+	 */
+	public T doInSession(RtConnector connector, String sessionId) throws RtException;
+}
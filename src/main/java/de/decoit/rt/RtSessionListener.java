@@ -0,0 +1,34 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+
+/**
+ * Listener which is informed when RT replaces the session cookie of a session.
+ * RT may send a new session cookie with any response, following requests of that session must use the new one.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface RtSessionListener {
+	/**
+	 * Called by the thread which received the response containing the new session cookie.
+	 *
+	 * @param oldSessionId Session ID which was sent with the request
+	 * @param newSessionId Session ID received from RT
+	 */
+	public void sessionRotated(String oldSessionId, String newSessionId);
+}
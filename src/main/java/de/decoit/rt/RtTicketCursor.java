@@ -0,0 +1,48 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+import de.decoit.rt.model.RtTicket;
+import java.io.Closeable;
+
+
+/**
+ * Cursor over the tickets of a search result which are fetched from RT while the cursor is read.
+ * The tickets can be read using nextTicket() or by iterating over the cursor. A cursor can only be read once,
+ * iterator() always returns an iterator continuing at the current position of the cursor.<br>
+ * A cursor which is not read to its end must be closed to stop fetching further tickets. Since the iterator
+ * cannot throw a RtException, it throws a RtUncheckedException wrapping the original exception instead.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface RtTicketCursor extends Iterable<RtTicket>, Closeable {
+	/**
+	 * Read the next ticket from the search result.
+	 * This blocks until the ticket was received from RT.
+	 *
+	 * @return The next ticket, null if the end of the search result was reached or the cursor was closed
+	 * @throws RtException if a request to the API failed
+	 */
+	public RtTicket nextTicket() throws RtException;
+
+
+	/**
+	 * Close the cursor and stop fetching further tickets.
+	 */
+	@Override
+	public void close();
+}
@@ -0,0 +1,37 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt;
+
+import de.decoit.rt.model.RtTicket;
+
+
+/**
+ * Callback interface to receive tickets one by one while a search result is still being read.
+ * This allows to process large search results without holding all tickets in memory.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface RtTicketHandler {
+	/**
+	 * Called for every ticket of the search result, in the order they are returned by RT.
+	 *
+	 * @param ticket The parsed ticket
+	 * @return true to continue reading the result, false to stop after this ticket
+	 * @throws RtException to abort reading the result, the exception is passed on to the caller of the search
+	 */
+	public boolean handleTicket(RtTicket ticket) throws RtException;
+}
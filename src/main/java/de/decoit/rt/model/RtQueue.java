@@ -39,6 +39,30 @@ public class RtQueue {
 	private Map<String, String> customFields = new HashMap<>();
 
 
+	public RtQueue() {
+	}
+
+
+	/**
+	 * Create a copy of another queue.
+	 * The custom fields are copied, so changing the copy does not affect the original queue.
+	 *
+	 * @param other Queue to copy
+	 */
+	public RtQueue(RtQueue other) {
+		this.id = other.id;
+		this.name = other.name;
+		this.description = other.description;
+		this.correspondAddress = other.correspondAddress;
+		this.commentAddress = other.commentAddress;
+		this.initialPriority = other.initialPriority;
+		this.finalPriority = other.finalPriority;
+		this.defaultDueIn = other.defaultDueIn;
+		this.disabled = other.disabled;
+		this.customFields = (other.customFields != null) ? new HashMap<>(other.customFields) : null;
+	}
+
+
 	public long getId() {
 		return id;
 	}
@@ -17,10 +17,15 @@
 package de.decoit.rt.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -30,6 +35,8 @@ import java.util.Map;
  * @author Thomas Rix (rix@decoit.de)
  */
 public class RtTicket {
+	private static final int FIELD_COUNT = RtTicketField.values().length;
+
 	private long id;
 	private String queue;
 	private String owner = "";
@@ -54,6 +61,57 @@ public class RtTicket {
 	private int timeLeft = 0;
 	private String text;
 	private Map<String, String> customFields = new HashMap<>();
+	private EnumSet<RtTicketField> changedFields = EnumSet.noneOf(RtTicketField.class);
+	private List<String> loadedRequestors = Collections.emptyList();
+	private List<String> loadedCc = Collections.emptyList();
+	private List<String> loadedAdminCc = Collections.emptyList();
+	private Map<String, String> loadedCustomFields = Collections.emptyMap();
+	private EnumSet<RtTicketField> loadedFields = EnumSet.allOf(RtTicketField.class);
+
+
+	public RtTicket() {
+	}
+
+
+	/**
+	 * Create a deep copy of another ticket.
+	 * Lists, custom fields and dates are copied, so changing the copy does not affect the original ticket.
+	 * The copy has the same changed and loaded fields as the original ticket.
+	 *
+	 * @param other Ticket to copy
+	 */
+	public RtTicket(RtTicket other) {
+		this.id = other.id;
+		this.queue = other.queue;
+		this.owner = other.owner;
+		this.creator = other.creator;
+		this.subject = other.subject;
+		this.status = other.status;
+		this.priority = other.priority;
+		this.initialPriority = other.initialPriority;
+		this.finalPriority = other.finalPriority;
+		this.requestors = copyList(other.requestors);
+		this.cc = copyList(other.cc);
+		this.adminCc = copyList(other.adminCc);
+		this.created = copyDate(other.created);
+		this.starts = copyDate(other.starts);
+		this.started = copyDate(other.started);
+		this.due = copyDate(other.due);
+		this.resolved = copyDate(other.resolved);
+		this.told = copyDate(other.told);
+		this.lastUpdated = copyDate(other.lastUpdated);
+		this.timeEstimated = other.timeEstimated;
+		this.timeWorked = other.timeWorked;
+		this.timeLeft = other.timeLeft;
+		this.text = other.text;
+		this.customFields = (other.customFields != null) ? new HashMap<>(other.customFields) : null;
+		this.changedFields = EnumSet.copyOf(other.changedFields);
+		this.loadedRequestors = other.loadedRequestors;
+		this.loadedCc = other.loadedCc;
+		this.loadedAdminCc = other.loadedAdminCc;
+		this.loadedCustomFields = other.loadedCustomFields;
+		this.loadedFields = EnumSet.copyOf(other.loadedFields);
+	}
 
 
 	public long getId() {
@@ -83,6 +141,7 @@ public class RtTicket {
 
 	public void setQueue(String queue) {
 		this.queue = queue;
+		this.changedFields.add(RtTicketField.QUEUE);
 	}
 
 
@@ -93,6 +152,7 @@ public class RtTicket {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		this.changedFields.add(RtTicketField.OWNER);
 	}
 
 
@@ -113,6 +173,7 @@ public class RtTicket {
 
 	public void setSubject(String subject) {
 		this.subject = subject;
+		this.changedFields.add(RtTicketField.SUBJECT);
 	}
 
 
@@ -123,6 +184,7 @@ public class RtTicket {
 
 	public void setStatus(RtTicketStatus status) {
 		this.status = status;
+		this.changedFields.add(RtTicketField.STATUS);
 	}
 
 
@@ -133,6 +195,7 @@ public class RtTicket {
 
 	public void setPriority(int priority) {
 		this.priority = priority;
+		this.changedFields.add(RtTicketField.PRIORITY);
 	}
 
 
@@ -143,6 +206,7 @@ public class RtTicket {
 
 	public void setInitialPriority(int initialPriority) {
 		this.initialPriority = initialPriority;
+		this.changedFields.add(RtTicketField.INITIAL_PRIORITY);
 	}
 
 
@@ -153,6 +217,7 @@ public class RtTicket {
 
 	public void setFinalPriority(int finalPriority) {
 		this.finalPriority = finalPriority;
+		this.changedFields.add(RtTicketField.FINAL_PRIORITY);
 	}
 
 
@@ -203,6 +268,7 @@ public class RtTicket {
 
 	public void setStarts(Date starts) {
 		this.starts = starts;
+		this.changedFields.add(RtTicketField.STARTS);
 	}
 
 
@@ -213,6 +279,7 @@ public class RtTicket {
 
 	public void setStarted(Date started) {
 		this.started = started;
+		this.changedFields.add(RtTicketField.STARTED);
 	}
 
 
@@ -223,6 +290,7 @@ public class RtTicket {
 
 	public void setDue(Date due) {
 		this.due = due;
+		this.changedFields.add(RtTicketField.DUE);
 	}
 
 
@@ -233,6 +301,7 @@ public class RtTicket {
 
 	public void setResolved(Date resolved) {
 		this.resolved = resolved;
+		this.changedFields.add(RtTicketField.RESOLVED);
 	}
 
 
@@ -243,6 +312,7 @@ public class RtTicket {
 
 	public void setTold(Date told) {
 		this.told = told;
+		this.changedFields.add(RtTicketField.TOLD);
 	}
 
 
@@ -263,6 +333,7 @@ public class RtTicket {
 
 	public void setTimeEstimated(int timeEstimated) {
 		this.timeEstimated = timeEstimated;
+		this.changedFields.add(RtTicketField.TIME_ESTIMATED);
 	}
 
 
@@ -273,6 +344,7 @@ public class RtTicket {
 
 	public void setTimeWorked(int timeWorked) {
 		this.timeWorked = timeWorked;
+		this.changedFields.add(RtTicketField.TIME_WORKED);
 	}
 
 
@@ -283,6 +355,7 @@ public class RtTicket {
 
 	public void setTimeLeft(int timeLeft) {
 		this.timeLeft = timeLeft;
+		this.changedFields.add(RtTicketField.TIME_LEFT);
 	}
 
 
@@ -293,6 +366,7 @@ public class RtTicket {
 
 	public void setText(String text) {
 		this.text = text;
+		this.changedFields.add(RtTicketField.TEXT);
 	}
 
 
@@ -311,6 +385,147 @@ public class RtTicket {
 	}
 
 
+	/**
+	 * Get the fields which were changed since this ticket was loaded from RT or markUnchanged() was called.
+	 * Single value fields are changed by calling their setter, even if the value is the same as before. Requestors,
+	 * Cc, AdminCc and custom fields are compared with their state at load time, so changes made to the lists
+	 * and map returned by the getters are detected as well.
+	 *
+	 * @return Set of changed fields
+	 */
+	public Set<RtTicketField> getChangedFields() {
+		EnumSet<RtTicketField> result = EnumSet.copyOf(this.changedFields);
+
+		if(!sameElements(this.requestors, this.loadedRequestors)) {
+			result.add(RtTicketField.REQUESTORS);
+		}
+
+		if(!sameElements(this.cc, this.loadedCc)) {
+			result.add(RtTicketField.CC);
+		}
+
+		if(!sameElements(this.adminCc, this.loadedAdminCc)) {
+			result.add(RtTicketField.ADMIN_CC);
+		}
+
+		if(!getChangedCustomFields().isEmpty()) {
+			result.add(RtTicketField.CUSTOM_FIELDS);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Get the names of the custom fields which were added or changed since this ticket was loaded from RT.
+	 *
+	 * @return Set of custom field names
+	 */
+	public Set<String> getChangedCustomFields() {
+		Set<String> result = new LinkedHashSet<>();
+
+		if(this.customFields != null) {
+			for(Map.Entry<String, String> e : this.customFields.entrySet()) {
+				String loaded = this.loadedCustomFields.get(e.getKey());
+
+				if(loaded == null || !loaded.equals(e.getValue())) {
+					result.add(e.getKey());
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Get the fields which were loaded from RT.
+	 * Tickets loaded with a field selection contain only the selected fields, all other fields keep their default
+	 * values and must not be taken for the values stored in RT. Tickets loaded without a selection and tickets
+	 * created locally contain all fields.
+	 *
+	 * @return Set of loaded fields
+	 */
+	public Set<RtTicketField> getLoadedFields() {
+		return EnumSet.copyOf(this.loadedFields);
+	}
+
+
+	/**
+	 * Set the fields which were loaded from RT.
+	 * This is called by the connector when the ticket was loaded with a field selection.
+	 *
+	 * @param loadedFields Set of loaded fields
+	 */
+	public void setLoadedFields(Set<RtTicketField> loadedFields) {
+		this.loadedFields = loadedFields.isEmpty() ? EnumSet.noneOf(RtTicketField.class) : EnumSet.copyOf(loadedFields);
+	}
+
+
+	/**
+	 * Check if a field was loaded from RT.
+	 *
+	 * @param field Field to check
+	 * @return true if the field contains the value stored in RT
+	 */
+	public boolean isLoaded(RtTicketField field) {
+		return this.loadedFields.contains(field);
+	}
+
+
+	/**
+	 * Check if only some of the fields were loaded from RT.
+	 *
+	 * @return true if the ticket was loaded with a field selection that did not include all fields
+	 */
+	public boolean isPartiallyLoaded() {
+		return this.loadedFields.size() < FIELD_COUNT;
+	}
+
+
+	/**
+	 * Mark all fields as unchanged.
+	 * This is called when the ticket was loaded from RT or successfully edited, the current values are then
+	 * considered to be the values stored in RT.
+	 */
+	public void markUnchanged() {
+		this.changedFields.clear();
+		this.loadedRequestors = snapshot(this.requestors);
+		this.loadedCc = snapshot(this.cc);
+		this.loadedAdminCc = snapshot(this.adminCc);
+		this.loadedCustomFields = (this.customFields != null && !this.customFields.isEmpty()) ? new HashMap<>(this.customFields) : Collections.<String, String>emptyMap();
+	}
+
+
+	private static List<String> copyList(List<String> list) {
+		return (list != null) ? new ArrayList<>(list) : null;
+	}
+
+
+	private static Date copyDate(Date date) {
+		return (date != null) ? new Date(date.getTime()) : null;
+	}
+
+
+	private static List<String> snapshot(List<String> list) {
+		return (list != null && !list.isEmpty()) ? new ArrayList<>(list) : Collections.<String>emptyList();
+	}
+
+
+	private static boolean sameElements(List<String> list, List<String> loaded) {
+		if(list == null || list.isEmpty()) {
+			return loaded.isEmpty();
+		}
+
+		if(list.equals(loaded)) {
+			return true;
+		}
+
+		// RT does not keep the order of watchers
+		return list.size() == loaded.size() && new HashSet<>(list).equals(new HashSet<>(loaded));
+	}
+
+
 	/**
 	 * A ticket can have one of the status defined in this enum.
 	 * Custom status defined in RT by the administrator are currently not supported.
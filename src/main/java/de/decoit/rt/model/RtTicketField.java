@@ -0,0 +1,69 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.model;
+
+
+/**
+ * Fields of a RT ticket.
+ * RtTicket records which of these fields were changed since it was loaded from RT and which fields were loaded at
+ * all if only some of them were requested. Creator, Created and LastUpdated are set by RT and cannot be changed by an
+ * edit request, they can only be used to select the fields to load.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public enum RtTicketField {
+	QUEUE("Queue"),
+	OWNER("Owner"),
+	CREATOR("Creator"),
+	SUBJECT("Subject"),
+	STATUS("Status"),
+	PRIORITY("Priority"),
+	INITIAL_PRIORITY("InitialPriority"),
+	FINAL_PRIORITY("FinalPriority"),
+	REQUESTORS("Requestors"),
+	CC("Cc"),
+	ADMIN_CC("AdminCc"),
+	CREATED("Created"),
+	STARTS("Starts"),
+	STARTED("Started"),
+	DUE("Due"),
+	RESOLVED("Resolved"),
+	TOLD("Told"),
+	LAST_UPDATED("LastUpdated"),
+	TIME_ESTIMATED("TimeEstimated"),
+	TIME_WORKED("TimeWorked"),
+	TIME_LEFT("TimeLeft"),
+	TEXT("Text"),
+	CUSTOM_FIELDS("CF");
+
+	private final String fieldName;
+
+
+	private RtTicketField(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+
+	/**
+	 * Get the name of this field in the content of RT REST requests.
+	 *
+	 * @return RT field name
+	 */
+	public String getFieldName() {
+		return this.fieldName;
+	}
+}
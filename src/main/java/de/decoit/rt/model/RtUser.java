@@ -16,8 +16,12 @@
  */
 package de.decoit.rt.model;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -51,6 +55,49 @@ public class RtUser {
 	private boolean privileged = false;
 	private boolean disabled = false;
 	private Map<String, String> customFields = new HashMap<>();
+	private EnumSet<RtUserField> changedFields = EnumSet.noneOf(RtUserField.class);
+	private Map<String, String> loadedCustomFields = Collections.emptyMap();
+
+
+	public RtUser() {
+	}
+
+
+	/**
+	 * Create a copy of another user.
+	 * The custom fields are copied, so changing the copy does not affect the original user.
+	 * The copy has the same changed fields as the original user.
+	 *
+	 * @param other User to copy
+	 */
+	public RtUser(RtUser other) {
+		this.id = other.id;
+		this.name = other.name;
+		this.emailAddress = other.emailAddress;
+		this.realName = other.realName;
+		this.nickName = other.nickName;
+		this.gecos = other.gecos;
+		this.organization = other.organization;
+		this.address1 = other.address1;
+		this.address2 = other.address2;
+		this.city = other.city;
+		this.state = other.state;
+		this.zip = other.zip;
+		this.country = other.country;
+		this.homePhone = other.homePhone;
+		this.workPhone = other.workPhone;
+		this.mobilePhone = other.mobilePhone;
+		this.pagerPhone = other.pagerPhone;
+		this.contactInfo = other.contactInfo;
+		this.comments = other.comments;
+		this.signature = other.signature;
+		this.lang = other.lang;
+		this.privileged = other.privileged;
+		this.disabled = other.disabled;
+		this.customFields = (other.customFields != null) ? new HashMap<>(other.customFields) : null;
+		this.changedFields = EnumSet.copyOf(other.changedFields);
+		this.loadedCustomFields = other.loadedCustomFields;
+	}
 
 
 	public long getId() {
@@ -85,6 +132,7 @@ public class RtUser {
 
 	public void setEmailAddress(String emailAddress) {
 		this.emailAddress = emailAddress;
+		this.changedFields.add(RtUserField.EMAIL_ADDRESS);
 	}
 
 
@@ -95,6 +143,7 @@ public class RtUser {
 
 	public void setRealName(String realName) {
 		this.realName = realName;
+		this.changedFields.add(RtUserField.REAL_NAME);
 	}
 
 
@@ -105,6 +154,7 @@ public class RtUser {
 
 	public void setNickName(String nickName) {
 		this.nickName = nickName;
+		this.changedFields.add(RtUserField.NICK_NAME);
 	}
 
 
@@ -115,6 +165,7 @@ public class RtUser {
 
 	public void setGecos(String gecos) {
 		this.gecos = gecos;
+		this.changedFields.add(RtUserField.GECOS);
 	}
 
 
@@ -125,6 +176,7 @@ public class RtUser {
 
 	public void setOrganization(String organization) {
 		this.organization = organization;
+		this.changedFields.add(RtUserField.ORGANIZATION);
 	}
 
 
@@ -135,6 +187,7 @@ public class RtUser {
 
 	public void setAddress1(String address1) {
 		this.address1 = address1;
+		this.changedFields.add(RtUserField.ADDRESS1);
 	}
 
 
@@ -145,6 +198,7 @@ public class RtUser {
 
 	public void setAddress2(String address2) {
 		this.address2 = address2;
+		this.changedFields.add(RtUserField.ADDRESS2);
 	}
 
 
@@ -155,6 +209,7 @@ public class RtUser {
 
 	public void setCity(String city) {
 		this.city = city;
+		this.changedFields.add(RtUserField.CITY);
 	}
 
 
@@ -165,6 +220,7 @@ public class RtUser {
 
 	public void setState(String state) {
 		this.state = state;
+		this.changedFields.add(RtUserField.STATE);
 	}
 
 
@@ -175,6 +231,7 @@ public class RtUser {
 
 	public void setZip(String zip) {
 		this.zip = zip;
+		this.changedFields.add(RtUserField.ZIP);
 	}
 
 
@@ -185,6 +242,7 @@ public class RtUser {
 
 	public void setCountry(String country) {
 		this.country = country;
+		this.changedFields.add(RtUserField.COUNTRY);
 	}
 
 
@@ -195,6 +253,7 @@ public class RtUser {
 
 	public void setHomePhone(String homePhone) {
 		this.homePhone = homePhone;
+		this.changedFields.add(RtUserField.HOME_PHONE);
 	}
 
 
@@ -205,6 +264,7 @@ public class RtUser {
 
 	public void setWorkPhone(String workPhone) {
 		this.workPhone = workPhone;
+		this.changedFields.add(RtUserField.WORK_PHONE);
 	}
 
 
@@ -215,6 +275,7 @@ public class RtUser {
 
 	public void setMobilePhone(String mobilePhone) {
 		this.mobilePhone = mobilePhone;
+		this.changedFields.add(RtUserField.MOBILE_PHONE);
 	}
 
 
@@ -225,6 +286,7 @@ public class RtUser {
 
 	public void setPagerPhone(String pagerPhone) {
 		this.pagerPhone = pagerPhone;
+		this.changedFields.add(RtUserField.PAGER_PHONE);
 	}
 
 
@@ -235,6 +297,7 @@ public class RtUser {
 
 	public void setContactInfo(String contactInfo) {
 		this.contactInfo = contactInfo;
+		this.changedFields.add(RtUserField.CONTACT_INFO);
 	}
 
 
@@ -245,6 +308,7 @@ public class RtUser {
 
 	public void setComments(String comments) {
 		this.comments = comments;
+		this.changedFields.add(RtUserField.COMMENTS);
 	}
 
 
@@ -255,6 +319,7 @@ public class RtUser {
 
 	public void setSignature(String signature) {
 		this.signature = signature;
+		this.changedFields.add(RtUserField.SIGNATURE);
 	}
 
 
@@ -265,6 +330,7 @@ public class RtUser {
 
 	public void setLang(String lang) {
 		this.lang = lang;
+		this.changedFields.add(RtUserField.LANG);
 	}
 
 
@@ -275,6 +341,7 @@ public class RtUser {
 
 	public void setPrivileged(boolean privileged) {
 		this.privileged = privileged;
+		this.changedFields.add(RtUserField.PRIVILEGED);
 	}
 
 
@@ -285,6 +352,7 @@ public class RtUser {
 
 	public void setDisabled(boolean disabled) {
 		this.disabled = disabled;
+		this.changedFields.add(RtUserField.DISABLED);
 	}
 
 	public Map<String, String> getCustomFields() {
@@ -300,4 +368,55 @@ public class RtUser {
 	public void addCustomField(String name, String value) {
 		this.customFields.put(name, value);
 	}
+
+
+	/**
+	 * Get the fields which were changed since this user was loaded from RT or markUnchanged() was called.
+	 * Single value fields are changed by calling their setter, even if the value is the same as before. Custom
+	 * fields are compared with their state at load time.
+	 *
+	 * @return Set of changed fields
+	 */
+	public Set<RtUserField> getChangedFields() {
+		EnumSet<RtUserField> result = EnumSet.copyOf(this.changedFields);
+
+		if(!getChangedCustomFields().isEmpty()) {
+			result.add(RtUserField.CUSTOM_FIELDS);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Get the names of the custom fields which were added or changed since this user was loaded from RT.
+	 *
+	 * @return Set of custom field names
+	 */
+	public Set<String> getChangedCustomFields() {
+		Set<String> result = new LinkedHashSet<>();
+
+		if(this.customFields != null) {
+			for(Map.Entry<String, String> e : this.customFields.entrySet()) {
+				String loaded = this.loadedCustomFields.get(e.getKey());
+
+				if(loaded == null || !loaded.equals(e.getValue())) {
+					result.add(e.getKey());
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Mark all fields as unchanged.
+	 * This is called when the user was loaded from RT or successfully edited, the current values are then
+	 * considered to be the values stored in RT.
+	 */
+	public void markUnchanged() {
+		this.changedFields.clear();
+		this.loadedCustomFields = (this.customFields != null && !this.customFields.isEmpty()) ? new HashMap<>(this.customFields) : Collections.<String, String>emptyMap();
+	}
 }
@@ -0,0 +1,66 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.model;
+
+
+/**
+ * Fields of a RT user which can be changed by an edit request.
+ * RtUser records which of these fields were changed since it was loaded from RT.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public enum RtUserField {
+	EMAIL_ADDRESS("EmailAddress"),
+	REAL_NAME("RealName"),
+	NICK_NAME("NickName"),
+	GECOS("Gecos"),
+	ORGANIZATION("Organization"),
+	ADDRESS1("Address1"),
+	ADDRESS2("Address2"),
+	CITY("City"),
+	STATE("State"),
+	ZIP("Zip"),
+	COUNTRY("Country"),
+	HOME_PHONE("HomePhone"),
+	WORK_PHONE("WorkPhone"),
+	MOBILE_PHONE("MobilePhone"),
+	PAGER_PHONE("PagerPhone"),
+	CONTACT_INFO("ContactInfo"),
+	COMMENTS("Comments"),
+	SIGNATURE("Signature"),
+	LANG("Lang"),
+	PRIVILEGED("Privileged"),
+	DISABLED("Disabled"),
+	CUSTOM_FIELDS("CF");
+
+	private final String fieldName;
+
+
+	private RtUserField(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+
+	/**
+	 * Get the name of this field in the content of RT REST requests.
+	 *
+	 * @return RT field name
+	 */
+	public String getFieldName() {
+		return this.fieldName;
+	}
+}
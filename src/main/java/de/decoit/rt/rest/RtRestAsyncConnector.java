@@ -0,0 +1,450 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import de.decoit.rt.AsyncRtConnector;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtUser;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Implementation of the AsyncRtConnector interface which runs the calls of a blocking RtConnector on an executor.
+ * Usually the wrapped connector is a RtRestConnector, ideally one with a pooled transport.<br>
+ * The number of requests running at the same time is limited. Calls exceeding that limit are queued and started
+ * as soon as a running request finishes, without occupying a thread of the executor while waiting. This allows to
+ * issue a large number of calls at once without creating a thread for each of them.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestAsyncConnector implements AsyncRtConnector {
+	private final RtConnector connector;
+	private final Executor executor;
+	private final int maxInFlight;
+	private final Queue<PendingCall<?>> pendingCalls = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+
+
+	/**
+	 * Create an asynchronous connector.
+	 *
+	 * @param connector Blocking connector used to perform the requests
+	 * @param executor Executor used to run the blocking calls
+	 * @param maxInFlight Maximum number of requests running at the same time, must be greater than 0
+	 */
+	public RtRestAsyncConnector(RtConnector connector, Executor executor, int maxInFlight) {
+		if(connector == null || executor == null) {
+			throw new IllegalArgumentException("Connector and executor must not be null");
+		}
+
+		if(maxInFlight <= 0) {
+			throw new IllegalArgumentException("Maximum number of in-flight requests must be greater than 0");
+		}
+
+		this.connector = connector;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+
+	/**
+	 * Create an asynchronous connector which runs every call on its own virtual thread. A blocked virtual thread
+	 * does not occupy a platform thread, so maxInFlight can be much larger than the number of threads a platform
+	 * executor could provide. The connector should be built with RtRestConnector.Builder.virtualThreads().
+	 *
+	 * @param connector Blocking connector used to perform the requests
+	 * @param maxInFlight Maximum number of requests running at the same time, must be greater than 0
+	 * @return A new asynchronous connector
+	 * @throws IllegalStateException if the JVM does not support virtual threads
+	 */
+	public static RtRestAsyncConnector withVirtualThreads(RtConnector connector, int maxInFlight) {
+		return new RtRestAsyncConnector(connector, RtRestVirtualThreads.newThreadPerTaskExecutor("rt-async-"), maxInFlight);
+	}
+
+
+	/**
+	 * Get the number of requests which are currently running.
+	 *
+	 * @return Number of running requests
+	 */
+	public int getInFlightCount() {
+		return this.inFlight.get();
+	}
+
+
+	/**
+	 * Get the number of requests which are waiting for a free slot.
+	 *
+	 * @return Number of queued requests
+	 */
+	public int getQueuedCount() {
+		return this.pendingCalls.size();
+	}
+
+
+	@Override
+	public ListenableFuture<String> login(final String uname, final String password) {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws RtException {
+				return connector.login(uname, password);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Void> logout(final String sessionId) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws RtException {
+				connector.logout(sessionId);
+				return null;
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<RtTicket> getTicket(final String sessionId, final long id) {
+		return submit(new Callable<RtTicket>() {
+			@Override
+			public RtTicket call() throws RtException {
+				return connector.getTicket(sessionId, id);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Map<Long, RtTicket>> getTickets(final String sessionId, final Collection<Long> ids) {
+		return submit(new Callable<Map<Long, RtTicket>>() {
+			@Override
+			public Map<Long, RtTicket> call() throws RtException {
+				return connector.getTickets(sessionId, ids);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<List<RtTicket>> searchTickets(final String sessionId, final String query) {
+		return submit(new Callable<List<RtTicket>>() {
+			@Override
+			public List<RtTicket> call() throws RtException {
+				return connector.searchTickets(sessionId, query);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<List<RtTicket>> searchTickets(final String sessionId, final String query, final String orderby) {
+		return submit(new Callable<List<RtTicket>>() {
+			@Override
+			public List<RtTicket> call() throws RtException {
+				return connector.searchTickets(sessionId, query, orderby);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Void> searchTickets(final String sessionId, final String query, final String orderby, final RtTicketHandler handler) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws RtException {
+				connector.searchTickets(sessionId, query, orderby, handler);
+				return null;
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Long> createTicket(final String sessionId, final RtTicket ticket) {
+		return submit(new Callable<Long>() {
+			@Override
+			public Long call() throws RtException {
+				return connector.createTicket(sessionId, ticket);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Boolean> editTicket(final String sessionId, final RtTicket ticket) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws RtException {
+				return connector.editTicket(sessionId, ticket);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<List<RtTicketHistoryItem>> getTicketHistory(final String sessionId, final long ticketId) {
+		return submit(new Callable<List<RtTicketHistoryItem>>() {
+			@Override
+			public List<RtTicketHistoryItem> call() throws RtException {
+				return connector.getTicketHistory(sessionId, ticketId);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<List<RtTicketHistoryItem>> getTicketHistory(final String sessionId, final long ticketId, final long afterItemId) {
+		return submit(new Callable<List<RtTicketHistoryItem>>() {
+			@Override
+			public List<RtTicketHistoryItem> call() throws RtException {
+				return connector.getTicketHistory(sessionId, ticketId, afterItemId);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Boolean> commentTicket(final String sessionId, final long ticketId, final RtTicketHistoryItem item) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws RtException {
+				return connector.commentTicket(sessionId, ticketId, item);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Boolean> answerTicket(final String sessionId, final long ticketId, final RtTicketHistoryItem item) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws RtException {
+				return connector.answerTicket(sessionId, ticketId, item);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<RtQueue> getQueue(final String sessionId, final long id) {
+		return submit(new Callable<RtQueue>() {
+			@Override
+			public RtQueue call() throws RtException {
+				return connector.getQueue(sessionId, id);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<RtQueue> getQueueByName(final String sessionId, final String name) {
+		return submit(new Callable<RtQueue>() {
+			@Override
+			public RtQueue call() throws RtException {
+				return connector.getQueueByName(sessionId, name);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Map<Long, String>> listQueues(final String sessionId) {
+		return submit(new Callable<Map<Long, String>>() {
+			@Override
+			public Map<Long, String> call() throws RtException {
+				return connector.listQueues(sessionId);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Long> createQueue(final String sessionId, final RtQueue queue) {
+		return submit(new Callable<Long>() {
+			@Override
+			public Long call() throws RtException {
+				return connector.createQueue(sessionId, queue);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<RtUser> getUser(final String sessionId, final String uname) {
+		return submit(new Callable<RtUser>() {
+			@Override
+			public RtUser call() throws RtException {
+				return connector.getUser(sessionId, uname);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<RtUser> getUser(final String sessionId, final long uid) {
+		return submit(new Callable<RtUser>() {
+			@Override
+			public RtUser call() throws RtException {
+				return connector.getUser(sessionId, uid);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<List<RtUser>> searchUsers(final String sessionId, final String query, final String orderby) {
+		return submit(new Callable<List<RtUser>>() {
+			@Override
+			public List<RtUser> call() throws RtException {
+				return connector.searchUsers(sessionId, query, orderby);
+			}
+		});
+	}
+
+
+	@Override
+	public ListenableFuture<Boolean> editUser(final String sessionId, final RtUser user) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws RtException {
+				return connector.editUser(sessionId, user);
+			}
+		});
+	}
+
+
+	/**
+	 * Queue a call for execution and start it if the in-flight limit allows.
+	 *
+	 * @param call The blocking call to perform
+	 * @return Future which will be completed with the result of the call
+	 */
+	private <T> ListenableFuture<T> submit(Callable<T> call) {
+		PendingCall<T> pending = new PendingCall<>(call);
+
+		this.pendingCalls.add(pending);
+		dispatch();
+
+		return pending.future;
+	}
+
+
+	/**
+	 * Start queued calls until either the queue is empty or the in-flight limit is reached.
+	 * This is called after a call was queued and after a running call finished, so no queued call is left behind.
+	 */
+	private void dispatch() {
+		while(true) {
+			int current = this.inFlight.get();
+
+			if(current >= this.maxInFlight || this.pendingCalls.isEmpty()) {
+				return;
+			}
+
+			if(!this.inFlight.compareAndSet(current, current + 1)) {
+				continue;
+			}
+
+			final PendingCall<?> pending = this.pendingCalls.poll();
+
+			if(pending == null) {
+				// Another thread took the last call, give back the slot and check again
+				this.inFlight.decrementAndGet();
+				continue;
+			}
+
+			try {
+				this.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							pending.run();
+						}
+						finally {
+							// Free the slot before completing the future, callbacks may issue new requests
+							inFlight.decrementAndGet();
+							pending.complete();
+							dispatch();
+						}
+					}
+				});
+			}
+			catch(RejectedExecutionException ex) {
+				this.inFlight.decrementAndGet();
+				pending.future.setException(ex);
+			}
+		}
+	}
+
+
+	/**
+	 * A queued call together with the future that receives its result.
+	 */
+	private static class PendingCall<T> {
+		private final Callable<T> call;
+		private final SettableFuture<T> future = SettableFuture.create();
+		private T result;
+		private Throwable failure;
+
+
+		PendingCall(Callable<T> call) {
+			this.call = call;
+		}
+
+
+		void run() {
+			if(this.future.isCancelled()) {
+				// Cancelled while waiting, do not send the request at all
+				return;
+			}
+
+			try {
+				this.result = this.call.call();
+			}
+			catch(Throwable t) {
+				this.failure = t;
+			}
+		}
+
+
+		void complete() {
+			if(this.failure != null) {
+				this.future.setException(this.failure);
+			}
+			else {
+				this.future.set(this.result);
+			}
+		}
+	}
+}
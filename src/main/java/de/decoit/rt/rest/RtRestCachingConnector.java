@@ -0,0 +1,891 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import de.decoit.rt.RtCircuitOpenException;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTicketCursor;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtUser;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Implementation of the RtConnector interface which caches tickets, queues and users returned by another connector.
+ * Entries are evicted when they exceed the time to live configured for their type or when the cache is full.
+ * Writes performed through this connector invalidate the affected entries, changes made by other RT clients
+ * become visible when the entry expires.<br>
+ * Optionally a cached ticket is revalidated after a shorter interval: a narrow search for the ticket with a
+ * LastUpdated value newer than the cached one returns an empty result if the ticket did not change, which is much
+ * cheaper than fetching the complete ticket. RT stores LastUpdated with a precision of one second, so a change in
+ * the same second as the cached state may go unnoticed until the entry expires.<br>
+ * The model classes are mutable. By default the cache stores and returns copies, so callers cannot modify the
+ * cached objects. If defensive copies are disabled, all callers share the cached instances and must not modify
+ * them.<br>
+ * If the wrapped connector uses a circuit breaker, the caching connector can serve entries which already expired
+ * while the circuit is open. These stale entries are kept for a configurable time after they were fetched and are
+ * removed by the same writes and invalidations as the regular entries.<br>
+ * The cache is shared by all sessions. It should only be used by sessions of users with the same permissions.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestCachingConnector implements RtConnector {
+	private static final Logger LOG = Logger.getLogger(RtRestCachingConnector.class);
+
+	private final RtConnector connector;
+	private final Ticker ticker;
+	private final long revalidateAfterNanos;
+	private final boolean defensiveCopies;
+	private final Cache<Long, CachedTicket> tickets;
+	private final Cache<Long, RtQueue> queuesById;
+	private final Cache<String, RtQueue> queuesByName;
+	private final Cache<Long, RtUser> usersById;
+	private final Cache<String, RtUser> usersByName;
+	private final AtomicLong revalidationCount = new AtomicLong(0L);
+	private final AtomicLong revalidationUnchangedCount = new AtomicLong(0L);
+
+	// Copies of the entries kept for serving while the circuit is open, null if disabled
+	private final Cache<Long, CachedTicket> staleTickets;
+	private final Cache<Long, RtQueue> staleQueuesById;
+	private final Cache<String, RtQueue> staleQueuesByName;
+	private final Cache<Long, RtUser> staleUsersById;
+	private final Cache<String, RtUser> staleUsersByName;
+	private final AtomicLong staleServedCount = new AtomicLong(0L);
+
+
+	/**
+	 * Create a new caching connector.
+	 *
+	 * @param builder Builder holding the configuration
+	 */
+	private RtRestCachingConnector(Builder builder) {
+		this.connector = builder.connector;
+		this.ticker = builder.ticker;
+		this.revalidateAfterNanos = builder.revalidateAfterNanos;
+		this.defensiveCopies = builder.defensiveCopies;
+
+		this.tickets = newCache(builder.maxTickets, builder.ticketTtlNanos, builder.ticker);
+		this.queuesById = newCache(builder.maxQueues, builder.queueTtlNanos, builder.ticker);
+		this.queuesByName = newCache(builder.maxQueues, builder.queueTtlNanos, builder.ticker);
+		this.usersById = newCache(builder.maxUsers, builder.userTtlNanos, builder.ticker);
+		this.usersByName = newCache(builder.maxUsers, builder.userTtlNanos, builder.ticker);
+
+		if(builder.maxStalenessNanos > 0L) {
+			this.staleTickets = newCache(builder.maxTickets, builder.maxStalenessNanos, builder.ticker);
+			this.staleQueuesById = newCache(builder.maxQueues, builder.maxStalenessNanos, builder.ticker);
+			this.staleQueuesByName = newCache(builder.maxQueues, builder.maxStalenessNanos, builder.ticker);
+			this.staleUsersById = newCache(builder.maxUsers, builder.maxStalenessNanos, builder.ticker);
+			this.staleUsersByName = newCache(builder.maxUsers, builder.maxStalenessNanos, builder.ticker);
+		}
+		else {
+			this.staleTickets = null;
+			this.staleQueuesById = null;
+			this.staleQueuesByName = null;
+			this.staleUsersById = null;
+			this.staleUsersByName = null;
+		}
+	}
+
+
+	/**
+	 * Create a builder for a caching connector which wraps the provided connector.
+	 *
+	 * @param connector Connector which performs the requests on cache misses
+	 * @return A new builder object
+	 */
+	public static Builder builder(RtConnector connector) {
+		return new Builder(connector);
+	}
+
+
+	@Override
+	public String login(String uname, String password) throws RtException {
+		return this.connector.login(uname, password);
+	}
+
+
+	@Override
+	public void logout(String sessionId) throws RtException {
+		this.connector.logout(sessionId);
+	}
+
+
+	@Override
+	public RtTicket getTicket(String sessionId, long id) throws RtException {
+		CachedTicket entry = this.tickets.getIfPresent(id);
+
+		try {
+			if(entry != null && isStale(entry)) {
+				entry = revalidateTicket(sessionId, entry);
+			}
+
+			if(entry == null) {
+				entry = cacheTicket(this.connector.getTicket(sessionId, id));
+			}
+		}
+		catch(RtCircuitOpenException ex) {
+			entry = getStale(this.staleTickets, id, ex);
+		}
+
+		return copyTicket(entry.ticket);
+	}
+
+
+	/**
+	 * Get the ticket with the selected fields. A cached ticket which is not due for revalidation is returned with all
+	 * its fields, otherwise the request is passed on to the wrapped connector. Partially loaded tickets are not cached.
+	 */
+	@Override
+	public RtTicket getTicket(String sessionId, long id, Set<RtTicketField> fields) throws RtException {
+		CachedTicket entry = this.tickets.getIfPresent(id);
+
+		if(entry != null && !isStale(entry)) {
+			return copyTicket(entry.ticket);
+		}
+
+		return this.connector.getTicket(sessionId, id, fields);
+	}
+
+
+	/**
+	 * Get the tickets with the provided IDs. Only tickets which are not cached are requested from RT, using a
+	 * single bulk request. Tickets due for revalidation are requested again as well. While the circuit is open the
+	 * request fails unless stale copies of all requested tickets are available.
+	 */
+	@Override
+	public Map<Long, RtTicket> getTickets(String sessionId, Collection<Long> ids) throws RtException {
+		Map<Long, RtTicket> result = new LinkedHashMap<>();
+		List<Long> missing = new ArrayList<>();
+
+		for(Long id : ids) {
+			CachedTicket entry = this.tickets.getIfPresent(id);
+
+			if(entry != null && !isStale(entry)) {
+				result.put(id, copyTicket(entry.ticket));
+			}
+			else {
+				// Reserve the position to keep the input order
+				result.put(id, null);
+				missing.add(id);
+			}
+		}
+
+		if(!missing.isEmpty()) {
+			Map<Long, RtTicket> fetched;
+
+			try {
+				fetched = this.connector.getTickets(sessionId, missing);
+			}
+			catch(RtCircuitOpenException ex) {
+				for(Long id : missing) {
+					result.put(id, copyTicket(getStale(this.staleTickets, id, ex).ticket));
+				}
+
+				return result;
+			}
+
+			for(Long id : missing) {
+				RtTicket ticket = fetched.get(id);
+
+				if(ticket != null) {
+					result.put(id, copyTicket(cacheTicket(ticket).ticket));
+				}
+				else {
+					invalidateTicket(id);
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query) throws RtException {
+		return this.connector.searchTickets(sessionId, query);
+	}
+
+
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query, String orderby) throws RtException {
+		return this.connector.searchTickets(sessionId, query, orderby);
+	}
+
+
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query, String orderby, Set<RtTicketField> fields) throws RtException {
+		return this.connector.searchTickets(sessionId, query, orderby, fields);
+	}
+
+
+	@Override
+	public void searchTickets(String sessionId, String query, String orderby, RtTicketHandler handler) throws RtException {
+		this.connector.searchTickets(sessionId, query, orderby, handler);
+	}
+
+
+	@Override
+	public RtTicketCursor searchTicketsPaged(String sessionId, String query, int pageSize) throws RtException {
+		return this.connector.searchTicketsPaged(sessionId, query, pageSize);
+	}
+
+
+	@Override
+	public long createTicket(String sessionId, RtTicket ticket) throws RtException {
+		long id = this.connector.createTicket(sessionId, ticket);
+
+		invalidateTicket(id);
+
+		return id;
+	}
+
+
+	@Override
+	public boolean editTicket(String sessionId, RtTicket ticket) throws RtException {
+		try {
+			return this.connector.editTicket(sessionId, ticket);
+		}
+		finally {
+			// The ticket may have been changed partially even if the request failed
+			invalidateTicket(ticket.getId());
+		}
+	}
+
+
+	@Override
+	public List<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId) throws RtException {
+		return this.connector.getTicketHistory(sessionId, ticketId);
+	}
+
+
+	@Override
+	public List<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId, long afterItemId) throws RtException {
+		return this.connector.getTicketHistory(sessionId, ticketId, afterItemId);
+	}
+
+
+	@Override
+	public boolean commentTicket(String sessionId, long ticketId, RtTicketHistoryItem item) throws RtException {
+		try {
+			return this.connector.commentTicket(sessionId, ticketId, item);
+		}
+		finally {
+			invalidateTicket(ticketId);
+		}
+	}
+
+
+	@Override
+	public boolean answerTicket(String sessionId, long ticketId, RtTicketHistoryItem item) throws RtException {
+		try {
+			return this.connector.answerTicket(sessionId, ticketId, item);
+		}
+		finally {
+			invalidateTicket(ticketId);
+		}
+	}
+
+
+	@Override
+	public RtQueue getQueue(String sessionId, long id) throws RtException {
+		RtQueue queue = this.queuesById.getIfPresent(id);
+
+		if(queue == null) {
+			try {
+				queue = cacheQueue(this.connector.getQueue(sessionId, id));
+			}
+			catch(RtCircuitOpenException ex) {
+				queue = getStale(this.staleQueuesById, id, ex);
+			}
+		}
+
+		return copyQueue(queue);
+	}
+
+
+	@Override
+	public RtQueue getQueueByName(String sessionId, String name) throws RtException {
+		RtQueue queue = this.queuesByName.getIfPresent(name);
+
+		if(queue == null) {
+			try {
+				queue = cacheQueue(this.connector.getQueueByName(sessionId, name));
+			}
+			catch(RtCircuitOpenException ex) {
+				queue = getStale(this.staleQueuesByName, name, ex);
+			}
+		}
+
+		return copyQueue(queue);
+	}
+
+
+	@Override
+	public Map<Long, String> listQueues(String sessionId) throws RtException {
+		return this.connector.listQueues(sessionId);
+	}
+
+
+	@Override
+	public long createQueue(String sessionId, RtQueue queue) throws RtException {
+		long id = this.connector.createQueue(sessionId, queue);
+
+		this.queuesById.invalidate(id);
+		if(queue.getName() != null) {
+			this.queuesByName.invalidate(queue.getName());
+		}
+
+		if(this.staleQueuesById != null) {
+			this.staleQueuesById.invalidate(id);
+			if(queue.getName() != null) {
+				this.staleQueuesByName.invalidate(queue.getName());
+			}
+		}
+
+		return id;
+	}
+
+
+	@Override
+	public RtUser getUser(String sessionId, String uname) throws RtException {
+		RtUser user = this.usersByName.getIfPresent(uname);
+
+		if(user == null) {
+			try {
+				user = cacheUser(this.connector.getUser(sessionId, uname));
+			}
+			catch(RtCircuitOpenException ex) {
+				user = getStale(this.staleUsersByName, uname, ex);
+			}
+		}
+
+		return copyUser(user);
+	}
+
+
+	@Override
+	public RtUser getUser(String sessionId, long uid) throws RtException {
+		RtUser user = this.usersById.getIfPresent(uid);
+
+		if(user == null) {
+			try {
+				user = cacheUser(this.connector.getUser(sessionId, uid));
+			}
+			catch(RtCircuitOpenException ex) {
+				user = getStale(this.staleUsersById, uid, ex);
+			}
+		}
+
+		return copyUser(user);
+	}
+
+
+	@Override
+	public List<RtUser> searchUsers(String sessionId, String query, String orderby) throws RtException {
+		return this.connector.searchUsers(sessionId, query, orderby);
+	}
+
+
+	@Override
+	public boolean editUser(String sessionId, RtUser user) throws RtException {
+		try {
+			return this.connector.editUser(sessionId, user);
+		}
+		finally {
+			invalidateUser(user);
+		}
+	}
+
+
+	/**
+	 * Remove a single ticket from the cache.
+	 * This can be used if the ticket is known to be changed by another RT client.
+	 *
+	 * @param id Ticket ID
+	 */
+	public void invalidateTicket(long id) {
+		this.tickets.invalidate(id);
+
+		if(this.staleTickets != null) {
+			this.staleTickets.invalidate(id);
+		}
+	}
+
+
+	/**
+	 * Remove all tickets, queues and users from the cache.
+	 */
+	public void invalidateAll() {
+		this.tickets.invalidateAll();
+		this.queuesById.invalidateAll();
+		this.queuesByName.invalidateAll();
+		this.usersById.invalidateAll();
+		this.usersByName.invalidateAll();
+
+		if(this.staleTickets != null) {
+			this.staleTickets.invalidateAll();
+			this.staleQueuesById.invalidateAll();
+			this.staleQueuesByName.invalidateAll();
+			this.staleUsersById.invalidateAll();
+			this.staleUsersByName.invalidateAll();
+		}
+	}
+
+
+	/**
+	 * Get the hit, miss and eviction statistics of the ticket cache.
+	 *
+	 * @return Snapshot of the statistics
+	 */
+	public CacheStats getTicketStats() {
+		return this.tickets.stats();
+	}
+
+
+	/**
+	 * Get the hit, miss and eviction statistics of the queue cache, lookups by ID and by name combined.
+	 *
+	 * @return Snapshot of the statistics
+	 */
+	public CacheStats getQueueStats() {
+		return this.queuesById.stats().plus(this.queuesByName.stats());
+	}
+
+
+	/**
+	 * Get the hit, miss and eviction statistics of the user cache, lookups by ID and by name combined.
+	 *
+	 * @return Snapshot of the statistics
+	 */
+	public CacheStats getUserStats() {
+		return this.usersById.stats().plus(this.usersByName.stats());
+	}
+
+
+	/**
+	 * Get the number of revalidation searches sent to RT.
+	 *
+	 * @return Number of revalidations
+	 */
+	public long getRevalidationCount() {
+		return this.revalidationCount.get();
+	}
+
+
+	/**
+	 * Get the number of revalidation searches which showed that the cached ticket was still up to date.
+	 *
+	 * @return Number of revalidations without a change
+	 */
+	public long getRevalidationUnchangedCount() {
+		return this.revalidationUnchangedCount.get();
+	}
+
+
+	/**
+	 * Get the number of tickets, queues and users which were served from the stale entries because the circuit
+	 * breaker of the wrapped connector was open.
+	 *
+	 * @return Number of stale entries served
+	 */
+	public long getStaleServedCount() {
+		return this.staleServedCount.get();
+	}
+
+
+	private boolean isStale(CachedTicket entry) {
+		return this.revalidateAfterNanos > 0L && this.ticker.read() - entry.validatedAt >= this.revalidateAfterNanos;
+	}
+
+
+	/**
+	 * Check if a cached ticket changed since it was fetched by searching for the ticket with a newer LastUpdated
+	 * value. The search returns the complete ticket if it changed, so no further request is necessary in that case.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param entry Cached ticket
+	 * @return Revalidated cache entry, null if the ticket must be fetched again
+	 * @throws RtException if the search failed
+	 */
+	private CachedTicket revalidateTicket(String sessionId, CachedTicket entry) throws RtException {
+		if(entry.ticket.getLastUpdated() == null) {
+			return null;
+		}
+
+		long id = entry.ticket.getId();
+		String query = "id = " + id + " AND LastUpdated > '" + RtRestDateCodec.HISTORY_DATE.format(entry.ticket.getLastUpdated()) + "'";
+
+		this.revalidationCount.incrementAndGet();
+		List<RtTicket> changed = this.connector.searchTickets(sessionId, query);
+
+		if(changed.isEmpty()) {
+			this.revalidationUnchangedCount.incrementAndGet();
+			entry.validatedAt = this.ticker.read();
+
+			return entry;
+		}
+		else {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Cached ticket " + id + " was changed in RT");
+			}
+
+			return cacheTicket(changed.get(0));
+		}
+	}
+
+
+	/**
+	 * Get the stale entry for a key after the wrapped connector rejected the request because its circuit is open.
+	 *
+	 * @param staleCache Cache holding the stale entries, null if serving stale entries is disabled
+	 * @param key Key of the entry
+	 * @param ex Exception raised by the wrapped connector
+	 * @return Stale entry
+	 * @throws RtCircuitOpenException the provided exception if there is no stale entry
+	 */
+	private <K, V> V getStale(Cache<K, V> staleCache, K key, RtCircuitOpenException ex) throws RtCircuitOpenException {
+		V value = staleCache != null ? staleCache.getIfPresent(key) : null;
+
+		if(value == null) {
+			throw ex;
+		}
+
+		this.staleServedCount.incrementAndGet();
+
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("Circuit is open, serving stale cache entry for " + key);
+		}
+
+		return value;
+	}
+
+
+	private CachedTicket cacheTicket(RtTicket ticket) {
+		CachedTicket entry = new CachedTicket(copyTicket(ticket), this.ticker.read());
+		this.tickets.put(ticket.getId(), entry);
+
+		if(this.staleTickets != null) {
+			this.staleTickets.put(ticket.getId(), entry);
+		}
+
+		return entry;
+	}
+
+
+	private RtQueue cacheQueue(RtQueue queue) {
+		RtQueue cached = copyQueue(queue);
+
+		this.queuesById.put(cached.getId(), cached);
+		if(cached.getName() != null) {
+			this.queuesByName.put(cached.getName(), cached);
+		}
+
+		if(this.staleQueuesById != null) {
+			this.staleQueuesById.put(cached.getId(), cached);
+			if(cached.getName() != null) {
+				this.staleQueuesByName.put(cached.getName(), cached);
+			}
+		}
+
+		return cached;
+	}
+
+
+	private RtUser cacheUser(RtUser user) {
+		RtUser cached = copyUser(user);
+
+		this.usersById.put(cached.getId(), cached);
+		if(cached.getName() != null) {
+			this.usersByName.put(cached.getName(), cached);
+		}
+
+		if(this.staleUsersById != null) {
+			this.staleUsersById.put(cached.getId(), cached);
+			if(cached.getName() != null) {
+				this.staleUsersByName.put(cached.getName(), cached);
+			}
+		}
+
+		return cached;
+	}
+
+
+	private void invalidateUser(RtUser user) {
+		// The name may have been changed by the edit, remove the entry stored under the old name as well
+		RtUser cached = this.usersById.asMap().remove(user.getId());
+
+		if(cached != null && cached.getName() != null) {
+			this.usersByName.invalidate(cached.getName());
+		}
+
+		if(user.getName() != null) {
+			this.usersByName.invalidate(user.getName());
+		}
+
+		if(this.staleUsersById != null) {
+			RtUser stale = this.staleUsersById.asMap().remove(user.getId());
+
+			if(stale != null && stale.getName() != null) {
+				this.staleUsersByName.invalidate(stale.getName());
+			}
+
+			if(user.getName() != null) {
+				this.staleUsersByName.invalidate(user.getName());
+			}
+		}
+	}
+
+
+	private RtTicket copyTicket(RtTicket ticket) {
+		return this.defensiveCopies ? new RtTicket(ticket) : ticket;
+	}
+
+
+	private RtQueue copyQueue(RtQueue queue) {
+		return this.defensiveCopies ? new RtQueue(queue) : queue;
+	}
+
+
+	private RtUser copyUser(RtUser user) {
+		return this.defensiveCopies ? new RtUser(user) : user;
+	}
+
+
+	private static <K, V> Cache<K, V> newCache(long maximumSize, long ttlNanos, Ticker ticker) {
+		return CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttlNanos, TimeUnit.NANOSECONDS)
+				.ticker(ticker)
+				.recordStats()
+				.build();
+	}
+
+
+	/**
+	 * Cached ticket together with the time it was last known to be up to date.
+	 */
+	private static class CachedTicket {
+		private final RtTicket ticket;
+		private volatile long validatedAt;
+
+
+		CachedTicket(RtTicket ticket, long validatedAt) {
+			this.ticket = ticket;
+			this.validatedAt = validatedAt;
+		}
+	}
+
+
+	/**
+	 * Builder to configure and create a RtRestCachingConnector.
+	 */
+	public static class Builder {
+		private final RtConnector connector;
+		private long ticketTtlNanos = TimeUnit.MINUTES.toNanos(5L);
+		private long queueTtlNanos = TimeUnit.HOURS.toNanos(1L);
+		private long userTtlNanos = TimeUnit.MINUTES.toNanos(30L);
+		private long maxTickets = 10000L;
+		private long maxQueues = 1000L;
+		private long maxUsers = 10000L;
+		private long revalidateAfterNanos = 0L;
+		private boolean defensiveCopies = true;
+		private long maxStalenessNanos = 0L;
+		private Ticker ticker = Ticker.systemTicker();
+
+
+		private Builder(RtConnector connector) {
+			if(connector == null) {
+				throw new IllegalArgumentException("Connector cannot be null");
+			}
+
+			this.connector = connector;
+		}
+
+
+		/**
+		 * Set the time after which a cached ticket is evicted. Default is 5 minutes.
+		 *
+		 * @param ttl Time to live
+		 * @param unit Unit of the time to live
+		 * @return This builder
+		 */
+		public Builder ticketTtl(long ttl, TimeUnit unit) {
+			this.ticketTtlNanos = unit.toNanos(ttl);
+			return this;
+		}
+
+
+		/**
+		 * Set the time after which a cached queue is evicted. Default is 1 hour.
+		 *
+		 * @param ttl Time to live
+		 * @param unit Unit of the time to live
+		 * @return This builder
+		 */
+		public Builder queueTtl(long ttl, TimeUnit unit) {
+			this.queueTtlNanos = unit.toNanos(ttl);
+			return this;
+		}
+
+
+		/**
+		 * Set the time after which a cached user is evicted. Default is 30 minutes.
+		 *
+		 * @param ttl Time to live
+		 * @param unit Unit of the time to live
+		 * @return This builder
+		 */
+		public Builder userTtl(long ttl, TimeUnit unit) {
+			this.userTtlNanos = unit.toNanos(ttl);
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum number of cached tickets. Default is 10000.
+		 *
+		 * @param maxTickets Maximum number of tickets, must not be negative
+		 * @return This builder
+		 */
+		public Builder maximumTickets(long maxTickets) {
+			if(maxTickets < 0L) {
+				throw new IllegalArgumentException("Maximum number of tickets cannot be negative");
+			}
+
+			this.maxTickets = maxTickets;
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum number of cached queues. Default is 1000.
+		 *
+		 * @param maxQueues Maximum number of queues, must not be negative
+		 * @return This builder
+		 */
+		public Builder maximumQueues(long maxQueues) {
+			if(maxQueues < 0L) {
+				throw new IllegalArgumentException("Maximum number of queues cannot be negative");
+			}
+
+			this.maxQueues = maxQueues;
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum number of cached users. Default is 10000.
+		 *
+		 * @param maxUsers Maximum number of users, must not be negative
+		 * @return This builder
+		 */
+		public Builder maximumUsers(long maxUsers) {
+			if(maxUsers < 0L) {
+				throw new IllegalArgumentException("Maximum number of users cannot be negative");
+			}
+
+			this.maxUsers = maxUsers;
+			return this;
+		}
+
+
+		/**
+		 * Set the time after which a cached ticket is checked for changes by a LastUpdated search before it is
+		 * returned. This should be shorter than the ticket time to live. Default is 0, which disables the
+		 * revalidation.
+		 *
+		 * @param revalidateAfter Time after which a ticket is revalidated
+		 * @param unit Unit of the time
+		 * @return This builder
+		 */
+		public Builder revalidateTicketsAfter(long revalidateAfter, TimeUnit unit) {
+			this.revalidateAfterNanos = unit.toNanos(revalidateAfter);
+			return this;
+		}
+
+
+		/**
+		 * Enable or disable defensive copies of cached objects. Default is enabled.
+		 * If disabled, all callers receive the same cached instances and must not modify them.
+		 *
+		 * @param defensiveCopies true to store and return copies
+		 * @return This builder
+		 */
+		public Builder defensiveCopies(boolean defensiveCopies) {
+			this.defensiveCopies = defensiveCopies;
+			return this;
+		}
+
+
+		/**
+		 * Serve cached tickets, queues and users which already expired while the circuit breaker of the wrapped
+		 * connector is open. Entries are served up to the provided time after they were fetched from RT, which
+		 * should be longer than the time to live of all types. Default is 0, which disables serving stale entries.
+		 *
+		 * @param maxStaleness Maximum age of an entry served while the circuit is open
+		 * @param unit Unit of the age
+		 * @return This builder
+		 */
+		public Builder serveStaleWhenCircuitOpen(long maxStaleness, TimeUnit unit) {
+			if(maxStaleness < 0L) {
+				throw new IllegalArgumentException("Maximum staleness cannot be negative");
+			}
+
+			this.maxStalenessNanos = unit.toNanos(maxStaleness);
+			return this;
+		}
+
+
+		/**
+		 * Set the time source used for expiration and revalidation, for testing purposes.
+		 *
+		 * @param ticker Time source
+		 * @return This builder
+		 */
+		Builder ticker(Ticker ticker) {
+			this.ticker = ticker;
+			return this;
+		}
+
+
+		/**
+		 * Create the caching connector with the current settings of this builder.
+		 *
+		 * @return A new caching connector
+		 */
+		public RtRestCachingConnector build() {
+			return new RtRestCachingConnector(this);
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Ticker;
+import de.decoit.rt.RtCircuitOpenException;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.springframework.web.client.HttpClientErrorException;
+
+
+/**
+ * Circuit breaker implementing a RtRestCircuitBreakerPolicy for the requests of a single RtRestClient.
+ * Every request needs a permission, which records the result of the HTTP exchange. Results of permissions
+ * issued before the last state transition are ignored, so requests which were sent while the circuit was closed
+ * cannot influence the trial calls of the half-open state. State transitions are reported to the instrumentation.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestCircuitBreaker {
+	private static final Logger LOG = Logger.getLogger(RtRestCircuitBreaker.class);
+
+	private final RtRestCircuitBreakerPolicy policy;
+	private final Ticker ticker;
+	private volatile RtRestInstrumentation instrumentation;
+
+	private RtRestCircuitState state = RtRestCircuitState.CLOSED;
+	private long generation = 0L;
+	private long openedAt = 0L;
+
+	// Sliding window of the closed state
+	private final boolean[] windowFailed;
+	private final boolean[] windowSlow;
+	private int windowIndex = 0;
+	private int windowCount = 0;
+	private int windowFailures = 0;
+	private int windowSlowCalls = 0;
+
+	// Trial calls of the half-open state
+	private int trialsIssued = 0;
+	private int trialsCompleted = 0;
+	private int trialFailures = 0;
+	private int trialSlowCalls = 0;
+
+
+	RtRestCircuitBreaker(RtRestCircuitBreakerPolicy policy, RtRestInstrumentation instrumentation, Ticker ticker) {
+		this.policy = policy;
+		this.instrumentation = instrumentation;
+		this.ticker = ticker;
+		this.windowFailed = new boolean[policy.getSlidingWindowSize()];
+		this.windowSlow = new boolean[policy.getSlidingWindowSize()];
+	}
+
+
+	/**
+	 * Set the instrumentation which receives the state transitions.
+	 *
+	 * @param instrumentation Instrumentation to use
+	 */
+	void setInstrumentation(RtRestInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+
+	/**
+	 * Get the current state. An open circuit whose waiting time is over is reported as open until the next
+	 * request is permitted.
+	 *
+	 * @return Current state
+	 */
+	synchronized RtRestCircuitState getState() {
+		return this.state;
+	}
+
+
+	/**
+	 * Get the permission to send a request.
+	 *
+	 * @return Permission which must be released when the request finished
+	 * @throws RtCircuitOpenException if the circuit is open or all trial calls of the half-open state are in progress
+	 */
+	Permission acquirePermission() throws RtCircuitOpenException {
+		RtRestCircuitState previous = null;
+		Permission permission = null;
+		String rejection = null;
+
+		synchronized(this) {
+			if(this.state == RtRestCircuitState.OPEN) {
+				long remaining = this.openedAt + this.policy.getWaitInOpenStateNanos() - this.ticker.read();
+
+				if(remaining > 0L) {
+					rejection = "Circuit breaker is open, RT is not called for another " + TimeUnit.NANOSECONDS.toMillis(remaining) + " ms";
+				}
+				else {
+					previous = transition(RtRestCircuitState.HALF_OPEN);
+				}
+			}
+
+			if(rejection == null) {
+				if(this.state == RtRestCircuitState.HALF_OPEN && this.trialsIssued >= this.policy.getPermittedCallsInHalfOpenState()) {
+					rejection = "Circuit breaker is half-open and all trial calls are in progress";
+				}
+				else {
+					if(this.state == RtRestCircuitState.HALF_OPEN) {
+						this.trialsIssued++;
+					}
+
+					permission = new Permission(this.generation);
+				}
+			}
+		}
+
+		if(previous != null) {
+			stateChanged(previous, RtRestCircuitState.HALF_OPEN);
+		}
+
+		if(rejection != null) {
+			throw new RtCircuitOpenException(rejection);
+		}
+
+		return permission;
+	}
+
+
+	/**
+	 * Record the result of a permitted request.
+	 *
+	 * @param permission Permission of the request
+	 * @param failed true if the request failed
+	 * @param slow true if the request was slow
+	 */
+	private void record(Permission permission, boolean failed, boolean slow) {
+		RtRestCircuitState previous = null;
+		RtRestCircuitState next = null;
+
+		synchronized(this) {
+			if(permission.generation != this.generation) {
+				return;
+			}
+
+			if(this.state == RtRestCircuitState.CLOSED) {
+				if(this.windowCount == this.windowFailed.length) {
+					// Remove the oldest result from the window
+					this.windowFailures -= this.windowFailed[this.windowIndex] ? 1 : 0;
+					this.windowSlowCalls -= this.windowSlow[this.windowIndex] ? 1 : 0;
+				}
+				else {
+					this.windowCount++;
+				}
+
+				this.windowFailed[this.windowIndex] = failed;
+				this.windowSlow[this.windowIndex] = slow;
+				this.windowFailures += failed ? 1 : 0;
+				this.windowSlowCalls += slow ? 1 : 0;
+				this.windowIndex = (this.windowIndex + 1) % this.windowFailed.length;
+
+				if(this.windowCount >= this.policy.getMinimumNumberOfCalls() && exceedsThresholds(this.windowFailures, this.windowSlowCalls, this.windowCount)) {
+					next = RtRestCircuitState.OPEN;
+				}
+			}
+			else if(this.state == RtRestCircuitState.HALF_OPEN) {
+				this.trialsCompleted++;
+				this.trialFailures += failed ? 1 : 0;
+				this.trialSlowCalls += slow ? 1 : 0;
+
+				if(this.trialsCompleted >= this.policy.getPermittedCallsInHalfOpenState()) {
+					next = exceedsThresholds(this.trialFailures, this.trialSlowCalls, this.trialsCompleted) ? RtRestCircuitState.OPEN : RtRestCircuitState.CLOSED;
+				}
+			}
+
+			if(next != null) {
+				previous = transition(next);
+			}
+		}
+
+		if(previous != null) {
+			stateChanged(previous, next);
+		}
+	}
+
+
+	/**
+	 * Release a permission whose request did not reach RT, for example because it was rejected by the throttle.
+	 * A trial call of the half-open state is given back.
+	 *
+	 * @param permission Permission of the request
+	 */
+	private synchronized void releaseUnused(Permission permission) {
+		if(permission.generation == this.generation && this.state == RtRestCircuitState.HALF_OPEN) {
+			this.trialsIssued--;
+		}
+	}
+
+
+	private boolean exceedsThresholds(int failures, int slowCalls, int calls) {
+		return failures * 100.0 / calls >= this.policy.getFailureRateThreshold() || slowCalls * 100.0 / calls >= this.policy.getSlowCallRateThreshold();
+	}
+
+
+	/**
+	 * Change the state and reset the counters of the new state. The lock must be held by the caller.
+	 *
+	 * @param next New state
+	 * @return Previous state
+	 */
+	private RtRestCircuitState transition(RtRestCircuitState next) {
+		RtRestCircuitState previous = this.state;
+
+		this.state = next;
+		this.generation++;
+
+		if(next == RtRestCircuitState.OPEN) {
+			this.openedAt = this.ticker.read();
+		}
+		else if(next == RtRestCircuitState.HALF_OPEN) {
+			this.trialsIssued = 0;
+			this.trialsCompleted = 0;
+			this.trialFailures = 0;
+			this.trialSlowCalls = 0;
+		}
+		else {
+			this.windowIndex = 0;
+			this.windowCount = 0;
+			this.windowFailures = 0;
+			this.windowSlowCalls = 0;
+		}
+
+		return previous;
+	}
+
+
+	private void stateChanged(RtRestCircuitState previous, RtRestCircuitState next) {
+		if(next == RtRestCircuitState.OPEN) {
+			LOG.warn("Circuit breaker opened, requests to RT fail immediately");
+		}
+		else if(LOG.isDebugEnabled()) {
+			LOG.debug("Circuit breaker state changed: " + previous + " -> " + next);
+		}
+
+		this.instrumentation.circuitStateChanged(previous, next);
+	}
+
+
+	/**
+	 * Permission to send a single request.
+	 */
+	final class Permission {
+		private final long generation;
+		private boolean done = false;
+
+
+		private Permission(long generation) {
+			this.generation = generation;
+		}
+
+
+		/**
+		 * Record the result of the HTTP exchange. Client errors (HTTP 4xx) are not counted as failures since
+		 * they are caused by the request, not by the state of RT.
+		 *
+		 * @param failure Exception which made the exchange fail, null if it was successful
+		 * @param serverNanos Time until the response headers were received
+		 */
+		void record(Exception failure, long serverNanos) {
+			if(this.done) {
+				return;
+			}
+
+			this.done = true;
+
+			boolean failed = failure != null && !(failure instanceof HttpClientErrorException);
+			boolean slow = serverNanos >= RtRestCircuitBreaker.this.policy.getSlowCallDurationNanos();
+
+			RtRestCircuitBreaker.this.record(this, failed, slow);
+		}
+
+
+		/**
+		 * Release the permission, gives back a trial call if no result was recorded.
+		 */
+		void release() {
+			if(!this.done) {
+				this.done = true;
+				releaseUnused(this);
+			}
+		}
+	}
+}
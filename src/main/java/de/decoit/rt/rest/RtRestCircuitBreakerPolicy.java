@@ -0,0 +1,231 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Configuration of the circuit breaker which protects a connector from waiting for an RT installation that is
+ * down or overloaded.<br>
+ * While the circuit is closed, the results of the last requests are recorded in a sliding window. A request is
+ * counted as failed if it raised an I/O error or a HTTP status other than 4xx, it is counted as slow if RT needed
+ * longer than the slow call duration to send the response headers. Once the window holds the minimum number of
+ * calls and the failure rate or the slow call rate reaches its threshold, the circuit opens. All requests fail
+ * immediately with a RtCircuitOpenException until the waiting time is over. Then the circuit is half-open and
+ * lets a number of trial requests through. If their failure and slow call rates are below the thresholds the
+ * circuit closes, otherwise it opens again.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestCircuitBreakerPolicy {
+	/**
+	 * Policy without a circuit breaker. This is the default of RtRestConnector.
+	 */
+	public static final RtRestCircuitBreakerPolicy DISABLED = new RtRestCircuitBreakerPolicy(builder(), false);
+
+	private final boolean enabled;
+	private final double failureRateThreshold;
+	private final double slowCallRateThreshold;
+	private final long slowCallDurationNanos;
+	private final int slidingWindowSize;
+	private final int minimumNumberOfCalls;
+	private final long waitInOpenStateNanos;
+	private final int permittedCallsInHalfOpenState;
+
+
+	private RtRestCircuitBreakerPolicy(Builder builder, boolean enabled) {
+		this.enabled = enabled;
+		this.failureRateThreshold = builder.failureRateThreshold;
+		this.slowCallRateThreshold = builder.slowCallRateThreshold;
+		this.slowCallDurationNanos = builder.slowCallDurationNanos;
+		this.slidingWindowSize = builder.slidingWindowSize;
+		this.minimumNumberOfCalls = Math.min(builder.minimumNumberOfCalls, builder.slidingWindowSize);
+		this.waitInOpenStateNanos = builder.waitInOpenStateNanos;
+		this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+	}
+
+
+	/**
+	 * Create a builder for a circuit breaker policy, initialized with the default settings.
+	 *
+	 * @return A new builder object
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+
+	double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+
+	double getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+
+	long getSlowCallDurationNanos() {
+		return slowCallDurationNanos;
+	}
+
+
+	int getSlidingWindowSize() {
+		return slidingWindowSize;
+	}
+
+
+	int getMinimumNumberOfCalls() {
+		return minimumNumberOfCalls;
+	}
+
+
+	long getWaitInOpenStateNanos() {
+		return waitInOpenStateNanos;
+	}
+
+
+	int getPermittedCallsInHalfOpenState() {
+		return permittedCallsInHalfOpenState;
+	}
+
+
+	/**
+	 * Builder for RtRestCircuitBreakerPolicy objects.
+	 */
+	public static class Builder {
+		private double failureRateThreshold = 50.0;
+		private double slowCallRateThreshold = 100.0;
+		private long slowCallDurationNanos = TimeUnit.SECONDS.toNanos(30L);
+		private int slidingWindowSize = 20;
+		private int minimumNumberOfCalls = 10;
+		private long waitInOpenStateNanos = TimeUnit.SECONDS.toNanos(30L);
+		private int permittedCallsInHalfOpenState = 3;
+
+
+		private Builder() {
+		}
+
+
+		/**
+		 * Set the percentage of failed calls at which the circuit opens. Default is 50.
+		 *
+		 * @param percent Failure rate between 0 (exclusive) and 100
+		 * @return This builder
+		 */
+		public Builder failureRateThreshold(double percent) {
+			if(percent <= 0.0 || percent > 100.0) {
+				throw new IllegalArgumentException("Failure rate threshold must be greater than 0 and not greater than 100");
+			}
+
+			this.failureRateThreshold = percent;
+			return this;
+		}
+
+
+		/**
+		 * Set the percentage of slow calls at which the circuit opens and the duration above which a call is slow.
+		 * Default is 100% of the calls taking 30 seconds or longer.
+		 *
+		 * @param percent Slow call rate between 0 (exclusive) and 100
+		 * @param slowCallDuration Time RT may need to send the response headers before the call is slow
+		 * @param unit Unit of the duration
+		 * @return This builder
+		 */
+		public Builder slowCallRateThreshold(double percent, long slowCallDuration, TimeUnit unit) {
+			if(percent <= 0.0 || percent > 100.0) {
+				throw new IllegalArgumentException("Slow call rate threshold must be greater than 0 and not greater than 100");
+			}
+
+			if(slowCallDuration <= 0L) {
+				throw new IllegalArgumentException("Slow call duration must be greater than 0");
+			}
+
+			this.slowCallRateThreshold = percent;
+			this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+			return this;
+		}
+
+
+		/**
+		 * Set the number of recent calls the rates are calculated from and the number of calls which must be
+		 * recorded before the circuit can open. Default is a window of 20 calls and a minimum of 10 calls.
+		 *
+		 * @param slidingWindowSize Number of calls in the window, must be greater than 0
+		 * @param minimumNumberOfCalls Minimum number of calls, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder slidingWindow(int slidingWindowSize, int minimumNumberOfCalls) {
+			if(slidingWindowSize <= 0 || minimumNumberOfCalls <= 0) {
+				throw new IllegalArgumentException("Window size and minimum number of calls must be greater than 0");
+			}
+
+			this.slidingWindowSize = slidingWindowSize;
+			this.minimumNumberOfCalls = minimumNumberOfCalls;
+			return this;
+		}
+
+
+		/**
+		 * Set the time the circuit stays open before trial calls are let through. Default is 30 seconds.
+		 *
+		 * @param wait Waiting time
+		 * @param unit Unit of the waiting time
+		 * @return This builder
+		 */
+		public Builder waitInOpenState(long wait, TimeUnit unit) {
+			if(wait < 0L) {
+				throw new IllegalArgumentException("Waiting time must not be negative");
+			}
+
+			this.waitInOpenStateNanos = unit.toNanos(wait);
+			return this;
+		}
+
+
+		/**
+		 * Set the number of trial calls let through while the circuit is half-open. Default is 3.
+		 *
+		 * @param permittedCalls Number of trial calls, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder permittedCallsInHalfOpenState(int permittedCalls) {
+			if(permittedCalls <= 0) {
+				throw new IllegalArgumentException("Number of trial calls must be greater than 0");
+			}
+
+			this.permittedCallsInHalfOpenState = permittedCalls;
+			return this;
+		}
+
+
+		/**
+		 * Create the policy with the current settings of this builder.
+		 *
+		 * @return A new policy
+		 */
+		public RtRestCircuitBreakerPolicy build() {
+			return new RtRestCircuitBreakerPolicy(this, true);
+		}
+	}
+}
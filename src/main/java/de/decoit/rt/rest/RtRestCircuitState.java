@@ -0,0 +1,40 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * States of the circuit breaker of a connector.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public enum RtRestCircuitState {
+	/**
+	 * Requests are sent to RT, their results are recorded
+	 */
+	CLOSED,
+
+	/**
+	 * Requests fail immediately with a RtCircuitOpenException
+	 */
+	OPEN,
+
+	/**
+	 * A limited number of trial requests is sent to RT to decide if the circuit is closed or opened again
+	 */
+	HALF_OPEN
+}
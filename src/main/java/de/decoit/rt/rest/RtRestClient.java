@@ -16,25 +16,50 @@
  */
 package de.decoit.rt.rest;
 
+import com.google.common.base.Ticker;
+import com.google.common.io.CountingInputStream;
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtCircuitOpenException;
+import de.decoit.rt.RtDeadlineExceededException;
 import de.decoit.rt.RtException;
+import de.decoit.rt.RtSessionListener;
+import de.decoit.rt.RtThrottledException;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.RtTransientException;
 import de.decoit.rt.model.RtQueue;
 import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
 import de.decoit.rt.model.RtTicketHistoryItem;
 import de.decoit.rt.model.RtUser;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+import org.springframework.web.util.UriTemplate;
 
 
 /**
@@ -52,10 +77,15 @@ class RtRestClient {
 	private final String URI_RT_REST_LOGIN = "REST/1.0/user/{username}";
 	private final String URI_RT_REST_LOGOUT = "REST/1.0/logout";
 	private final String URI_RT_REST_TICKET_PROPERTIES = "REST/1.0/{ticket-id}/show";
+	private final String URI_RT_REST_TICKET_PROPERTIES_FIELDS = "REST/1.0/{ticket-id}/show?fields={fields}";
 	private final String URI_RT_REST_TICKET_SEARCH = "REST/1.0/search/ticket?query={query}&orderby={order-by}&format=l";
+	private final String URI_RT_REST_TICKET_SEARCH_FIELDS = "REST/1.0/search/ticket?query={query}&orderby={order-by}&format=l&fields={fields}";
+	private final String URI_RT_REST_TICKET_ID_SEARCH = "REST/1.0/search/ticket?query={query}&orderby={order-by}&format=i";
 	private final String URI_RT_REST_TICKET_CREATE = "REST/1.0/ticket/new";
 	private final String URI_RT_REST_TICKET_EDIT = "REST/1.0/{ticket-id}/edit";
 	private final String URI_RT_REST_TICKET_HISTORY = "REST/1.0/{ticket-id}/history?format=l";
+	private final String URI_RT_REST_TICKET_HISTORY_IDS = "REST/1.0/{ticket-id}/history";
+	private final String URI_RT_REST_TICKET_HISTORY_ITEM = "REST/1.0/{ticket-id}/history/id/{item-id}";
 	private final String URI_RT_REST_TICKET_COMMENT = "REST/1.0/{ticket-id}/comment";
 	private final String URI_RT_REST_QUEUE_PROPERTIES = "REST/1.0/{queue-id}/show";
 	private final String URI_RT_REST_QUEUE_LIST = "REST/1.0/search/queue?query=";
@@ -63,7 +93,7 @@ class RtRestClient {
 	private final String URI_RT_REST_USER_PROPERTIES = "REST/1.0/{user-id}/show";
 	private final String URI_RT_REST_USER_SEARCH = "REST/1.0/search/user?query={query}&orderby={order-by}&format=l";
 	private final String URI_RT_REST_USER_EDIT = "REST/1.0/{user-id}/edit";
-	private final RestTemplate REST_TEMPLATE = new RestTemplate();
+	private final RtRestTransport transport;
 
 	/**
 	 * This is required to make sure we always get US format for timestamps and english translation for status texts.
@@ -71,6 +101,13 @@ class RtRestClient {
 	private final String HTTP_HEADERS_ACCEPT_LANGUAGE = "en-US;q=0.8,en;q=0.6";
 
 	private String baseUri;
+	private final CopyOnWriteArrayList<RtSessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+	private volatile RtRestInstrumentation instrumentation = RtRestInstrumentation.NOOP;
+	private volatile RtRestRetryPolicy retryPolicy = RtRestRetryPolicy.NONE;
+	private volatile RtRestRetryBudget retryBudget = RtRestRetryPolicy.NONE.createBudget();
+	private volatile RtRestThrottle throttle = null;
+	private volatile RtRestCircuitBreaker circuitBreaker = null;
+	private volatile RtRestTimeoutPolicy timeoutPolicy = RtRestTimeoutPolicy.NONE;
 
 
 	/**
@@ -82,6 +119,21 @@ class RtRestClient {
 	 * @param rtBaseUri Base URI of the RT installation, i.e. http://10.10.10.10/
 	 */
 	RtRestClient(String rtBaseUri) {
+		this(rtBaseUri, new RtRestSpringTransport(RtRestConnectionPool.createUnpooledRequestFactory()));
+	}
+
+
+	/**
+	 * Constructor.
+	 * Initialize object with required parameters and send all requests using the provided transport.
+	 * This allows to use a pooled transport like the one provided by RtRestConnectionPool.
+	 *
+	 * @param rtBaseUri Base URI of the RT installation, i.e. http://10.10.10.10/
+	 * @param transport Transport used to send the HTTP requests
+	 */
+	RtRestClient(String rtBaseUri, RtRestTransport transport) {
+		this.transport = transport;
+
 		Pattern p = Pattern.compile("^http(s)?://.+/?$");
 		Matcher m = p.matcher(rtBaseUri);
 
@@ -104,6 +156,123 @@ class RtRestClient {
 	}
 
 
+	/**
+	 * Add a listener which is informed when RT replaces the session cookie of a session.
+	 *
+	 * @param listener Listener to add
+	 */
+	void addSessionListener(RtSessionListener listener) {
+		this.sessionListeners.add(listener);
+	}
+
+
+	/**
+	 * Remove a previously added session listener.
+	 *
+	 * @param listener Listener to remove
+	 */
+	void removeSessionListener(RtSessionListener listener) {
+		this.sessionListeners.remove(listener);
+	}
+
+
+	/**
+	 * Set the instrumentation which receives the measurements of all requests.
+	 *
+	 * @param instrumentation Instrumentation to use, RtRestInstrumentation.NOOP to disable measurements
+	 */
+	void setInstrumentation(RtRestInstrumentation instrumentation) {
+		if(instrumentation == null) {
+			throw new IllegalArgumentException("Instrumentation cannot be null, use RtRestInstrumentation.NOOP instead");
+		}
+
+		this.instrumentation = instrumentation;
+
+		RtRestCircuitBreaker currentBreaker = this.circuitBreaker;
+
+		if(currentBreaker != null) {
+			currentBreaker.setInstrumentation(instrumentation);
+		}
+	}
+
+
+	/**
+	 * Set the policy used to retry failed requests. Setting a policy resets the retry budget.
+	 *
+	 * @param retryPolicy Policy to use, RtRestRetryPolicy.NONE to disable retries
+	 */
+	void setRetryPolicy(RtRestRetryPolicy retryPolicy) {
+		if(retryPolicy == null) {
+			throw new IllegalArgumentException("Retry policy cannot be null, use RtRestRetryPolicy.NONE instead");
+		}
+
+		this.retryBudget = retryPolicy.createBudget();
+		this.retryPolicy = retryPolicy;
+	}
+
+
+	/**
+	 * Set the limits for the requests sent by this client. Requests which are waiting for a slot of the previous
+	 * throttle are not affected.
+	 *
+	 * @param throttlePolicy Limits to enforce, RtRestThrottlePolicy.UNLIMITED to disable all limits
+	 */
+	void setThrottlePolicy(RtRestThrottlePolicy throttlePolicy) {
+		if(throttlePolicy == null) {
+			throw new IllegalArgumentException("Throttle policy cannot be null, use RtRestThrottlePolicy.UNLIMITED instead");
+		}
+
+		this.throttle = throttlePolicy.isUnlimited() ? null : new RtRestThrottle(throttlePolicy);
+	}
+
+
+	/**
+	 * Set the policy of the circuit breaker which stops sending requests to RT while it is failing.
+	 * Setting a policy creates a new breaker in the closed state.
+	 *
+	 * @param circuitBreakerPolicy Policy to use, RtRestCircuitBreakerPolicy.DISABLED to send all requests
+	 */
+	void setCircuitBreakerPolicy(RtRestCircuitBreakerPolicy circuitBreakerPolicy) {
+		if(circuitBreakerPolicy == null) {
+			throw new IllegalArgumentException("Circuit breaker policy cannot be null, use RtRestCircuitBreakerPolicy.DISABLED instead");
+		}
+
+		this.circuitBreaker = circuitBreakerPolicy.isEnabled() ? new RtRestCircuitBreaker(circuitBreakerPolicy, this.instrumentation, Ticker.systemTicker()) : null;
+	}
+
+
+	/**
+	 * Set the timeouts of the requests sent by this client.
+	 *
+	 * @param timeoutPolicy Timeouts to use, RtRestTimeoutPolicy.NONE to wait forever
+	 */
+	void setTimeoutPolicy(RtRestTimeoutPolicy timeoutPolicy) {
+		if(timeoutPolicy == null) {
+			throw new IllegalArgumentException("Timeout policy cannot be null, use RtRestTimeoutPolicy.NONE instead");
+		}
+
+		this.timeoutPolicy = timeoutPolicy;
+	}
+
+
+	/**
+	 * @return Current state of the circuit breaker, CLOSED if it is disabled
+	 */
+	RtRestCircuitState getCircuitState() {
+		RtRestCircuitBreaker currentBreaker = this.circuitBreaker;
+		return currentBreaker != null ? currentBreaker.getState() : RtRestCircuitState.CLOSED;
+	}
+
+
+	/**
+	 * @return Number of requests waiting for a slot of the throttle, 0 if no limits are configured
+	 */
+	int getQueuedRequestCount() {
+		RtRestThrottle currentThrottle = this.throttle;
+		return currentThrottle != null ? currentThrottle.getQueueDepth() : 0;
+	}
+
+
 	/**
 	 * Login to the RT REST API and store the session ID for further use.
 	 * Any previous session will be logged out before opening a new session.
@@ -127,7 +296,7 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("username", uname);
 
-		RtRestResponse response = getResponse(null, uriSb.toString(), postParams, uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.LOGIN, null, uriSb.toString(), postParams, uriParams);
 
 		// If the request was processed successfully (this refers to RT's status, not the HTTP status!), read the session ID from the cookie data
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
@@ -137,6 +306,9 @@ class RtRestClient {
 
 			return response.getSessionId();
 		}
+		else if (response.getRtStatus() == RtRestStatus.STATUS_401) {
+			throw new RtAuthenticationException("Login failed, credentials were rejected by RT");
+		}
 		else {
 			throw new RtException("Login failed with RT REST status: " + response.getRtStatus().toString());
 		}
@@ -152,7 +324,7 @@ class RtRestClient {
 		StringBuilder uriSb = new StringBuilder(this.baseUri);
 		uriSb.append(this.URI_RT_REST_LOGOUT);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString());
+		RtRestResponse response = getResponse(RtRestEndpoint.LOGOUT, sessionId, uriSb.toString());
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
 			if (LOG.isDebugEnabled()) {
@@ -175,17 +347,41 @@ class RtRestClient {
 	 * @throws RtException If the response contains a line starting with "#" (means error for ticket properties requests)
 	 */
 	RtTicket ticketProperties(String sessionId, String ticketId) throws RtException {
+		return ticketProperties(sessionId, ticketId, null);
+	}
+
+
+	/**
+	 * Perform a ticket properties query on the RT REST API which requests only the selected fields.
+	 * The returned ticket contains only the selected fields and has them set as its loaded fields.
+	 *
+	 * @param ticketId ID of the requested ticket, must be provided as 'ticket/[id]'
+	 * @param fields Fields to request, null to request all fields
+	 * @return Ticket object filled with the received values
+	 *
+	 * @throws RtException If the response contains a line starting with "#" (means error for ticket properties requests)
+	 */
+	RtTicket ticketProperties(String sessionId, String ticketId, Set<RtTicketField> fields) throws RtException {
+		String fieldsParam = (fields != null) ? fieldsParameter(fields) : null;
 		StringBuilder uriSb = new StringBuilder(this.baseUri);
-		uriSb.append(this.URI_RT_REST_TICKET_PROPERTIES);
+		uriSb.append((fieldsParam != null) ? this.URI_RT_REST_TICKET_PROPERTIES_FIELDS : this.URI_RT_REST_TICKET_PROPERTIES);
 
 		// Define URI variables
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("ticket-id", ticketId);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), uriParams);
+		if(fieldsParam != null) {
+			uriParams.put("fields", fieldsParam);
+		}
+
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_PROPERTIES, sessionId, uriSb.toString(), uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestTicketResponseParser.parseTicket(response.getBodyText());
+			long parseStart = System.nanoTime();
+			RtTicket result = RtRestTicketResponseParser.parseTicket(response.getBodyCursor(), fields);
+			entityParsed(RtRestEndpoint.TICKET_PROPERTIES, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Ticket properties request failed with RT REST status: " + response.getRtStatus().toString());
@@ -203,22 +399,127 @@ class RtRestClient {
 	 * @throws RtException if the request to the API failed
 	 */
 	List<RtTicket> searchTickets(String sessionId, String query, String orderby) throws RtException {
+		return searchTickets(sessionId, query, orderby, (Set<RtTicketField>) null);
+	}
+
+
+	/**
+	 * Search for tickets matching the provided query string and request only the selected fields of the tickets.
+	 *
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @param fields Fields to request, null to request all fields
+	 * @return A list of tickets matching the query
+	 *
+	 * @throws RtException if the request to the API failed
+	 */
+	List<RtTicket> searchTickets(String sessionId, String query, String orderby, Set<RtTicketField> fields) throws RtException {
+		final ArrayList<RtTicket> ticketList = new ArrayList<>();
+
+		// Collect the tickets from the streaming search, this avoids holding the complete response string in memory
+		searchTickets(sessionId, query, orderby, fields, new RtTicketHandler() {
+			@Override
+			public boolean handleTicket(RtTicket ticket) {
+				ticketList.add(ticket);
+				return true;
+			}
+		});
+
+		return ticketList;
+	}
+
+
+	/**
+	 * Search for tickets matching the provided query string and pass them to the handler while the response is read.
+	 * The response is never held in memory completely. If the handler stops the search, the rest of the response
+	 * is skipped without being parsed.
+	 *
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @param handler Handler which receives the tickets in the order returned by RT
+	 *
+	 * @throws RtException if the request to the API failed or the handler raised an exception
+	 */
+	void searchTickets(String sessionId, String query, String orderby, RtTicketHandler handler) throws RtException {
+		searchTickets(sessionId, query, orderby, null, handler);
+	}
+
+
+	/**
+	 * Search for tickets matching the provided query string, request only the selected fields of the tickets and
+	 * pass them to the handler while the response is read.
+	 *
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @param fields Fields to request, null to request all fields
+	 * @param handler Handler which receives the tickets in the order returned by RT
+	 *
+	 * @throws RtException if the request to the API failed or the handler raised an exception
+	 */
+	void searchTickets(String sessionId, String query, String orderby, final Set<RtTicketField> fields, final RtTicketHandler handler) throws RtException {
+		String fieldsParam = (fields != null) ? fieldsParameter(fields) : null;
 		StringBuilder uriSb = new StringBuilder(this.baseUri);
-		uriSb.append(this.URI_RT_REST_TICKET_SEARCH);
+		uriSb.append((fieldsParam != null) ? this.URI_RT_REST_TICKET_SEARCH_FIELDS : this.URI_RT_REST_TICKET_SEARCH);
 
 		// Define URI variables
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("query", query);
 		uriParams.put("order-by", orderby);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), uriParams);
-
-		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestTicketResponseParser.parseTickets(response.getBodyText());
-		}
-		else {
-			throw new RtException("Search tickets request failed with RT REST status: " + response.getRtStatus().toString());
+		if(fieldsParam != null) {
+			uriParams.put("fields", fieldsParam);
 		}
+
+		getStreamingResponse(RtRestEndpoint.TICKET_SEARCH, sessionId, uriSb.toString(), uriParams, new ResponseBodyConsumer() {
+			@Override
+			public boolean consume(Reader body) throws RtException, IOException {
+				RtRestTicketStreamParser parser = new RtRestTicketStreamParser(body, fields);
+				RtTicket ticket;
+
+				while((ticket = parser.nextTicket()) != null) {
+					if(!handler.handleTicket(ticket)) {
+						return false;
+					}
+				}
+
+				return true;
+			}
+		});
+	}
+
+
+	/**
+	 * Search for tickets matching the provided query string and return the ID of the first ticket in the result.
+	 * Only the ticket IDs are requested from RT and the rest of the response is discarded after the first ID was read.
+	 *
+	 * @param query   Search query, using the language generated by the RT query builder
+	 * @param orderby Field and direction for ordering the results, using the language generated by the RT query builder
+	 * @return ID of the first ticket, -1 if no ticket matches the query
+	 *
+	 * @throws RtException if the request to the API failed
+	 */
+	long findTicketId(String sessionId, String query, String orderby) throws RtException {
+		StringBuilder uriSb = new StringBuilder(this.baseUri);
+		uriSb.append(this.URI_RT_REST_TICKET_ID_SEARCH);
+
+		// Define URI variables
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("query", query);
+		uriParams.put("order-by", orderby);
+
+		final long[] ticketId = new long[] { -1L };
+
+		getStreamingResponse(RtRestEndpoint.TICKET_ID_SEARCH, sessionId, uriSb.toString(), uriParams, new ResponseBodyConsumer() {
+			@Override
+			public boolean consume(Reader body) throws RtException, IOException {
+				RtRestTicketStreamParser parser = new RtRestTicketStreamParser(body);
+				ticketId[0] = parser.nextTicketId();
+
+				return ticketId[0] < 0;
+			}
+		});
+
+		return ticketId[0];
 	}
 
 
@@ -256,10 +557,14 @@ class RtRestClient {
 		LinkedMultiValueMap<String, String> postParams = new LinkedMultiValueMap<>();
 		postParams.add("content", content);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), postParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_CREATE, sessionId, uriSb.toString(), postParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestTicketResponseParser.parseTicketCreated(response.getBodyText());
+			long parseStart = System.nanoTime();
+			long result = RtRestTicketResponseParser.parseTicketCreated(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.TICKET_CREATE, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Create ticket request failed with RT REST status: " + response.getRtStatus().toString());
@@ -289,10 +594,14 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("ticket-id", ticketId);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), postParams, uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_EDIT, sessionId, uriSb.toString(), postParams, uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200 || response.getRtStatus() == RtRestStatus.STATUS_409) {
-			return RtRestTicketResponseParser.parseTicketEdited(response.getBodyText());
+			long parseStart = System.nanoTime();
+			boolean result = RtRestTicketResponseParser.parseTicketEdited(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.TICKET_EDIT, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Edit ticket request failed with RT REST status: " + response.getRtStatus().toString());
@@ -315,10 +624,14 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("ticket-id", ticketId);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_HISTORY, sessionId, uriSb.toString(), uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestTicketHistoryResponseParser.parseHistoryItems(response.getBodyText());
+			long parseStart = System.nanoTime();
+			List<RtTicketHistoryItem> result = RtRestTicketHistoryResponseParser.parseHistoryItems(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.TICKET_HISTORY, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Ticket history request failed with RT REST status: " + response.getRtStatus().toString());
@@ -326,6 +639,74 @@ class RtRestClient {
 	}
 
 
+	/**
+	 * Request the short format history of a specific ticket from the RT REST API and return the item IDs.
+	 * The short format only contains the ID and description of every item and is much smaller than the long format.
+	 *
+	 * @param ticketId ID of the ticket whose history item IDs will be returned
+	 * @return A list of history item IDs, ordered the same way as in the API response
+	 * @throws RtException
+	 */
+	List<Long> getTicketHistoryIds(String sessionId, String ticketId) throws RtException {
+		StringBuilder uriSb = new StringBuilder(this.baseUri);
+		uriSb.append(this.URI_RT_REST_TICKET_HISTORY_IDS);
+
+		// Define URI variables
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", ticketId);
+
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_HISTORY_IDS, sessionId, uriSb.toString(), uriParams);
+
+		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
+			long parseStart = System.nanoTime();
+			List<Long> result = RtRestTicketHistoryResponseParser.parseHistoryItemIds(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.TICKET_HISTORY_IDS, parseStart);
+
+			return result;
+		}
+		else {
+			throw new RtException("Ticket history IDs request failed with RT REST status: " + response.getRtStatus().toString());
+		}
+	}
+
+
+	/**
+	 * Request a single history item of a specific ticket from the RT REST API.
+	 *
+	 * @param ticketId ID of the ticket the item belongs to, must be provided as 'ticket/[id]'
+	 * @param itemId ID of the history item
+	 * @return The history item
+	 * @throws RtException
+	 */
+	RtTicketHistoryItem getTicketHistoryItem(String sessionId, String ticketId, long itemId) throws RtException {
+		StringBuilder uriSb = new StringBuilder(this.baseUri);
+		uriSb.append(this.URI_RT_REST_TICKET_HISTORY_ITEM);
+
+		// Define URI variables
+		HashMap<String, String> uriParams = new HashMap<>();
+		uriParams.put("ticket-id", ticketId);
+		uriParams.put("item-id", String.valueOf(itemId));
+
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_HISTORY_ITEM, sessionId, uriSb.toString(), uriParams);
+
+		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
+			long parseStart = System.nanoTime();
+			RtTicketHistoryItem item = RtRestTicketHistoryResponseParser.parseHistoryItem(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.TICKET_HISTORY_ITEM, parseStart);
+
+			// Message lines are ignored by the parser, an absent item results in an empty object
+			if (item.getId() != itemId) {
+				throw new RtException("Ticket history item not found: " + itemId);
+			}
+
+			return item;
+		}
+		else {
+			throw new RtException("Ticket history item request failed with RT REST status: " + response.getRtStatus().toString());
+		}
+	}
+
+
 	/**
 	 * Post a comment or answer to an existing ticket using the RT REST API.
 	 * The content string may contain the attributes shown below. The action attribute of the content
@@ -356,10 +737,14 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("ticket-id", ticketId);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), postParams, uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.TICKET_COMMENT, sessionId, uriSb.toString(), postParams, uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestTicketHistoryResponseParser.parseTicketCommented(response.getBodyText());
+			long parseStart = System.nanoTime();
+			boolean result = RtRestTicketHistoryResponseParser.parseTicketCommented(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.TICKET_COMMENT, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Edit ticket request failed with RT REST status: " + response.getRtStatus().toString());
@@ -384,10 +769,14 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("queue-id", queueId);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.QUEUE_PROPERTIES, sessionId, uriSb.toString(), uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestQueueResponseParser.parseQueue(response.getBodyText());
+			long parseStart = System.nanoTime();
+			RtQueue result = RtRestQueueResponseParser.parseQueue(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.QUEUE_PROPERTIES, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Queue properties request failed with RT REST status: " + response.getRtStatus().toString());
@@ -406,10 +795,14 @@ class RtRestClient {
 		StringBuilder uriSb = new StringBuilder(this.baseUri);
 		uriSb.append(this.URI_RT_REST_QUEUE_LIST);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString());
+		RtRestResponse response = getResponse(RtRestEndpoint.QUEUE_LIST, sessionId, uriSb.toString());
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestQueueResponseParser.parseQueueList(response.getBodyText());
+			long parseStart = System.nanoTime();
+			Map<Long, String> result = RtRestQueueResponseParser.parseQueueList(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.QUEUE_LIST, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Search queues request failed with RT REST status: " + response.getRtStatus().toString());
@@ -444,10 +837,14 @@ class RtRestClient {
 		LinkedMultiValueMap<String, String> postParams = new LinkedMultiValueMap<>();
 		postParams.add("content", content);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), postParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.QUEUE_CREATE, sessionId, uriSb.toString(), postParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestQueueResponseParser.parseQueueCreated(response.getBodyText());
+			long parseStart = System.nanoTime();
+			long result = RtRestQueueResponseParser.parseQueueCreated(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.QUEUE_CREATE, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Create queue request failed with RT REST status: " + response.getRtStatus().toString());
@@ -472,10 +869,14 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("user-id", String.valueOf(uid));
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.USER_PROPERTIES, sessionId, uriSb.toString(), uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestUserResponseParser.parseUser(response.getBodyText());
+			long parseStart = System.nanoTime();
+			RtUser result = RtRestUserResponseParser.parseUser(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.USER_PROPERTIES, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("User properties request (ID) failed with RT REST status: " + response.getRtStatus().toString());
@@ -492,10 +893,14 @@ class RtRestClient {
 		uriParams.put("query", query);
 		uriParams.put("order-by", orderby);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.USER_SEARCH, sessionId, uriSb.toString(), uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200) {
-			return RtRestUserResponseParser.parseUsers(response.getBodyText());
+			long parseStart = System.nanoTime();
+			List<RtUser> result = RtRestUserResponseParser.parseUsers(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.USER_SEARCH, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Search tickets request failed with RT REST status: " + response.getRtStatus().toString());
@@ -525,10 +930,14 @@ class RtRestClient {
 		HashMap<String, String> uriParams = new HashMap<>();
 		uriParams.put("user-id", userId);
 
-		RtRestResponse response = getResponse(sessionId, uriSb.toString(), postParams, uriParams);
+		RtRestResponse response = getResponse(RtRestEndpoint.USER_EDIT, sessionId, uriSb.toString(), postParams, uriParams);
 
 		if (response.getRtStatus() == RtRestStatus.STATUS_200 || response.getRtStatus() == RtRestStatus.STATUS_409) {
-			return RtRestUserResponseParser.parseUserEdited(response.getBodyText());
+			long parseStart = System.nanoTime();
+			boolean result = RtRestUserResponseParser.parseUserEdited(response.getBodyCursor());
+			entityParsed(RtRestEndpoint.USER_EDIT, parseStart);
+
+			return result;
 		}
 		else {
 			throw new RtException("Edit user request failed with RT REST status: " + response.getRtStatus().toString());
@@ -539,20 +948,22 @@ class RtRestClient {
 	/**
 	 * Perform a call to the REST API with no POST data and no URI variables.
 	 *
+	 * @param endpoint Endpoint the measurements of the request are reported for
 	 * @param sessionId	RT session ID to use for the request
 	 * @param uri URI of the REST API endpoint
 	 * @return Response object with session ID and body text
 	 *
 	 * @throws RtException
 	 */
-	private RtRestResponse getResponse(String sessionId, String uri) throws RtException {
-		return getResponse(sessionId, uri, new LinkedMultiValueMap<String, String>(), new HashMap<String, String>());
+	private RtRestResponse getResponse(RtRestEndpoint endpoint, String sessionId, String uri) throws RtException {
+		return getResponse(endpoint, sessionId, uri, new LinkedMultiValueMap<String, String>(), new HashMap<String, String>());
 	}
 
 
 	/**
 	 * Perform a call to the REST API with POST data and no URI variables.
 	 *
+	 * @param endpoint   Endpoint the measurements of the request are reported for
 	 * @param sessionId	RT session ID to use for the request, may be null if credentials are provided as POST data
 	 * @param uri        URI of the REST API endpoint
 	 * @param postParams Map of POST data
@@ -560,14 +971,15 @@ class RtRestClient {
 	 *
 	 * @throws RtException
 	 */
-	private RtRestResponse getResponse(String sessionId, String uri, MultiValueMap<String, String> postParams) throws RtException {
-		return getResponse(sessionId, uri, postParams, new HashMap<String, String>());
+	private RtRestResponse getResponse(RtRestEndpoint endpoint, String sessionId, String uri, MultiValueMap<String, String> postParams) throws RtException {
+		return getResponse(endpoint, sessionId, uri, postParams, new HashMap<String, String>());
 	}
 
 
 	/**
 	 * Perform a call to the REST API with URI variables and no POST data.
 	 *
+	 * @param endpoint  Endpoint the measurements of the request are reported for
 	 * @param sessionId	RT session ID to use for the request
 	 * @param uri       URI of the REST API endpoint
 	 * @param uriParams Map of URI variables
@@ -575,14 +987,15 @@ class RtRestClient {
 	 *
 	 * @throws RtException
 	 */
-	private RtRestResponse getResponse(String sessionId, String uri, Map<String, String> uriParams) throws RtException {
-		return getResponse(sessionId, uri, new LinkedMultiValueMap<String, String>(), uriParams);
+	private RtRestResponse getResponse(RtRestEndpoint endpoint, String sessionId, String uri, Map<String, String> uriParams) throws RtException {
+		return getResponse(endpoint, sessionId, uri, new LinkedMultiValueMap<String, String>(), uriParams);
 	}
 
 
 	/**
 	 * Perform a call to the REST API with POST data and URI variables.
 	 *
+	 * @param endpoint   Endpoint the measurements of the request are reported for
 	 * @param sessionId	RT session ID to use for the request, may be null if credentials are provided as POST data
 	 * @param uri        URI of the REST API endpoint
 	 * @param postParams Map of POST data
@@ -591,39 +1004,748 @@ class RtRestClient {
 	 *
 	 * @throws RtException
 	 */
-	private RtRestResponse getResponse(String sessionId, String uri, MultiValueMap<String, String> postParams, Map<String, String> uriParams) throws RtException {
-		HttpHeaders requestHeaders = new HttpHeaders();
+	private RtRestResponse getResponse(final RtRestEndpoint endpoint, final String sessionId, final String uri, final MultiValueMap<String, String> postParams, final Map<String, String> uriParams) throws RtException {
+		return executeWithRetry(endpoint, new Attempt<RtRestResponse>() {
+			@Override
+			RtRestResponse run() throws RtException {
+				return exchange(endpoint, sessionId, uri, postParams, uriParams, this);
+			}
+		});
+	}
 
-		// Ensure we get US/English date format from the REST API
-		requestHeaders.add("Accept-Language", this.HTTP_HEADERS_ACCEPT_LANGUAGE);
 
-		if(sessionId != null) {
-			// Add session ID as cookie data if provided
-			requestHeaders.add("Cookie", sessionId);
-		}
+	/**
+	 * Send a single request to the REST API with POST data and URI variables, without retrying it.
+	 *
+	 * @param endpoint   Endpoint the measurements of the request are reported for
+	 * @param sessionId	RT session ID to use for the request, may be null if credentials are provided as POST data
+	 * @param uri        URI of the REST API endpoint
+	 * @param postParams Map of POST data
+	 * @param uriParams  Map of URI variables
+	 * @param attempt    Attempt this request belongs to
+	 * @return Response object with session ID and body text
+	 *
+	 * @throws RtException
+	 */
+	private RtRestResponse exchange(RtRestEndpoint endpoint, String sessionId, String uri, MultiValueMap<String, String> postParams, Map<String, String> uriParams, Attempt<?> attempt) throws RtException {
+		ExchangeTimer timer = new ExchangeTimer(endpoint, attempt);
+		RtRestResponse rtRes = null;
+
+		try (RtRestTransportResponse response = this.transport.post(createRequest(sessionId, uri, postParams, uriParams, attempt))) {
+			timer.headersReceived(response.getStatusCode());
+			checkHttpStatus(response);
 
-		HttpEntity requestEntity = new HttpEntity(postParams, requestHeaders);
-		ResponseEntity<String> responseEntity = this.REST_TEMPLATE.exchange(uri, HttpMethod.POST, requestEntity, String.class, uriParams);
+			if(response.getStatusCode() == HttpStatus.OK.value()) {
+				String rtSessionId = readSessionCookie(sessionId, response.getHeader("Set-Cookie"));
+
+				byte[] bodyBytes = StreamUtils.copyToByteArray(response.getBody());
+				String bodyText = new String(bodyBytes, getCharset(response));
+				timer.bodyRead(bodyBytes.length);
+
+				// The status line is read once, the parsers continue behind it with the body cursor
+				RtRestLineCursor cursor = new RtRestLineCursor(bodyText);
+				RtRestStatus rtStatus = RtRestResponseParser.parseStatusLine(cursor.nextLine());
+				timer.statusParsed(rtStatus);
+
+				rtRes = new RtRestResponse(rtStatus, rtSessionId, bodyText, cursor.position());
+			}
+		}
+		catch(IOException ex) {
+			ResourceAccessException accessEx = ioError(uri, ex);
+			timer.failed(accessEx);
+			throw accessEx;
+		}
+		catch(RuntimeException ex) {
+			timer.failed(ex);
+			throw ex;
+		}
 
 		// Check if the request was successful
-		if (responseEntity.getStatusCode() == HttpStatus.OK) {
-			HttpHeaders responseHeaders = responseEntity.getHeaders();
-			String[] cookieHeader = responseHeaders.get("Set-Cookie").get(0).split(";");
-			String rtSessionId = cookieHeader[0];
+		if (rtRes != null) {
+			timer.completed();
 
-			RtRestStatus rtStatus = RtRestResponseParser.parseStatus(responseEntity.getBody());
+			RtRestStatus rtStatus = rtRes.getRtStatus();
 
 			if(LOG.isDebugEnabled() && rtStatus != RtRestStatus.STATUS_200) {
 				LOG.debug("Received error response from RT REST:");
-				LOG.debug(responseEntity.getBody());
+				LOG.debug(rtRes.getBodyText());
 			}
 
-			RtRestResponse rtRes = new RtRestResponse(rtStatus, rtSessionId, responseEntity.getBody());
+			if(sessionId != null && rtStatus == RtRestStatus.STATUS_401) {
+				throw new RtAuthenticationException("Session was rejected by RT, login required");
+			}
+
+			if(sessionId == null && rtStatus == RtRestStatus.STATUS_200 && rtRes.getSessionId() == null) {
+				// A successful login must set the session cookie, RT may have been restarting
+				throw new RtTransientException("RT did not send a session cookie");
+			}
 
 			return rtRes;
 		}
 		else {
-			throw new RtException("REST API call failed with HTTP status code: " + responseEntity.getStatusCode().toString());
+			RtException ex = new RtException("REST API call failed with HTTP status code: " + timer.httpStatus);
+			timer.failed(ex);
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Perform a call to the REST API with URI variables and no POST data and pass the response body to the consumer
+	 * while it is read from the connection.
+	 *
+	 * @param endpoint  Endpoint the measurements of the request are reported for
+	 * @param sessionId	RT session ID to use for the request
+	 * @param uri       URI of the REST API endpoint
+	 * @param uriParams Map of URI variables
+	 * @param consumer  Consumer for the response body, including the RT status line
+	 *
+	 * @throws RtException if the HTTP request failed or the consumer raised an exception
+	 */
+	private void getStreamingResponse(final RtRestEndpoint endpoint, final String sessionId, final String uri, final Map<String, String> uriParams, final ResponseBodyConsumer consumer) throws RtException {
+		executeWithRetry(endpoint, new Attempt<Void>() {
+			@Override
+			Void run() throws RtException {
+				streamingExchange(endpoint, sessionId, uri, uriParams, consumer, this);
+				return null;
+			}
+		});
+	}
+
+
+	/**
+	 * Send a single request to the REST API with URI variables and no POST data and pass the response body to the
+	 * consumer while it is read from the connection. The attempt is marked as not retryable as soon as the consumer
+	 * receives the body, since it may have passed parts of the result on already.
+	 *
+	 * @param endpoint  Endpoint the measurements of the request are reported for
+	 * @param sessionId	RT session ID to use for the request
+	 * @param uri       URI of the REST API endpoint
+	 * @param uriParams Map of URI variables
+	 * @param consumer  Consumer for the response body, including the RT status line
+	 * @param attempt   Attempt this request belongs to
+	 *
+	 * @throws RtException if the HTTP request failed or the consumer raised an exception
+	 */
+	private void streamingExchange(RtRestEndpoint endpoint, String sessionId, String uri, Map<String, String> uriParams, ResponseBodyConsumer consumer, Attempt<?> attempt) throws RtException {
+		ExchangeTimer timer = new ExchangeTimer(endpoint, attempt);
+		RtException consumerException = null;
+
+		try (RtRestTransportResponse response = this.transport.post(createRequest(sessionId, uri, new LinkedMultiValueMap<String, String>(), uriParams, attempt))) {
+			timer.headersReceived(response.getStatusCode());
+			checkHttpStatus(response);
+
+			if(response.getStatusCode() != HttpStatus.OK.value()) {
+				RtException ex = new RtException("REST API call failed with HTTP status code: " + response.getStatusCode());
+				timer.failed(ex);
+				throw ex;
+			}
+
+			readSessionCookie(sessionId, response.getHeader("Set-Cookie"));
+
+			CountingInputStream countingBody = new CountingInputStream(response.getBody());
+
+			attempt.bodyConsumed();
+
+			try {
+				if(!consumer.consume(new InputStreamReader(countingBody, getCharset(response)))) {
+					response.abort();
+				}
+			}
+			catch(RtException ex) {
+				consumerException = ex;
+			}
+			finally {
+				// The body is parsed while it is read, parse time is part of the body read phase
+				timer.bodyRead(countingBody.getCount());
+			}
+		}
+		catch(IOException ex) {
+			ResourceAccessException accessEx = ioError(uri, ex);
+			timer.failed(accessEx);
+			throw accessEx;
+		}
+		catch(RuntimeException ex) {
+			timer.failed(ex);
+			throw ex;
+		}
+
+		// Exceptions raised by the consumer are caused by the response content, the exchange itself was successful
+		timer.completed();
+
+		if(consumerException != null) {
+			throw consumerException;
+		}
+	}
+
+
+	/**
+	 * Run an attempt and run it again as long as it fails for a reason the retry policy considers transient, the
+	 * maximum number of attempts is not reached and the retry budget allows it. All attempts must finish before
+	 * the deadline of the calling thread or, if there is none, the deadline of the timeout policy.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param attempt Attempt to run
+	 * @return Result of the successful attempt
+	 *
+	 * @throws RtException the exception of the last attempt
+	 */
+	private <T> T executeWithRetry(RtRestEndpoint endpoint, Attempt<T> attempt) throws RtException {
+		RtRestRetryPolicy policy = this.retryPolicy;
+		RtRestRetryBudget budget = this.retryBudget;
+		RtRestDeadline deadline = RtRestDeadline.current();
+
+		if(deadline == null) {
+			long deadlineNanos = this.timeoutPolicy.getDeadlineNanos(endpoint.getOperationClass());
+
+			if(deadlineNanos > 0L) {
+				deadline = RtRestDeadline.after(deadlineNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		attempt.deadline = deadline;
+
+		if(policy.getMaxAttempts() == 1) {
+			return runGuarded(endpoint, attempt);
+		}
+
+		for(int attemptNumber = 1; ; attemptNumber++) {
+			try {
+				T result = runGuarded(endpoint, attempt);
+				budget.recordSuccess();
+
+				return result;
+			}
+			catch(RtException | RuntimeException ex) {
+				if(attemptNumber >= policy.getMaxAttempts() || !attempt.retryable || !policy.isRetryable(endpoint, ex)) {
+					throw ex;
+				}
+
+				if(!budget.tryAcquire()) {
+					LOG.warn("Retry budget exhausted, not retrying " + endpoint + " request: " + ex.getMessage());
+					throw ex;
+				}
+
+				long backoffNanos = policy.getBackoffNanos(attemptNumber);
+
+				if(deadline != null && backoffNanos >= deadline.remainingNanos()) {
+					if(LOG.isDebugEnabled()) {
+						LOG.debug("Not retrying " + endpoint + " request, the deadline expires before the next attempt: " + ex.getMessage());
+					}
+
+					throw ex;
+				}
+
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Retrying " + endpoint + " request in " + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + " ms: " + ex.getMessage());
+				}
+
+				this.instrumentation.requestRetried(endpoint, attemptNumber + 1, ex);
+
+				try {
+					TimeUnit.NANOSECONDS.sleep(backoffNanos);
+				}
+				catch(InterruptedException iex) {
+					Thread.currentThread().interrupt();
+					throw ex;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Run an attempt if the circuit breaker permits it. Without a circuit breaker the attempt is always run.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param attempt Attempt to run
+	 * @return Result of the attempt
+	 *
+	 * @throws RtException if the attempt failed or the circuit is open
+	 */
+	private <T> T runGuarded(RtRestEndpoint endpoint, Attempt<T> attempt) throws RtException {
+		RtRestCircuitBreaker currentBreaker = this.circuitBreaker;
+
+		if(currentBreaker == null) {
+			return runThrottled(endpoint, attempt);
+		}
+
+		RtRestCircuitBreaker.Permission permission;
+
+		try {
+			permission = currentBreaker.acquirePermission();
+		}
+		catch(RtCircuitOpenException ex) {
+			this.instrumentation.circuitRejected(endpoint);
+			throw ex;
+		}
+
+		attempt.permission = permission;
+
+		try {
+			return runThrottled(endpoint, attempt);
+		}
+		finally {
+			attempt.permission = null;
+			permission.release();
+		}
+	}
+
+
+	/**
+	 * Run an attempt after acquiring a slot from the throttle, if limits are configured.
+	 * The slot is held until the attempt finished, for streaming requests this includes processing the response.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param attempt Attempt to run
+	 * @return Result of the attempt
+	 *
+	 * @throws RtException if the attempt failed or did not get a slot
+	 */
+	private <T> T runThrottled(RtRestEndpoint endpoint, Attempt<T> attempt) throws RtException {
+		RtRestThrottle currentThrottle = this.throttle;
+
+		if(currentThrottle == null) {
+			return sendAttempt(endpoint, attempt);
+		}
+
+		RtRestThrottle.Permit permit;
+
+		try {
+			long maxWaitNanos = attempt.deadline != null ? Math.max(0L, attempt.deadline.remainingNanos()) : RtRestThrottlePolicy.WAIT_FOREVER;
+			permit = currentThrottle.acquire(endpoint.getOperationClass(), maxWaitNanos);
+		}
+		catch(RtThrottledException ex) {
+			this.instrumentation.throttleRejected(endpoint);
+
+			if(attempt.deadline != null && attempt.deadline.isOver()) {
+				throw deadlineExceeded(endpoint, attempt.deadline);
+			}
+
+			throw ex;
+		}
+
+		this.instrumentation.throttleAcquired(endpoint, permit.getWaitNanos(), permit.getQueueDepth());
+
+		try {
+			return sendAttempt(endpoint, attempt);
+		}
+		finally {
+			permit.release();
+		}
+	}
+
+
+	/**
+	 * Run an attempt with the timeouts of the timeout policy, limited by the time left until the deadline.
+	 * The request is aborted if the deadline expires or is cancelled while it is running.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param attempt Attempt to run
+	 * @return Result of the attempt
+	 *
+	 * @throws RtException if the attempt failed
+	 * @throws RtDeadlineExceededException if the deadline expired or was cancelled before or during the attempt
+	 */
+	private <T> T sendAttempt(RtRestEndpoint endpoint, Attempt<T> attempt) throws RtException {
+		RtRestTimeoutPolicy policy = this.timeoutPolicy;
+		RtRestDeadline deadline = attempt.deadline;
+		int connectTimeout = policy.getConnectTimeoutMillis();
+		int readTimeout = policy.getReadTimeoutMillis(endpoint.getOperationClass());
+
+		if(deadline == null) {
+			attempt.setTimeouts(connectTimeout, readTimeout, 0);
+
+			return attempt.run();
+		}
+
+		if(deadline.isOver()) {
+			throw deadlineExceeded(endpoint, deadline);
+		}
+
+		// Waiting for a pooled connection is limited by the deadline only
+		attempt.setTimeouts(deadline.limitTimeout(connectTimeout), deadline.limitTimeout(readTimeout), deadline.limitTimeout(0));
+		RtRestDeadline.Request request = deadline.startRequest();
+
+		try {
+			return attempt.run();
+		}
+		catch(RtException | RuntimeException ex) {
+			// Aborting the request makes it fail with an I/O error, report the actual reason instead
+			if(deadline.isOver()) {
+				throw deadlineExceeded(endpoint, deadline);
+			}
+
+			throw ex;
+		}
+		finally {
+			request.finish();
+		}
+	}
+
+
+	private RtDeadlineExceededException deadlineExceeded(RtRestEndpoint endpoint, RtRestDeadline deadline) {
+		if(deadline.isCancelled()) {
+			return new RtDeadlineExceededException(endpoint + " request was cancelled");
+		}
+		else {
+			return new RtDeadlineExceededException(endpoint + " request did not finish before its deadline");
+		}
+	}
+
+
+	/**
+	 * Create the transport request for an attempt. The URI variables are expanded and encoded the same way the
+	 * RestTemplate does it, the POST data is encoded as UTF-8 form data.
+	 *
+	 * @param sessionId	RT session ID to use for the request, may be null
+	 * @param uri        URI template of the REST API endpoint
+	 * @param postParams Map of POST data
+	 * @param uriParams  Map of URI variables
+	 * @param attempt    Attempt this request belongs to
+	 * @return Request to send
+	 */
+	private RtRestTransportRequest createRequest(String sessionId, String uri, MultiValueMap<String, String> postParams, Map<String, String> uriParams, Attempt<?> attempt) {
+		URI expandedUri = new UriTemplate(uri).expand(uriParams);
+
+		return new RtRestTransportRequest(expandedUri, sessionId, HTTP_HEADERS_ACCEPT_LANGUAGE, encodeForm(postParams), attempt.connectTimeoutMillis, attempt.readTimeoutMillis, attempt.leaseTimeoutMillis);
+	}
+
+
+	/**
+	 * Build the value of the fields parameter of ticket show and search requests. The ticket ID is always requested.
+	 * RT selects custom fields only by their name, so if custom fields are selected, no fields parameter is sent
+	 * and RT returns all fields. The text is not part of ticket properties and is never requested.
+	 *
+	 * @param fields Selected fields
+	 * @return Comma separated list of RT field names, null if all fields must be requested
+	 */
+	static String fieldsParameter(Set<RtTicketField> fields) {
+		if(fields.contains(RtTicketField.CUSTOM_FIELDS)) {
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder("id");
+
+		for(RtTicketField field : fields) {
+			if(field != RtTicketField.TEXT) {
+				sb.append(',');
+				sb.append(field.getFieldName());
+			}
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Encode POST data as form data, like the FormHttpMessageConverter does.
+	 *
+	 * @param postParams Map of POST data
+	 * @return Encoded form data
+	 */
+	static byte[] encodeForm(MultiValueMap<String, String> postParams) {
+		if(postParams.isEmpty()) {
+			return new byte[0];
+		}
+
+		try {
+			StringBuilder sb = new StringBuilder();
+
+			for(Map.Entry<String, List<String>> param : postParams.entrySet()) {
+				String name = URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8.name());
+
+				for(String value : param.getValue()) {
+					if(sb.length() > 0) {
+						sb.append('&');
+					}
+
+					sb.append(name);
+
+					if(value != null) {
+						sb.append('=');
+						sb.append(URLEncoder.encode(value, StandardCharsets.UTF_8.name()));
+					}
+				}
+			}
+
+			return sb.toString().getBytes(StandardCharsets.UTF_8);
+		}
+		catch(UnsupportedEncodingException ex) {
+			// UTF-8 is supported by every JVM
+			throw new IllegalStateException(ex);
+		}
+	}
+
+
+	/**
+	 * Raise the exception the RestTemplate raised for responses with a 4xx or 5xx status. The retry policy and the
+	 * circuit breaker decide on these exceptions whether a request failed for a transient reason.
+	 *
+	 * @param response HTTP response
+	 */
+	private static void checkHttpStatus(RtRestTransportResponse response) {
+		checkHttpStatus(response.getStatusCode(), response.getStatusText());
+	}
+
+
+	/**
+	 * Raise the exception the RestTemplate raised for a 4xx or 5xx status.
+	 *
+	 * @param statusCode HTTP status code of the response
+	 * @param statusText Reason phrase of the response
+	 */
+	static void checkHttpStatus(int statusCode, String statusText) {
+		if(statusCode < 400) {
+			return;
+		}
+
+		HttpStatus status;
+
+		try {
+			status = HttpStatus.valueOf(statusCode);
+		}
+		catch(IllegalArgumentException ex) {
+			throw new UnknownHttpStatusCodeException(statusCode, statusText, null, null, null);
+		}
+
+		if(statusCode < 500) {
+			throw new HttpClientErrorException(status, statusText);
+		}
+		else {
+			throw new HttpServerErrorException(status, statusText);
+		}
+	}
+
+
+	/**
+	 * Wrap an I/O error of the transport into the exception the RestTemplate raised for it.
+	 *
+	 * @param uri URI template of the request
+	 * @param ex I/O error
+	 * @return Exception to raise
+	 */
+	static ResourceAccessException ioError(String uri, IOException ex) {
+		return new ResourceAccessException("I/O error on POST request for \"" + uri + "\": " + ex.getMessage(), ex);
+	}
+
+
+	/**
+	 * Get the charset of a response body. This is the charset of the Content-Type header or ISO-8859-1 if the
+	 * header does not define one, which is the same behavior as the StringHttpMessageConverter.
+	 *
+	 * @param response HTTP response
+	 * @return Charset of the body
+	 */
+	private Charset getCharset(RtRestTransportResponse response) {
+		String contentTypeHeader = response.getHeader("Content-Type");
+
+		if(contentTypeHeader != null) {
+			try {
+				MediaType contentType = MediaType.parseMediaType(contentTypeHeader);
+
+				if(contentType.getCharSet() != null) {
+					return contentType.getCharSet();
+				}
+			}
+			catch(IllegalArgumentException ex) {
+				LOG.warn("Invalid Content-Type header ignored: " + contentTypeHeader);
+			}
+		}
+
+		return StringHttpMessageConverter.DEFAULT_CHARSET;
+	}
+
+
+	/**
+	 * Report the time spent parsing a response body into model objects to the instrumentation.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param parseStart Value of System.nanoTime() before parsing was started
+	 */
+	private void entityParsed(RtRestEndpoint endpoint, long parseStart) {
+		this.instrumentation.entityParsed(endpoint, System.nanoTime() - parseStart);
+	}
+
+
+	/**
+	 * Read the session ID from the cookie set by RT and inform the session listeners if it differs from the
+	 * session ID sent with the request.
+	 *
+	 * @param sessionId Session ID sent with the request, may be null
+	 * @param cookieHeader Set-Cookie header of the response, may be null
+	 * @return Session ID set by RT, null if the response did not set a cookie
+	 */
+	private String readSessionCookie(String sessionId, String cookieHeader) {
+		if(cookieHeader == null) {
+			return null;
+		}
+
+		// Only the name=value part is sent back to RT
+		int attributesIndex = cookieHeader.indexOf(';');
+		String rtSessionId = attributesIndex >= 0 ? cookieHeader.substring(0, attributesIndex) : cookieHeader;
+
+		if(sessionId != null && !sessionId.equals(rtSessionId)) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("RT session rotated: " + sessionId + " -> " + rtSessionId);
+			}
+
+			for(RtSessionListener listener : this.sessionListeners) {
+				listener.sessionRotated(sessionId, rtSessionId);
+			}
+		}
+
+		return rtSessionId;
+	}
+
+
+	/**
+	 * A request which may be sent more than once by executeWithRetry().
+	 */
+	private abstract static class Attempt<T> {
+		private boolean retryable = true;
+		private RtRestCircuitBreaker.Permission permission = null;
+		private RtRestDeadline deadline = null;
+		private int connectTimeoutMillis = 0;
+		private int readTimeoutMillis = 0;
+		private int leaseTimeoutMillis = 0;
+
+
+		/**
+		 * Send the request.
+		 *
+		 * @return Result of the request
+		 */
+		abstract T run() throws RtException;
+
+
+		/**
+		 * Mark the attempt as not retryable because the response was passed on to the caller.
+		 */
+		void bodyConsumed() {
+			this.retryable = false;
+		}
+
+
+		/**
+		 * Set the timeouts of the next request of this attempt, 0 if unlimited.
+		 */
+		void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis, int leaseTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			this.readTimeoutMillis = readTimeoutMillis;
+			this.leaseTimeoutMillis = leaseTimeoutMillis;
+		}
+	}
+
+
+	/**
+	 * Consumer for a response body which is read from the connection while it is processed.
+	 */
+	private static interface ResponseBodyConsumer {
+		/**
+		 * Process the response body.
+		 *
+		 * @param body Reader providing the response body
+		 * @return true if the body was read completely, false if the rest of it shall be discarded
+		 */
+		boolean consume(Reader body) throws RtException, IOException;
+	}
+
+
+	/**
+	 * Measures the phases of a single HTTP exchange and reports them to the instrumentation when it finished.
+	 * The measurements are reported only once, further calls of completed() or failed() are ignored.
+	 * The result is also recorded by the circuit breaker permission of the attempt, if there is one.
+	 */
+	private class ExchangeTimer {
+		private final RtRestEndpoint endpoint;
+		private final RtRestCircuitBreaker.Permission permission;
+		private final RtRestDeadline deadline;
+		private final long startNanos;
+		private long connectedNanos = -1L;
+		private long headersNanos = -1L;
+		private long bodyReadNanos = -1L;
+		private long statusParsedNanos = -1L;
+		private int httpStatus = -1;
+		private RtRestStatus rtStatus = null;
+		private long responseBytes = -1L;
+		private boolean reported = false;
+
+
+		ExchangeTimer(RtRestEndpoint endpoint, Attempt<?> attempt) {
+			this.endpoint = endpoint;
+			this.permission = attempt.permission;
+			this.deadline = attempt.deadline;
+
+			// Clear a connect time left by a request of this thread that did not report it
+			RtRestConnectionPool.takeConnectedNanos();
+			this.startNanos = System.nanoTime();
+		}
+
+
+		void headersReceived(int httpStatus) {
+			this.headersNanos = System.nanoTime();
+			this.connectedNanos = RtRestConnectionPool.takeConnectedNanos();
+			this.httpStatus = httpStatus;
+		}
+
+
+		void bodyRead(long responseBytes) {
+			this.bodyReadNanos = System.nanoTime();
+			this.responseBytes = responseBytes;
+		}
+
+
+		void statusParsed(RtRestStatus rtStatus) {
+			this.statusParsedNanos = System.nanoTime();
+			this.rtStatus = rtStatus;
+		}
+
+
+		void completed() {
+			report(null);
+		}
+
+
+		void failed(Exception failure) {
+			report(failure);
+		}
+
+
+		private void report(Exception failure) {
+			if(this.reported) {
+				return;
+			}
+
+			this.reported = true;
+
+			// Without a response the time until the failure is reported as server wait time
+			long headersAt = this.headersNanos >= 0L ? this.headersNanos : System.nanoTime();
+			long connect = -1L;
+			long serverWait;
+
+			if(this.connectedNanos >= this.startNanos && this.connectedNanos <= headersAt) {
+				connect = this.connectedNanos - this.startNanos;
+				serverWait = headersAt - this.connectedNanos;
+			}
+			else {
+				serverWait = headersAt - this.startNanos;
+			}
+
+			long bodyRead = this.bodyReadNanos >= 0L ? this.bodyReadNanos - headersAt : -1L;
+			long statusParse = this.statusParsedNanos >= 0L ? this.statusParsedNanos - this.bodyReadNanos : -1L;
+
+			instrumentation.exchangeCompleted(new RtRestExchangeMetrics(this.endpoint, connect, serverWait, bodyRead, statusParse, this.httpStatus, this.rtStatus, this.responseBytes, failure));
+
+			if(this.permission != null) {
+				if(this.deadline != null && this.deadline.isCancelled()) {
+					// A cancelled request says nothing about the health of RT
+					this.permission.release();
+				}
+				else {
+					this.permission.record(failure, headersAt - this.startNanos);
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,455 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+
+/**
+ * This class provides a pooled HTTP transport for the RtRestClient based on the Apache HttpClient.
+ * Connections to the RT server are kept alive and reused for subsequent requests instead of opening a new
+ * TCP connection (and doing a new SSL handshake) for every request. A background thread evicts connections
+ * that have been idle for too long or were closed by the server.<br>
+ * SSL connections use the system TrustStore configured via the javax.net.ssl.* system properties.<br>
+ * The time at which a request is written to an established connection is recorded for the calling thread, this
+ * allows the RtRestClient to report the connect time separately from the time spent waiting for RT.<br>
+ * The pool sends the requests of RtRestClient itself as RtRestTransport, getRequestFactory() provides the same
+ * pool to a RtRestSpringTransport. The Spring factories read the timeouts of a request from the calling thread,
+ * where RtRestSpringTransport sets them before the request is created. Requests are registered with the
+ * RtRestDeadline of the call, which aborts them when it expires.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class RtRestConnectionPool implements RtRestTransport {
+	private static final Logger LOG = Logger.getLogger(RtRestConnectionPool.class);
+	private static final ThreadLocal<long[]> CONNECTED_AT = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { -1L };
+		}
+	};
+	private static final ThreadLocal<RequestConfig> REQUEST_CONFIG = new ThreadLocal<>();
+	private static final ContentType FORM_CONTENT_TYPE = ContentType.create(RtRestTransportRequest.CONTENT_TYPE);
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final HttpComponentsClientHttpRequestFactory requestFactory;
+	private final IdleConnectionEvictor evictor;
+
+
+	/**
+	 * Create a new connection pool and start its idle connection eviction thread.
+	 *
+	 * @param maxTotal Maximum number of open connections in total
+	 * @param maxPerRoute Maximum number of open connections per route (RT server)
+	 * @param keepAliveMillis Maximum time a connection is kept alive for reuse, the server may request a shorter time
+	 * @param idleTimeoutMillis Time after which an unused connection is closed by the eviction thread
+	 */
+	RtRestConnectionPool(int maxTotal, int maxPerRoute, long keepAliveMillis, long idleTimeoutMillis) {
+		if(maxTotal <= 0 || maxPerRoute <= 0) {
+			throw new IllegalArgumentException("Connection limits must be greater than 0");
+		}
+
+		if(maxPerRoute > maxTotal) {
+			throw new IllegalArgumentException("Connections per route cannot exceed total connection limit");
+		}
+
+		Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+				.build();
+
+		this.connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+		this.connectionManager.setMaxTotal(maxTotal);
+		this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		this.httpClient = HttpClients.custom()
+				.useSystemProperties()
+				.setConnectionManager(this.connectionManager)
+				.setKeepAliveStrategy(new CappedKeepAliveStrategy(keepAliveMillis))
+				.setRequestExecutor(new TimingRequestExecutor())
+				.build();
+
+		this.requestFactory = new PooledRequestFactory(this.httpClient);
+
+		this.evictor = new IdleConnectionEvictor(this.connectionManager, idleTimeoutMillis);
+		this.evictor.start();
+	}
+
+
+	/**
+	 * Send a request through this pool. Aborting the request closes its connection, the pool opens a new one when
+	 * needed.
+	 *
+	 * @param request Request to send
+	 * @return Response, its connection is returned to the pool when the body was read and the response closed
+	 *
+	 * @throws IOException if the request failed
+	 */
+	@Override
+	public RtRestTransportResponse post(RtRestTransportRequest request) throws IOException {
+		final HttpPost httpPost = new HttpPost(request.getUri());
+
+		for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			httpPost.addHeader(header.getKey(), header.getValue());
+		}
+
+		httpPost.setEntity(new ByteArrayEntity(request.getBody(), FORM_CONTENT_TYPE));
+
+		HttpClientContext context = HttpClientContext.create();
+		context.setRequestConfig(RequestConfig.custom()
+				.setConnectTimeout(request.getConnectTimeoutMillis())
+				.setSocketTimeout(request.getReadTimeoutMillis())
+				.setConnectionRequestTimeout(request.getLeaseTimeoutMillis())
+				.build());
+
+		request.registerAbort(new Runnable() {
+			@Override
+			public void run() {
+				httpPost.abort();
+			}
+		});
+
+		return new PooledResponse(httpPost, this.httpClient.execute(httpPost, context));
+	}
+
+
+	/**
+	 * Get the request factory which must be used by a RtRestSpringTransport to send requests through this pool.
+	 *
+	 * @return Request factory backed by this pool
+	 */
+	ClientHttpRequestFactory getRequestFactory() {
+		return this.requestFactory;
+	}
+
+
+	/**
+	 * Get and clear the time at which the last request of the calling thread was written to its connection.
+	 * At this time a pooled connection was leased or a new connection was opened.
+	 *
+	 * @return Value of System.nanoTime() at that time, -1 if no request was sent through a pool since the last call
+	 */
+	static long takeConnectedNanos() {
+		long[] connectedAt = CONNECTED_AT.get();
+		long nanos = connectedAt[0];
+		connectedAt[0] = -1L;
+
+		return nanos;
+	}
+
+
+	/**
+	 * Set the timeouts for the next requests of the calling thread.
+	 *
+	 * @param connectTimeoutMillis Time to open a connection, 0 if unlimited
+	 * @param readTimeoutMillis Time RT may stay silent while the response is read, 0 if unlimited
+	 * @param leaseTimeoutMillis Time to wait for a pooled connection, 0 if unlimited
+	 */
+	static void setRequestTimeouts(int connectTimeoutMillis, int readTimeoutMillis, int leaseTimeoutMillis) {
+		REQUEST_CONFIG.set(RequestConfig.custom()
+				.setConnectTimeout(connectTimeoutMillis)
+				.setSocketTimeout(readTimeoutMillis)
+				.setConnectionRequestTimeout(leaseTimeoutMillis)
+				.build());
+	}
+
+
+	/**
+	 * Remove the timeouts of the calling thread, further requests use the defaults of the transport.
+	 */
+	static void clearRequestTimeouts() {
+		REQUEST_CONFIG.remove();
+	}
+
+
+	/**
+	 * Create a request factory which opens a new connection for every request and applies the timeouts set by
+	 * setRequestTimeouts().
+	 *
+	 * @return Request factory without a pool
+	 */
+	static ClientHttpRequestFactory createUnpooledRequestFactory() {
+		return new UnpooledRequestFactory();
+	}
+
+
+	/**
+	 * Stop the eviction thread and close all pooled connections.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.evictor.shutdown();
+		this.httpClient.close();
+
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("RT connection pool closed");
+		}
+	}
+
+
+	/**
+	 * Request factory which applies the timeouts of the calling thread and registers the requests with the
+	 * deadline of the call. Aborting a request closes its connection, the pool opens a new one when needed.
+	 */
+	private static class PooledRequestFactory extends HttpComponentsClientHttpRequestFactory {
+		PooledRequestFactory(CloseableHttpClient httpClient) {
+			super(httpClient);
+		}
+
+
+		@Override
+		protected void postProcessHttpRequest(final HttpUriRequest request) {
+			RtRestDeadline.requestCreated(new RtRestDeadline.Abortable() {
+				@Override
+				public void abort() {
+					request.abort();
+				}
+			});
+		}
+
+
+		@Override
+		protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+			RequestConfig config = REQUEST_CONFIG.get();
+
+			if(config == null) {
+				return null;
+			}
+
+			HttpClientContext context = HttpClientContext.create();
+			context.setRequestConfig(config);
+
+			return context;
+		}
+	}
+
+
+	/**
+	 * Request factory for clients without a pool which applies the timeouts of the calling thread and registers
+	 * the connections with the deadline of the call.
+	 */
+	private static class UnpooledRequestFactory extends SimpleClientHttpRequestFactory {
+		@Override
+		protected void prepareConnection(final HttpURLConnection connection, String httpMethod) throws IOException {
+			super.prepareConnection(connection, httpMethod);
+
+			RequestConfig config = REQUEST_CONFIG.get();
+
+			if(config != null) {
+				connection.setConnectTimeout(config.getConnectTimeout());
+				connection.setReadTimeout(config.getSocketTimeout());
+			}
+
+			RtRestDeadline.requestCreated(new RtRestDeadline.Abortable() {
+				@Override
+				public void abort() {
+					connection.disconnect();
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Response of a request sent through the pool.
+	 */
+	private static class PooledResponse implements RtRestTransportResponse {
+		private final HttpPost request;
+		private final CloseableHttpResponse response;
+
+
+		PooledResponse(HttpPost request, CloseableHttpResponse response) {
+			this.request = request;
+			this.response = response;
+		}
+
+
+		@Override
+		public int getStatusCode() {
+			return this.response.getStatusLine().getStatusCode();
+		}
+
+
+		@Override
+		public String getStatusText() {
+			String reasonPhrase = this.response.getStatusLine().getReasonPhrase();
+			return reasonPhrase != null ? reasonPhrase : "";
+		}
+
+
+		@Override
+		public String getHeader(String name) {
+			Header header = this.response.getFirstHeader(name);
+			return header != null ? header.getValue() : null;
+		}
+
+
+		@Override
+		public InputStream getBody() throws IOException {
+			HttpEntity entity = this.response.getEntity();
+			return entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
+		}
+
+
+		@Override
+		public void abort() {
+			this.request.abort();
+		}
+
+
+		/**
+		 * Read the rest of the body to return the connection to the pool, unless the request was aborted.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if(!this.request.isAborted()) {
+					EntityUtils.consume(this.response.getEntity());
+				}
+			}
+			finally {
+				this.response.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Keep-alive strategy that honors the Keep-Alive header sent by the server but never keeps a connection
+	 * alive longer than the configured maximum.
+	 */
+	private static class CappedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+		private final long maxKeepAliveMillis;
+
+
+		CappedKeepAliveStrategy(long maxKeepAliveMillis) {
+			this.maxKeepAliveMillis = maxKeepAliveMillis;
+		}
+
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+
+			if(serverKeepAlive > 0 && serverKeepAlive < this.maxKeepAliveMillis) {
+				return serverKeepAlive;
+			}
+			else {
+				return this.maxKeepAliveMillis;
+			}
+		}
+	}
+
+
+	/**
+	 * Request executor which records the time at which a request is sent. It is called by HttpClient after the
+	 * connection was leased from the pool and established.
+	 */
+	private static class TimingRequestExecutor extends HttpRequestExecutor {
+		@Override
+		public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+			CONNECTED_AT.get()[0] = System.nanoTime();
+
+			return super.execute(request, conn, context);
+		}
+	}
+
+
+	/**
+	 * Daemon thread that periodically closes expired and idle connections.
+	 * HttpClient 4.3 does not provide this itself, without it a connection closed by the server would only be
+	 * detected when it is leased for the next request.
+	 */
+	private static class IdleConnectionEvictor extends Thread {
+		private final PoolingHttpClientConnectionManager connectionManager;
+		private final long idleTimeoutMillis;
+		private final long sleepMillis;
+		private volatile boolean shutdown = false;
+
+
+		IdleConnectionEvictor(PoolingHttpClientConnectionManager connectionManager, long idleTimeoutMillis) {
+			super("rt-connection-evictor");
+			setDaemon(true);
+
+			this.connectionManager = connectionManager;
+			this.idleTimeoutMillis = idleTimeoutMillis;
+
+			// Check at least every 5 seconds, more often for very short idle timeouts
+			this.sleepMillis = Math.max(100L, Math.min(5000L, idleTimeoutMillis / 2));
+		}
+
+
+		@Override
+		public void run() {
+			try {
+				while(!this.shutdown) {
+					Thread.sleep(this.sleepMillis);
+
+					this.connectionManager.closeExpiredConnections();
+					this.connectionManager.closeIdleConnections(this.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+				}
+			}
+			catch(InterruptedException ex) {
+				// Interrupted by shutdown(), terminate
+			}
+		}
+
+
+		void shutdown() {
+			this.shutdown = true;
+			interrupt();
+		}
+	}
+}
@@ -16,19 +16,50 @@
  */
 package de.decoit.rt.rest;
 
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.decoit.rt.RtConflictException;
 import de.decoit.rt.RtConnector;
 import de.decoit.rt.RtException;
+import de.decoit.rt.RtSessionListener;
+import de.decoit.rt.RtTicketCursor;
+import de.decoit.rt.RtTicketHandler;
 import de.decoit.rt.model.RtQueue;
 import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
 import de.decoit.rt.model.RtTicketHistoryItem;
 import de.decoit.rt.model.RtTicketHistoryItem.RtTicketHistoryItemType;
 import de.decoit.rt.model.RtUser;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
+import org.springframework.web.client.RestClientException;
 
 
 /**
@@ -37,23 +68,63 @@ import org.apache.log4j.PropertyConfigurator;
  * This is required for SSL connections, if not SSL should be used the file may be absent or empty. If the file
  * is absent a warning will be logged.<br>
  * Additionally this class will configure the log4j system using a log4j.properties file located at the root of the
- * classpath. If this file does not exist the logging system will not work properly.
+ * classpath. If this file does not exist the logging system will not work properly.<br>
+ * Instances created by the builder use a pooled HTTP transport which keeps connections to RT alive. Such an
+ * instance should be closed when it is no longer needed to release the pooled connections.
  *
  * @author Thomas Rix (rix@decoit.de)
  */
-public class RtRestConnector implements RtConnector {
+public class RtRestConnector implements RtConnector, Closeable {
+	private static final String JDK_TRANSPORT_CLASS = "de.decoit.rt.rest.RtRestJdkTransport";
+	private static final Function<RtTicket, RtTicket> TICKET_COPIER = new Function<RtTicket, RtTicket>() {
+		@Override
+		public RtTicket apply(RtTicket ticket) {
+			return new RtTicket(ticket);
+		}
+	};
+	private static final Function<RtQueue, RtQueue> QUEUE_COPIER = new Function<RtQueue, RtQueue>() {
+		@Override
+		public RtQueue apply(RtQueue queue) {
+			return new RtQueue(queue);
+		}
+	};
+	private static final Function<RtUser, RtUser> USER_COPIER = new Function<RtUser, RtUser>() {
+		@Override
+		public RtUser apply(RtUser user) {
+			return new RtUser(user);
+		}
+	};
+
 	private final Logger LOG;
 	private RtRestClient client = null;
+	private RtRestTransport transport = null;
+	private final int bulkChunkSize;
+	private final ExecutorService bulkExecutor;
+	private final RtRestEditMode editMode;
+	private final RtRestSingleFlight singleFlight;
+	private final RtRestInstrumentation instrumentation;
+	private final ConcurrentMap<String, String> sessionPrincipals = new ConcurrentHashMap<>();
 
 
 	/**
 	 * Initialize the object.
 	 * The constructor will configure the log4j system and set the system properties for the Java TrustStore and its password.
 	 * Also it will create an instance of the RtRestClient class using the provided RT base URI and credentials.
+	 * The client will open a new connection for every request, use builder() to create a connector with a pooled transport.
 	 *
 	 * @param rtBaseUri Base URI of the RT installation, i.e. http://10.10.10.10/
 	 */
 	public RtRestConnector(String rtBaseUri) {
+		this(new Builder(rtBaseUri).withoutConnectionPool());
+	}
+
+
+	/**
+	 * Initialize the object from the settings of a builder.
+	 *
+	 * @param builder Builder holding the configuration
+	 */
+	private RtRestConnector(Builder builder) {
 		// Configure log4j system
 		if(Files.exists(Paths.get("log4j.properties"))) {
 			PropertyConfigurator.configure("log4j.properties");
@@ -62,7 +133,174 @@ public class RtRestConnector implements RtConnector {
 		LOG = Logger.getLogger(RtRestConnector.class.getName());
 
 		// Create the REST client
-		this.client = new RtRestClient(rtBaseUri);
+		if(builder.transport != null) {
+			this.transport = builder.transport;
+		}
+		else if(builder.jdkTransport) {
+			this.transport = loadJdkTransport();
+		}
+		else if(builder.pooled) {
+			this.transport = new RtRestConnectionPool(builder.maxConnectionsTotal, builder.maxConnectionsPerRoute, builder.keepAliveMillis, builder.idleTimeoutMillis);
+		}
+		else {
+			this.transport = new RtRestSpringTransport(RtRestConnectionPool.createUnpooledRequestFactory());
+		}
+
+		try {
+			this.client = new RtRestClient(builder.rtBaseUri, this.transport);
+		}
+		catch(IllegalArgumentException ex) {
+			try {
+				this.transport.close();
+			}
+			catch(IOException ioEx) {
+				LOG.warn("Closing the transport failed: " + ioEx.getMessage());
+			}
+
+			throw ex;
+		}
+
+		this.instrumentation = builder.instrumentation;
+		client.setInstrumentation(builder.instrumentation);
+		client.setRetryPolicy(builder.retryPolicy);
+		client.setThrottlePolicy(builder.throttlePolicy);
+		client.setCircuitBreakerPolicy(builder.circuitBreakerPolicy);
+		client.setTimeoutPolicy(builder.timeoutPolicy);
+
+		this.editMode = builder.editMode;
+
+		if(builder.coalesceRequests) {
+			this.singleFlight = new RtRestSingleFlight();
+
+			// Keep the principal of rotated sessions
+			client.addSessionListener(new RtSessionListener() {
+				@Override
+				public void sessionRotated(String oldSessionId, String newSessionId) {
+					String principal = sessionPrincipals.remove(oldSessionId);
+
+					if(principal != null) {
+						sessionPrincipals.put(newSessionId, principal);
+					}
+				}
+			});
+		}
+		else {
+			this.singleFlight = null;
+		}
+
+		// Bulk requests are split into chunks which are fetched concurrently if parallelism is greater than 1
+		this.bulkChunkSize = builder.bulkChunkSize;
+
+		if(builder.virtualThreads) {
+			// Every chunk gets its own thread, the connections of the pool limit the concurrent requests
+			this.bulkExecutor = RtRestVirtualThreads.newThreadPerTaskExecutor("rt-bulk-");
+		}
+		else if(builder.bulkParallelism > 1) {
+			// Idle threads terminate, connectors created without the builder are usually never closed
+			ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("rt-bulk-%d").setDaemon(true).build();
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(builder.bulkParallelism, builder.bulkParallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			executor.allowCoreThreadTimeOut(true);
+
+			this.bulkExecutor = executor;
+		}
+		else {
+			this.bulkExecutor = null;
+		}
+	}
+
+
+	/**
+	 * Create a builder for a connector to the RT installation with the provided base URI.
+	 * By default the connector will use a pooled HTTP transport.
+	 *
+	 * @param rtBaseUri Base URI of the RT installation, i.e. http://10.10.10.10/
+	 * @return A new builder object
+	 */
+	public static Builder builder(String rtBaseUri) {
+		return new Builder(rtBaseUri);
+	}
+
+
+	/**
+	 * Release the transport and the bulk request threads of this connector, including the pooled connections.
+	 * Open RT sessions are not logged out by this method.
+	 *
+	 * @throws IOException if closing the transport failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if(this.bulkExecutor != null) {
+			this.bulkExecutor.shutdown();
+		}
+
+		this.transport.close();
+	}
+
+
+	/**
+	 * Check if the transport based on the java.net.http client can be used. It requires Java 11 or later and the
+	 * rt-connector-jdk11 module on the classpath.
+	 *
+	 * @return true if Builder.jdkTransport() can be used
+	 */
+	public static boolean isJdkTransportAvailable() {
+		try {
+			Class.forName(JDK_TRANSPORT_CLASS);
+			return true;
+		}
+		catch(ClassNotFoundException | LinkageError ex) {
+			return false;
+		}
+	}
+
+
+	/**
+	 * Check if the JVM supports virtual threads, which are required by Builder.virtualThreads().
+	 *
+	 * @return true if Java 21 or later is running
+	 */
+	public static boolean isVirtualThreadsAvailable() {
+		return RtRestVirtualThreads.isAvailable();
+	}
+
+
+	/**
+	 * Create the transport based on the java.net.http client. The class is loaded by name since it is compiled
+	 * for Java 11 and the connector itself runs on Java 7.
+	 *
+	 * @return A new transport
+	 */
+	private static RtRestTransport loadJdkTransport() {
+		try {
+			return Class.forName(JDK_TRANSPORT_CLASS).asSubclass(RtRestTransport.class).getDeclaredConstructor().newInstance();
+		}
+		catch(ClassNotFoundException | LinkageError ex) {
+			throw new IllegalStateException("The JDK transport requires Java 11 and the rt-connector-jdk11 module", ex);
+		}
+		catch(InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException ex) {
+			throw new IllegalStateException("The JDK transport could not be created", ex);
+		}
+	}
+
+
+	/**
+	 * Add a listener which is informed when RT replaces the session cookie of a session.
+	 * RtRestSessionPool uses this to track the current cookie of its sessions.
+	 *
+	 * @param listener Listener to add
+	 */
+	public void addSessionListener(RtSessionListener listener) {
+		client.addSessionListener(listener);
+	}
+
+
+	/**
+	 * Remove a previously added session listener.
+	 *
+	 * @param listener Listener to remove
+	 */
+	public void removeSessionListener(RtSessionListener listener) {
+		client.removeSessionListener(listener);
 	}
 
 
@@ -75,6 +313,10 @@ public class RtRestConnector implements RtConnector {
 
 		String sessionId = client.login(uname, password);
 
+		if(this.singleFlight != null) {
+			this.sessionPrincipals.put(sessionId, uname);
+		}
+
 		return sessionId;
 	}
 
@@ -82,15 +324,131 @@ public class RtRestConnector implements RtConnector {
 	@Override
 	public void logout(String sessionId) throws RtException {
 		client.logout(sessionId);
+		this.sessionPrincipals.remove(sessionId);
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * If request coalescing is enabled, concurrent calls for the same ticket by the same user share one request.
+	 */
 	@Override
-	public RtTicket getTicket(String sessionId, long id) throws RtException {
+	public RtTicket getTicket(final String sessionId, long id) throws RtException {
 		StringBuilder idSb = new StringBuilder("ticket/");
 		idSb.append(id);
+		final String ticketId = idSb.toString();
+
+		return coalesce(ticketId, sessionId, new RtRestSingleFlight.Call<RtTicket>() {
+			@Override
+			public RtTicket call() throws RtException {
+				return client.ticketProperties(sessionId, ticketId);
+			}
+		}, TICKET_COPIER);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * If request coalescing is enabled, concurrent calls for the same ticket and fields by the same user share one
+	 * request.
+	 */
+	@Override
+	public RtTicket getTicket(final String sessionId, long id, final Set<RtTicketField> fields) throws RtException {
+		if(fields == null) {
+			throw new IllegalArgumentException("Fields cannot be null");
+		}
+
+		StringBuilder idSb = new StringBuilder("ticket/");
+		idSb.append(id);
+		final String ticketId = idSb.toString();
+
+		// Equal field selections must produce the same key regardless of the Set implementation
+		idSb.append('?');
+		idSb.append(fields.isEmpty() ? EnumSet.noneOf(RtTicketField.class) : EnumSet.copyOf(fields));
+
+		return coalesce(idSb.toString(), sessionId, new RtRestSingleFlight.Call<RtTicket>() {
+			@Override
+			public RtTicket call() throws RtException {
+				return client.ticketProperties(sessionId, ticketId, fields);
+			}
+		}, TICKET_COPIER);
+	}
+
+
+	@Override
+	public Map<Long, RtTicket> getTickets(final String sessionId, Collection<Long> ids) throws RtException {
+		// Remove duplicate IDs while keeping the input order
+		LinkedHashSet<Long> idSet = new LinkedHashSet<>(ids);
+		List<List<Long>> chunks = Lists.partition(new ArrayList<>(idSet), this.bulkChunkSize);
+		HashMap<Long, RtTicket> foundTickets = new HashMap<>();
 
-		return client.ticketProperties(sessionId, idSb.toString());
+		if(this.bulkExecutor == null || chunks.size() <= 1) {
+			for(List<Long> chunk : chunks) {
+				for(RtTicket ticket : searchTicketChunk(sessionId, chunk)) {
+					foundTickets.put(ticket.getId(), ticket);
+				}
+			}
+		}
+		else {
+			ArrayList<Callable<List<RtTicket>>> tasks = new ArrayList<>();
+			final RtRestDeadline deadline = RtRestDeadline.current();
+
+			for(final List<Long> chunk : chunks) {
+				tasks.add(new Callable<List<RtTicket>>() {
+					@Override
+					public List<RtTicket> call() throws RtException {
+						if(deadline == null) {
+							return searchTicketChunk(sessionId, chunk);
+						}
+
+						// Pass the deadline of the call on to the bulk thread
+						RtRestDeadline previous = deadline.enter();
+						try {
+							return searchTicketChunk(sessionId, chunk);
+						}
+						finally {
+							RtRestDeadline.exit(previous);
+						}
+					}
+				});
+			}
+
+			try {
+				for(Future<List<RtTicket>> future : this.bulkExecutor.invokeAll(tasks)) {
+					for(RtTicket ticket : future.get()) {
+						foundTickets.put(ticket.getId(), ticket);
+					}
+				}
+			}
+			catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RtException("Interrupted while waiting for bulk ticket request");
+			}
+			catch(ExecutionException ex) {
+				if(ex.getCause() instanceof RtException) {
+					throw (RtException) ex.getCause();
+				}
+				else {
+					Throwables.propagateIfPossible(ex.getCause());
+					throw new RtException("Bulk ticket request failed: " + ex.getCause());
+				}
+			}
+		}
+
+		// Build result map in input order, missing tickets are mapped to null
+		LinkedHashMap<Long, RtTicket> tickets = new LinkedHashMap<>();
+
+		for(Long id : idSet) {
+			RtTicket ticket = foundTickets.get(id);
+
+			if(ticket == null && LOG.isDebugEnabled()) {
+				LOG.debug("Ticket not found in bulk request: " + id);
+			}
+
+			tickets.put(id, ticket);
+		}
+
+		return tickets;
 	}
 
 
@@ -106,21 +464,79 @@ public class RtRestConnector implements RtConnector {
 	}
 
 
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query, String orderby, Set<RtTicketField> fields) throws RtException {
+		if(fields == null) {
+			throw new IllegalArgumentException("Fields cannot be null");
+		}
+
+		return client.searchTickets(sessionId, query, orderby, fields);
+	}
+
+
+	@Override
+	public void searchTickets(String sessionId, String query, String orderby, RtTicketHandler handler) throws RtException {
+		client.searchTickets(sessionId, query, orderby, handler);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * The next page is fetched by the bulk request threads while the current page is read. If bulk parallelism is
+	 * set to 1, pages are fetched in the calling thread when they are needed.
+	 */
+	@Override
+	public RtTicketCursor searchTicketsPaged(String sessionId, String query, int pageSize) throws RtException {
+		return new RtRestTicketPager(client, sessionId, query, pageSize, this.bulkExecutor);
+	}
+
+
 	@Override
 	public long createTicket(String sessionId, RtTicket ticket) throws RtException {
 		return client.createTicket(sessionId, RtRestTicketResponseParser.ticketToString(ticket, true, null));
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * The fields sent to RT depend on the edit mode configured for this connector. In the modes CHANGED_FIELDS and
+	 * COMPARE_AND_SET no request is sent if no field was changed, and the fields of the ticket are marked as
+	 * unchanged after a successful edit. In mode COMPARE_AND_SET the LastUpdated value of the ticket is read from
+	 * RT after a successful edit, so the ticket can be edited again without loading it again. Partially loaded
+	 * tickets are always edited like in mode CHANGED_FIELDS, comparing them with the ticket stored in RT would
+	 * clear the fields which were not loaded.
+	 */
 	@Override
 	public boolean editTicket(String sessionId, RtTicket ticket) throws RtException {
 		StringBuilder sb = new StringBuilder("ticket/");
 		sb.append(ticket.getId());
 		String ticketId = sb.toString();
 
-		RtTicket oldTicket = client.ticketProperties(sessionId, ticketId);
+		if(this.editMode == RtRestEditMode.FETCH_AND_COMPARE && !ticket.isPartiallyLoaded()) {
+			RtTicket oldTicket = client.ticketProperties(sessionId, ticketId);
+
+			return client.editTicket(sessionId, ticketId, RtRestTicketResponseParser.ticketToString(ticket, false, oldTicket));
+		}
 
-		return client.editTicket(sessionId, ticketId, RtRestTicketResponseParser.ticketToString(ticket, false, oldTicket));
+		String content = RtRestTicketResponseParser.changedFieldsToString(ticket);
+		if(content.isEmpty()) {
+			return true;
+		}
+
+		if(this.editMode == RtRestEditMode.COMPARE_AND_SET) {
+			checkTicketUnchanged(sessionId, ticket);
+		}
+
+		boolean result = client.editTicket(sessionId, ticketId, content);
+		if(result) {
+			ticket.markUnchanged();
+
+			if(this.editMode == RtRestEditMode.COMPARE_AND_SET) {
+				refreshLastUpdated(sessionId, ticketId, ticket);
+			}
+		}
+
+		return result;
 	}
 
 
@@ -133,6 +549,84 @@ public class RtRestConnector implements RtConnector {
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * The item IDs are read from the short format history, which is much smaller than the long format, and only the
+	 * new items are requested one by one. If bulk parallelism is greater than 1, the items are requested
+	 * concurrently. If afterItemId is 0, the complete long format history is requested instead.
+	 */
+	@Override
+	public List<RtTicketHistoryItem> getTicketHistory(final String sessionId, long ticketId, long afterItemId) throws RtException {
+		if(afterItemId <= 0L) {
+			return getTicketHistory(sessionId, ticketId);
+		}
+
+		StringBuilder sb = new StringBuilder("ticket/");
+		sb.append(ticketId);
+		final String ticketIdString = sb.toString();
+
+		ArrayList<Long> newIds = new ArrayList<>();
+
+		for(Long itemId : client.getTicketHistoryIds(sessionId, ticketIdString)) {
+			if(itemId > afterItemId) {
+				newIds.add(itemId);
+			}
+		}
+
+		ArrayList<RtTicketHistoryItem> items = new ArrayList<>();
+
+		if(this.bulkExecutor == null || newIds.size() <= 1) {
+			for(Long itemId : newIds) {
+				items.add(client.getTicketHistoryItem(sessionId, ticketIdString, itemId));
+			}
+		}
+		else {
+			ArrayList<Callable<RtTicketHistoryItem>> tasks = new ArrayList<>();
+			final RtRestDeadline deadline = RtRestDeadline.current();
+
+			for(final Long itemId : newIds) {
+				tasks.add(new Callable<RtTicketHistoryItem>() {
+					@Override
+					public RtTicketHistoryItem call() throws RtException {
+						if(deadline == null) {
+							return client.getTicketHistoryItem(sessionId, ticketIdString, itemId);
+						}
+
+						RtRestDeadline previous = deadline.enter();
+						try {
+							return client.getTicketHistoryItem(sessionId, ticketIdString, itemId);
+						}
+						finally {
+							RtRestDeadline.exit(previous);
+						}
+					}
+				});
+			}
+
+			try {
+				for(Future<RtTicketHistoryItem> future : this.bulkExecutor.invokeAll(tasks)) {
+					items.add(future.get());
+				}
+			}
+			catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RtException("Interrupted while waiting for history item request");
+			}
+			catch(ExecutionException ex) {
+				if(ex.getCause() instanceof RtException) {
+					throw (RtException) ex.getCause();
+				}
+				else {
+					Throwables.propagateIfPossible(ex.getCause());
+					throw new RtException("History item request failed: " + ex.getCause());
+				}
+			}
+		}
+
+		return items;
+	}
+
+
 	@Override
 	public boolean commentTicket(String sessionId, long ticketId, RtTicketHistoryItem item) throws RtException {
 		if(item.getType() == RtTicketHistoryItemType.COMMENT) {
@@ -161,21 +655,29 @@ public class RtRestConnector implements RtConnector {
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * If request coalescing is enabled, concurrent calls for the same queue by the same user share one request.
+	 */
 	@Override
 	public RtQueue getQueue(String sessionId, long id) throws RtException {
 		StringBuilder sb = new StringBuilder("queue/");
 		sb.append(id);
 
-		return client.queueProperties(sessionId, sb.toString());
+		return getQueue(sessionId, sb.toString());
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * If request coalescing is enabled, concurrent calls for the same queue by the same user share one request.
+	 */
 	@Override
 	public RtQueue getQueueByName(String sessionId, String name) throws RtException {
 		StringBuilder sb = new StringBuilder("queue/");
 		sb.append(name);
 
-		return client.queueProperties(sessionId, sb.toString());
+		return getQueue(sessionId, sb.toString());
 	}
 
 
@@ -191,23 +693,31 @@ public class RtRestConnector implements RtConnector {
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * If request coalescing is enabled, concurrent calls for the same user by the same user share one request.
+	 */
 	@Override
 	public RtUser getUser(String sessionId, String uname) throws RtException {
 		StringBuilder sb = new StringBuilder("user/");
 		sb.append(uname);
 		String userId = sb.toString();
 
-		return client.userProperties(sessionId, userId);
+		return getUserById(sessionId, userId);
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * If request coalescing is enabled, concurrent calls for the same user by the same user share one request.
+	 */
 	@Override
 	public RtUser getUser(String sessionId, long uid) throws RtException {
 		StringBuilder sb = new StringBuilder("user/");
 		sb.append(uid);
 		String userId = sb.toString();
 
-		return client.userProperties(sessionId, userId);
+		return getUserById(sessionId, userId);
 	}
 
 
@@ -217,14 +727,547 @@ public class RtRestConnector implements RtConnector {
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * The fields sent to RT depend on the edit mode configured for this connector. In the modes CHANGED_FIELDS and
+	 * COMPARE_AND_SET no request is sent if no field was changed, and the fields of the user are marked as
+	 * unchanged after a successful edit.
+	 */
 	@Override
 	public boolean editUser(String sessionId, RtUser user) throws RtException {
 		StringBuilder sb = new StringBuilder("user/");
 		sb.append(user.getId());
 		String userId = sb.toString();
 
-		RtUser oldUser = client.userProperties(sessionId, userId);
+		if(this.editMode == RtRestEditMode.FETCH_AND_COMPARE) {
+			RtUser oldUser = client.userProperties(sessionId, userId);
+
+			return client.editUser(sessionId, userId, RtRestUserResponseParser.userToString(user, false, oldUser));
+		}
+
+		String content = RtRestUserResponseParser.changedFieldsToString(user);
+		if(content.isEmpty()) {
+			return true;
+		}
+
+		boolean result = client.editUser(sessionId, userId, content);
+		if(result) {
+			user.markUnchanged();
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Check that a ticket was not changed in RT since it was loaded by searching for the ticket with a newer
+	 * LastUpdated value. The search only requests the ticket ID, so it is much cheaper than fetching the ticket.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticket Ticket loaded from RT
+	 * @throws RtConflictException if the ticket was changed in RT
+	 * @throws RtException if the ticket has no LastUpdated value or the search failed
+	 */
+	private void checkTicketUnchanged(String sessionId, RtTicket ticket) throws RtException {
+		if(ticket.getLastUpdated() == null) {
+			throw new RtException("Ticket " + ticket.getId() + " has no LastUpdated value, it must be loaded from RT for compare-and-set edits");
+		}
+
+		StringBuilder query = new StringBuilder("id = ");
+		query.append(ticket.getId());
+		query.append(" AND LastUpdated > '");
+		query.append(RtRestDateCodec.HISTORY_DATE.format(ticket.getLastUpdated()));
+		query.append("'");
+
+		if(client.findTicketId(sessionId, query.toString(), "+id") != -1L) {
+			throw new RtConflictException("Ticket " + ticket.getId() + " was changed in RT after it was loaded");
+		}
+	}
+
+
+	/**
+	 * Read the LastUpdated value of an edited ticket from RT, RT changes it with every edit. Without this the next
+	 * compare-and-set edit of the ticket would fail because of its own previous edit. If the ticket was changed
+	 * by others between the edit and this request, their change is not detected by the next edit.<br>
+	 * The edit itself was successful, so a failure is only logged. The ticket keeps its old value then and the
+	 * next compare-and-set edit fails with a RtConflictException until the ticket is loaded again.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId ID of the ticket, must be provided as 'ticket/[id]'
+	 * @param ticket Edited ticket
+	 */
+	private void refreshLastUpdated(String sessionId, String ticketId, RtTicket ticket) {
+		try {
+			RtTicket current = client.ticketProperties(sessionId, ticketId, EnumSet.of(RtTicketField.LAST_UPDATED));
+			ticket.setLastUpdated(current.getLastUpdated());
+		}
+		catch(RtException | RestClientException ex) {
+			LOG.warn("Could not read LastUpdated of edited ticket " + ticket.getId() + ": " + ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Get a view of this connector whose calls must finish before the provided deadline. The deadline replaces the
+	 * deadline of the timeout policy and covers all requests of a call, including retries and the wait for a
+	 * throttle slot. Calls with a deadline are not coalesced with concurrent identical calls.<br>
+	 * The deadline is shared by all calls made through the view. Cursors returned by searchTicketsPaged() are
+	 * only covered while the first page is fetched.
+	 *
+	 * @param deadline Deadline of the calls
+	 * @return Connector which applies the deadline to all calls
+	 */
+	public RtConnector withDeadline(RtRestDeadline deadline) {
+		if(deadline == null) {
+			throw new IllegalArgumentException("Deadline cannot be null");
+		}
+
+		return new RtRestDeadlineConnector(this, deadline);
+	}
+
+
+	/**
+	 * Get a view of this connector whose calls must finish within the provided time from now.
+	 * Use it for a single call, e.g. connector.withDeadline(2, TimeUnit.SECONDS).getTicket(sessionId, id).
+	 *
+	 * @param timeout Time until the deadline expires
+	 * @param unit Unit of the time
+	 * @return Connector which applies the deadline to all calls
+	 * @see #withDeadline(RtRestDeadline)
+	 */
+	public RtConnector withDeadline(long timeout, TimeUnit unit) {
+		return withDeadline(RtRestDeadline.after(timeout, unit));
+	}
+
+
+	/**
+	 * Get the instrumentation which receives the measurements of this connector.
+	 *
+	 * @return The instrumentation, RtRestInstrumentation.NOOP if none was configured
+	 */
+	public RtRestInstrumentation getInstrumentation() {
+		return this.instrumentation;
+	}
+
+
+	/**
+	 * Get the number of requests which are waiting for a slot because of the limits of the throttle policy.
+	 *
+	 * @return Number of waiting requests, always 0 if no limits are configured
+	 */
+	public int getQueuedRequestCount() {
+		return client.getQueuedRequestCount();
+	}
+
+
+	/**
+	 * Get the state of the circuit breaker. While it is open, requests fail with a RtCircuitOpenException
+	 * without being sent to RT.
+	 *
+	 * @return Current state, always CLOSED if no circuit breaker policy is configured
+	 */
+	public RtRestCircuitState getCircuitState() {
+		return client.getCircuitState();
+	}
+
+
+	/**
+	 * Get the number of calls which received the result of a concurrent identical request instead of sending
+	 * their own request.
+	 *
+	 * @return Number of coalesced calls, always 0 if request coalescing is disabled
+	 */
+	public long getCoalescedRequestCount() {
+		return (this.singleFlight != null) ? this.singleFlight.getCoalescedCount() : 0L;
+	}
+
+
+	private RtQueue getQueue(final String sessionId, final String queueId) throws RtException {
+		return coalesce(queueId, sessionId, new RtRestSingleFlight.Call<RtQueue>() {
+			@Override
+			public RtQueue call() throws RtException {
+				return client.queueProperties(sessionId, queueId);
+			}
+		}, QUEUE_COPIER);
+	}
+
+
+	private RtUser getUserById(final String sessionId, final String userId) throws RtException {
+		return coalesce(userId, sessionId, new RtRestSingleFlight.Call<RtUser>() {
+			@Override
+			public RtUser call() throws RtException {
+				return client.userProperties(sessionId, userId);
+			}
+		}, USER_COPIER);
+	}
+
+
+	/**
+	 * Execute a read request, coalescing it with identical requests in flight if enabled.
+	 * Requests are identical if they read the same object for the same principal. The principal is the user who
+	 * opened the session, or the session itself if it was not opened by this connector.
+	 *
+	 * @param objectId Object to read, i.e. 'ticket/123'
+	 * @param sessionId Current session ID, must be valid
+	 * @param call Call sending the request
+	 * @param copier Function creating a copy of the result for each caller
+	 * @return Result of the request
+	 * @throws RtException if the request failed
+	 */
+	private <V> V coalesce(String objectId, String sessionId, RtRestSingleFlight.Call<V> call, Function<V, V> copier) throws RtException {
+		// A call with its own deadline must not fail the calls waiting for its result
+		if(this.singleFlight == null || RtRestDeadline.current() != null) {
+			return call.call();
+		}
+
+		String principal = this.sessionPrincipals.get(sessionId);
+		List<String> key = Arrays.asList(objectId, (principal != null) ? "user:" + principal : "session:" + sessionId);
 
-		return client.editUser(sessionId, userId, RtRestUserResponseParser.userToString(user, false, oldUser));
+		return this.singleFlight.execute(key, sessionId, call, copier);
+	}
+
+
+	/**
+	 * Fetch a chunk of tickets by searching for their IDs.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ids Ticket IDs to fetch, should be small enough to keep the request URI within usual length limits
+	 * @return The found tickets, ordered by ID
+	 * @throws RtException if the request to the API failed
+	 */
+	private List<RtTicket> searchTicketChunk(String sessionId, List<Long> ids) throws RtException {
+		StringBuilder querySb = new StringBuilder();
+
+		for(Long id : ids) {
+			if(querySb.length() > 0) {
+				querySb.append(" OR ");
+			}
+
+			querySb.append("id = ");
+			querySb.append(id);
+		}
+
+		return client.searchTickets(sessionId, querySb.toString(), "+id");
+	}
+
+
+	/**
+	 * Builder to create a RtRestConnector with a custom transport configuration.
+	 * The default transport is a pool of Apache HttpClient connections. It keeps up to maxConnectionsTotal
+	 * connections open and reuses them for following requests. Connections which stay unused longer than the idle
+	 * timeout are closed by a background thread. The pool settings are ignored if another transport is selected.
+	 */
+	public static class Builder {
+		private final String rtBaseUri;
+		private boolean pooled = true;
+		private boolean jdkTransport = false;
+		private boolean virtualThreads = false;
+		private RtRestTransport transport = null;
+		private int maxConnectionsTotal = 20;
+		private int maxConnectionsPerRoute = 20;
+		private long keepAliveMillis = 60000L;
+		private long idleTimeoutMillis = 30000L;
+		private int bulkChunkSize = 50;
+		private int bulkParallelism = 4;
+		private RtRestEditMode editMode = RtRestEditMode.FETCH_AND_COMPARE;
+		private boolean coalesceRequests = false;
+		private RtRestInstrumentation instrumentation = RtRestInstrumentation.NOOP;
+		private RtRestRetryPolicy retryPolicy = RtRestRetryPolicy.NONE;
+		private RtRestThrottlePolicy throttlePolicy = RtRestThrottlePolicy.UNLIMITED;
+		private RtRestCircuitBreakerPolicy circuitBreakerPolicy = RtRestCircuitBreakerPolicy.DISABLED;
+		private RtRestTimeoutPolicy timeoutPolicy = RtRestTimeoutPolicy.DEFAULT;
+
+
+		private Builder(String rtBaseUri) {
+			this.rtBaseUri = rtBaseUri;
+		}
+
+
+		/**
+		 * Set the maximum number of connections held by the pool in total.
+		 *
+		 * @param maxConnectionsTotal Maximum number of connections, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder maxConnectionsTotal(int maxConnectionsTotal) {
+			this.maxConnectionsTotal = maxConnectionsTotal;
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum number of connections held by the pool for a single route.
+		 * Since a connector talks to a single RT installation this is the limit of concurrent requests.
+		 *
+		 * @param maxConnectionsPerRoute Maximum number of connections, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum time a connection is kept alive for reuse.
+		 * If the server announces a shorter keep-alive timeout, that one is used.
+		 *
+		 * @param keepAlive Keep-alive time
+		 * @param unit Unit of the keep-alive time
+		 * @return This builder
+		 */
+		public Builder keepAlive(long keepAlive, TimeUnit unit) {
+			this.keepAliveMillis = unit.toMillis(keepAlive);
+			return this;
+		}
+
+
+		/**
+		 * Set the time after which an unused connection is closed.
+		 *
+		 * @param idleTimeout Idle timeout
+		 * @param unit Unit of the idle timeout
+		 * @return This builder
+		 */
+		public Builder idleConnectionTimeout(long idleTimeout, TimeUnit unit) {
+			this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+			return this;
+		}
+
+
+		/**
+		 * Set the number of ticket IDs requested with a single search query by getTickets().
+		 *
+		 * @param bulkChunkSize Number of IDs per query, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder bulkChunkSize(int bulkChunkSize) {
+			if(bulkChunkSize <= 0) {
+				throw new IllegalArgumentException("Bulk chunk size must be greater than 0");
+			}
+
+			this.bulkChunkSize = bulkChunkSize;
+			return this;
+		}
+
+
+		/**
+		 * Set the number of search queries getTickets() runs concurrently.
+		 * A value of 1 runs all queries in the calling thread. The limit is shared by all getTickets() calls of the connector.
+		 * It is ignored if virtualThreads() is set.
+		 *
+		 * @param bulkParallelism Number of concurrent queries, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder bulkParallelism(int bulkParallelism) {
+			if(bulkParallelism <= 0) {
+				throw new IllegalArgumentException("Bulk parallelism must be greater than 0");
+			}
+
+			this.bulkParallelism = bulkParallelism;
+			return this;
+		}
+
+
+		/**
+		 * Set the mode used to send ticket and user edits to RT. Default is FETCH_AND_COMPARE.
+		 *
+		 * @param editMode Edit mode
+		 * @return This builder
+		 */
+		public Builder editMode(RtRestEditMode editMode) {
+			if(editMode == null) {
+				throw new IllegalArgumentException("Edit mode cannot be null");
+			}
+
+			this.editMode = editMode;
+			return this;
+		}
+
+
+		/**
+		 * Enable or disable coalescing of concurrent identical read requests. Default is disabled.
+		 * If enabled, concurrent calls of getTicket(), getQueue(), getQueueByName() and getUser() reading the same
+		 * object for the same user share a single request. Every caller receives its own copy of the result.
+		 *
+		 * @param coalesceRequests true to coalesce identical requests
+		 * @return This builder
+		 */
+		public Builder coalesceRequests(boolean coalesceRequests) {
+			this.coalesceRequests = coalesceRequests;
+			return this;
+		}
+
+
+		/**
+		 * Set the instrumentation which receives timings and status information of every request sent to RT.
+		 * Default is RtRestInstrumentation.NOOP which discards all measurements. Session pools using the
+		 * connector report their session re-logins to the same instrumentation.
+		 *
+		 * @param instrumentation Instrumentation to use, for example a RtRestMetricsRecorder
+		 * @return This builder
+		 */
+		public Builder instrumentation(RtRestInstrumentation instrumentation) {
+			if(instrumentation == null) {
+				throw new IllegalArgumentException("Instrumentation cannot be null, use RtRestInstrumentation.NOOP instead");
+			}
+
+			this.instrumentation = instrumentation;
+			return this;
+		}
+
+
+		/**
+		 * Set the policy used to retry requests which failed for a transient reason. Default is
+		 * RtRestRetryPolicy.NONE, failed requests are not retried. Retries are reported to the instrumentation.
+		 *
+		 * @param retryPolicy Retry policy
+		 * @return This builder
+		 */
+		public Builder retryPolicy(RtRestRetryPolicy retryPolicy) {
+			if(retryPolicy == null) {
+				throw new IllegalArgumentException("Retry policy cannot be null, use RtRestRetryPolicy.NONE instead");
+			}
+
+			this.retryPolicy = retryPolicy;
+			return this;
+		}
+
+
+		/**
+		 * Set the client side limits for the requests sent to RT. Default is RtRestThrottlePolicy.UNLIMITED.
+		 * Handlers of streaming searches must not send further requests of the connector if these requests can be
+		 * blocked by the slot held by the search, i.e. if the concurrency limit for all requests is 1.
+		 *
+		 * @param throttlePolicy Throttle policy
+		 * @return This builder
+		 */
+		public Builder throttlePolicy(RtRestThrottlePolicy throttlePolicy) {
+			if(throttlePolicy == null) {
+				throw new IllegalArgumentException("Throttle policy cannot be null, use RtRestThrottlePolicy.UNLIMITED instead");
+			}
+
+			this.throttlePolicy = throttlePolicy;
+			return this;
+		}
+
+
+		/**
+		 * Set the policy of the circuit breaker which stops sending requests while RT is failing or too slow.
+		 * Default is RtRestCircuitBreakerPolicy.DISABLED. Each retry attempt is a separate call for the breaker.
+		 *
+		 * @param circuitBreakerPolicy Circuit breaker policy
+		 * @return This builder
+		 */
+		public Builder circuitBreakerPolicy(RtRestCircuitBreakerPolicy circuitBreakerPolicy) {
+			if(circuitBreakerPolicy == null) {
+				throw new IllegalArgumentException("Circuit breaker policy cannot be null, use RtRestCircuitBreakerPolicy.DISABLED instead");
+			}
+
+			this.circuitBreakerPolicy = circuitBreakerPolicy;
+			return this;
+		}
+
+
+		/**
+		 * Set the connect and read timeouts and the deadlines of the requests. Default is
+		 * RtRestTimeoutPolicy.DEFAULT, use RtRestTimeoutPolicy.NONE to wait forever.
+		 *
+		 * @param timeoutPolicy Timeout policy
+		 * @return This builder
+		 */
+		public Builder timeoutPolicy(RtRestTimeoutPolicy timeoutPolicy) {
+			if(timeoutPolicy == null) {
+				throw new IllegalArgumentException("Timeout policy cannot be null, use RtRestTimeoutPolicy.NONE instead");
+			}
+
+			this.timeoutPolicy = timeoutPolicy;
+			return this;
+		}
+
+
+		/**
+		 * Do not use a connection pool, every request will open a new connection.
+		 * This is the behavior of the RtRestConnector(String) constructor.
+		 *
+		 * @return This builder
+		 */
+		public Builder withoutConnectionPool() {
+			this.pooled = false;
+			return this;
+		}
+
+
+		/**
+		 * Send the requests through the provided transport instead of the connection pool.
+		 * The transport is closed when the connector is closed.
+		 *
+		 * @param transport Transport to use
+		 * @return This builder
+		 */
+		public Builder transport(RtRestTransport transport) {
+			if(transport == null) {
+				throw new IllegalArgumentException("Transport cannot be null");
+			}
+
+			this.transport = transport;
+			this.jdkTransport = false;
+			return this;
+		}
+
+
+		/**
+		 * Send the requests through the java.net.http client of the JDK instead of the connection pool.
+		 * The JDK client keeps connections alive and supports HTTP/2, its connection limits are not configurable.
+		 *
+		 * @return This builder
+		 * @throws IllegalStateException if the transport is not available, see isJdkTransportAvailable()
+		 */
+		public Builder jdkTransport() {
+			if(!isJdkTransportAvailable()) {
+				throw new IllegalStateException("The JDK transport requires Java 11 and the rt-connector-jdk11 module");
+			}
+
+			this.jdkTransport = true;
+			this.transport = null;
+			return this;
+		}
+
+
+		/**
+		 * Prepare the connector for callers running on virtual threads. Bulk requests run every chunk on its own
+		 * virtual thread instead of the bulkParallelism platform threads, so the number of concurrent requests is
+		 * only limited by the connections of the transport.<br>
+		 * The pooled transport and the JDK transport wait for connections and responses without pinning the carrier
+		 * thread. The transport without connection pool uses HttpURLConnection, which pins the carrier thread while
+		 * it reads, it cannot be combined with this option. Ticket cursors, change feeds and history syncs serialize
+		 * their calls with a ReentrantLock, callers waiting for them do not pin their carrier thread either.
+		 *
+		 * @return This builder
+		 * @throws IllegalStateException if the JVM does not support virtual threads, see isVirtualThreadsAvailable()
+		 */
+		public Builder virtualThreads() {
+			if(!isVirtualThreadsAvailable()) {
+				throw new IllegalStateException("Virtual threads are not supported by this JVM, Java 21 or later is required");
+			}
+
+			this.virtualThreads = true;
+			return this;
+		}
+
+
+		/**
+		 * Create the connector with the current settings of this builder.
+		 *
+		 * @return A new connector instance
+		 * @throws IllegalStateException if virtual threads are combined with the transport without connection pool
+		 */
+		public RtRestConnector build() {
+			if(this.virtualThreads && !this.pooled && this.transport == null && !this.jdkTransport) {
+				throw new IllegalStateException("The transport without connection pool pins virtual threads, use the pooled or the JDK transport");
+			}
+
+			return new RtRestConnector(this);
+		}
 	}
 }
@@ -0,0 +1,151 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+
+/**
+ * Thread-safe parser and formatter for the timestamp formats used by the RT REST API.
+ * SimpleDateFormat is not thread-safe, so every thread uses its own instance. Since search results repeat the same
+ * timestamps (Created, LastUpdated) and placeholders ("Not set") many times, the results of recent parse
+ * operations are kept in a small cache which is looked up before parsing.<br>
+ * Instances of this class are immutable from the caller's perspective and may be shared between threads.
+ * Timestamps are interpreted in the default time zone of the JVM at the time they are parsed first.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestDateCodec {
+	/**
+	 * Format of the timestamps in ticket properties, i.e. "Wed Feb 26 15:59:56 2014"
+	 */
+	static final RtRestDateCodec TICKET_DATE = new RtRestDateCodec("EEE MMM d HH:mm:ss yyyy", 256);
+
+	/**
+	 * Format of the timestamps in ticket history items, i.e. "2014-03-13 11:11:07"
+	 */
+	static final RtRestDateCodec HISTORY_DATE = new RtRestDateCodec("yyyy-MM-dd HH:mm:ss", 256);
+
+	private final ThreadLocal<SimpleDateFormat> formats;
+	private final CacheEntry[] cache;
+	private final int cacheMask;
+
+
+	/**
+	 * Create a new codec.
+	 *
+	 * @param pattern Date pattern as used by SimpleDateFormat, always interpreted using Locale.US
+	 * @param cacheSize Number of cached timestamps, will be rounded up to a power of two
+	 */
+	RtRestDateCodec(final String pattern, int cacheSize) {
+		// Fail early for invalid patterns instead of on the first parse operation
+		new SimpleDateFormat(pattern, Locale.US);
+
+		this.formats = new ThreadLocal<SimpleDateFormat>() {
+			@Override
+			protected SimpleDateFormat initialValue() {
+				return new SimpleDateFormat(pattern, Locale.US);
+			}
+		};
+
+		int size = Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1;
+		this.cache = new CacheEntry[size];
+		this.cacheMask = size - 1;
+	}
+
+
+	/**
+	 * Parse a timestamp string returned from RT.
+	 * Like SimpleDateFormat.parse(String) only the beginning of the string has to match the pattern.
+	 *
+	 * @param date Timestamp string returned from RT
+	 * @return A new Date object for the timestamp, null if the string is not a valid timestamp
+	 */
+	Date parse(String date) {
+		if(date == null) {
+			return null;
+		}
+
+		int index = spread(date.hashCode()) & this.cacheMask;
+
+		// Entries are immutable, a racy read sees either a complete entry or a different one
+		CacheEntry entry = this.cache[index];
+
+		if(entry == null || !entry.text.equals(date)) {
+			Date parsed = this.formats.get().parse(date, new ParsePosition(0));
+
+			entry = new CacheEntry(date, parsed);
+			this.cache[index] = entry;
+		}
+
+		if(entry.valid) {
+			// Date is mutable, never hand out a shared instance
+			return new Date(entry.millis);
+		}
+		else {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Format a Date object into a timestamp string accepted by RT.
+	 *
+	 * @param date Date object, may be null
+	 * @return Timestamp string, an empty string if date was null
+	 */
+	String format(Date date) {
+		if(date != null) {
+			return this.formats.get().format(date);
+		}
+		else {
+			return "";
+		}
+	}
+
+
+	/**
+	 * Spread the higher bits of the hash code to the lower bits used for the cache index.
+	 * Timestamp strings differing only in the seconds would collide too often otherwise.
+	 *
+	 * @param hash Hash code of the string
+	 * @return Spread hash code
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16) ^ (hash >>> 8);
+	}
+
+
+	/**
+	 * Cached result of a parse operation. Unparseable strings are cached as well.
+	 */
+	private static final class CacheEntry {
+		private final String text;
+		private final long millis;
+		private final boolean valid;
+
+
+		CacheEntry(String text, Date parsed) {
+			this.text = text;
+			this.valid = parsed != null;
+			this.millis = this.valid ? parsed.getTime() : 0L;
+		}
+	}
+}
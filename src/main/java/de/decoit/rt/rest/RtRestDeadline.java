@@ -0,0 +1,338 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Point in time at which a call to RT must be finished, used with RtRestConnector.withDeadline().
+ * The deadline covers the whole call: waiting for a throttle slot or a pooled connection, all requests and
+ * retries, and parsing the responses. A request which is still running when the deadline expires is aborted,
+ * which closes its connection instead of returning it to the pool. The call then fails with a
+ * RtDeadlineExceededException.<br>
+ * A deadline can also be cancelled by another thread, this aborts all requests running for it in the same way.
+ * A call waiting for a throttle slot notices the cancellation when it gets the slot.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestDeadline {
+	private static final ThreadLocal<RtRestDeadline> CURRENT = new ThreadLocal<>();
+	private static final ThreadLocal<Request> CURRENT_REQUEST = new ThreadLocal<>();
+
+	private final long expiresAt;
+	private final boolean unlimited;
+	private final Set<Request> requests = Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+	private volatile boolean cancelled = false;
+
+
+	private RtRestDeadline(long expiresAt, boolean unlimited) {
+		this.expiresAt = expiresAt;
+		this.unlimited = unlimited;
+	}
+
+
+	/**
+	 * Create a deadline which expires after the provided time from now.
+	 *
+	 * @param timeout Time until the deadline expires
+	 * @param unit Unit of the time
+	 * @return A new deadline
+	 */
+	public static RtRestDeadline after(long timeout, TimeUnit unit) {
+		if(timeout < 0L) {
+			throw new IllegalArgumentException("Timeout cannot be negative");
+		}
+
+		return new RtRestDeadline(System.nanoTime() + unit.toNanos(timeout), false);
+	}
+
+
+	/**
+	 * Create a deadline which never expires. It can be used to cancel calls and replaces the deadline of the
+	 * timeout policy.
+	 *
+	 * @return A new deadline
+	 */
+	public static RtRestDeadline none() {
+		return new RtRestDeadline(0L, true);
+	}
+
+
+	/**
+	 * Get the time until the deadline expires.
+	 *
+	 * @param unit Unit of the result
+	 * @return Remaining time, 0 if expired, Long.MAX_VALUE if the deadline never expires
+	 */
+	public long getRemaining(TimeUnit unit) {
+		return this.unlimited ? Long.MAX_VALUE : unit.convert(remainingNanos(), TimeUnit.NANOSECONDS);
+	}
+
+
+	/**
+	 * @return true if the deadline expired
+	 */
+	public boolean isExpired() {
+		return !this.unlimited && remainingNanos() <= 0L;
+	}
+
+
+	/**
+	 * @return true if the deadline was cancelled
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+
+	/**
+	 * Cancel all calls using this deadline. Running requests are aborted, further requests are not sent.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+
+		for(Request request : this.requests) {
+			request.abort();
+		}
+	}
+
+
+	/**
+	 * @return true if the deadline expired or was cancelled
+	 */
+	boolean isOver() {
+		return this.cancelled || isExpired();
+	}
+
+
+	/**
+	 * @return Time until the deadline expires in nanoseconds, may be negative
+	 */
+	long remainingNanos() {
+		return this.unlimited ? Long.MAX_VALUE : this.expiresAt - System.nanoTime();
+	}
+
+
+	/**
+	 * Get the time until the deadline expires as a timeout for the HTTP transport.
+	 *
+	 * @param timeoutMillis Timeout configured without a deadline, 0 if unlimited
+	 * @return Shorter one of the timeout and the remaining time, at least 1 ms
+	 */
+	int limitTimeout(int timeoutMillis) {
+		if(this.unlimited) {
+			return timeoutMillis;
+		}
+
+		long remainingMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remainingNanos()));
+
+		if(timeoutMillis > 0 && timeoutMillis <= remainingMillis) {
+			return timeoutMillis;
+		}
+
+		return (int) Math.min(remainingMillis, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Make this deadline the deadline of the calling thread.
+	 *
+	 * @return Previous deadline of the thread, must be passed to exit()
+	 */
+	RtRestDeadline enter() {
+		RtRestDeadline previous = CURRENT.get();
+		CURRENT.set(this);
+
+		return previous;
+	}
+
+
+	/**
+	 * Restore the deadline of the calling thread which was replaced by enter().
+	 *
+	 * @param previous Deadline returned by enter()
+	 */
+	static void exit(RtRestDeadline previous) {
+		if(previous != null) {
+			CURRENT.set(previous);
+		}
+		else {
+			CURRENT.remove();
+		}
+	}
+
+
+	/**
+	 * @return Deadline of the calling thread, null if the call has none
+	 */
+	static RtRestDeadline current() {
+		return CURRENT.get();
+	}
+
+
+	/**
+	 * Register a request of the calling thread which is about to be sent. The request is aborted when the deadline
+	 * expires or is cancelled before finish() is called on the returned object.
+	 *
+	 * @return Registration of the request
+	 */
+	Request startRequest() {
+		Request request = new Request();
+
+		this.requests.add(request);
+		CURRENT_REQUEST.set(request);
+
+		if(this.cancelled) {
+			request.abort();
+		}
+		else if(!this.unlimited) {
+			request.timer = TimerHolder.TIMER.schedule(request, Math.max(0L, remainingNanos()), TimeUnit.NANOSECONDS);
+		}
+
+		return request;
+	}
+
+
+	/**
+	 * Called by the request factories when the HTTP request of the calling thread was created.
+	 *
+	 * @param abortable Callback which aborts the HTTP request
+	 */
+	static void requestCreated(Abortable abortable) {
+		Request request = CURRENT_REQUEST.get();
+
+		if(request != null) {
+			request.setAbortable(abortable);
+		}
+	}
+
+
+	/**
+	 * Get the request of the calling thread registered with startRequest().
+	 *
+	 * @return Registration of the request, null if the calling thread has none
+	 */
+	static Request currentRequest() {
+		return CURRENT_REQUEST.get();
+	}
+
+
+	/**
+	 * Callback which aborts an HTTP request and closes its connection.
+	 */
+	static interface Abortable {
+		void abort();
+	}
+
+
+	/**
+	 * Request registered with a deadline.
+	 */
+	final class Request implements Runnable {
+		private Abortable abortable = null;
+		private boolean aborted = false;
+		private ScheduledFuture<?> timer = null;
+
+
+		private Request() {
+		}
+
+
+		/**
+		 * Called by the timer when the deadline expired.
+		 */
+		@Override
+		public void run() {
+			abort();
+		}
+
+
+		/**
+		 * Abort the request, now if it was created already or as soon as it is created.
+		 */
+		void abort() {
+			Abortable toAbort;
+
+			synchronized(this) {
+				this.aborted = true;
+				toAbort = this.abortable;
+				this.abortable = null;
+			}
+
+			if(toAbort != null) {
+				toAbort.abort();
+			}
+		}
+
+
+		/**
+		 * Unregister the finished request from the deadline.
+		 */
+		void finish() {
+			CURRENT_REQUEST.remove();
+			requests.remove(this);
+
+			if(this.timer != null) {
+				this.timer.cancel(false);
+			}
+
+			synchronized(this) {
+				this.abortable = null;
+			}
+		}
+
+
+		void setAbortable(Abortable abortable) {
+			boolean abortNow;
+
+			synchronized(this) {
+				abortNow = this.aborted;
+
+				if(!abortNow) {
+					this.abortable = abortable;
+				}
+			}
+
+			if(abortNow) {
+				abortable.abort();
+			}
+		}
+	}
+
+
+	/**
+	 * Holder of the timer thread, which is only started when the first deadline is used.
+	 */
+	private static class TimerHolder {
+		private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+
+		private static ScheduledThreadPoolExecutor createTimer() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("rt-deadline-timer").setDaemon(true).build());
+			timer.setRemoveOnCancelPolicy(true);
+
+			return timer;
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTicketCursor;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtUser;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * View of a RtRestConnector which runs every call with a deadline, created by RtRestConnector.withDeadline().
+ * The deadline is made the deadline of the calling thread for the duration of the call.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class RtRestDeadlineConnector implements RtConnector {
+	private final RtRestConnector connector;
+	private final RtRestDeadline deadline;
+
+
+	RtRestDeadlineConnector(RtRestConnector connector, RtRestDeadline deadline) {
+		this.connector = connector;
+		this.deadline = deadline;
+	}
+
+
+	@Override
+	public String login(String uname, String password) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.login(uname, password);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public void logout(String sessionId) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			this.connector.logout(sessionId);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtTicket getTicket(String sessionId, long id) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getTicket(sessionId, id);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtTicket getTicket(String sessionId, long id, Set<RtTicketField> fields) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getTicket(sessionId, id, fields);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public Map<Long, RtTicket> getTickets(String sessionId, Collection<Long> ids) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getTickets(sessionId, ids);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.searchTickets(sessionId, query);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query, String orderby) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.searchTickets(sessionId, query, orderby);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public List<RtTicket> searchTickets(String sessionId, String query, String orderby, Set<RtTicketField> fields) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.searchTickets(sessionId, query, orderby, fields);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public void searchTickets(String sessionId, String query, String orderby, RtTicketHandler handler) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			this.connector.searchTickets(sessionId, query, orderby, handler);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtTicketCursor searchTicketsPaged(String sessionId, String query, int pageSize) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.searchTicketsPaged(sessionId, query, pageSize);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public long createTicket(String sessionId, RtTicket ticket) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.createTicket(sessionId, ticket);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public boolean editTicket(String sessionId, RtTicket ticket) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.editTicket(sessionId, ticket);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public List<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getTicketHistory(sessionId, ticketId);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public List<RtTicketHistoryItem> getTicketHistory(String sessionId, long ticketId, long afterItemId) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getTicketHistory(sessionId, ticketId, afterItemId);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public boolean commentTicket(String sessionId, long ticketId, RtTicketHistoryItem item) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.commentTicket(sessionId, ticketId, item);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public boolean answerTicket(String sessionId, long ticketId, RtTicketHistoryItem item) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.answerTicket(sessionId, ticketId, item);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtQueue getQueue(String sessionId, long id) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getQueue(sessionId, id);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtQueue getQueueByName(String sessionId, String name) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getQueueByName(sessionId, name);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public Map<Long, String> listQueues(String sessionId) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.listQueues(sessionId);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public long createQueue(String sessionId, RtQueue queue) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.createQueue(sessionId, queue);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtUser getUser(String sessionId, String uname) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getUser(sessionId, uname);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public RtUser getUser(String sessionId, long uid) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.getUser(sessionId, uid);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public List<RtUser> searchUsers(String sessionId, String query, String orderby) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.searchUsers(sessionId, query, orderby);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+
+
+	@Override
+	public boolean editUser(String sessionId, RtUser user) throws RtException {
+		RtRestDeadline previous = this.deadline.enter();
+		try {
+			return this.connector.editUser(sessionId, user);
+		}
+		finally {
+			RtRestDeadline.exit(previous);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Modes for sending ticket and user edits to RT.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public enum RtRestEditMode {
+	/**
+	 * Fetch the current state of the object from RT and send all fields which differ from it.
+	 * This needs two requests per edit but works with objects which were not loaded from RT.
+	 */
+	FETCH_AND_COMPARE,
+
+	/**
+	 * Send only the fields changed since the object was loaded from RT, without fetching its current state.
+	 * Changes made by others to these fields in the meantime are overwritten.
+	 */
+	CHANGED_FIELDS,
+
+	/**
+	 * Like CHANGED_FIELDS, but for tickets a search for a newer LastUpdated value checks first that the ticket
+	 * was not changed in RT since it was loaded. If it was, the edit fails with a RtConflictException. The check
+	 * and the edit are separate requests and RT stores LastUpdated with a precision of one second, so this does
+	 * not detect every concurrent change. After a successful edit the new LastUpdated value is read from RT, so a
+	 * ticket can be edited several times without loading it again. RT does not return a modification time for
+	 * users, they are edited as in CHANGED_FIELDS mode.
+	 */
+	COMPARE_AND_SET
+}
@@ -0,0 +1,77 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Endpoints of the RT REST API used by the connector.
+ * Measurements reported to a RtRestInstrumentation are tagged with the endpoint of the request, the
+ * RtRestRetryPolicy uses the endpoint to decide if a failed request may be sent again.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public enum RtRestEndpoint {
+	LOGIN(RtRestOperationClass.READ, true),
+	LOGOUT(RtRestOperationClass.READ, true),
+	TICKET_PROPERTIES(RtRestOperationClass.READ, true),
+	TICKET_SEARCH(RtRestOperationClass.SEARCH, true),
+	TICKET_ID_SEARCH(RtRestOperationClass.SEARCH, true),
+	TICKET_CREATE(RtRestOperationClass.WRITE, false),
+	TICKET_EDIT(RtRestOperationClass.WRITE, true),
+	TICKET_HISTORY(RtRestOperationClass.HISTORY, true),
+	TICKET_HISTORY_IDS(RtRestOperationClass.HISTORY, true),
+	TICKET_HISTORY_ITEM(RtRestOperationClass.HISTORY, true),
+	TICKET_COMMENT(RtRestOperationClass.WRITE, false),
+	QUEUE_PROPERTIES(RtRestOperationClass.READ, true),
+	QUEUE_LIST(RtRestOperationClass.READ, true),
+	QUEUE_CREATE(RtRestOperationClass.WRITE, false),
+	USER_PROPERTIES(RtRestOperationClass.READ, true),
+	USER_SEARCH(RtRestOperationClass.SEARCH, true),
+	USER_EDIT(RtRestOperationClass.WRITE, true);
+
+	private final RtRestOperationClass operationClass;
+	private final boolean idempotent;
+
+
+	private RtRestEndpoint(RtRestOperationClass operationClass, boolean idempotent) {
+		this.operationClass = operationClass;
+		this.idempotent = idempotent;
+	}
+
+
+	/**
+	 * Get the class of operations this endpoint belongs to. It selects the limits a RtRestThrottlePolicy applies
+	 * to requests to this endpoint.
+	 *
+	 * @return Operation class
+	 */
+	public RtRestOperationClass getOperationClass() {
+		return operationClass;
+	}
+
+
+	/**
+	 * Check if sending a request to this endpoint twice has the same effect as sending it once.
+	 * Edits are idempotent because they set fields to absolute values, creating objects and posting comments
+	 * are not. Requests to idempotent endpoints may be retried by a RtRestRetryPolicy.
+	 *
+	 * @return true if the endpoint is idempotent
+	 */
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+}
@@ -0,0 +1,148 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Timings and status information of a single HTTP exchange with RT.
+ * The request time is split into phases to separate RT server time from client side overhead:<br>
+ * <br>
+ * connect: Leasing a pooled connection or opening a new one, including the SSL handshake<br>
+ * server wait: Sending the request and waiting for the response headers<br>
+ * body read: Reading the response body from the connection<br>
+ * status parse: Parsing the RT status line from the body<br>
+ * <br>
+ * The connect phase is only measured by the pooled transport. If it is not known, it is part of the server wait
+ * phase. Streaming endpoints parse the body while it is read, for them the status and entity parse time is part
+ * of the body read phase. Phases that were not measured are reported as -1.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestExchangeMetrics {
+	private final RtRestEndpoint endpoint;
+	private final long connectNanos;
+	private final long serverWaitNanos;
+	private final long bodyReadNanos;
+	private final long statusParseNanos;
+	private final int httpStatus;
+	private final RtRestStatus rtStatus;
+	private final long responseBytes;
+	private final Exception failure;
+
+
+	RtRestExchangeMetrics(RtRestEndpoint endpoint, long connectNanos, long serverWaitNanos, long bodyReadNanos, long statusParseNanos, int httpStatus, RtRestStatus rtStatus, long responseBytes, Exception failure) {
+		this.endpoint = endpoint;
+		this.connectNanos = connectNanos;
+		this.serverWaitNanos = serverWaitNanos;
+		this.bodyReadNanos = bodyReadNanos;
+		this.statusParseNanos = statusParseNanos;
+		this.httpStatus = httpStatus;
+		this.rtStatus = rtStatus;
+		this.responseBytes = responseBytes;
+		this.failure = failure;
+	}
+
+
+	/**
+	 * @return Endpoint of the request
+	 */
+	public RtRestEndpoint getEndpoint() {
+		return endpoint;
+	}
+
+
+	/**
+	 * @return Connect time in nanoseconds, -1 if not measured
+	 */
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+
+
+	/**
+	 * @return Time between sending the request and receiving the response headers in nanoseconds, the time until the failure if no response was received
+	 */
+	public long getServerWaitNanos() {
+		return serverWaitNanos;
+	}
+
+
+	/**
+	 * @return Time spent reading the response body in nanoseconds, -1 if the body was not read
+	 */
+	public long getBodyReadNanos() {
+		return bodyReadNanos;
+	}
+
+
+	/**
+	 * @return Time spent parsing the RT status line in nanoseconds, -1 if not measured separately
+	 */
+	public long getStatusParseNanos() {
+		return statusParseNanos;
+	}
+
+
+	/**
+	 * Get the total time of the exchange, which is the sum of all measured phases.
+	 *
+	 * @return Total time in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return Math.max(connectNanos, 0L) + Math.max(serverWaitNanos, 0L) + Math.max(bodyReadNanos, 0L) + Math.max(statusParseNanos, 0L);
+	}
+
+
+	/**
+	 * @return HTTP status code of the response, -1 if no response was received
+	 */
+	public int getHttpStatus() {
+		return httpStatus;
+	}
+
+
+	/**
+	 * @return RT status parsed from the response body, null if the body was not parsed
+	 */
+	public RtRestStatus getRtStatus() {
+		return rtStatus;
+	}
+
+
+	/**
+	 * @return Size of the response body in bytes, -1 if unknown
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+
+	/**
+	 * @return Exception which made the exchange fail, null if a response was read successfully
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+
+	/**
+	 * @return true if a response was read successfully, regardless of the RT status it contained
+	 */
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+}
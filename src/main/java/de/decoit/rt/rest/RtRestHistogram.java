@@ -0,0 +1,159 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Lock-free histogram of non-negative long values with a bounded relative error, following the bucket layout of
+ * HdrHistogram. Values below 64 are counted exactly, larger values are counted in buckets covering a power of two
+ * range each, which are split into 32 linear sub-buckets. This keeps the relative error of reported values below
+ * 3.2% while a histogram covering 0 to 2^40 (more than 18 minutes in nanoseconds) needs less than 10 KiB.<br>
+ * Larger values are counted in the highest bucket, which reports the exact maximum as its value.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestHistogram {
+	static final long HIGHEST_TRACKABLE_VALUE = (1L << 40) - 1L;
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_COUNT = SUB_BUCKET_COUNT << 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(indexOf(HIGHEST_TRACKABLE_VALUE) + 1);
+	private final AtomicLong totalCount = new AtomicLong(0L);
+	private final AtomicLong sum = new AtomicLong(0L);
+	private final AtomicLong max = new AtomicLong(0L);
+
+
+	/**
+	 * Record a value. Negative values are ignored.
+	 *
+	 * @param value Value to record
+	 */
+	void record(long value) {
+		if(value < 0L) {
+			return;
+		}
+
+		this.counts.incrementAndGet(indexOf(Math.min(value, HIGHEST_TRACKABLE_VALUE)));
+		this.totalCount.incrementAndGet();
+		this.sum.addAndGet(value);
+
+		long currentMax = this.max.get();
+		while(value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+			currentMax = this.max.get();
+		}
+	}
+
+
+	/**
+	 * @return Number of recorded values
+	 */
+	long getCount() {
+		return this.totalCount.get();
+	}
+
+
+	/**
+	 * @return Largest recorded value, 0 if no value was recorded
+	 */
+	long getMax() {
+		return this.max.get();
+	}
+
+
+	/**
+	 * @return Mean of the recorded values, 0 if no value was recorded
+	 */
+	double getMean() {
+		long count = this.totalCount.get();
+		return count > 0L ? (double) this.sum.get() / count : 0.0;
+	}
+
+
+	/**
+	 * Get the value below or at which the provided percentage of recorded values are.
+	 * The returned value is the upper bound of the bucket the percentile falls into, it is never greater than the maximum.
+	 *
+	 * @param percentile Percentile between 0 and 100
+	 * @return Value at the percentile, 0 if no value was recorded
+	 */
+	long getValueAtPercentile(double percentile) {
+		long count = this.totalCount.get();
+
+		if(count == 0L) {
+			return 0L;
+		}
+
+		long target = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+		long seen = 0L;
+
+		for(int i = 0; i < this.counts.length(); i++) {
+			seen += this.counts.get(i);
+
+			if(seen >= target) {
+				// The last bucket holds all values above the highest trackable value
+				long highest = i < this.counts.length() - 1 ? highestValueOf(i) : Long.MAX_VALUE;
+
+				return Math.min(highest, this.max.get());
+			}
+		}
+
+		// Values recorded concurrently may not be visible in the buckets yet
+		return this.max.get();
+	}
+
+
+	/**
+	 * Calculate the bucket index of a value.
+	 *
+	 * @param value Value between 0 and HIGHEST_TRACKABLE_VALUE
+	 * @return Index in the counts array
+	 */
+	static int indexOf(long value) {
+		if(value < LINEAR_COUNT) {
+			return (int) value;
+		}
+
+		// Shift which reduces the value to a sub-bucket between SUB_BUCKET_COUNT and LINEAR_COUNT - 1
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift);
+
+		return LINEAR_COUNT + (shift - 1) * SUB_BUCKET_COUNT + (subBucket - SUB_BUCKET_COUNT);
+	}
+
+
+	/**
+	 * Calculate the highest value that is counted in a bucket.
+	 *
+	 * @param index Index in the counts array
+	 * @return Highest value of the bucket
+	 */
+	static long highestValueOf(int index) {
+		if(index < LINEAR_COUNT) {
+			return index;
+		}
+
+		int shift = (index - LINEAR_COUNT) / SUB_BUCKET_COUNT + 1;
+		long subBucket = (index - LINEAR_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+		return ((subBucket + 1L) << shift) - 1L;
+	}
+}
@@ -0,0 +1,114 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Service provider interface for collecting measurements of the requests sent to RT.
+ * All methods do nothing by default, implementations override the ones they are interested in. The methods are
+ * called on the thread which executed the request and must return quickly, they should not do any I/O.<br>
+ * An implementation is installed with RtRestConnector.Builder.instrumentation(), RtRestMetricsRecorder provides
+ * latency histograms and counters which can be dumped on demand.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public abstract class RtRestInstrumentation {
+	/**
+	 * Instrumentation which discards all measurements, used if no instrumentation was configured.
+	 */
+	public static final RtRestInstrumentation NOOP = new RtRestInstrumentation() {
+	};
+
+
+	/**
+	 * Called when an HTTP exchange with RT finished, successful or not.
+	 *
+	 * @param metrics Timings and status information of the exchange
+	 */
+	public void exchangeCompleted(RtRestExchangeMetrics metrics) {
+	}
+
+
+	/**
+	 * Called when the body of a successful response was parsed into model objects.
+	 * Streaming endpoints parse the body while it is read, their parse time is part of the body read phase.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param nanos Time spent parsing in nanoseconds
+	 */
+	public void entityParsed(RtRestEndpoint endpoint, long nanos) {
+	}
+
+
+	/**
+	 * Called when a failed request is sent again.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param attempt Number of the attempt about to be made, 2 for the first retry
+	 * @param cause Exception which caused the retry
+	 */
+	public void requestRetried(RtRestEndpoint endpoint, int attempt, Exception cause) {
+	}
+
+
+	/**
+	 * Called when a request got a slot from the throttle of the connector. Only called if a RtRestThrottlePolicy
+	 * with limits is configured.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param waitNanos Time the request waited for the slot in nanoseconds
+	 * @param queueDepth Number of requests which were waiting for a slot when the request arrived
+	 */
+	public void throttleAcquired(RtRestEndpoint endpoint, long waitNanos, int queueDepth) {
+	}
+
+
+	/**
+	 * Called when a request was not sent because it did not get a slot from the throttle of the connector.
+	 *
+	 * @param endpoint Endpoint of the request
+	 */
+	public void throttleRejected(RtRestEndpoint endpoint) {
+	}
+
+
+	/**
+	 * Called when the circuit breaker of the connector changed its state. Only called if a
+	 * RtRestCircuitBreakerPolicy is configured.
+	 *
+	 * @param from Previous state
+	 * @param to New state
+	 */
+	public void circuitStateChanged(RtRestCircuitState from, RtRestCircuitState to) {
+	}
+
+
+	/**
+	 * Called when a request was not sent because the circuit breaker of the connector is open.
+	 *
+	 * @param endpoint Endpoint of the request
+	 */
+	public void circuitRejected(RtRestEndpoint endpoint) {
+	}
+
+
+	/**
+	 * Called when a RtRestSessionPool logs in again because RT rejected a pooled session.
+	 */
+	public void sessionRelogin() {
+	}
+}
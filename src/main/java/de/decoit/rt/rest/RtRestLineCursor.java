@@ -0,0 +1,152 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Forward only cursor over the lines of a response body.
+ * The parsers read the body through a cursor instead of splitting it into an array of parts and another array of
+ * lines per part, only the line currently handed to the parser is copied out of the body. List responses are
+ * separated by lines consisting of "--" only, the same rule RtRestTicketStreamParser uses. Lines are returned
+ * without the line break, a cursor is not thread safe.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestLineCursor {
+	private static final String DELIMITER_LINE = "--";
+
+	private final String text;
+	private int position;
+
+
+	/**
+	 * Create a cursor positioned at the first line of the provided text.
+	 *
+	 * @param text Response text
+	 */
+	RtRestLineCursor(String text) {
+		this(text, 0);
+	}
+
+
+	/**
+	 * Create a cursor positioned at the provided index of the text, which must be the start of a line.
+	 *
+	 * @param text Response text
+	 * @param position Index of the first line to read
+	 */
+	RtRestLineCursor(String text, int position) {
+		if(position < 0 || position > text.length()) {
+			throw new IndexOutOfBoundsException("Cursor position out of range: " + position);
+		}
+
+		this.text = text;
+		this.position = position;
+	}
+
+
+	/**
+	 * Check if there are lines left to read.
+	 *
+	 * @return true if nextLine() will return a line
+	 */
+	boolean hasNext() {
+		return this.position < this.text.length();
+	}
+
+
+	/**
+	 * Read the next line and move the cursor to the line behind it.
+	 *
+	 * @return The line without line break, null if the end of the text was reached
+	 */
+	String nextLine() {
+		if(!hasNext()) {
+			return null;
+		}
+
+		int lineEnd = lineEnd();
+		String line = this.text.substring(this.position, lineEnd);
+		this.position = Math.min(lineEnd + 1, this.text.length());
+
+		return line;
+	}
+
+
+	/**
+	 * Skip the next line without copying it.
+	 */
+	void skipLine() {
+		if(hasNext()) {
+			this.position = Math.min(lineEnd() + 1, this.text.length());
+		}
+	}
+
+
+	/**
+	 * Consume the next line if it is a list delimiter. If it is not, the cursor does not move.
+	 *
+	 * @return true if a delimiter line was consumed
+	 */
+	boolean skipDelimiter() {
+		if(hasNext() && lineEnd() - this.position == DELIMITER_LINE.length() && this.text.startsWith(DELIMITER_LINE, this.position)) {
+			skipLine();
+			return true;
+		}
+		else {
+			return false;
+		}
+	}
+
+
+	/**
+	 * Check if the remaining text contains the provided string. Nothing is copied and the cursor does not move.
+	 *
+	 * @param str String to search for
+	 * @return true if the string was found behind the cursor position
+	 */
+	boolean remainingContains(String str) {
+		return this.text.indexOf(str, this.position) >= 0;
+	}
+
+
+	/**
+	 * Get the index of the line start the cursor is positioned at.
+	 *
+	 * @return Index into the text
+	 */
+	int position() {
+		return this.position;
+	}
+
+
+	/**
+	 * Get the whole text the cursor reads from, used for diagnostic messages.
+	 *
+	 * @return Response text
+	 */
+	String getText() {
+		return this.text;
+	}
+
+
+	private int lineEnd() {
+		int lineEnd = this.text.indexOf('\n', this.position);
+
+		return lineEnd >= 0 ? lineEnd : this.text.length();
+	}
+}
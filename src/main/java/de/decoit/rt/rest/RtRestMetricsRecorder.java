@@ -0,0 +1,458 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Instrumentation which keeps latency histograms and counters in memory.
+ * For every endpoint the time of each request phase is recorded in a histogram with a relative error below 3.2%,
+ * together with the response sizes, RT status codes, failures, retries, the throttle queue depth and the requests
+ * rejected by the circuit breaker. HTTP status codes, session re-logins and circuit breaker state transitions are
+ * counted for all endpoints together. Recording is lock-free and does not allocate
+ * after the first request to an endpoint.<br>
+ * The connect and server wait phases are spent waiting for the network and RT, the body read, status parse and
+ * entity parse phases show the client side overhead. dump() creates a text report of all collected values.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestMetricsRecorder extends RtRestInstrumentation {
+	private final AtomicReferenceArray<EndpointMetrics> endpoints = new AtomicReferenceArray<>(RtRestEndpoint.values().length);
+	private final ConcurrentMap<Integer, AtomicLong> httpStatusCounts = new ConcurrentHashMap<>();
+	private final AtomicLong reloginCount = new AtomicLong(0L);
+	private final AtomicLongArray circuitTransitions = new AtomicLongArray(RtRestCircuitState.values().length * RtRestCircuitState.values().length);
+	private volatile RtRestCircuitState circuitState = RtRestCircuitState.CLOSED;
+
+
+	/**
+	 * Phases of a request which are recorded in separate histograms.
+	 */
+	public static enum Phase {
+		/**
+		 * Time spent waiting for a slot of the client side throttle, not part of the exchange
+		 */
+		THROTTLE_WAIT,
+		CONNECT,
+		SERVER_WAIT,
+		BODY_READ,
+		STATUS_PARSE,
+		ENTITY_PARSE,
+		/**
+		 * Sum of the connect, server wait, body read and status parse phases
+		 */
+		EXCHANGE
+	}
+
+
+	@Override
+	public void exchangeCompleted(RtRestExchangeMetrics metrics) {
+		EndpointMetrics em = getEndpointMetrics(metrics.getEndpoint());
+
+		em.requests.incrementAndGet();
+		em.histogram(Phase.CONNECT).record(metrics.getConnectNanos());
+		em.histogram(Phase.SERVER_WAIT).record(metrics.getServerWaitNanos());
+		em.histogram(Phase.BODY_READ).record(metrics.getBodyReadNanos());
+		em.histogram(Phase.STATUS_PARSE).record(metrics.getStatusParseNanos());
+		em.histogram(Phase.EXCHANGE).record(metrics.getTotalNanos());
+		em.responseBytes.record(metrics.getResponseBytes());
+
+		if(!metrics.isSuccessful()) {
+			em.failures.incrementAndGet();
+		}
+
+		if(metrics.getRtStatus() != null) {
+			em.rtStatusCounts.incrementAndGet(metrics.getRtStatus().ordinal());
+		}
+
+		if(metrics.getHttpStatus() >= 0) {
+			AtomicLong counter = this.httpStatusCounts.get(metrics.getHttpStatus());
+
+			if(counter == null) {
+				AtomicLong newCounter = new AtomicLong(0L);
+				counter = this.httpStatusCounts.putIfAbsent(metrics.getHttpStatus(), newCounter);
+
+				if(counter == null) {
+					counter = newCounter;
+				}
+			}
+
+			counter.incrementAndGet();
+		}
+	}
+
+
+	@Override
+	public void entityParsed(RtRestEndpoint endpoint, long nanos) {
+		getEndpointMetrics(endpoint).histogram(Phase.ENTITY_PARSE).record(nanos);
+	}
+
+
+	@Override
+	public void requestRetried(RtRestEndpoint endpoint, int attempt, Exception cause) {
+		getEndpointMetrics(endpoint).retries.incrementAndGet();
+	}
+
+
+	@Override
+	public void throttleAcquired(RtRestEndpoint endpoint, long waitNanos, int queueDepth) {
+		EndpointMetrics em = getEndpointMetrics(endpoint);
+
+		em.histogram(Phase.THROTTLE_WAIT).record(waitNanos);
+		em.queueDepth.record(queueDepth);
+	}
+
+
+	@Override
+	public void throttleRejected(RtRestEndpoint endpoint) {
+		getEndpointMetrics(endpoint).throttled.incrementAndGet();
+	}
+
+
+	@Override
+	public void circuitStateChanged(RtRestCircuitState from, RtRestCircuitState to) {
+		this.circuitState = to;
+		this.circuitTransitions.incrementAndGet(from.ordinal() * RtRestCircuitState.values().length + to.ordinal());
+	}
+
+
+	@Override
+	public void circuitRejected(RtRestEndpoint endpoint) {
+		getEndpointMetrics(endpoint).circuitRejected.incrementAndGet();
+	}
+
+
+	@Override
+	public void sessionRelogin() {
+		this.reloginCount.incrementAndGet();
+	}
+
+
+	/**
+	 * Get the number of completed exchanges with an endpoint, including failed ones.
+	 *
+	 * @param endpoint Endpoint
+	 * @return Number of exchanges
+	 */
+	public long getRequestCount(RtRestEndpoint endpoint) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.requests.get() : 0L;
+	}
+
+
+	/**
+	 * Get the number of exchanges with an endpoint which failed without a readable response.
+	 *
+	 * @param endpoint Endpoint
+	 * @return Number of failed exchanges
+	 */
+	public long getFailureCount(RtRestEndpoint endpoint) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.failures.get() : 0L;
+	}
+
+
+	/**
+	 * Get the number of retried requests to an endpoint.
+	 *
+	 * @param endpoint Endpoint
+	 * @return Number of retries
+	 */
+	public long getRetryCount(RtRestEndpoint endpoint) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.retries.get() : 0L;
+	}
+
+
+	/**
+	 * Get the number of requests to an endpoint which were rejected by the client side throttle.
+	 *
+	 * @param endpoint Endpoint
+	 * @return Number of rejected requests
+	 */
+	public long getThrottledCount(RtRestEndpoint endpoint) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.throttled.get() : 0L;
+	}
+
+
+	/**
+	 * Get the number of requests to an endpoint which were rejected because the circuit breaker was open.
+	 *
+	 * @param endpoint Endpoint
+	 * @return Number of rejected requests
+	 */
+	public long getCircuitRejectedCount(RtRestEndpoint endpoint) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.circuitRejected.get() : 0L;
+	}
+
+
+	/**
+	 * Get the number of requests waiting for a throttle slot which requests to an endpoint found on arrival,
+	 * below or at which the provided percentage of these requests are.
+	 *
+	 * @param endpoint Endpoint
+	 * @param percentile Percentile between 0 and 100, use 100 for the maximum
+	 * @return Queue depth, 0 if nothing was recorded
+	 */
+	public long getQueueDepthAtPercentile(RtRestEndpoint endpoint, double percentile) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.queueDepth.getValueAtPercentile(percentile) : 0L;
+	}
+
+
+	/**
+	 * Get the number of responses of an endpoint which contained the provided RT status.
+	 *
+	 * @param endpoint Endpoint
+	 * @param status RT status
+	 * @return Number of responses
+	 */
+	public long getRtStatusCount(RtRestEndpoint endpoint, RtRestStatus status) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.rtStatusCounts.get(status.ordinal()) : 0L;
+	}
+
+
+	/**
+	 * Get the number of responses with the provided HTTP status code, for all endpoints.
+	 *
+	 * @param httpStatus HTTP status code
+	 * @return Number of responses
+	 */
+	public long getHttpStatusCount(int httpStatus) {
+		AtomicLong counter = this.httpStatusCounts.get(httpStatus);
+		return counter != null ? counter.get() : 0L;
+	}
+
+
+	/**
+	 * @return Number of session re-logins done by session pools
+	 */
+	public long getReloginCount() {
+		return this.reloginCount.get();
+	}
+
+
+	/**
+	 * Get the number of transitions of the circuit breaker from one state to another.
+	 *
+	 * @param from Previous state
+	 * @param to New state
+	 * @return Number of transitions
+	 */
+	public long getCircuitTransitionCount(RtRestCircuitState from, RtRestCircuitState to) {
+		return this.circuitTransitions.get(from.ordinal() * RtRestCircuitState.values().length + to.ordinal());
+	}
+
+
+	/**
+	 * @return State of the circuit breaker after the last reported transition
+	 */
+	public RtRestCircuitState getCircuitState() {
+		return this.circuitState;
+	}
+
+
+	/**
+	 * Get the number of measurements recorded for a phase of an endpoint.
+	 *
+	 * @param endpoint Endpoint
+	 * @param phase Request phase
+	 * @return Number of measurements
+	 */
+	public long getPhaseCount(RtRestEndpoint endpoint, Phase phase) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.histogram(phase).getCount() : 0L;
+	}
+
+
+	/**
+	 * Get the duration below or at which the provided percentage of measurements of a phase are.
+	 *
+	 * @param endpoint Endpoint
+	 * @param phase Request phase
+	 * @param percentile Percentile between 0 and 100, use 100 for the maximum
+	 * @return Duration in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getPhaseNanosAtPercentile(RtRestEndpoint endpoint, Phase phase, double percentile) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.histogram(phase).getValueAtPercentile(percentile) : 0L;
+	}
+
+
+	/**
+	 * Get the response size below or at which the provided percentage of responses of an endpoint are.
+	 *
+	 * @param endpoint Endpoint
+	 * @param percentile Percentile between 0 and 100, use 100 for the maximum
+	 * @return Response size in bytes, 0 if nothing was recorded
+	 */
+	public long getResponseBytesAtPercentile(RtRestEndpoint endpoint, double percentile) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+		return em != null ? em.responseBytes.getValueAtPercentile(percentile) : 0L;
+	}
+
+
+	/**
+	 * Discard all collected values.
+	 * Measurements which are recorded concurrently may be lost or kept.
+	 */
+	public void reset() {
+		for(int i = 0; i < this.endpoints.length(); i++) {
+			this.endpoints.set(i, null);
+		}
+
+		this.httpStatusCounts.clear();
+		this.reloginCount.set(0L);
+
+		for(int i = 0; i < this.circuitTransitions.length(); i++) {
+			this.circuitTransitions.set(i, 0L);
+		}
+	}
+
+
+	/**
+	 * Create a text report of all collected values. Endpoints which received no request are omitted.
+	 * Durations are printed in milliseconds, response sizes in bytes.
+	 *
+	 * @return Report text
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("RT REST metrics (durations in ms, sizes in bytes)\n");
+
+		for(RtRestEndpoint endpoint : RtRestEndpoint.values()) {
+			EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+
+			if(em == null) {
+				continue;
+			}
+
+			sb.append('\n');
+			sb.append(String.format(Locale.US, "%s: requests=%d failures=%d retries=%d throttled=%d circuit-rejected=%d\n", endpoint, em.requests.get(), em.failures.get(), em.retries.get(), em.throttled.get(), em.circuitRejected.get()));
+			sb.append(String.format(Locale.US, "  %-14s %8s %10s %10s %10s %10s %10s\n", "phase", "count", "mean", "p50", "p90", "p99", "max"));
+
+			for(Phase phase : Phase.values()) {
+				RtRestHistogram h = em.histogram(phase);
+
+				if(h.getCount() > 0L) {
+					sb.append(String.format(Locale.US, "  %-14s %8d %10.3f %10.3f %10.3f %10.3f %10.3f\n", phase.toString().toLowerCase(Locale.US), h.getCount(),
+							h.getMean() / 1e6, h.getValueAtPercentile(50.0) / 1e6, h.getValueAtPercentile(90.0) / 1e6, h.getValueAtPercentile(99.0) / 1e6, h.getMax() / 1e6));
+				}
+			}
+
+			RtRestHistogram bytes = em.responseBytes;
+			if(bytes.getCount() > 0L) {
+				sb.append(String.format(Locale.US, "  %-14s %8d %10.0f %10d %10d %10d %10d\n", "response size", bytes.getCount(),
+						bytes.getMean(), bytes.getValueAtPercentile(50.0), bytes.getValueAtPercentile(90.0), bytes.getValueAtPercentile(99.0), bytes.getMax()));
+			}
+
+			RtRestHistogram depth = em.queueDepth;
+			if(depth.getCount() > 0L) {
+				sb.append(String.format(Locale.US, "  %-14s %8d %10.1f %10d %10d %10d %10d\n", "queue depth", depth.getCount(),
+						depth.getMean(), depth.getValueAtPercentile(50.0), depth.getValueAtPercentile(90.0), depth.getValueAtPercentile(99.0), depth.getMax()));
+			}
+
+			sb.append("  RT status:");
+			for(RtRestStatus status : RtRestStatus.values()) {
+				sb.append(' ').append(status).append('=').append(em.rtStatusCounts.get(status.ordinal()));
+			}
+			sb.append('\n');
+		}
+
+		sb.append("\nHTTP status:");
+		for(Map.Entry<Integer, AtomicLong> entry : new TreeMap<>(this.httpStatusCounts).entrySet()) {
+			sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue().get());
+		}
+		sb.append('\n');
+		sb.append("Session re-logins: ").append(this.reloginCount.get()).append('\n');
+
+		sb.append("Circuit breaker: ").append(this.circuitState);
+		for(RtRestCircuitState from : RtRestCircuitState.values()) {
+			for(RtRestCircuitState to : RtRestCircuitState.values()) {
+				long count = getCircuitTransitionCount(from, to);
+
+				if(count > 0L) {
+					sb.append(' ').append(from).append("->").append(to).append('=').append(count);
+				}
+			}
+		}
+		sb.append('\n');
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Get the metrics of an endpoint, they are created when the first value is recorded.
+	 *
+	 * @param endpoint Endpoint
+	 * @return Metrics of the endpoint
+	 */
+	private EndpointMetrics getEndpointMetrics(RtRestEndpoint endpoint) {
+		EndpointMetrics em = this.endpoints.get(endpoint.ordinal());
+
+		while(em == null) {
+			EndpointMetrics created = new EndpointMetrics();
+
+			if(this.endpoints.compareAndSet(endpoint.ordinal(), null, created)) {
+				return created;
+			}
+
+			em = this.endpoints.get(endpoint.ordinal());
+		}
+
+		return em;
+	}
+
+
+	/**
+	 * Histograms and counters of a single endpoint.
+	 */
+	private static class EndpointMetrics {
+		private final RtRestHistogram[] phases = new RtRestHistogram[Phase.values().length];
+		private final RtRestHistogram responseBytes = new RtRestHistogram();
+		private final RtRestHistogram queueDepth = new RtRestHistogram();
+		private final AtomicLongArray rtStatusCounts = new AtomicLongArray(RtRestStatus.values().length);
+		private final AtomicLong requests = new AtomicLong(0L);
+		private final AtomicLong failures = new AtomicLong(0L);
+		private final AtomicLong retries = new AtomicLong(0L);
+		private final AtomicLong throttled = new AtomicLong(0L);
+		private final AtomicLong circuitRejected = new AtomicLong(0L);
+
+
+		EndpointMetrics() {
+			for(int i = 0; i < this.phases.length; i++) {
+				this.phases[i] = new RtRestHistogram();
+			}
+		}
+
+
+		RtRestHistogram histogram(Phase phase) {
+			return this.phases[phase.ordinal()];
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Classes of RT REST API operations which share the limits of a RtRestThrottlePolicy.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public enum RtRestOperationClass {
+	/**
+	 * Requests for single objects, login and logout
+	 */
+	READ,
+
+	/**
+	 * Ticket and user searches, including the searches of bulk requests
+	 */
+	SEARCH,
+
+	/**
+	 * Requests which create or modify objects
+	 */
+	WRITE,
+
+	/**
+	 * Ticket history requests
+	 */
+	HISTORY
+}
@@ -33,6 +33,7 @@ import org.apache.log4j.Logger;
  */
 public class RtRestQueueResponseParser extends RtRestResponseParser {
 	private static final Logger LOG = Logger.getLogger(RtRestQueueResponseParser.class);
+	private static final Pattern QUEUE_LIST_LINE_PATTERN = Pattern.compile("^(\\d+): (.+)$");
 
 
 	/**
@@ -52,13 +53,24 @@ public class RtRestQueueResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the string contains invalid values
 	 */
 	static RtQueue parseQueue(String response) throws RtException {
+		return parseQueue(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Parse a single queue object from the lines ahead of the cursor. Reading stops behind the next list
+	 * delimiter or at the end of the response.
+	 *
+	 * @param cursor Cursor over the response string containing queue information
+	 * @return A queue object built from the information
+	 * @throws RtException if the string contains invalid values
+	 */
+	static RtQueue parseQueue(RtRestLineCursor cursor) throws RtException {
 		RtQueue queue = new RtQueue();
-		Pattern idPattern = Pattern.compile("^queue/(\\d+)$");
 
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		while (cursor.hasNext() && !cursor.skipDelimiter()) {
+			String line = cursor.nextLine();
 
-		for (String line : responseParts) {
 			if (StringUtils.isBlank(line)) {
 				// Blank line, ignore
 			}
@@ -69,90 +81,69 @@ public class RtRestQueueResponseParser extends RtRestResponseParser {
 				// Message line, in case of ticket query means something went wrong, raise exception
 				throw new RtException(line.substring(2));
 			}
-			else if (line.startsWith("CF.{")) {
-				// New style custom field line, parse and add to custom fields of the queue
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				Pattern cfNamePattern = Pattern.compile("^CF\\.\\{(.+?)\\}$");
-				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
-				if(cfNameMatcher.matches()) {
-					String cfName = cfNameMatcher.group(1);
-
-					queue.addCustomField(cfName, lineParts[1]);
-				}
-				else {
-					LOG.warn("Invalid custom field line detected: " + line);
-				}
-			}
-			else if (line.startsWith("CF-")) {
-				// Old style custom field line, parse and add to custom fields of the queue
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				Pattern cfNamePattern = Pattern.compile("^CF-(.+?)$");
-				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
-				if(cfNameMatcher.matches()) {
-					String cfName = cfNameMatcher.group(1);
-
-					queue.addCustomField(cfName, lineParts[1]);
+			else {
+				String key = lineKey(line);
+				String value = lineValue(line);
+
+				if (key.startsWith("CF.{") || key.startsWith("CF-")) {
+					// Custom field line (new style CF.{name} or old style CF-name), parse and add to custom fields of the queue
+					String cfName = customFieldName(key);
+
+					if(cfName != null) {
+						queue.addCustomField(cfName, value);
+					}
+					else {
+						LOG.warn("Invalid custom field line detected: " + line);
+					}
 				}
 				else {
-					LOG.warn("Invalid custom field line detected: " + line);
-				}
-			}
-			else {
-				Matcher idMatcher;
-
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				switch (lineParts[0]) {
-					case "id":
-						idMatcher = idPattern.matcher(lineParts[1]);
-
-						if (idMatcher.matches()) {
-							queue.setId(Long.parseLong(idMatcher.group(1)));
-						}
-						else {
-							throw new RtException("Invalid queue ID pattern: " + lineParts[1]);
-						}
-						break;
-					case "Name":
-						queue.setName(lineParts[1]);
-						break;
-					case "Description":
-						queue.setDescription(lineParts[1]);
-						break;
-					case "CorrespondAddress":
-						queue.setCorrespondAddress(lineParts[1]);
-						break;
-					case "CommentAddress":
-						queue.setCommentAddress(lineParts[1]);
-						break;
-					case "InitialPriority":
-						queue.setInitialPriority(Integer.parseInt(lineParts[1]));
-						break;
-					case "FinalPriority":
-						queue.setFinalPriority(Integer.parseInt(lineParts[1]));
-						break;
-					case "DefaultDueIn":
-						queue.setDefaultDueIn(Integer.parseInt(lineParts[1]));
-						break;
-					case "Disabled":
-						switch (lineParts[1]) {
-							case "0":
-								queue.setDisabled(false);
-								break;
-							case "1":
-								queue.setDisabled(true);
-								break;
-							default:
-								throw new RtException("Invalid queue disabled status value: " + lineParts[1]);
-						}
-						break;
-					default:
-						// Ignore
+					switch (key) {
+						case "id":
+							long id = parseObjectId(value, "queue/");
+
+							if (id >= 0) {
+								queue.setId(id);
+							}
+							else {
+								throw new RtException("Invalid queue ID pattern: " + value);
+							}
+							break;
+						case "Name":
+							queue.setName(value);
+							break;
+						case "Description":
+							queue.setDescription(value);
+							break;
+						case "CorrespondAddress":
+							queue.setCorrespondAddress(value);
+							break;
+						case "CommentAddress":
+							queue.setCommentAddress(value);
+							break;
+						case "InitialPriority":
+							queue.setInitialPriority(Integer.parseInt(value));
+							break;
+						case "FinalPriority":
+							queue.setFinalPriority(Integer.parseInt(value));
+							break;
+						case "DefaultDueIn":
+							queue.setDefaultDueIn(Integer.parseInt(value));
+							break;
+						case "Disabled":
+							switch (value) {
+								case "0":
+									queue.setDisabled(false);
+									break;
+								case "1":
+									queue.setDisabled(true);
+									break;
+								default:
+									throw new RtException("Invalid queue disabled status value: " + value);
+							}
+							break;
+						default:
+							// Ignore
+					}
 				}
 			}
 		}
@@ -171,14 +162,22 @@ public class RtRestQueueResponseParser extends RtRestResponseParser {
 	 * @return A map with the described mappings
 	 */
 	static Map<Long, String> parseQueueList(String response) {
-		HashMap<Long, String> queueMap = new HashMap<>();
-		Pattern p = Pattern.compile("^(\\d+): (.+)$");
+		return parseQueueList(new RtRestLineCursor(response));
+	}
+
 
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+	/**
+	 * Parse a list of queues from the lines ahead of the cursor into a map of queueId=&gt;queueName mappings.
+	 *
+	 * @param cursor Cursor over the response string containing queue list
+	 * @return A map with the described mappings
+	 */
+	static Map<Long, String> parseQueueList(RtRestLineCursor cursor) {
+		HashMap<Long, String> queueMap = new HashMap<>();
 
-		for (String line : responseParts) {
-			Matcher m = p.matcher(line);
+		while (cursor.hasNext()) {
+			String line = cursor.nextLine();
+			Matcher m = QUEUE_LIST_LINE_PATTERN.matcher(line);
 
 			if (m.matches()) {
 				// List line, extract queue ID and name and put them into the map
@@ -204,17 +203,28 @@ public class RtRestQueueResponseParser extends RtRestResponseParser {
 	 * @throws RtException if queue creation failed
 	 */
 	static long parseQueueCreated(String response) throws RtException {
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		return parseQueueCreated(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Read the lines ahead of the cursor and extract the ID of a new queue from the response of a create queue
+	 * request.
+	 *
+	 * @param cursor Cursor over the response string received from the RT REST API
+	 * @return The ID of the created queue
+	 * @throws RtException if queue creation failed
+	 */
+	static long parseQueueCreated(RtRestLineCursor cursor) throws RtException {
+		while (cursor.hasNext()) {
+			String line = cursor.nextLine();
 
-		for (String line : responseParts) {
 			// Line with status message, it is the only one that is of interest in this case
 			if (line.startsWith("#")) {
-				Pattern p = Pattern.compile("^# Queue (\\d+?) created\\.$");
-				Matcher m = p.matcher(line);
+				long id = parseMessageId(line, "# Queue ", " created.");
 
-				if (m.matches()) {
-					return Long.parseLong(m.group(1));
+				if (id >= 0) {
+					return id;
 				}
 			}
 			else {
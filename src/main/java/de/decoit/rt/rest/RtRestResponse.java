@@ -17,6 +17,8 @@
 package de.decoit.rt.rest;
 
 /**
+ * Envelope of a RT REST response. The status line is parsed once when the response is read, the entity parsers
+ * read the remaining lines through getBodyCursor() without splitting the body again.
  *
  * @author Thomas Rix (rix@decoit.de)
  */
@@ -24,12 +26,14 @@ public class RtRestResponse {
 	private final RtRestStatus rtStatus;
 	private final String sessionId;
 	private final String bodyText;
+	private final int bodyStart;
 
 
-	RtRestResponse(RtRestStatus status, String sessionId, String bodyText) {
+	RtRestResponse(RtRestStatus status, String sessionId, String bodyText, int bodyStart) {
 		this.rtStatus = status;
 		this.sessionId = sessionId;
 		this.bodyText = bodyText;
+		this.bodyStart = bodyStart;
 	}
 
 
@@ -46,4 +50,14 @@ public class RtRestResponse {
 	public String getBodyText() {
 		return this.bodyText;
 	}
+
+
+	/**
+	 * Create a cursor over the lines following the status line. Every call returns a new cursor.
+	 *
+	 * @return Cursor positioned behind the status line
+	 */
+	RtRestLineCursor getBodyCursor() {
+		return new RtRestLineCursor(this.bodyText, this.bodyStart);
+	}
 }
@@ -16,6 +16,7 @@
  */
 package de.decoit.rt.rest;
 
+import de.decoit.rt.RtException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
@@ -23,14 +24,15 @@ import org.apache.log4j.Logger;
 
 /**
  * This class acts as super class for all other response parser classes.
- * It provides a method to check the RT status of a REST API response.
+ * It provides a method to check the RT status of a REST API response and helper methods for the line based
+ * formats used by RT. The helpers work on plain string operations, the parsers run them for every line of a
+ * response and regular expressions would cost more than the rest of the parsing.
  *
  * @author Thomas Rix (rix@decoit.de)
  */
 class RtRestResponseParser {
 	private static final Logger LOG = Logger.getLogger(RtRestResponseParser.class);
 	protected static final Pattern STATUS_PATTERN = Pattern.compile("^RT/\\d+(\\.\\d+){1,2} (\\d{3}) (.+)$");
-	protected static final String LIST_DELIMITER = "--\n";
 
 
 	/**
@@ -48,11 +50,24 @@ class RtRestResponseParser {
 	 * @return Status enum constant, null if no status could be parsed from the response
 	 */
 	static RtRestStatus parseStatus(String response) {
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
-
 		// First line in response is status string
-		Matcher m = STATUS_PATTERN.matcher(responseParts[0]);
+		return parseStatusLine(new RtRestLineCursor(response).nextLine());
+	}
+
+
+	/**
+	 * Parse the status line of a RT REST response, the first line of the response body.
+	 *
+	 * @param statusLine The status line without line break, may be null for an empty response
+	 *
+	 * @return Status enum constant, null if no status could be parsed from the line
+	 */
+	static RtRestStatus parseStatusLine(String statusLine) {
+		if (statusLine == null) {
+			return null;
+		}
+
+		Matcher m = STATUS_PATTERN.matcher(statusLine);
 
 		if (m.matches()) {
 			if (LOG.isDebugEnabled()) {
@@ -65,4 +80,167 @@ class RtRestResponseParser {
 			return null;
 		}
 	}
+
+
+	/**
+	 * Get the key of a "Key: value" line.
+	 *
+	 * @param line Line of the response
+	 * @return The key, everything in front of the first colon
+	 * @throws RtException if the line does not contain a colon
+	 */
+	static String lineKey(String line) throws RtException {
+		return line.substring(0, keySeparatorIndex(line));
+	}
+
+
+	/**
+	 * Get the value of a "Key: value" line.
+	 *
+	 * @param line Line of the response
+	 * @return The value, without surrounding whitespace
+	 * @throws RtException if the line does not contain a colon
+	 */
+	static String lineValue(String line) throws RtException {
+		return line.substring(keySeparatorIndex(line) + 1).trim();
+	}
+
+
+	/**
+	 * Extract the name of a custom field from the key of a custom field line.
+	 * Both the new style "CF.{name}" and the old style "CF-name" keys are supported.
+	 *
+	 * @param key Key of the line
+	 * @return Name of the custom field, null if the key is not a valid custom field key
+	 */
+	static String customFieldName(String key) {
+		if(key.startsWith("CF.{") && key.endsWith("}") && key.length() > 5) {
+			return key.substring(4, key.length() - 1);
+		}
+		else if(key.startsWith("CF-") && key.length() > 3) {
+			return key.substring(3);
+		}
+		else {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Extract the numeric ID from an object ID like "ticket/123".
+	 *
+	 * @param value Object ID returned by RT
+	 * @param prefix Expected prefix including the slash, i.e. "ticket/"
+	 * @return The numeric ID, -1 if the value does not consist of the prefix followed by digits
+	 */
+	static long parseObjectId(String value, String prefix) {
+		if(value.startsWith(prefix)) {
+			return parseDigits(value, prefix.length(), value.length());
+		}
+		else {
+			return -1L;
+		}
+	}
+
+
+	/**
+	 * Extract the numeric ID from a message line like "# Ticket 123 created.".
+	 *
+	 * @param line Message line returned by RT
+	 * @param prefix Text in front of the ID, i.e. "# Ticket "
+	 * @param suffix Text behind the ID, i.e. " created."
+	 * @return The numeric ID, -1 if the line does not consist of prefix, digits and suffix
+	 */
+	static long parseMessageId(String line, String prefix, String suffix) {
+		if(line.startsWith(prefix) && line.endsWith(suffix)) {
+			return parseDigits(line, prefix.length(), line.length() - suffix.length());
+		}
+		else {
+			return -1L;
+		}
+	}
+
+
+	/**
+	 * Parse a time value like "30 minutes".
+	 *
+	 * @param value Time value returned by RT
+	 * @return Number of minutes, 0 if the value is not set or invalid
+	 */
+	static int parseMinutes(String value) {
+		long minutes = parseMessageId(value, "", " minutes");
+
+		if(minutes >= 0 && minutes <= Integer.MAX_VALUE) {
+			return (int) minutes;
+		}
+		else {
+			return 0;
+		}
+	}
+
+
+	/**
+	 * Count the whitespace characters at the beginning of a line.
+	 * Whitespace is defined like \s in regular expressions.
+	 *
+	 * @param line Line of the response
+	 * @return Number of leading whitespace characters
+	 */
+	static int leadingWhitespace(String line) {
+		int count = 0;
+
+		while(count < line.length()) {
+			char c = line.charAt(count);
+
+			if(c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+				count++;
+			}
+			else {
+				break;
+			}
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Parse the decimal digits in the range [begin, end) of a string.
+	 *
+	 * @param s String containing the digits
+	 * @param begin Index of the first digit
+	 * @param end Index behind the last digit
+	 * @return The parsed number, -1 if the range is empty, contains other characters or the number is too large
+	 */
+	private static long parseDigits(String s, int begin, int end) {
+		// More than 18 digits may overflow
+		if(begin >= end || end - begin > 18) {
+			return -1L;
+		}
+
+		long result = 0L;
+
+		for(int i = begin; i < end; i++) {
+			char c = s.charAt(i);
+
+			if(c < '0' || c > '9') {
+				return -1L;
+			}
+
+			result = result * 10 + (c - '0');
+		}
+
+		return result;
+	}
+
+
+	private static int keySeparatorIndex(String line) throws RtException {
+		int index = line.indexOf(':');
+
+		if(index < 0) {
+			throw new RtException("Invalid line in response: " + line);
+		}
+
+		return index;
+	}
 }
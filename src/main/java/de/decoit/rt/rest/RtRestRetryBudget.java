@@ -0,0 +1,70 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+
+/**
+ * Token bucket limiting the number of retries sent by a client.
+ * Each retry takes a token, each successful request returns a fraction of a token up to the maximum. Retries are
+ * only allowed while more than half of the tokens are available, so a client talking to a failing server sends
+ * a few retries and then falls back to one retry per a number of successful requests.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestRetryBudget {
+	private final double maxTokens;
+	private final double tokenRatio;
+	private double tokens;
+
+
+	RtRestRetryBudget(int maxTokens, double tokenRatio) {
+		this.maxTokens = maxTokens;
+		this.tokenRatio = tokenRatio;
+		this.tokens = maxTokens;
+	}
+
+
+	/**
+	 * Take a token for a retry if the budget allows it.
+	 *
+	 * @return true if the retry may be sent
+	 */
+	synchronized boolean tryAcquire() {
+		if(this.tokens > this.maxTokens / 2.0) {
+			this.tokens -= 1.0;
+			return true;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Return a fraction of a token after a successful request.
+	 */
+	synchronized void recordSuccess() {
+		this.tokens = Math.min(this.maxTokens, this.tokens + this.tokenRatio);
+	}
+
+
+	/**
+	 * @return Number of available tokens
+	 */
+	synchronized double getTokens() {
+		return this.tokens;
+	}
+}
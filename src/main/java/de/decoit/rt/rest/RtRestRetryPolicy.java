@@ -0,0 +1,282 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtTransientException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+
+/**
+ * Policy for sending failed requests to RT again.
+ * A request is retried if its endpoint is idempotent and it failed for a transient reason: an I/O error, a
+ * retryable HTTP status (by default 429, 500, 502, 503 and 504) or a RtTransientException. Requests to
+ * endpoints which are not idempotent, like ticket creation, are never retried unless explicitly enabled.<br>
+ * Between two attempts the client waits for a random time between 0 and an exponentially growing backoff
+ * ("full jitter"), so clients which failed at the same time do not retry at the same time.<br>
+ * To keep retries from multiplying the load on an RT server which is already failing, every client holds a
+ * retry budget. Each retry takes a token from it, each successful request returns a fraction of a token.
+ * Retries are only sent while more than half of the tokens are available. With the default settings up to 5
+ * retries can be sent in a row, after that about one retry per 10 successful requests.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestRetryPolicy {
+	/**
+	 * Policy which never retries a request. This is the default of RtRestConnector.
+	 */
+	public static final RtRestRetryPolicy NONE = builder().maxAttempts(1).build();
+
+	private final int maxAttempts;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final double backoffMultiplier;
+	private final int[] retryableHttpStatuses;
+	private final Map<RtRestEndpoint, Boolean> endpointOverrides;
+	private final int budgetMaxTokens;
+	private final double budgetTokenRatio;
+
+
+	private RtRestRetryPolicy(Builder builder) {
+		this.maxAttempts = builder.maxAttempts;
+		this.initialBackoffNanos = builder.initialBackoffNanos;
+		this.maxBackoffNanos = builder.maxBackoffNanos;
+		this.backoffMultiplier = builder.backoffMultiplier;
+		this.retryableHttpStatuses = builder.retryableHttpStatuses.clone();
+		this.endpointOverrides = new EnumMap<>(builder.endpointOverrides);
+		this.budgetMaxTokens = builder.budgetMaxTokens;
+		this.budgetTokenRatio = builder.budgetTokenRatio;
+
+		Arrays.sort(this.retryableHttpStatuses);
+	}
+
+
+	/**
+	 * Create a builder for a retry policy, initialized with the default settings.
+	 *
+	 * @return A new builder object
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	/**
+	 * @return Maximum number of attempts for a request, including the first one
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+
+	/**
+	 * Check if requests to the provided endpoint may be retried.
+	 *
+	 * @param endpoint Endpoint
+	 * @return true if requests may be retried
+	 */
+	public boolean isRetryEnabled(RtRestEndpoint endpoint) {
+		Boolean override = endpointOverrides.get(endpoint);
+		return override != null ? override : endpoint.isIdempotent();
+	}
+
+
+	/**
+	 * Check if a request which failed with the provided exception may be sent again.
+	 * The retry budget and the number of attempts are not considered.
+	 *
+	 * @param endpoint Endpoint of the request
+	 * @param failure Exception raised by the request
+	 * @return true if the request may be retried
+	 */
+	boolean isRetryable(RtRestEndpoint endpoint, Exception failure) {
+		if(!isRetryEnabled(endpoint)) {
+			return false;
+		}
+
+		if(failure instanceof ResourceAccessException || failure instanceof RtTransientException) {
+			return true;
+		}
+
+		if(failure instanceof HttpStatusCodeException) {
+			int status = ((HttpStatusCodeException) failure).getStatusCode().value();
+			return Arrays.binarySearch(retryableHttpStatuses, status) >= 0;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Get a random time to wait before the next attempt.
+	 * The time is between 0 and initialBackoff * multiplier^(attempt - 1), but never longer than the maximum backoff.
+	 *
+	 * @param attempt Number of the attempt which failed, 1 for the first attempt
+	 * @return Time to wait in nanoseconds
+	 */
+	long getBackoffNanos(int attempt) {
+		double backoff = initialBackoffNanos * Math.pow(backoffMultiplier, attempt - 1);
+		long cappedBackoff = backoff < maxBackoffNanos ? (long) backoff : maxBackoffNanos;
+
+		if(cappedBackoff <= 0L) {
+			return 0L;
+		}
+
+		return ThreadLocalRandom.current().nextLong(cappedBackoff + 1L);
+	}
+
+
+	/**
+	 * Create a new retry budget with the settings of this policy.
+	 *
+	 * @return A new budget
+	 */
+	RtRestRetryBudget createBudget() {
+		return new RtRestRetryBudget(budgetMaxTokens, budgetTokenRatio);
+	}
+
+
+	/**
+	 * Builder for RtRestRetryPolicy objects.
+	 */
+	public static class Builder {
+		private int maxAttempts = 3;
+		private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100L);
+		private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(5L);
+		private double backoffMultiplier = 2.0;
+		private int[] retryableHttpStatuses = new int[] { 429, 500, 502, 503, 504 };
+		private final Map<RtRestEndpoint, Boolean> endpointOverrides = new EnumMap<>(RtRestEndpoint.class);
+		private int budgetMaxTokens = 10;
+		private double budgetTokenRatio = 0.1;
+
+
+		private Builder() {
+		}
+
+
+		/**
+		 * Set the maximum number of attempts for a request, including the first one. Default is 3.
+		 *
+		 * @param maxAttempts Number of attempts, 1 disables retries
+		 * @return This builder
+		 */
+		public Builder maxAttempts(int maxAttempts) {
+			if(maxAttempts <= 0) {
+				throw new IllegalArgumentException("Maximum attempts must be greater than 0");
+			}
+
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+
+		/**
+		 * Set the backoff before the first retry and the maximum backoff. Default is 100 milliseconds and 5 seconds.
+		 *
+		 * @param initialBackoff Backoff before the first retry
+		 * @param maxBackoff Maximum backoff
+		 * @param unit Unit of the backoff times
+		 * @return This builder
+		 */
+		public Builder backoff(long initialBackoff, long maxBackoff, TimeUnit unit) {
+			if(initialBackoff < 0L || maxBackoff < initialBackoff) {
+				throw new IllegalArgumentException("Backoff times must not be negative and maximum must not be less than initial backoff");
+			}
+
+			this.initialBackoffNanos = unit.toNanos(initialBackoff);
+			this.maxBackoffNanos = unit.toNanos(maxBackoff);
+			return this;
+		}
+
+
+		/**
+		 * Set the factor the backoff grows by with every attempt. Default is 2.
+		 *
+		 * @param backoffMultiplier Factor, must be at least 1
+		 * @return This builder
+		 */
+		public Builder backoffMultiplier(double backoffMultiplier) {
+			if(backoffMultiplier < 1.0) {
+				throw new IllegalArgumentException("Backoff multiplier must be at least 1");
+			}
+
+			this.backoffMultiplier = backoffMultiplier;
+			return this;
+		}
+
+
+		/**
+		 * Set the HTTP status codes of responses which are retried. Default is 429, 500, 502, 503 and 504.
+		 *
+		 * @param httpStatuses HTTP status codes
+		 * @return This builder
+		 */
+		public Builder retryableHttpStatuses(int... httpStatuses) {
+			this.retryableHttpStatuses = httpStatuses.clone();
+			return this;
+		}
+
+
+		/**
+		 * Enable or disable retries for an endpoint, overriding its idempotency classification.
+		 * Enabling retries for endpoints which are not idempotent may create duplicate tickets or comments.
+		 *
+		 * @param endpoint Endpoint
+		 * @param retry true to retry failed requests to the endpoint
+		 * @return This builder
+		 */
+		public Builder retryEndpoint(RtRestEndpoint endpoint, boolean retry) {
+			this.endpointOverrides.put(endpoint, retry);
+			return this;
+		}
+
+
+		/**
+		 * Set the size of the retry budget and the fraction of a token returned by every successful request.
+		 * Default is 10 tokens and 0.1, which limits retries to about 10% of the requests once the first 5
+		 * tokens are used up.
+		 *
+		 * @param maxTokens Number of tokens in a full budget, must be greater than 0
+		 * @param tokenRatio Fraction of a token returned by a successful request, must not be negative
+		 * @return This builder
+		 */
+		public Builder retryBudget(int maxTokens, double tokenRatio) {
+			if(maxTokens <= 0 || tokenRatio < 0.0) {
+				throw new IllegalArgumentException("Budget must have at least one token and a token ratio not less than 0");
+			}
+
+			this.budgetMaxTokens = maxTokens;
+			this.budgetTokenRatio = tokenRatio;
+			return this;
+		}
+
+
+		/**
+		 * Create the policy with the current settings of this builder.
+		 *
+		 * @return A new policy
+		 */
+		public RtRestRetryPolicy build() {
+			return new RtRestRetryPolicy(this);
+		}
+	}
+}
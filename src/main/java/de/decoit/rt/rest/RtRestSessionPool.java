@@ -0,0 +1,446 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtSessionCallback;
+import de.decoit.rt.RtSessionListener;
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Pool of authenticated RT sessions shared by multiple threads.
+ * Requests are performed by callbacks which receive a session exclusively for the time of the call. Sessions are
+ * created on demand up to the configured maximum, a thread requesting a session while all of them are in use
+ * waits until one is released.<br>
+ * If RT rejects a session, a new login is performed and the callback is called again with the new session.
+ * Sessions which were not used for longer than the refresh interval are replaced by a new login before they are
+ * handed out, so requests do not fail because RT expired the session in the meantime. New session cookies sent
+ * by RT are tracked automatically. Closing the pool logs out all sessions.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestSessionPool implements Closeable {
+	private static final Logger LOG = Logger.getLogger(RtRestSessionPool.class);
+
+	private final RtConnector connector;
+	private final String uname;
+	private final String password;
+	private final int maxSessions;
+	private final long borrowTimeoutMillis;
+	private final long refreshAfterMillis;
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledSession> idleSessions = new LinkedBlockingDeque<>();
+	private final ConcurrentHashMap<String, PooledSession> sessionsById = new ConcurrentHashMap<>();
+	private final AtomicLong loginCount = new AtomicLong(0L);
+	private final AtomicLong reloginCount = new AtomicLong(0L);
+	private final RtSessionListener rotationListener;
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Create a new pool. No session is opened before the first callback is executed.
+	 *
+	 * @param builder Builder holding the configuration
+	 */
+	private RtRestSessionPool(Builder builder) {
+		this.connector = builder.connector;
+		this.uname = builder.uname;
+		this.password = builder.password;
+		this.maxSessions = builder.maxSessions;
+		this.borrowTimeoutMillis = builder.borrowTimeoutMillis;
+		this.refreshAfterMillis = builder.refreshAfterMillis;
+		this.permits = new Semaphore(builder.maxSessions, true);
+
+		this.rotationListener = new RtSessionListener() {
+			@Override
+			public void sessionRotated(String oldSessionId, String newSessionId) {
+				PooledSession session = sessionsById.remove(oldSessionId);
+
+				if(session != null) {
+					session.sessionId = newSessionId;
+					sessionsById.put(newSessionId, session);
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * Create a builder for a session pool which logs into RT with the provided credentials.
+	 *
+	 * @param connector Connector used for login, logout and the callbacks
+	 * @param uname RT username
+	 * @param password Password for username
+	 * @return A new builder object
+	 */
+	public static Builder builder(RtRestConnector connector, String uname, String password) {
+		return new Builder(connector, uname, password);
+	}
+
+
+	/**
+	 * Create a builder for a session pool using any connector.
+	 * New session cookies sent by RT are only tracked if the connector is a RtRestConnector.
+	 *
+	 * @param connector Connector used for login, logout and the callbacks
+	 * @param uname RT username
+	 * @param password Password for username
+	 * @return A new builder object
+	 */
+	static Builder builder(RtConnector connector, String uname, String password) {
+		return new Builder(connector, uname, password);
+	}
+
+
+	/**
+	 * Execute the callback using a session of this pool.
+	 * If RT rejects the session, a new login is performed and the callback is executed once more.
+	 *
+	 * @param <T> Type of the result of the callback
+	 * @param callback Callback which performs the requests
+	 * @return The result of the callback
+	 * @throws RtException if no session could be acquired or the callback failed
+	 */
+	public <T> T execute(RtSessionCallback<T> callback) throws RtException {
+		PooledSession session = borrow();
+		boolean valid = false;
+
+		try {
+			T result;
+
+			try {
+				result = callback.doInSession(this.connector, session.sessionId);
+			}
+			catch(RtAuthenticationException ex) {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("RT session rejected, logging in again: " + ex.getMessage());
+				}
+
+				this.reloginCount.incrementAndGet();
+
+				if(this.connector instanceof RtRestConnector) {
+					((RtRestConnector) this.connector).getInstrumentation().sessionRelogin();
+				}
+
+				login(session);
+
+				result = callback.doInSession(this.connector, session.sessionId);
+			}
+
+			valid = true;
+			return result;
+		}
+		catch(RtAuthenticationException ex) {
+			// The new session was rejected as well, do not reuse it
+			throw ex;
+		}
+		catch(RtException | RuntimeException ex) {
+			// Request failed for other reasons, the session is still fine
+			valid = true;
+			throw ex;
+		}
+		finally {
+			release(session, valid);
+		}
+	}
+
+
+	/**
+	 * Log out all sessions of this pool.
+	 * Sessions currently used by a callback are logged out when the callback returns. Executing callbacks after
+	 * the pool was closed fails.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+
+		if(this.connector instanceof RtRestConnector) {
+			((RtRestConnector) this.connector).removeSessionListener(this.rotationListener);
+		}
+
+		PooledSession session;
+		while((session = this.idleSessions.pollFirst()) != null) {
+			logoutQuietly(session);
+		}
+	}
+
+
+	/**
+	 * Get the number of sessions currently opened by this pool, either idle or in use.
+	 *
+	 * @return Number of sessions
+	 */
+	public int getSessionCount() {
+		return this.sessionsById.size();
+	}
+
+
+	/**
+	 * Get the number of sessions currently not used by a callback.
+	 *
+	 * @return Number of idle sessions
+	 */
+	public int getIdleSessionCount() {
+		return this.idleSessions.size();
+	}
+
+
+	/**
+	 * Get the number of logins performed by this pool, including refreshed and rejected sessions.
+	 *
+	 * @return Number of logins
+	 */
+	public long getLoginCount() {
+		return this.loginCount.get();
+	}
+
+
+	/**
+	 * Get the number of logins performed because RT rejected a session.
+	 *
+	 * @return Number of logins after rejected sessions
+	 */
+	public long getReloginCount() {
+		return this.reloginCount.get();
+	}
+
+
+	/**
+	 * Get the listener which tracks new session cookies sent by RT.
+	 * It must be registered on the connector used by this pool.
+	 *
+	 * @return The session listener of this pool
+	 */
+	RtSessionListener getRotationListener() {
+		return this.rotationListener;
+	}
+
+
+	/**
+	 * Acquire a session for exclusive use, logging in if no idle session is available.
+	 *
+	 * @return The session
+	 * @throws RtException if the pool is closed, no session became available in time or the login failed
+	 */
+	private PooledSession borrow() throws RtException {
+		if(this.closed) {
+			throw new RtException("Session pool is closed");
+		}
+
+		try {
+			if(!this.permits.tryAcquire(this.borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new RtException("No RT session available after " + this.borrowTimeoutMillis + " ms, all " + this.maxSessions + " sessions are in use");
+			}
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RtException("Interrupted while waiting for a RT session");
+		}
+
+		try {
+			PooledSession session = this.idleSessions.pollFirst();
+
+			if(session == null) {
+				session = new PooledSession();
+				login(session);
+			}
+			else if(System.currentTimeMillis() - session.lastUsedMillis > this.refreshAfterMillis) {
+				// RT may have expired the session already, replace it before it is used
+				logoutQuietly(session);
+				login(session);
+			}
+
+			return session;
+		}
+		catch(RtException | RuntimeException ex) {
+			this.permits.release();
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Return a session to the pool.
+	 *
+	 * @param session The session
+	 * @param valid false if the session must not be used again
+	 */
+	private void release(PooledSession session, boolean valid) {
+		try {
+			session.lastUsedMillis = System.currentTimeMillis();
+
+			if(!valid || session.sessionId == null) {
+				// Rejected by RT or the login for a new session failed
+				if(session.sessionId != null) {
+					this.sessionsById.remove(session.sessionId);
+				}
+			}
+			else if(this.closed) {
+				logoutQuietly(session);
+			}
+			else {
+				// Most recently used sessions are handed out first, so unneeded sessions are not kept alive
+				this.idleSessions.offerFirst(session);
+			}
+		}
+		finally {
+			this.permits.release();
+		}
+	}
+
+
+	/**
+	 * Login into RT and assign the new session ID to the pooled session.
+	 *
+	 * @param session The pooled session
+	 * @throws RtException if the login failed
+	 */
+	private void login(PooledSession session) throws RtException {
+		if(session.sessionId != null) {
+			this.sessionsById.remove(session.sessionId);
+			session.sessionId = null;
+		}
+
+		String sessionId = this.connector.login(this.uname, this.password);
+		this.loginCount.incrementAndGet();
+
+		session.sessionId = sessionId;
+		session.lastUsedMillis = System.currentTimeMillis();
+		this.sessionsById.put(sessionId, session);
+	}
+
+
+	/**
+	 * Logout a session, failures are only logged because the session may already be expired.
+	 *
+	 * @param session The pooled session
+	 */
+	private void logoutQuietly(PooledSession session) {
+		String sessionId = session.sessionId;
+
+		if(sessionId != null) {
+			this.sessionsById.remove(sessionId);
+
+			try {
+				this.connector.logout(sessionId);
+			}
+			catch(RtException | RuntimeException ex) {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Logout of pooled session failed: " + ex.getMessage());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A session of the pool. The session ID changes on re-login or when RT sends a new session cookie.
+	 */
+	private static class PooledSession {
+		private volatile String sessionId = null;
+		private volatile long lastUsedMillis = 0L;
+	}
+
+
+	/**
+	 * Builder to create a session pool.
+	 */
+	public static class Builder {
+		private final RtConnector connector;
+		private final String uname;
+		private final String password;
+		private int maxSessions = 4;
+		private long borrowTimeoutMillis = 30000L;
+		private long refreshAfterMillis = 900000L;
+
+
+		private Builder(RtConnector connector, String uname, String password) {
+			this.connector = connector;
+			this.uname = uname;
+			this.password = password;
+		}
+
+
+		/**
+		 * Set the maximum number of sessions opened by the pool.
+		 * This is also the maximum number of callbacks executed at the same time.
+		 *
+		 * @param maxSessions Maximum number of sessions, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder maxSessions(int maxSessions) {
+			if(maxSessions <= 0) {
+				throw new IllegalArgumentException("Maximum number of sessions must be greater than 0");
+			}
+
+			this.maxSessions = maxSessions;
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum time to wait for a session if all sessions are in use.
+		 *
+		 * @param borrowTimeout Maximum waiting time
+		 * @param unit Unit of the waiting time
+		 * @return This builder
+		 */
+		public Builder borrowTimeout(long borrowTimeout, TimeUnit unit) {
+			this.borrowTimeoutMillis = unit.toMillis(borrowTimeout);
+			return this;
+		}
+
+
+		/**
+		 * Set the time after which an unused session is replaced by a new login before it is used again.
+		 * This should be shorter than the session timeout configured in RT.
+		 *
+		 * @param refreshAfter Idle time after which a session is refreshed
+		 * @param unit Unit of the idle time
+		 * @return This builder
+		 */
+		public Builder refreshAfter(long refreshAfter, TimeUnit unit) {
+			this.refreshAfterMillis = unit.toMillis(refreshAfter);
+			return this;
+		}
+
+
+		/**
+		 * Create the session pool with the current settings of this builder.
+		 *
+		 * @return A new session pool
+		 */
+		public RtRestSessionPool build() {
+			RtRestSessionPool pool = new RtRestSessionPool(this);
+
+			if(this.connector instanceof RtRestConnector) {
+				((RtRestConnector) this.connector).addSessionListener(pool.getRotationListener());
+			}
+
+			return pool;
+		}
+	}
+}
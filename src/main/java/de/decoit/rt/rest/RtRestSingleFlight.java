@@ -0,0 +1,173 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Coalesces concurrent calls for the same key into a single request.
+ * The first caller for a key executes the request, callers arriving while it is in flight wait for its result
+ * instead of sending their own request. Every caller, including the first one, receives a copy of the result, so
+ * no caller can see the modifications of another one.
+ * A finished request is forgotten immediately, results are not cached.<br>
+ * If the request fails, the waiting callers receive the same exception. Only if RT rejected the session of the
+ * first caller, waiting callers with a different session send their own request.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class RtRestSingleFlight {
+	private final ConcurrentMap<Object, Flight<?>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong executedCount = new AtomicLong(0L);
+	private final AtomicLong coalescedCount = new AtomicLong(0L);
+
+
+	/**
+	 * Execute a call or wait for the result of an identical call in flight.
+	 *
+	 * @param key Key identifying identical calls, must implement equals() and hashCode()
+	 * @param sessionId Session ID used by the call
+	 * @param call Call to execute
+	 * @param copier Function creating a copy of the result for each caller
+	 * @return Result of the call
+	 * @throws RtException if the call failed
+	 */
+	<V> V execute(Object key, String sessionId, final Call<V> call, Function<V, V> copier) throws RtException {
+		Flight<V> flight = new Flight<V>(sessionId, new FutureTask<V>(new Callable<V>() {
+			@Override
+			public V call() throws RtException {
+				return call.call();
+			}
+		}));
+
+		@SuppressWarnings("unchecked")
+		Flight<V> existing = (Flight<V>) this.inFlight.putIfAbsent(key, flight);
+
+		if(existing == null) {
+			this.executedCount.incrementAndGet();
+
+			try {
+				flight.task.run();
+			}
+			finally {
+				this.inFlight.remove(key, flight);
+			}
+
+			// The fetched object stays private to the flight, the first caller may modify its result while waiting
+			// callers still copy it
+			V result = await(flight);
+
+			return (result != null) ? copier.apply(result) : null;
+		}
+
+		this.coalescedCount.incrementAndGet();
+
+		V result;
+
+		try {
+			result = await(existing);
+		}
+		catch(RtAuthenticationException ex) {
+			if(sessionId.equals(existing.sessionId)) {
+				throw ex;
+			}
+
+			// The session of the first caller was rejected, this one may still be valid
+			return call.call();
+		}
+
+		return (result != null) ? copier.apply(result) : null;
+	}
+
+
+	/**
+	 * Get the number of calls which sent a request.
+	 *
+	 * @return Number of executed calls
+	 */
+	long getExecutedCount() {
+		return this.executedCount.get();
+	}
+
+
+	/**
+	 * Get the number of calls which received the result of another call instead of sending a request.
+	 *
+	 * @return Number of coalesced calls
+	 */
+	long getCoalescedCount() {
+		return this.coalescedCount.get();
+	}
+
+
+	private <V> V await(Flight<V> flight) throws RtException {
+		try {
+			return flight.task.get();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RtException("Interrupted while waiting for coalesced request");
+		}
+		catch(ExecutionException ex) {
+			if(ex.getCause() instanceof RtException) {
+				throw (RtException) ex.getCause();
+			}
+			else {
+				Throwables.propagateIfPossible(ex.getCause());
+				throw new RtException("Coalesced request failed: " + ex.getCause());
+			}
+		}
+	}
+
+
+	/**
+	 * A request which may be coalesced.
+	 */
+	static interface Call<V> {
+		/**
+		 * Send the request.
+		 *
+		 * @return Result of the request
+		 * @throws RtException if the request failed
+		 */
+		V call() throws RtException;
+	}
+
+
+	/**
+	 * A request in flight.
+	 */
+	private static class Flight<V> {
+		private final String sessionId;
+		private final FutureTask<V> task;
+
+
+		Flight(String sessionId, FutureTask<V> task) {
+			this.sessionId = sessionId;
+			this.task = task;
+		}
+	}
+}
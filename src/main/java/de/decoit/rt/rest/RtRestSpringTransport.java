@@ -0,0 +1,171 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+
+/**
+ * Transport which sends the requests through a Spring ClientHttpRequestFactory, the HTTP stack used by the
+ * RestTemplate. Connectors created with RtRestConnector(String) or without connection pool use this transport with
+ * a factory that opens a new HttpURLConnection for every request.<br>
+ * The timeouts of a request are applied if the factory was created by RtRestConnectionPool, other factories use
+ * their own timeouts. Closing the transport does not close the factory.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestSpringTransport implements RtRestTransport {
+	private static final Logger LOG = Logger.getLogger(RtRestSpringTransport.class);
+	private static final MediaType FORM_CONTENT_TYPE = MediaType.parseMediaType(RtRestTransportRequest.CONTENT_TYPE);
+
+	private final ClientHttpRequestFactory requestFactory;
+
+
+	/**
+	 * Create a transport sending the requests through the provided factory.
+	 *
+	 * @param requestFactory Factory used to create the HTTP requests
+	 */
+	public RtRestSpringTransport(ClientHttpRequestFactory requestFactory) {
+		if(requestFactory == null) {
+			throw new IllegalArgumentException("Request factory cannot be null");
+		}
+
+		this.requestFactory = requestFactory;
+	}
+
+
+	@Override
+	public RtRestTransportResponse post(RtRestTransportRequest request) throws IOException {
+		ClientHttpRequest httpRequest;
+
+		// The factories of RtRestConnectionPool read the timeouts and register the abort callback while the request is created
+		RtRestConnectionPool.setRequestTimeouts(request.getConnectTimeoutMillis(), request.getReadTimeoutMillis(), request.getLeaseTimeoutMillis());
+
+		try {
+			httpRequest = this.requestFactory.createRequest(request.getUri(), HttpMethod.POST);
+		}
+		finally {
+			RtRestConnectionPool.clearRequestTimeouts();
+		}
+
+		HttpHeaders requestHeaders = httpRequest.getHeaders();
+
+		for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			requestHeaders.add(header.getKey(), header.getValue());
+		}
+
+		requestHeaders.setContentType(FORM_CONTENT_TYPE);
+		requestHeaders.setContentLength(request.getBody().length);
+		StreamUtils.copy(request.getBody(), httpRequest.getBody());
+
+		return new SpringResponse(httpRequest.execute());
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		// The factory is owned by the caller
+	}
+
+
+	/**
+	 * Response of a Spring ClientHttpResponse.
+	 */
+	private static class SpringResponse implements RtRestTransportResponse {
+		private final ClientHttpResponse response;
+
+
+		SpringResponse(ClientHttpResponse response) {
+			this.response = response;
+		}
+
+
+		@Override
+		public int getStatusCode() {
+			try {
+				return this.response.getRawStatusCode();
+			}
+			catch(IOException ex) {
+				// The status was read before execute() returned
+				throw new IllegalStateException(ex);
+			}
+		}
+
+
+		@Override
+		public String getStatusText() {
+			try {
+				String statusText = this.response.getStatusText();
+				return statusText != null ? statusText : "";
+			}
+			catch(IOException ex) {
+				return "";
+			}
+		}
+
+
+		@Override
+		public String getHeader(String name) {
+			return this.response.getHeaders().getFirst(name);
+		}
+
+
+		@Override
+		public InputStream getBody() throws IOException {
+			InputStream body = this.response.getBody();
+			return body != null ? body : new ByteArrayInputStream(new byte[0]);
+		}
+
+
+		/**
+		 * Closing an Apache HttpClient response reads the remaining body to keep the connection reusable. For a
+		 * large search result it is cheaper to abort the connection and open a new one for the next request.
+		 */
+		@Override
+		public void abort() {
+			try {
+				InputStream body = this.response.getBody();
+
+				if(body instanceof EofSensorInputStream) {
+					((EofSensorInputStream) body).abortConnection();
+				}
+			}
+			catch(IOException ex) {
+				LOG.warn("Aborting the connection failed: " + ex.getMessage());
+			}
+		}
+
+
+		@Override
+		public void close() {
+			this.response.close();
+		}
+	}
+}
@@ -0,0 +1,352 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtThrottledException;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Enforces the limits of a RtRestThrottlePolicy for the requests of a single RtRestClient.
+ * Requests which cannot be sent immediately are queued ordered by the priority of their operation class and
+ * their arrival. Whenever a slot is released or a waiting request wakes up because its rate limit allows a new
+ * request, the queue is scanned in this order and every request which fits into the limits is released. A request
+ * which is only blocked by the rate or concurrency limit of its own class does not block requests of other classes.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestThrottle {
+	private final int maxConcurrentRequests;
+	private final Map<RtRestOperationClass, ClassState> classStates = new EnumMap<>(RtRestOperationClass.class);
+	private final ReentrantLock lock = new ReentrantLock();
+	private final TreeSet<Waiter> waiters = new TreeSet<>(new Comparator<Waiter>() {
+		@Override
+		public int compare(Waiter w1, Waiter w2) {
+			if(w1.state.limits.priority != w2.state.limits.priority) {
+				return w1.state.limits.priority > w2.state.limits.priority ? -1 : 1;
+			}
+
+			return w1.sequence < w2.sequence ? -1 : (w1.sequence == w2.sequence ? 0 : 1);
+		}
+	});
+	private int activeRequests = 0;
+	private long sequence = 0L;
+
+
+	RtRestThrottle(RtRestThrottlePolicy policy) {
+		this.maxConcurrentRequests = policy.getMaxConcurrentRequests();
+
+		long now = System.nanoTime();
+		for(RtRestOperationClass operationClass : RtRestOperationClass.values()) {
+			this.classStates.put(operationClass, new ClassState(policy.getLimits(operationClass), now));
+		}
+	}
+
+
+	/**
+	 * Acquire a slot for a request of the provided operation class.
+	 * Depending on the policy this waits until a slot is free, waits for a limited time or fails immediately.
+	 *
+	 * @param operationClass Operation class of the request
+	 * @return Permit which must be released when the request is finished
+	 *
+	 * @throws RtThrottledException if no slot was acquired within the maximum wait time or the thread was interrupted
+	 */
+	Permit acquire(RtRestOperationClass operationClass) throws RtThrottledException {
+		return acquire(operationClass, RtRestThrottlePolicy.WAIT_FOREVER);
+	}
+
+
+	/**
+	 * Acquire a slot for a request of the provided operation class, waiting no longer than the provided time.
+	 * The maximum wait time of the policy applies as well.
+	 *
+	 * @param operationClass Operation class of the request
+	 * @param maxWaitNanos Maximum time to wait in nanoseconds, RtRestThrottlePolicy.WAIT_FOREVER for no limit
+	 * @return Permit which must be released when the request is finished
+	 *
+	 * @throws RtThrottledException if no slot was acquired within the maximum wait time or the thread was interrupted
+	 */
+	Permit acquire(RtRestOperationClass operationClass, long maxWaitNanos) throws RtThrottledException {
+		ClassState state = this.classStates.get(operationClass);
+		long start = System.nanoTime();
+
+		this.lock.lock();
+		try {
+			Waiter waiter = new Waiter(state, this.sequence++, this.lock.newCondition());
+			int queueDepth = this.waiters.size();
+
+			this.waiters.add(waiter);
+			dispatch();
+
+			long waitLimit = state.limits.maxWaitNanos;
+
+			if(maxWaitNanos != RtRestThrottlePolicy.WAIT_FOREVER && (waitLimit == RtRestThrottlePolicy.WAIT_FOREVER || maxWaitNanos < waitLimit)) {
+				waitLimit = maxWaitNanos;
+			}
+
+			long deadline = start + waitLimit;
+
+			while(!waiter.granted) {
+				long now = System.nanoTime();
+				long remaining = waitLimit == RtRestThrottlePolicy.WAIT_FOREVER ? Long.MAX_VALUE : deadline - now;
+
+				if(remaining <= 0L) {
+					this.waiters.remove(waiter);
+					throw new RtThrottledException("No free slot for " + operationClass + " request, " + this.waiters.size() + " requests waiting");
+				}
+
+				// Wake up when the rate limit allows the next request, releases of other requests signal the waiter
+				long tokenWait = state.nanosUntilToken(now);
+				long wait = tokenWait > 0L ? Math.min(remaining, tokenWait) : remaining;
+
+				try {
+					if(wait == Long.MAX_VALUE) {
+						waiter.condition.await();
+					}
+					else {
+						waiter.condition.awaitNanos(wait);
+					}
+				}
+				catch(InterruptedException ex) {
+					this.waiters.remove(waiter);
+
+					if(waiter.granted) {
+						releaseSlot(state);
+					}
+
+					Thread.currentThread().interrupt();
+					throw new RtThrottledException("Interrupted while waiting for a free slot");
+				}
+
+				if(!waiter.granted) {
+					dispatch();
+				}
+			}
+
+			return new Permit(state, System.nanoTime() - start, queueDepth);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return Number of requests waiting for a slot
+	 */
+	int getQueueDepth() {
+		this.lock.lock();
+		try {
+			return this.waiters.size();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Release the slot of a finished request and pass it on to waiting requests.
+	 *
+	 * @param state State of the request's operation class
+	 */
+	private void release(ClassState state) {
+		this.lock.lock();
+		try {
+			releaseSlot(state);
+			dispatch();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Release a slot without dispatching. The lock must be held by the caller.
+	 *
+	 * @param state State of the request's operation class
+	 */
+	private void releaseSlot(ClassState state) {
+		state.activeRequests--;
+		this.activeRequests--;
+	}
+
+
+	/**
+	 * Grant slots to all waiting requests which fit into the limits, in the order of the queue.
+	 * The lock must be held by the caller.
+	 */
+	private void dispatch() {
+		long now = System.nanoTime();
+		Iterator<Waiter> it = this.waiters.iterator();
+
+		while(it.hasNext() && this.activeRequests < this.maxConcurrentRequests) {
+			Waiter waiter = it.next();
+
+			if(waiter.state.tryTake(now)) {
+				this.activeRequests++;
+				waiter.granted = true;
+				it.remove();
+				waiter.condition.signal();
+			}
+		}
+	}
+
+
+	/**
+	 * Slot of a request, must be released when the request is finished.
+	 */
+	final class Permit {
+		private final ClassState state;
+		private final long waitNanos;
+		private final int queueDepth;
+		private boolean released = false;
+
+
+		private Permit(ClassState state, long waitNanos, int queueDepth) {
+			this.state = state;
+			this.waitNanos = waitNanos;
+			this.queueDepth = queueDepth;
+		}
+
+
+		/**
+		 * @return Time the request waited for the slot in nanoseconds
+		 */
+		long getWaitNanos() {
+			return this.waitNanos;
+		}
+
+
+		/**
+		 * @return Number of requests which were waiting when the request arrived
+		 */
+		int getQueueDepth() {
+			return this.queueDepth;
+		}
+
+
+		/**
+		 * Release the slot, further calls have no effect.
+		 */
+		void release() {
+			if(!this.released) {
+				this.released = true;
+				RtRestThrottle.this.release(this.state);
+			}
+		}
+	}
+
+
+	/**
+	 * Current state of the limits of an operation class. Only accessed while the lock is held.
+	 */
+	private static class ClassState {
+		private final RtRestThrottlePolicy.ClassLimits limits;
+		private int activeRequests = 0;
+		private double tokens;
+		private long lastRefillNanos;
+
+
+		ClassState(RtRestThrottlePolicy.ClassLimits limits, long now) {
+			this.limits = limits;
+			this.tokens = limits.burst;
+			this.lastRefillNanos = now;
+		}
+
+
+		/**
+		 * Take a slot of this class if the rate and concurrency limits allow it.
+		 *
+		 * @param now Current value of System.nanoTime()
+		 * @return true if the slot was taken
+		 */
+		boolean tryTake(long now) {
+			if(this.activeRequests >= this.limits.maxConcurrentRequests) {
+				return false;
+			}
+
+			if(this.limits.permitsPerSecond > 0.0) {
+				refill(now);
+
+				if(this.tokens < 1.0) {
+					return false;
+				}
+
+				this.tokens -= 1.0;
+			}
+
+			this.activeRequests++;
+			return true;
+		}
+
+
+		/**
+		 * Calculate the time until the rate limit allows the next request.
+		 *
+		 * @param now Current value of System.nanoTime()
+		 * @return Time in nanoseconds, 0 if the rate limit does not block a request
+		 */
+		long nanosUntilToken(long now) {
+			if(this.limits.permitsPerSecond <= 0.0) {
+				return 0L;
+			}
+
+			refill(now);
+
+			if(this.tokens >= 1.0) {
+				return 0L;
+			}
+
+			return (long) Math.ceil((1.0 - this.tokens) / this.limits.permitsPerSecond * 1e9);
+		}
+
+
+		private void refill(long now) {
+			double elapsedSeconds = (now - this.lastRefillNanos) / 1e9;
+
+			this.tokens = Math.min(this.limits.burst, this.tokens + elapsedSeconds * this.limits.permitsPerSecond);
+			this.lastRefillNanos = now;
+		}
+	}
+
+
+	/**
+	 * A request waiting for a slot.
+	 */
+	private static class Waiter {
+		private final ClassState state;
+		private final long sequence;
+		private final Condition condition;
+		private boolean granted = false;
+
+
+		Waiter(ClassState state, long sequence, Condition condition) {
+			this.state = state;
+			this.sequence = sequence;
+			this.condition = condition;
+		}
+	}
+}
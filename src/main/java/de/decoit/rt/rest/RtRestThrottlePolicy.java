@@ -0,0 +1,269 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Client side limits for the requests a connector sends to its RT installation.
+ * Every operation class can be limited to a number of requests per second (token bucket with a configurable
+ * burst) and a number of concurrent requests. Additionally the number of concurrent requests of all classes
+ * together can be limited.<br>
+ * Requests which cannot be sent immediately wait for a free slot, requests of a class with a higher priority
+ * are served first. By default READ and WRITE requests, which are usually made by interactive users, go ahead
+ * of HISTORY and SEARCH requests, which are used by bulk operations. A class can be configured to fail fast
+ * instead of waiting, or to wait for a limited time only. In both cases a request which does not get a slot
+ * fails with a RtThrottledException.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestThrottlePolicy {
+	/**
+	 * Policy without any limits. This is the default of RtRestConnector.
+	 */
+	public static final RtRestThrottlePolicy UNLIMITED = builder().build();
+
+	static final long WAIT_FOREVER = -1L;
+
+	private final int maxConcurrentRequests;
+	private final Map<RtRestOperationClass, ClassLimits> classLimits;
+
+
+	private RtRestThrottlePolicy(Builder builder) {
+		this.maxConcurrentRequests = builder.maxConcurrentRequests;
+		this.classLimits = new EnumMap<>(RtRestOperationClass.class);
+
+		for(Map.Entry<RtRestOperationClass, ClassLimits> entry : builder.classLimits.entrySet()) {
+			this.classLimits.put(entry.getKey(), new ClassLimits(entry.getValue()));
+		}
+	}
+
+
+	/**
+	 * Create a builder for a throttle policy. A new builder has no limits and waits without a time limit.
+	 *
+	 * @return A new builder object
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	/**
+	 * @return Maximum number of concurrent requests of all classes, Integer.MAX_VALUE if unlimited
+	 */
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+
+	/**
+	 * Check if this policy limits any requests.
+	 *
+	 * @return true if no limit is configured
+	 */
+	boolean isUnlimited() {
+		if(maxConcurrentRequests != Integer.MAX_VALUE) {
+			return false;
+		}
+
+		for(ClassLimits limits : classLimits.values()) {
+			if(limits.maxConcurrentRequests != Integer.MAX_VALUE || limits.permitsPerSecond > 0.0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Get the limits of an operation class.
+	 *
+	 * @param operationClass Operation class
+	 * @return Limits of the class
+	 */
+	ClassLimits getLimits(RtRestOperationClass operationClass) {
+		return classLimits.get(operationClass);
+	}
+
+
+	/**
+	 * Limits of a single operation class.
+	 */
+	static class ClassLimits {
+		double permitsPerSecond = 0.0;
+		int burst = 1;
+		int maxConcurrentRequests = Integer.MAX_VALUE;
+		int priority;
+		long maxWaitNanos = WAIT_FOREVER;
+
+
+		ClassLimits(int priority) {
+			this.priority = priority;
+		}
+
+
+		ClassLimits(ClassLimits other) {
+			this.permitsPerSecond = other.permitsPerSecond;
+			this.burst = other.burst;
+			this.maxConcurrentRequests = other.maxConcurrentRequests;
+			this.priority = other.priority;
+			this.maxWaitNanos = other.maxWaitNanos;
+		}
+	}
+
+
+	/**
+	 * Builder for RtRestThrottlePolicy objects.
+	 */
+	public static class Builder {
+		private int maxConcurrentRequests = Integer.MAX_VALUE;
+		private final Map<RtRestOperationClass, ClassLimits> classLimits = new EnumMap<>(RtRestOperationClass.class);
+
+
+		private Builder() {
+			this.classLimits.put(RtRestOperationClass.READ, new ClassLimits(3));
+			this.classLimits.put(RtRestOperationClass.WRITE, new ClassLimits(2));
+			this.classLimits.put(RtRestOperationClass.HISTORY, new ClassLimits(1));
+			this.classLimits.put(RtRestOperationClass.SEARCH, new ClassLimits(0));
+		}
+
+
+		/**
+		 * Limit the number of concurrent requests of all operation classes together.
+		 *
+		 * @param maxConcurrentRequests Maximum number of concurrent requests, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+			if(maxConcurrentRequests <= 0) {
+				throw new IllegalArgumentException("Maximum concurrent requests must be greater than 0");
+			}
+
+			this.maxConcurrentRequests = maxConcurrentRequests;
+			return this;
+		}
+
+
+		/**
+		 * Limit the number of concurrent requests of an operation class.
+		 *
+		 * @param operationClass Operation class
+		 * @param maxConcurrentRequests Maximum number of concurrent requests, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder maxConcurrentRequests(RtRestOperationClass operationClass, int maxConcurrentRequests) {
+			if(maxConcurrentRequests <= 0) {
+				throw new IllegalArgumentException("Maximum concurrent requests must be greater than 0");
+			}
+
+			this.classLimits.get(operationClass).maxConcurrentRequests = maxConcurrentRequests;
+			return this;
+		}
+
+
+		/**
+		 * Limit the rate of requests of an operation class.
+		 * Up to burst requests can be sent at once after the class was idle, after that requests are sent with the
+		 * configured rate.
+		 *
+		 * @param operationClass Operation class
+		 * @param permitsPerSecond Number of requests per second, must be greater than 0
+		 * @param burst Number of requests which can be sent at once, must be greater than 0
+		 * @return This builder
+		 */
+		public Builder rateLimit(RtRestOperationClass operationClass, double permitsPerSecond, int burst) {
+			if(permitsPerSecond <= 0.0 || burst <= 0) {
+				throw new IllegalArgumentException("Rate and burst must be greater than 0");
+			}
+
+			ClassLimits limits = this.classLimits.get(operationClass);
+			limits.permitsPerSecond = permitsPerSecond;
+			limits.burst = burst;
+			return this;
+		}
+
+
+		/**
+		 * Set the priority of an operation class. Waiting requests of a class with a higher priority are sent first.
+		 * Default is 3 for READ, 2 for WRITE, 1 for HISTORY and 0 for SEARCH.
+		 *
+		 * @param operationClass Operation class
+		 * @param priority Priority, higher values are served first
+		 * @return This builder
+		 */
+		public Builder priority(RtRestOperationClass operationClass, int priority) {
+			this.classLimits.get(operationClass).priority = priority;
+			return this;
+		}
+
+
+		/**
+		 * Let requests of an operation class wait for a free slot for a limited time only.
+		 *
+		 * @param operationClass Operation class
+		 * @param maxWait Maximum time to wait, 0 to fail fast
+		 * @param unit Unit of the maximum time
+		 * @return This builder
+		 */
+		public Builder maxWait(RtRestOperationClass operationClass, long maxWait, TimeUnit unit) {
+			if(maxWait < 0L) {
+				throw new IllegalArgumentException("Maximum wait time must not be negative");
+			}
+
+			this.classLimits.get(operationClass).maxWaitNanos = unit.toNanos(maxWait);
+			return this;
+		}
+
+
+		/**
+		 * Let requests of an operation class fail immediately if they cannot be sent because of a limit.
+		 *
+		 * @param operationClass Operation class
+		 * @return This builder
+		 */
+		public Builder failFast(RtRestOperationClass operationClass) {
+			return maxWait(operationClass, 0L, TimeUnit.NANOSECONDS);
+		}
+
+
+		/**
+		 * Let requests of an operation class wait for a free slot without a time limit. This is the default.
+		 *
+		 * @param operationClass Operation class
+		 * @return This builder
+		 */
+		public Builder blocking(RtRestOperationClass operationClass) {
+			this.classLimits.get(operationClass).maxWaitNanos = WAIT_FOREVER;
+			return this;
+		}
+
+
+		/**
+		 * Create the policy with the current settings of this builder.
+		 *
+		 * @return A new policy
+		 */
+		public RtRestThrottlePolicy build() {
+			return new RtRestThrottlePolicy(this);
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtTicket;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Feed of changed tickets based on polling the LastUpdated value of the tickets matching a query.
+ * The feed keeps a watermark consisting of the newest LastUpdated value delivered so far and the IDs of the
+ * delivered tickets with exactly this value. Every poll only searches for tickets updated since the watermark, so
+ * its cost depends on the number of changes instead of the number of matching tickets.<br>
+ * RT stores LastUpdated with a precision of one second and cannot search for values greater or equal than a
+ * date, so the search window starts one second before the watermark. Tickets from this second which were already
+ * delivered are skipped. A ticket changed again in the same second after it was delivered is not delivered again
+ * until its next change.<br>
+ * Changed tickets are passed to the subscribers in the order of their LastUpdated value while the search result is
+ * read. A subscriber applies backpressure by returning false from handleTicket(): the poll stops after the current
+ * ticket and the remaining changes are delivered by the next poll. If a subscriber raises an exception, the
+ * watermark covers the tickets delivered before. Every subscriber receives its own copy of the ticket.<br>
+ * If a checkpoint file is configured, the watermark is read from it when the feed is created and written to it
+ * after every poll which delivered tickets, so a restarted application resumes where it stopped. Tickets are
+ * delivered at least once: after a crash during a poll, the tickets delivered since the last checkpoint are
+ * delivered again.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTicketChangeFeed {
+	private static final Logger LOG = Logger.getLogger(RtRestTicketChangeFeed.class);
+	private static final String CHECKPOINT_LAST_UPDATED = "lastUpdated";
+	private static final String CHECKPOINT_IDS = "ids";
+	private static final Splitter ID_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+
+	private final RtConnector connector;
+	private final String query;
+	private final File checkpointFile;
+	private final CopyOnWriteArrayList<RtTicketHandler> subscribers = new CopyOnWriteArrayList<>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Watermark, guarded by lock
+	private long markMillis;
+	private Set<Long> markIds = new HashSet<>();
+
+
+	private RtRestTicketChangeFeed(Builder builder) throws RtException {
+		this.connector = builder.connector;
+		this.query = builder.query;
+		this.checkpointFile = builder.checkpointFile;
+		this.markMillis = builder.startMillis;
+
+		if(this.checkpointFile != null && this.checkpointFile.exists()) {
+			readCheckpoint();
+		}
+	}
+
+
+	/**
+	 * Create a builder for a change feed of the tickets matching the provided query.
+	 *
+	 * @param connector Connector used for the searches
+	 * @param query Search query, using the language generated by the RT query builder
+	 * @return A new builder object
+	 */
+	public static Builder builder(RtConnector connector, String query) {
+		return new Builder(connector, query);
+	}
+
+
+	/**
+	 * Add a subscriber which receives the changed tickets.
+	 *
+	 * @param subscriber Handler for changed tickets
+	 */
+	public void addSubscriber(RtTicketHandler subscriber) {
+		this.subscribers.add(subscriber);
+	}
+
+
+	/**
+	 * Remove a previously added subscriber.
+	 *
+	 * @param subscriber Handler to remove
+	 */
+	public void removeSubscriber(RtTicketHandler subscriber) {
+		this.subscribers.remove(subscriber);
+	}
+
+
+	/**
+	 * Search for tickets changed since the watermark and pass them to the subscribers.
+	 * Concurrent polls are serialized.
+	 *
+	 * @param sessionId RT session ID used for the search
+	 * @return Number of delivered tickets
+	 * @throws RtException if the search or writing the checkpoint failed or a subscriber raised an exception
+	 */
+	public int poll(String sessionId) throws RtException {
+		this.lock.lock();
+		try {
+			final long windowStart = this.markMillis;
+			final int[] delivered = new int[1];
+
+			StringBuilder sb = new StringBuilder();
+			if(!this.query.isEmpty()) {
+				sb.append("(");
+				sb.append(this.query);
+				sb.append(") AND ");
+			}
+			sb.append("LastUpdated > '");
+			sb.append(RtRestDateCodec.HISTORY_DATE.format(new Date(windowStart - 1000L)));
+			sb.append("'");
+
+			try {
+				this.connector.searchTickets(sessionId, sb.toString(), "+LastUpdated", new RtTicketHandler() {
+					@Override
+					public boolean handleTicket(RtTicket ticket) throws RtException {
+						if(isDelivered(ticket)) {
+							return true;
+						}
+
+						// Subscribers may modify the ticket
+						long id = ticket.getId();
+						Date lastUpdated = ticket.getLastUpdated();
+
+						boolean proceed = deliver(ticket);
+						advanceMark(id, lastUpdated);
+						delivered[0]++;
+
+						return proceed;
+					}
+				});
+			}
+			finally {
+				if(delivered[0] > 0) {
+					if(LOG.isDebugEnabled()) {
+						LOG.debug("Change feed delivered " + delivered[0] + " tickets, watermark " + new Date(this.markMillis));
+					}
+
+					writeCheckpoint();
+				}
+			}
+
+			return delivered[0];
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Get the LastUpdated value of the newest delivered ticket.
+	 *
+	 * @return Watermark date, the configured start date if no tickets were delivered yet
+	 */
+	public Date getWatermark() {
+		this.lock.lock();
+		try {
+			return new Date(this.markMillis);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Check if a ticket returned by the search was already delivered.
+	 *
+	 * @param ticket Ticket returned by the search
+	 * @return true if the ticket is not newer than the watermark
+	 */
+	private boolean isDelivered(RtTicket ticket) {
+		if(ticket.getLastUpdated() == null) {
+			// Cannot be placed in the feed, always deliver it
+			return false;
+		}
+
+		long lastUpdated = ticket.getLastUpdated().getTime();
+
+		return lastUpdated < this.markMillis || (lastUpdated == this.markMillis && this.markIds.contains(ticket.getId()));
+	}
+
+
+	/**
+	 * Move the watermark past a delivered ticket.
+	 *
+	 * @param id ID of the delivered ticket
+	 * @param lastUpdated LastUpdated value of the delivered ticket, may be null
+	 */
+	private void advanceMark(long id, Date lastUpdated) {
+		if(lastUpdated == null) {
+			return;
+		}
+
+		if(lastUpdated.getTime() > this.markMillis) {
+			this.markMillis = lastUpdated.getTime();
+			this.markIds = new HashSet<>();
+		}
+
+		this.markIds.add(id);
+	}
+
+
+	/**
+	 * Pass a ticket to all subscribers.
+	 *
+	 * @param ticket Changed ticket
+	 * @return false if any subscriber requested to stop
+	 * @throws RtException if a subscriber raised an exception
+	 */
+	private boolean deliver(RtTicket ticket) throws RtException {
+		boolean proceed = true;
+		List<RtTicketHandler> current = this.subscribers;
+		int index = 0;
+
+		for(RtTicketHandler subscriber : current) {
+			// The last subscriber receives the parsed object, all others a copy
+			RtTicket copy = (++index < current.size()) ? new RtTicket(ticket) : ticket;
+
+			if(!subscriber.handleTicket(copy)) {
+				proceed = false;
+			}
+		}
+
+		return proceed;
+	}
+
+
+	private void readCheckpoint() throws RtException {
+		Properties properties = new Properties();
+
+		try(InputStream in = new FileInputStream(this.checkpointFile)) {
+			properties.load(in);
+
+			this.markMillis = Long.parseLong(properties.getProperty(CHECKPOINT_LAST_UPDATED, "0"));
+
+			for(String id : ID_SPLITTER.split(properties.getProperty(CHECKPOINT_IDS, ""))) {
+				this.markIds.add(Long.valueOf(id));
+			}
+		}
+		catch(IOException | NumberFormatException ex) {
+			throw new RtException("Reading change feed checkpoint failed: " + ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Write the watermark to the checkpoint file. A temporary file is written and synced first and then moved over
+	 * the checkpoint, so a crash never leaves a partially written checkpoint.
+	 *
+	 * @throws RtException if the checkpoint could not be written
+	 */
+	private void writeCheckpoint() throws RtException {
+		if(this.checkpointFile == null) {
+			return;
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty(CHECKPOINT_LAST_UPDATED, String.valueOf(this.markMillis));
+		properties.setProperty(CHECKPOINT_IDS, Joiner.on(',').join(this.markIds));
+
+		File tempFile = new File(this.checkpointFile.getPath() + ".tmp");
+
+		try {
+			try(FileOutputStream out = new FileOutputStream(tempFile)) {
+				properties.store(out, "RT ticket change feed checkpoint");
+				out.getFD().sync();
+			}
+
+			try {
+				Files.move(tempFile.toPath(), this.checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile.toPath(), this.checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch(IOException ex) {
+			throw new RtException("Writing change feed checkpoint failed: " + ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Builder to configure and create a RtRestTicketChangeFeed.
+	 */
+	public static class Builder {
+		private final RtConnector connector;
+		private final String query;
+		private long startMillis = 0L;
+		private File checkpointFile = null;
+
+
+		private Builder(RtConnector connector, String query) {
+			if(connector == null) {
+				throw new IllegalArgumentException("Connector cannot be null");
+			}
+
+			if(query == null) {
+				throw new IllegalArgumentException("Query cannot be null");
+			}
+
+			this.connector = connector;
+			this.query = query.trim();
+		}
+
+
+		/**
+		 * Set the watermark used if no checkpoint exists. Only tickets updated at or after this date are delivered.
+		 * Default is the epoch, so the first poll delivers all matching tickets.
+		 *
+		 * @param start Start date
+		 * @return This builder
+		 */
+		public Builder startAt(Date start) {
+			this.startMillis = start.getTime();
+			return this;
+		}
+
+
+		/**
+		 * Set the file storing the watermark. If the file exists, it overrides the start date. Default is no
+		 * checkpoint, the watermark is only kept in memory.
+		 *
+		 * @param checkpointFile Checkpoint file, its directory must exist
+		 * @return This builder
+		 */
+		public Builder checkpointFile(File checkpointFile) {
+			this.checkpointFile = checkpointFile;
+			return this;
+		}
+
+
+		/**
+		 * Create the change feed with the current settings of this builder.
+		 *
+		 * @return A new change feed
+		 * @throws RtException if an existing checkpoint file could not be read
+		 */
+		public RtRestTicketChangeFeed build() throws RtException {
+			return new RtRestTicketChangeFeed(this);
+		}
+	}
+}
@@ -20,12 +20,10 @@ import de.decoit.rt.RtException;
 import de.decoit.rt.model.RtTicketHistoryItem;
 import de.decoit.rt.model.RtTicketHistoryItem.RtTicketHistoryItemType;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
@@ -38,13 +36,9 @@ import org.apache.log4j.Logger;
  */
 public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 	private static final Logger LOG = Logger.getLogger(RtRestUserResponseParser.class);
-	private static final SimpleDateFormat sdf;
-
-
-	static {
-		// Create a parser for the REST date format
-		sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-	}
+	private static final int CONTENT_INDENT = 9;
+	private static final int ATTACHMENT_INDENT = 13;
+	private static final Pattern ATTACHMENT_LINE_PATTERN = Pattern.compile("^\\s{13}(\\d+): (.+?) \\((\\d+(\\.\\d+)?)[bk]\\)$");
 
 
 	/**
@@ -62,25 +56,27 @@ public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the response format is corrupt
 	 */
 	static RtTicketHistoryItem parseHistoryItem(String response) throws RtException {
+		return parseHistoryItem(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Parse a single ticket history item from the lines ahead of the cursor. Reading stops behind the next list
+	 * delimiter or at the end of the response.
+	 *
+	 * @param cursor Cursor over the received response
+	 * @return A history item object
+	 * @throws RtException if the response format is corrupt
+	 */
+	static RtTicketHistoryItem parseHistoryItem(RtRestLineCursor cursor) throws RtException {
 		RtTicketHistoryItem historyItem = new RtTicketHistoryItem();
 
 		StringBuilder contentSb = new StringBuilder();
-		Pattern contentMultilinePattern = Pattern.compile("^\\s{9}(.*)$");
-
 		HashMap<Long, String> attachmentMap = new HashMap<>();
-		Pattern attachmentsMultilinePattern = Pattern.compile("^\\s{13}(\\d+): (.+?) \\((\\d+(\\.\\d+)?)[bk]\\)$");
-
-		Pattern currentMultilinePattern = null;
+		MultilineField currentMultiline = MultilineField.NONE;
 
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
-
-		for (String line : responseParts) {
-			Matcher multilineMatcher = null;
-
-			if (currentMultilinePattern != null) {
-				multilineMatcher = currentMultilinePattern.matcher(line);
-			}
+		while (cursor.hasNext() && !cursor.skipDelimiter()) {
+			String line = cursor.nextLine();
 
 			if (line.length() == 0) {
 				// Blank line, ignore
@@ -88,73 +84,67 @@ public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 			else if (line.startsWith("RT/") || line.startsWith("#")) {
 				// Message or status line, ignore
 			}
-			else if (multilineMatcher != null && multilineMatcher.matches()) {
-				if (currentMultilinePattern != null && currentMultilinePattern.equals(contentMultilinePattern)) {
-					contentSb.append("\n");
-					contentSb.append(multilineMatcher.group(1));
-				}
-				else if (currentMultilinePattern != null && currentMultilinePattern.equals(attachmentsMultilinePattern)) {
-					if (Double.parseDouble(multilineMatcher.group(3)) > 0.0) {
-						attachmentMap.put(Long.valueOf(multilineMatcher.group(1)), multilineMatcher.group(2));
+			else if (currentMultiline == MultilineField.CONTENT && leadingWhitespace(line) >= CONTENT_INDENT) {
+				contentSb.append("\n");
+				contentSb.append(line, CONTENT_INDENT, line.length());
+			}
+			else if (currentMultiline == MultilineField.ATTACHMENTS && leadingWhitespace(line) >= ATTACHMENT_INDENT) {
+				Matcher attachmentMatcher = ATTACHMENT_LINE_PATTERN.matcher(line);
+
+				if (attachmentMatcher.matches()) {
+					if (Double.parseDouble(attachmentMatcher.group(3)) > 0.0) {
+						attachmentMap.put(Long.valueOf(attachmentMatcher.group(1)), attachmentMatcher.group(2));
 					}
 				}
 				else {
-					throw new RtException("Unexpected multiline line found");
+					LOG.warn("Invalid attachment line ignored: " + line);
 				}
 			}
 			else {
-				if (currentMultilinePattern != null) {
-					currentMultilinePattern = null;
-				}
+				currentMultiline = MultilineField.NONE;
 
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
+				String value = lineValue(line);
 
-				switch (lineParts[0]) {
+				switch (lineKey(line)) {
 					case "id":
-						historyItem.setId(Long.parseLong(lineParts[1]));
+						historyItem.setId(Long.parseLong(value));
 						break;
 					case "Ticket":
-						historyItem.setTicketId(Long.parseLong(lineParts[1]));
+						historyItem.setTicketId(Long.parseLong(value));
 						break;
 					case "TimeTaken":
-						historyItem.setTimeTaken(Integer.parseInt(lineParts[1]));
+						historyItem.setTimeTaken(Integer.parseInt(value));
 						break;
 					case "Type":
-						historyItem.setType(RtTicketHistoryItemType.fromTypeText(lineParts[1]));
+						historyItem.setType(RtTicketHistoryItemType.fromTypeText(value));
 						break;
 					case "Field":
-						historyItem.setField(lineParts[1]);
+						historyItem.setField(value);
 						break;
 					case "OldValue":
-						historyItem.setOldValue(lineParts[1]);
+						historyItem.setOldValue(value);
 						break;
 					case "NewValue":
-						historyItem.setNewValue(lineParts[1]);
+						historyItem.setNewValue(value);
 						break;
 					case "Data":
-						historyItem.setData(lineParts[1]);
+						historyItem.setData(value);
 						break;
 					case "Description":
-						historyItem.setDescription(lineParts[1]);
+						historyItem.setDescription(value);
 						break;
 					case "Content":
-						currentMultilinePattern = contentMultilinePattern;
-						contentSb.append(lineParts[1]);
+						currentMultiline = MultilineField.CONTENT;
+						contentSb.append(value);
 						break;
 					case "Creator":
-						historyItem.setCreator(lineParts[1]);
+						historyItem.setCreator(value);
 						break;
 					case "Created":
-						try {
-							historyItem.setCreated(parseDateString(lineParts[1]));
-						}
-						catch (ParseException ex) {
-							historyItem.setCreated(null);
-						}
+						historyItem.setCreated(RtRestDateCodec.HISTORY_DATE.parse(value));
 						break;
 					case "Attachments":
-						currentMultilinePattern = attachmentsMultilinePattern;
+						currentMultiline = MultilineField.ATTACHMENTS;
 						break;
 					default:
 					/*
@@ -180,18 +170,67 @@ public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the response format is corrupt
 	 */
 	static List<RtTicketHistoryItem> parseHistoryItems(String response) throws RtException {
-		ArrayList<RtTicketHistoryItem> itemList = new ArrayList<>();
+		return parseHistoryItems(new RtRestLineCursor(response));
+	}
 
-		String[] responseParts = response.split(RtRestResponseParser.LIST_DELIMITER);
 
-		for (String part : responseParts) {
-			itemList.add(parseHistoryItem(part));
+	/**
+	 * Parse a list of ticket history items from the lines ahead of the cursor.
+	 *
+	 * @param cursor Cursor over the received response
+	 * @return A list of history items
+	 * @throws RtException if the response format is corrupt
+	 */
+	static List<RtTicketHistoryItem> parseHistoryItems(RtRestLineCursor cursor) throws RtException {
+		ArrayList<RtTicketHistoryItem> itemList = new ArrayList<>();
+
+		do {
+			itemList.add(parseHistoryItem(cursor));
 		}
+		while (cursor.hasNext());
 
 		return itemList;
 	}
 
 
+	/**
+	 * Parse the IDs from a short format ticket history listing.
+	 * Every item of the listing is a line like "63: Ticket created by root", all other lines are ignored.
+	 *
+	 * @param response The received response
+	 * @return A list of history item IDs, ordered the same way as in the API response
+	 */
+	static List<Long> parseHistoryItemIds(String response) {
+		return parseHistoryItemIds(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Parse the IDs of a short format ticket history listing from the lines ahead of the cursor.
+	 *
+	 * @param cursor Cursor over the received response
+	 * @return A list of history item IDs, ordered the same way as in the API response
+	 */
+	static List<Long> parseHistoryItemIds(RtRestLineCursor cursor) {
+		ArrayList<Long> idList = new ArrayList<>();
+
+		while (cursor.hasNext()) {
+			String line = cursor.nextLine();
+			int separatorIndex = line.indexOf(": ");
+
+			if (separatorIndex > 0) {
+				long id = parseMessageId(line.substring(0, separatorIndex), "", "");
+
+				if (id >= 0) {
+					idList.add(id);
+				}
+			}
+		}
+
+		return idList;
+	}
+
+
 	/**
 	 * Parse the response of a comment ticket request and check for success message.
 	 *
@@ -200,10 +239,20 @@ public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the comment action failed
 	 */
 	static boolean parseTicketCommented(String response) throws RtException {
-		String[] responseParts = response.split("\n");
+		return parseTicketCommented(new RtRestLineCursor(response));
+	}
+
 
-		for (String part : responseParts) {
-			if(part.equals("# Message recorded")) {
+	/**
+	 * Read the lines ahead of the cursor and check for the success message of a comment ticket request.
+	 *
+	 * @param cursor Cursor over the received response
+	 * @return true if the comment was written successful
+	 * @throws RtException if the comment action failed
+	 */
+	static boolean parseTicketCommented(RtRestLineCursor cursor) throws RtException {
+		while (cursor.hasNext()) {
+			if(cursor.nextLine().equals("# Message recorded")) {
 				return true;
 			}
 		}
@@ -279,7 +328,13 @@ public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 	 * @throws ParseException If the date string could not be parsed
 	 */
 	static Date parseDateString(String date) throws ParseException {
-		return sdf.parse(date);
+		Date result = RtRestDateCodec.HISTORY_DATE.parse(date);
+
+		if(result == null) {
+			throw new ParseException("Unparseable date: \"" + date + "\"", 0);
+		}
+
+		return result;
 	}
 
 
@@ -290,11 +345,16 @@ public class RtRestTicketHistoryResponseParser extends RtRestResponseParser {
 	 * @return Date string required for the specific implementation
 	 */
 	static String formatDateString(Date date) {
-		if (date != null) {
-			return sdf.format(date);
-		}
-		else {
-			return "";
-		}
+		return RtRestDateCodec.HISTORY_DATE.format(date);
+	}
+
+
+	/**
+	 * Multiline fields of a history item, the lines following the field line are indented
+	 */
+	private static enum MultilineField {
+		NONE,
+		CONTENT,
+		ATTACHMENTS
 	}
 }
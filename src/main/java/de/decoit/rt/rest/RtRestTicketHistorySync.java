@@ -0,0 +1,186 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Local copy of ticket histories which is updated incrementally.
+ * For every synchronized ticket the history items and the ID of the newest item are kept in memory. A sync only
+ * requests the items added since the previous sync, using RtConnector.getTicketHistory() with the newest known item
+ * ID, and appends them to the local history. The first sync of a ticket requests its complete history.<br>
+ * History items are never changed by RT, so the local history stays valid. Items are held until the ticket is
+ * removed by forget() or clear(). The returned lists are unmodifiable snapshots, the items themselves are shared
+ * and must not be modified.<br>
+ * Syncs of different tickets may run concurrently, syncs of the same ticket are serialized.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTicketHistorySync {
+	private static final Logger LOG = Logger.getLogger(RtRestTicketHistorySync.class);
+
+	private final RtConnector connector;
+	private final ConcurrentMap<Long, TicketHistory> histories = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Create a new history sync.
+	 *
+	 * @param connector Connector used to request the history items
+	 */
+	public RtRestTicketHistorySync(RtConnector connector) {
+		if(connector == null) {
+			throw new IllegalArgumentException("Connector cannot be null");
+		}
+
+		this.connector = connector;
+	}
+
+
+	/**
+	 * Request the history items added since the previous sync of a ticket and merge them into the local history.
+	 *
+	 * @param sessionId Current session ID, must be valid
+	 * @param ticketId Ticket of which the history shall be synchronized
+	 * @return The new history items, an empty list if the history did not change
+	 * @throws RtException if requesting the history failed, the local history is not changed in this case
+	 */
+	public List<RtTicketHistoryItem> sync(String sessionId, long ticketId) throws RtException {
+		TicketHistory history = this.histories.get(ticketId);
+
+		if(history == null) {
+			TicketHistory newHistory = new TicketHistory();
+			history = this.histories.putIfAbsent(ticketId, newHistory);
+
+			if(history == null) {
+				history = newHistory;
+			}
+		}
+
+		history.lock.lock();
+		try {
+			List<RtTicketHistoryItem> newItems = this.connector.getTicketHistory(sessionId, ticketId, history.lastItemId);
+			ArrayList<RtTicketHistoryItem> merged = new ArrayList<>(history.items.size() + newItems.size());
+			merged.addAll(history.items);
+
+			for(RtTicketHistoryItem item : newItems) {
+				// Skip items which were already known, i.e. if the connector returned the complete history
+				if(item.getId() > history.lastItemId) {
+					merged.add(item);
+					history.lastItemId = item.getId();
+				}
+			}
+
+			List<RtTicketHistoryItem> added = merged.subList(history.items.size(), merged.size());
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("History of ticket " + ticketId + " synchronized, " + added.size() + " new items");
+			}
+
+			history.items = Collections.unmodifiableList(merged);
+
+			return Collections.unmodifiableList(new ArrayList<>(added));
+		}
+		finally {
+			history.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Get the local history of a ticket as it was read by the last sync.
+	 *
+	 * @param ticketId Ticket ID
+	 * @return Unmodifiable list of the history items, an empty list if the ticket was never synchronized
+	 */
+	public List<RtTicketHistoryItem> getHistory(long ticketId) {
+		TicketHistory history = this.histories.get(ticketId);
+
+		if(history == null) {
+			return Collections.emptyList();
+		}
+
+		history.lock.lock();
+		try {
+			return history.items;
+		}
+		finally {
+			history.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Get the ID of the newest history item of a ticket read by the last sync.
+	 *
+	 * @param ticketId Ticket ID
+	 * @return Newest history item ID, 0 if the ticket was never synchronized
+	 */
+	public long getLastItemId(long ticketId) {
+		TicketHistory history = this.histories.get(ticketId);
+
+		if(history == null) {
+			return 0L;
+		}
+
+		history.lock.lock();
+		try {
+			return history.lastItemId;
+		}
+		finally {
+			history.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Remove the local history of a ticket, the next sync requests the complete history.
+	 *
+	 * @param ticketId Ticket ID
+	 */
+	public void forget(long ticketId) {
+		this.histories.remove(ticketId);
+	}
+
+
+	/**
+	 * Remove the local histories of all tickets.
+	 */
+	public void clear() {
+		this.histories.clear();
+	}
+
+
+	/**
+	 * Local history of a single ticket.
+	 */
+	private static class TicketHistory {
+		private final ReentrantLock lock = new ReentrantLock();
+		private List<RtTicketHistoryItem> items = Collections.emptyList();
+		private long lastItemId = 0L;
+	}
+}
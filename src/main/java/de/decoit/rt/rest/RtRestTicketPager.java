@@ -0,0 +1,309 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.collect.AbstractIterator;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTicketCursor;
+import de.decoit.rt.RtUncheckedException;
+import de.decoit.rt.model.RtTicket;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Cursor which fetches the result of a ticket search page by page.
+ * RT REST 1.0 does not support limiting the number of results, so the pages are built by adding ID range predicates
+ * to the query: every page covers a window of pageSize ticket IDs and therefore contains at most pageSize tickets.
+ * The tickets are returned ordered by ID, ascending.<br>
+ * Before the first page the lowest and highest matching ticket IDs are requested, tickets created after that are
+ * not part of the result. Windows which do not contain any matching ticket are skipped by requesting the next
+ * matching ID. Only these requests transfer more than the current page, but they read nothing but ticket IDs and
+ * abort the response after the first one.<br>
+ * If an executor is provided, the next page is fetched by the executor while the current page is read.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class RtRestTicketPager implements RtTicketCursor {
+	private static final Logger LOG = Logger.getLogger(RtRestTicketPager.class);
+
+	private final RtRestClient client;
+	private final String sessionId;
+	private final String query;
+	private final int pageSize;
+	private final ExecutorService executor;
+	private final ReentrantLock lock = new ReentrantLock();
+	private Iterator<RtTicket> currentPage = Collections.emptyIterator();
+	private volatile Future<Page> nextPage = null;
+	private long maxId = -1L;
+	private boolean started = false;
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Create a new pager. No request is sent before the first ticket is read.
+	 *
+	 * @param client Client used to send the requests
+	 * @param sessionId Current session ID, must be valid
+	 * @param query Search query, using the language generated by the RT query builder
+	 * @param pageSize Number of ticket IDs covered by a page, must be greater than 0
+	 * @param executor Executor used to fetch the next page in the background, may be null to fetch pages on demand
+	 */
+	RtRestTicketPager(RtRestClient client, String sessionId, String query, int pageSize, ExecutorService executor) {
+		if(pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be greater than 0");
+		}
+
+		this.client = client;
+		this.sessionId = sessionId;
+		this.query = query;
+		this.pageSize = pageSize;
+		this.executor = executor;
+	}
+
+
+	@Override
+	public RtTicket nextTicket() throws RtException {
+		this.lock.lock();
+		try {
+			if(!this.started) {
+				start();
+			}
+
+			while(!this.closed) {
+				if(this.currentPage.hasNext()) {
+					return this.currentPage.next();
+				}
+
+				if(this.nextPage == null) {
+					close();
+					break;
+				}
+
+				Page page = awaitPage(this.nextPage);
+				this.nextPage = null;
+
+				if(page != null) {
+					this.currentPage = page.tickets.iterator();
+
+					if(page.upperBound < this.maxId) {
+						this.nextPage = schedulePage(page.upperBound);
+					}
+				}
+			}
+
+			return null;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public Iterator<RtTicket> iterator() {
+		return new AbstractIterator<RtTicket>() {
+			@Override
+			protected RtTicket computeNext() {
+				try {
+					RtTicket ticket = nextTicket();
+
+					if(ticket != null) {
+						return ticket;
+					}
+					else {
+						return endOfData();
+					}
+				}
+				catch(RtException ex) {
+					throw new RtUncheckedException(ex);
+				}
+			}
+		};
+	}
+
+
+	@Override
+	public void close() {
+		if(!this.closed) {
+			this.closed = true;
+
+			Future<Page> pending = this.nextPage;
+			if(pending != null) {
+				pending.cancel(true);
+			}
+
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("Paged ticket search closed: " + this.query);
+			}
+		}
+	}
+
+
+	/**
+	 * Request the ID range of the search result and schedule the first page.
+	 *
+	 * @throws RtException if a request to the API failed
+	 */
+	private void start() throws RtException {
+		this.started = true;
+
+		long minId = this.client.findTicketId(this.sessionId, this.query, "+id");
+
+		if(minId >= 0) {
+			this.maxId = this.client.findTicketId(this.sessionId, this.query, "-id");
+			this.nextPage = schedulePage(minId - 1);
+		}
+	}
+
+
+	/**
+	 * Fetch the page starting after the provided ID, using the executor if available.
+	 *
+	 * @param lowerBound All tickets of the page have an ID greater than this
+	 * @return Future for the page
+	 */
+	private Future<Page> schedulePage(final long lowerBound) {
+		Callable<Page> task = new Callable<Page>() {
+			@Override
+			public Page call() throws RtException {
+				return fetchPage(lowerBound);
+			}
+		};
+
+		if(this.executor != null) {
+			return this.executor.submit(task);
+		}
+		else {
+			// Fetched in the calling thread when the page is awaited
+			return new FutureTask<>(task);
+		}
+	}
+
+
+	/**
+	 * Wait for a scheduled page.
+	 *
+	 * @param future Future of the page
+	 * @return The page, null if the cursor was closed while waiting
+	 * @throws RtException if fetching the page failed
+	 */
+	private Page awaitPage(Future<Page> future) throws RtException {
+		if(future instanceof FutureTask && !future.isDone()) {
+			((FutureTask<Page>) future).run();
+		}
+
+		try {
+			return future.get();
+		}
+		catch(CancellationException ex) {
+			return null;
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RtException("Interrupted while waiting for ticket search page");
+		}
+		catch(ExecutionException ex) {
+			if(ex.getCause() instanceof RtException) {
+				throw (RtException) ex.getCause();
+			}
+			else {
+				throw new RtException("Ticket search page request failed: " + ex.getCause());
+			}
+		}
+	}
+
+
+	/**
+	 * Fetch the next page containing at least one ticket, skipping empty ID windows.
+	 *
+	 * @param lowerBound All tickets of the page have an ID greater than this
+	 * @return The page, it is only empty if there are no more tickets up to the highest ID of the result
+	 * @throws RtException if a request to the API failed
+	 */
+	private Page fetchPage(long lowerBound) throws RtException {
+		long lower = lowerBound;
+
+		while(!this.closed) {
+			long upper = Math.min(lower + this.pageSize, this.maxId);
+			List<RtTicket> tickets = this.client.searchTickets(this.sessionId, buildRangeQuery(lower, upper), "+id");
+
+			if(!tickets.isEmpty() || upper >= this.maxId) {
+				return new Page(tickets, upper);
+			}
+
+			// Jump over the gap to the next matching ticket
+			StringBuilder gapQuery = new StringBuilder("(");
+			gapQuery.append(this.query);
+			gapQuery.append(") AND id > ");
+			gapQuery.append(upper);
+
+			long nextId = this.client.findTicketId(this.sessionId, gapQuery.toString(), "+id");
+
+			if(nextId < 0 || nextId > this.maxId) {
+				return new Page(tickets, this.maxId);
+			}
+
+			lower = nextId - 1;
+		}
+
+		return new Page(Collections.<RtTicket>emptyList(), this.maxId);
+	}
+
+
+	/**
+	 * Build the query for the ID window (lower, upper].
+	 *
+	 * @param lower Lower bound of the window, exclusive
+	 * @param upper Upper bound of the window, inclusive
+	 * @return Query string
+	 */
+	private String buildRangeQuery(long lower, long upper) {
+		StringBuilder sb = new StringBuilder("(");
+		sb.append(this.query);
+		sb.append(") AND id > ");
+		sb.append(lower);
+		sb.append(" AND id <= ");
+		sb.append(upper);
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * A page of the search result.
+	 */
+	private static class Page {
+		private final List<RtTicket> tickets;
+		private final long upperBound;
+
+
+		Page(List<RtTicket> tickets, long upperBound) {
+			this.tickets = tickets;
+			this.upperBound = upperBound;
+		}
+	}
+}
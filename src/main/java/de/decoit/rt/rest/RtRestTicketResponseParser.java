@@ -22,16 +22,16 @@ import com.google.common.collect.Lists;
 import de.decoit.rt.RtException;
 import de.decoit.rt.model.RtTicket;
 import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import de.decoit.rt.model.RtTicketField;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
@@ -43,11 +43,13 @@ import org.apache.log4j.Logger;
  */
 class RtRestTicketResponseParser extends RtRestResponseParser {
 	private static final Logger LOG = Logger.getLogger(RtRestTicketResponseParser.class);
-	private static final SimpleDateFormat sdf;
+	private static final Splitter LIST_SPLITTER = Splitter.on(",").trimResults();
+	private static final Map<String, RtTicketField> FIELDS_BY_NAME = new HashMap<>();
 
 	static {
-		// Create a parser for the REST date format
-		sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy", Locale.US);
+		for(RtTicketField field : RtTicketField.values()) {
+			FIELDS_BY_NAME.put(field.getFieldName(), field);
+		}
 	}
 
 
@@ -67,197 +69,207 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	 * @throws RtException If a line starting with "#" was found (means error for ticket properties requests)
 	 */
 	static RtTicket parseTicket(String response) throws RtException {
+		return parseTicket(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Create a RtTicket instance from the lines ahead of the cursor. Reading stops behind the next list delimiter
+	 * or at the end of the response, so the cursor of a ticket search can be passed in for every ticket of the list.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return A ticket object filled with the values from the response lines
+	 *
+	 * @throws RtException If a line starting with "#" was found (means error for ticket properties requests)
+	 */
+	static RtTicket parseTicket(RtRestLineCursor cursor) throws RtException {
+		return parseTicket(cursor, null);
+	}
+
+
+	/**
+	 * Create a RtTicket instance containing only the selected fields from the lines ahead of the cursor.
+	 * Lines of fields which were not selected are ignored, even if RT sent them, so the loaded fields of the
+	 * returned ticket are exactly the selected fields.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @param fields Fields to load, null to load all fields
+	 * @return A ticket object filled with the values of the selected fields
+	 *
+	 * @throws RtException If a line starting with "#" was found (means error for ticket properties requests)
+	 */
+	static RtTicket parseTicket(RtRestLineCursor cursor, Set<RtTicketField> fields) throws RtException {
 		RtTicket ticket = new RtTicket();
 
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		while (cursor.hasNext() && !cursor.skipDelimiter()) {
+			parseTicketLine(ticket, cursor.nextLine(), fields);
+		}
 
-		for (String line : responseParts) {
-			if (StringUtils.isBlank(line)) {
-				// Blank line, ignore
-			}
-			else if (line.startsWith("RT/")) {
-				// Status line, ignore
-			}
-			else if (line.startsWith("#")) {
-				// Message line, in case of ticket query means something went wrong, raise exception
-				throw new RtException(line.substring(2));
-			}
-			else if (line.startsWith("CF.{")) {
-				// New style custom field line, parse and add to custom fields of the ticket
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
+		ticket.markUnchanged();
 
-				Pattern cfNamePattern = Pattern.compile("^CF\\.\\{(.+?)\\}$");
-				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
-				if(cfNameMatcher.matches()) {
-					String cfName = cfNameMatcher.group(1);
+		if(fields != null) {
+			ticket.setLoadedFields(fields);
+		}
 
-					ticket.addCustomField(cfName, lineParts[1]);
-				}
-				else {
-					LOG.warn("Invalid custom field line detected: " + line);
-				}
-			}
-			else if (line.startsWith("CF-")) {
-				// Old style custom field line, parse and add to custom fields of the ticket
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
+		return ticket;
+	}
 
-				Pattern cfNamePattern = Pattern.compile("^CF-(.+?)$");
-				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
-				if(cfNameMatcher.matches()) {
-					String cfName = cfNameMatcher.group(1);
 
-					ticket.addCustomField(cfName, lineParts[1]);
+	/**
+	 * Parse a single line of a ticket properties response and set the corresponding value on the ticket object.
+	 * Blank lines and the status line are ignored.
+	 *
+	 * @param ticket Ticket object which receives the value
+	 * @param line A single line of the response, without line break
+	 *
+	 * @throws RtException If the line starts with "#" (means error for ticket properties requests) or contains an invalid ticket ID
+	 */
+	static void parseTicketLine(RtTicket ticket, String line) throws RtException {
+		parseTicketLine(ticket, line, null);
+	}
+
+
+	/**
+	 * Parse a single line of a ticket properties response if it contains one of the selected fields.
+	 * The ticket ID is always parsed.
+	 *
+	 * @param ticket Ticket object which receives the value
+	 * @param line A single line of the response, without line break
+	 * @param fields Fields to parse, null to parse all fields
+	 *
+	 * @throws RtException If the line starts with "#" (means error for ticket properties requests) or contains an invalid ticket ID
+	 * @see #parseTicketLine(de.decoit.rt.model.RtTicket, java.lang.String)
+	 */
+	static void parseTicketLine(RtTicket ticket, String line, Set<RtTicketField> fields) throws RtException {
+		if (StringUtils.isBlank(line)) {
+			// Blank line, ignore
+		}
+		else if (line.startsWith("RT/")) {
+			// Status line, ignore
+		}
+		else if (line.startsWith("#")) {
+			// Message line, in case of ticket query means something went wrong, raise exception
+			throw new RtException(line.substring(2));
+		}
+		else {
+			String key = lineKey(line);
+			String value = lineValue(line);
+
+			if (fields != null && !isSelected(key, fields)) {
+				// Field was not selected, ignore
+			}
+			else if (key.startsWith("CF.{") || key.startsWith("CF-")) {
+				// Custom field line (new style CF.{name} or old style CF-name), parse and add to custom fields of the ticket
+				String cfName = customFieldName(key);
+
+				if(cfName != null) {
+					ticket.addCustomField(cfName, value);
 				}
 				else {
 					LOG.warn("Invalid custom field line detected: " + line);
 				}
 			}
 			else {
-				Pattern idPattern = Pattern.compile("^ticket/(\\d+)$");
-				Matcher idMatcher;
-				Pattern timePattern = Pattern.compile("^(\\d+?) (minutes)?$");
-				Matcher timeMatcher;
-
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				switch(lineParts[0]) {
+				switch(key) {
 					case "id":
-						idMatcher = idPattern.matcher(lineParts[1]);
+						long id = parseObjectId(value, "ticket/");
 
-						if(idMatcher.matches()) {
-							ticket.setId(Long.parseLong(idMatcher.group(1)));
+						if(id >= 0) {
+							ticket.setId(id);
 						}
 						else {
-							throw new RtException("Invalid ticket ID pattern: " + lineParts[1]);
+							throw new RtException("Invalid ticket ID pattern: " + value);
 						}
 						break;
 					case "Queue":
-						ticket.setQueue(lineParts[1]);
+						ticket.setQueue(value);
 						break;
 					case "Owner":
-						ticket.setOwner(lineParts[1]);
+						ticket.setOwner(value);
 						break;
 					case "Creator":
-						ticket.setCreator(lineParts[1]);
+						ticket.setCreator(value);
 						break;
 					case "Subject":
-						ticket.setSubject(lineParts[1]);
+						ticket.setSubject(value);
 						break;
 					case "Status":
-						ticket.setStatus(RtTicketStatus.fromStatusText(lineParts[1]));
+						ticket.setStatus(RtTicketStatus.fromStatusText(value));
 						break;
 					case "Priority":
-						ticket.setPriority(Integer.parseInt(lineParts[1]));
+						ticket.setPriority(Integer.parseInt(value));
 						break;
 					case "InitialPriority":
-						ticket.setInitialPriority(Integer.parseInt(lineParts[1]));
+						ticket.setInitialPriority(Integer.parseInt(value));
 						break;
 					case "FinalPriority":
-						ticket.setFinalPriority(Integer.parseInt(lineParts[1]));
+						ticket.setFinalPriority(Integer.parseInt(value));
 						break;
 					case "Requestors":
-						ticket.setRequestors(Lists.newArrayList(Splitter.on(",").trimResults().split(lineParts[1])));
+						ticket.setRequestors(Lists.newArrayList(LIST_SPLITTER.split(value)));
 						break;
 					case "Cc":
-						ticket.setCc(Lists.newArrayList(Splitter.on(",").trimResults().split(lineParts[1])));
+						ticket.setCc(Lists.newArrayList(LIST_SPLITTER.split(value)));
 						break;
 					case "AdminCc":
-						ticket.setAdminCc(Lists.newArrayList(Splitter.on(",").trimResults().split(lineParts[1])));
+						ticket.setAdminCc(Lists.newArrayList(LIST_SPLITTER.split(value)));
 						break;
 					case "Created":
-						try {
-							ticket.setCreated(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setCreated(null);
-						}
+						ticket.setCreated(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "Starts":
-						try {
-							ticket.setStarts(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setStarts(null);
-						}
+						ticket.setStarts(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "Started":
-						try {
-							ticket.setStarted(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setStarted(null);
-						}
+						ticket.setStarted(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "Due":
-						try {
-							ticket.setDue(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setDue(null);
-						}
+						ticket.setDue(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "Resolved":
-						try {
-							ticket.setResolved(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setResolved(null);
-						}
+						ticket.setResolved(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "Told":
-						try {
-							ticket.setTold(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setTold(null);
-						}
+						ticket.setTold(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "LastUpdated":
-						try {
-							ticket.setLastUpdated(parseDateString(lineParts[1]));
-						}
-						catch(ParseException ex) {
-							ticket.setLastUpdated(null);
-						}
+						ticket.setLastUpdated(RtRestDateCodec.TICKET_DATE.parse(value));
 						break;
 					case "TimeEstimated":
-						timeMatcher = timePattern.matcher(lineParts[1]);
-						if(timeMatcher.matches()) {
-							ticket.setTimeEstimated(Integer.parseInt(timeMatcher.group(1)));
-						}
-						else {
-							ticket.setTimeEstimated(0);
-						}
+						ticket.setTimeEstimated(parseMinutes(value));
 						break;
 					case "TimeWorked":
-						timeMatcher = timePattern.matcher(lineParts[1]);
-						if(timeMatcher.matches()) {
-							ticket.setTimeWorked(Integer.parseInt(timeMatcher.group(1)));
-						}
-						else {
-							ticket.setTimeWorked(0);
-						}
+						ticket.setTimeWorked(parseMinutes(value));
 						break;
 					case "TimeLeft":
-						timeMatcher = timePattern.matcher(lineParts[1]);
-						if(timeMatcher.matches()) {
-							ticket.setTimeLeft(Integer.parseInt(timeMatcher.group(1)));
-						}
-						else {
-							ticket.setTimeLeft(0);
-						}
+						ticket.setTimeLeft(parseMinutes(value));
 						break;
 					default:
 						/* Ignore */
 				}
 			}
 		}
+	}
 
-		return ticket;
+
+	/**
+	 * Check if the field of a response line is one of the selected fields.
+	 *
+	 * @param key Key of the response line
+	 * @param fields Selected fields
+	 * @return true if the line must be parsed
+	 */
+	private static boolean isSelected(String key, Set<RtTicketField> fields) {
+		if (key.equals("id")) {
+			return true;
+		}
+		else if (key.startsWith("CF.{") || key.startsWith("CF-")) {
+			return fields.contains(RtTicketField.CUSTOM_FIELDS);
+		}
+
+		RtTicketField field = FIELDS_BY_NAME.get(key);
+
+		return field == null || fields.contains(field);
 	}
 
 
@@ -272,18 +284,30 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	 * @throws RtException
 	 */
 	static List<RtTicket> parseTickets(String response) throws RtException {
+		return parseTickets(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Parse a list of tickets from the lines ahead of the cursor.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return A list of tickets
+	 * @throws RtException
+	 * @see #parseTickets(java.lang.String)
+	 */
+	static List<RtTicket> parseTickets(RtRestLineCursor cursor) throws RtException {
 		ArrayList<RtTicket> ticketList = new ArrayList<>();
 
-		if(response.contains("No matching results.")) {
+		if(cursor.remainingContains("No matching results.")) {
 			// No results found, return empty list
 			return ticketList;
 		}
 
-		String[] responseParts = response.split(RtRestResponseParser.LIST_DELIMITER);
-
-		for (String part : responseParts) {
-			ticketList.add(parseTicket(part));
+		do {
+			ticketList.add(parseTicket(cursor));
 		}
+		while (cursor.hasNext());
 
 		return ticketList;
 	}
@@ -297,17 +321,27 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	 * @return The ID of the created ticket
 	 */
 	static long parseTicketCreated(String response) throws RtException {
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		return parseTicketCreated(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Read the lines ahead of the cursor to determine if a ticket was created successfully.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return The ID of the created ticket
+	 * @see #parseTicketCreated(java.lang.String)
+	 */
+	static long parseTicketCreated(RtRestLineCursor cursor) throws RtException {
+		while (cursor.hasNext()) {
+			String line = cursor.nextLine();
 
-		for (String line : responseParts) {
 			// Line with status message, it is the only one that is of interest in this case
 			if (line.startsWith("#")) {
-				Pattern p = Pattern.compile("^# Ticket (\\d+?) created\\.$");
-				Matcher m = p.matcher(line);
+				long id = parseMessageId(line, "# Ticket ", " created.");
 
-				if (m.matches()) {
-					return Long.parseLong(m.group(1));
+				if (id >= 0) {
+					return id;
 				}
 			}
 			else {
@@ -317,7 +351,7 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 
 		if(LOG.isDebugEnabled()) {
 			LOG.debug("Ticket creation failed");
-			LOG.debug(response);
+			LOG.debug(cursor.getText());
 		}
 		throw new RtException("Ticket creation failed");
 	}
@@ -331,16 +365,24 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the ticket update failed
 	 */
 	static boolean parseTicketEdited(String response) throws RtException {
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		return parseTicketEdited(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Read the lines ahead of the cursor to decide if a ticket update was successful.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return true if the ticket update was succcessful
+	 * @throws RtException if the ticket update failed
+	 */
+	static boolean parseTicketEdited(RtRestLineCursor cursor) throws RtException {
+		while (cursor.hasNext()) {
+			String line = cursor.nextLine();
 
-		for (String line : responseParts) {
 			// Line with status message, it is the only one that is of interest in this case
 			if (line.startsWith("#")) {
-				Pattern p = Pattern.compile("^# Ticket \\d+? updated\\.$");
-				Matcher m = p.matcher(line);
-
-				if(m.matches()) {
+				if(parseMessageId(line, "# Ticket ", " updated.") >= 0) {
 					return true;
 				}
 			}
@@ -376,6 +418,96 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	}
 
 
+	/**
+	 * Build a content string for a ticket update which contains only the fields changed since the ticket was
+	 * loaded from RT. Unlike ticketToString() this does not require the current state of the ticket.
+	 *
+	 * @param ticket Ticket object with changed fields
+	 * @return The generated content string, empty if no field was changed
+	 */
+	static String changedFieldsToString(RtTicket ticket) {
+		StringBuilder sb = new StringBuilder();
+		Joiner commaJoiner = Joiner.on(",").skipNulls();
+
+		for(RtTicketField field : ticket.getChangedFields()) {
+			switch(field) {
+				case QUEUE:
+					appendField(sb, field, ticket.getQueue());
+					break;
+				case OWNER:
+					appendField(sb, field, ticket.getOwner());
+					break;
+				case SUBJECT:
+					appendField(sb, field, ticket.getSubject());
+					break;
+				case STATUS:
+					appendField(sb, field, ticket.getStatus());
+					break;
+				case PRIORITY:
+					appendField(sb, field, ticket.getPriority());
+					break;
+				case INITIAL_PRIORITY:
+					appendField(sb, field, ticket.getInitialPriority());
+					break;
+				case FINAL_PRIORITY:
+					appendField(sb, field, ticket.getFinalPriority());
+					break;
+				case REQUESTORS:
+					appendField(sb, field, commaJoiner.join(ticket.getRequestors()));
+					break;
+				case CC:
+					appendField(sb, field, commaJoiner.join(ticket.getCc()));
+					break;
+				case ADMIN_CC:
+					appendField(sb, field, commaJoiner.join(ticket.getAdminCc()));
+					break;
+				case STARTS:
+					appendField(sb, field, formatDateString(ticket.getStarts()));
+					break;
+				case STARTED:
+					appendField(sb, field, formatDateString(ticket.getStarted()));
+					break;
+				case DUE:
+					appendField(sb, field, formatDateString(ticket.getDue()));
+					break;
+				case RESOLVED:
+					appendField(sb, field, formatDateString(ticket.getResolved()));
+					break;
+				case TOLD:
+					appendField(sb, field, formatDateString(ticket.getTold()));
+					break;
+				case TIME_ESTIMATED:
+					appendField(sb, field, ticket.getTimeEstimated());
+					break;
+				case TIME_WORKED:
+					appendField(sb, field, ticket.getTimeWorked());
+					break;
+				case TIME_LEFT:
+					appendField(sb, field, ticket.getTimeLeft());
+					break;
+				case TEXT:
+					if(ticket.getText() != null) {
+						appendField(sb, field, ticket.getText().replaceAll("\n", "\n "));
+					}
+					break;
+				case CUSTOM_FIELDS:
+					for(String name : ticket.getChangedCustomFields()) {
+						sb.append("CF.{");
+						sb.append(name);
+						sb.append("}: ");
+						sb.append(ticket.getCustomFields().get(name));
+						sb.append("\n");
+					}
+					break;
+				default:
+					/* Ignore */
+			}
+		}
+
+		return sb.toString();
+	}
+
+
 	/**
 	 * Parse the date string returned from RT into a native Java Date object
 	 *
@@ -384,7 +516,13 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	 * @throws ParseException If the date string could not be parsed
 	 */
 	static Date parseDateString(String date) throws ParseException {
-		return sdf.parse(date);
+		Date result = RtRestDateCodec.TICKET_DATE.parse(date);
+
+		if(result == null) {
+			throw new ParseException("Unparseable date: \"" + date + "\"", 0);
+		}
+
+		return result;
 	}
 
 
@@ -395,12 +533,15 @@ class RtRestTicketResponseParser extends RtRestResponseParser {
 	 * @return Date string required for the specific implementation
 	 */
 	static String formatDateString(Date date) {
-		if(date != null) {
-			return sdf.format(date);
-		}
-		else {
-			return "";
-		}
+		return RtRestDateCodec.TICKET_DATE.format(date);
+	}
+
+
+	private static void appendField(StringBuilder sb, RtTicketField field, Object value) {
+		sb.append(field.getFieldName());
+		sb.append(": ");
+		sb.append(value);
+		sb.append("\n");
 	}
 
 
@@ -0,0 +1,210 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+
+/**
+ * This class parses the response of a long format ticket search while it is read from the connection.
+ * Instead of reading the whole response into a string and splitting it into parts, the response is read line
+ * by line and a ticket object is returned as soon as its last line was read. Only the current line and the
+ * current ticket are held in memory.<br>
+ * Responses of searches requesting only the ticket IDs can be read using nextTicketId().
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class RtRestTicketStreamParser implements Closeable {
+	private static final String LIST_DELIMITER_LINE = "--";
+	private static final String NO_RESULTS_LINE = "No matching results.";
+	private static final String TICKET_ID_PREFIX = "ticket/";
+
+	private final BufferedReader reader;
+	private final Set<RtTicketField> fields;
+	private boolean statusRead = false;
+	private boolean finished = false;
+
+
+	/**
+	 * Create a parser reading from the provided reader.
+	 *
+	 * @param reader Reader providing the response text, starting with the status line
+	 */
+	RtRestTicketStreamParser(Reader reader) {
+		this(reader, null);
+	}
+
+
+	/**
+	 * Create a parser reading from the provided reader which loads only the selected fields of the tickets.
+	 *
+	 * @param reader Reader providing the response text, starting with the status line
+	 * @param fields Fields to load, null to load all fields
+	 */
+	RtRestTicketStreamParser(Reader reader, Set<RtTicketField> fields) {
+		this.fields = fields;
+
+		if(reader instanceof BufferedReader) {
+			this.reader = (BufferedReader) reader;
+		}
+		else {
+			this.reader = new BufferedReader(reader);
+		}
+	}
+
+
+	/**
+	 * Read the next ticket from the response.
+	 * The first call checks the status line of the response and raises an exception if RT reported an error.
+	 *
+	 * @return The next ticket, null if the end of the response was reached
+	 * @throws RtException if RT reported an error or the response contains invalid values
+	 * @throws IOException if reading the response failed
+	 */
+	RtTicket nextTicket() throws RtException, IOException {
+		if(!this.statusRead) {
+			readStatus();
+		}
+
+		RtTicket ticket = null;
+		String line;
+
+		while(!this.finished && (line = this.reader.readLine()) != null) {
+			if(line.equals(LIST_DELIMITER_LINE)) {
+				if(ticket != null) {
+					return finishTicket(ticket);
+				}
+			}
+			else if(line.equals(NO_RESULTS_LINE)) {
+				this.finished = true;
+			}
+			else if(line.trim().length() > 0) {
+				if(ticket == null) {
+					ticket = new RtTicket();
+				}
+
+				RtRestTicketResponseParser.parseTicketLine(ticket, line, this.fields);
+			}
+		}
+
+		this.finished = true;
+
+		return (ticket != null) ? finishTicket(ticket) : null;
+	}
+
+
+	/**
+	 * Read the next ticket ID from the response of a search requesting only the ticket IDs (format=i).
+	 * The first call checks the status line of the response and raises an exception if RT reported an error.
+	 *
+	 * @return The next ticket ID, -1 if the end of the response was reached
+	 * @throws RtException if RT reported an error or the response contains an invalid line
+	 * @throws IOException if reading the response failed
+	 */
+	long nextTicketId() throws RtException, IOException {
+		if(!this.statusRead) {
+			readStatus();
+		}
+
+		String line;
+
+		while(!this.finished && (line = this.reader.readLine()) != null) {
+			if(line.startsWith(TICKET_ID_PREFIX)) {
+				try {
+					return Long.parseLong(line.substring(TICKET_ID_PREFIX.length()).trim());
+				}
+				catch(NumberFormatException ex) {
+					throw new RtException("Invalid ticket ID received: " + line);
+				}
+			}
+			else if(line.equals(NO_RESULTS_LINE)) {
+				this.finished = true;
+			}
+			else if(line.trim().length() > 0) {
+				throw new RtException("Invalid line in ticket ID list: " + line);
+			}
+		}
+
+		this.finished = true;
+
+		return -1L;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+
+
+	/**
+	 * Mark a completely read ticket as unchanged and record its loaded fields.
+	 *
+	 * @param ticket Ticket whose last line was read
+	 * @return The ticket
+	 */
+	private RtTicket finishTicket(RtTicket ticket) {
+		ticket.markUnchanged();
+
+		if(this.fields != null) {
+			ticket.setLoadedFields(this.fields);
+		}
+
+		return ticket;
+	}
+
+
+	/**
+	 * Read the status line and make sure RT processed the request successfully.
+	 *
+	 * @throws RtException if the status line is missing or RT reported an error
+	 * @throws IOException if reading the response failed
+	 */
+	private void readStatus() throws RtException, IOException {
+		this.statusRead = true;
+
+		String statusLine = this.reader.readLine();
+
+		if(statusLine == null) {
+			throw new RtException("Empty response received");
+		}
+
+		Matcher m = RtRestResponseParser.STATUS_PATTERN.matcher(statusLine);
+
+		if(!m.matches()) {
+			throw new RtException("Invalid status line received: " + statusLine);
+		}
+
+		RtRestStatus status = RtRestStatus.getFromStatusNumber(m.group(2));
+
+		if(status == RtRestStatus.STATUS_401) {
+			throw new RtAuthenticationException("Session was rejected by RT, login required");
+		}
+		else if(status != RtRestStatus.STATUS_200) {
+			throw new RtException("Search tickets request failed with RT REST status: " + status);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Default timeouts for the requests a connector sends to its RT installation.
+ * The connect timeout limits the time to open a connection to RT, the read timeout limits the time RT may stay
+ * silent while the response is read. The deadline limits the time of a whole request, including the wait for a
+ * throttle slot or a pooled connection, all retries and the time spent reading the response. Read timeout and
+ * deadline are set per operation class, by default searches and history requests which are used by bulk
+ * operations get much longer budgets than interactive lookups.<br>
+ * A deadline for a single call can be set with RtRestConnector.withDeadline(), it replaces the deadline of the
+ * policy and also covers the parsing of the response. A value of 0 disables the respective timeout.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestTimeoutPolicy {
+	/**
+	 * Policy without any timeouts, requests may wait forever for a stalled RT.
+	 */
+	public static final RtRestTimeoutPolicy NONE = builder()
+			.connectTimeout(0L, TimeUnit.MILLISECONDS)
+			.readTimeout(0L, TimeUnit.MILLISECONDS)
+			.deadline(0L, TimeUnit.MILLISECONDS)
+			.build();
+
+	/**
+	 * Policy with the default values of the builder. This is the default of RtRestConnector.
+	 */
+	public static final RtRestTimeoutPolicy DEFAULT = builder().build();
+
+	private final int connectTimeoutMillis;
+	private final Map<RtRestOperationClass, Integer> readTimeoutMillis;
+	private final Map<RtRestOperationClass, Long> deadlineNanos;
+
+
+	private RtRestTimeoutPolicy(Builder builder) {
+		this.connectTimeoutMillis = builder.connectTimeoutMillis;
+		this.readTimeoutMillis = new EnumMap<>(builder.readTimeoutMillis);
+		this.deadlineNanos = new EnumMap<>(builder.deadlineNanos);
+	}
+
+
+	/**
+	 * Create a builder for a timeout policy. A new builder uses a connect timeout of 10 seconds. Read timeout and
+	 * deadline are 30 and 60 seconds for READ, 60 and 120 seconds for WRITE requests. SEARCH and HISTORY
+	 * requests have a read timeout of 5 minutes and no deadline.
+	 *
+	 * @return A new builder object
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	/**
+	 * @return Connect timeout in milliseconds, 0 if unlimited
+	 */
+	int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+
+	/**
+	 * Get the read timeout of an operation class.
+	 *
+	 * @param operationClass Operation class
+	 * @return Read timeout in milliseconds, 0 if unlimited
+	 */
+	int getReadTimeoutMillis(RtRestOperationClass operationClass) {
+		return readTimeoutMillis.get(operationClass);
+	}
+
+
+	/**
+	 * Get the deadline of a request of an operation class.
+	 *
+	 * @param operationClass Operation class
+	 * @return Deadline in nanoseconds after the request was started, 0 if unlimited
+	 */
+	long getDeadlineNanos(RtRestOperationClass operationClass) {
+		return deadlineNanos.get(operationClass);
+	}
+
+
+	/**
+	 * Builder for RtRestTimeoutPolicy objects.
+	 */
+	public static class Builder {
+		private int connectTimeoutMillis = 10000;
+		private final Map<RtRestOperationClass, Integer> readTimeoutMillis = new EnumMap<>(RtRestOperationClass.class);
+		private final Map<RtRestOperationClass, Long> deadlineNanos = new EnumMap<>(RtRestOperationClass.class);
+
+
+		private Builder() {
+			readTimeoutMillis.put(RtRestOperationClass.READ, 30000);
+			readTimeoutMillis.put(RtRestOperationClass.WRITE, 60000);
+			readTimeoutMillis.put(RtRestOperationClass.SEARCH, 300000);
+			readTimeoutMillis.put(RtRestOperationClass.HISTORY, 300000);
+
+			deadlineNanos.put(RtRestOperationClass.READ, TimeUnit.SECONDS.toNanos(60L));
+			deadlineNanos.put(RtRestOperationClass.WRITE, TimeUnit.SECONDS.toNanos(120L));
+			deadlineNanos.put(RtRestOperationClass.SEARCH, 0L);
+			deadlineNanos.put(RtRestOperationClass.HISTORY, 0L);
+		}
+
+
+		/**
+		 * Set the time to open a connection to RT. Default is 10 seconds.
+		 *
+		 * @param connectTimeout Connect timeout, 0 for no limit
+		 * @param unit Unit of the timeout
+		 * @return This builder
+		 */
+		public Builder connectTimeout(long connectTimeout, TimeUnit unit) {
+			this.connectTimeoutMillis = toMillis(connectTimeout, unit);
+			return this;
+		}
+
+
+		/**
+		 * Set the time RT may stay silent while the response of a request is read, for all operation classes.
+		 *
+		 * @param readTimeout Read timeout, 0 for no limit
+		 * @param unit Unit of the timeout
+		 * @return This builder
+		 */
+		public Builder readTimeout(long readTimeout, TimeUnit unit) {
+			for(RtRestOperationClass operationClass : RtRestOperationClass.values()) {
+				readTimeout(operationClass, readTimeout, unit);
+			}
+
+			return this;
+		}
+
+
+		/**
+		 * Set the time RT may stay silent while the response of a request of an operation class is read.
+		 *
+		 * @param operationClass Operation class
+		 * @param readTimeout Read timeout, 0 for no limit
+		 * @param unit Unit of the timeout
+		 * @return This builder
+		 */
+		public Builder readTimeout(RtRestOperationClass operationClass, long readTimeout, TimeUnit unit) {
+			this.readTimeoutMillis.put(operationClass, toMillis(readTimeout, unit));
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum time of a request including queueing and retries, for all operation classes.
+		 *
+		 * @param deadline Deadline after the start of the request, 0 for no limit
+		 * @param unit Unit of the deadline
+		 * @return This builder
+		 */
+		public Builder deadline(long deadline, TimeUnit unit) {
+			for(RtRestOperationClass operationClass : RtRestOperationClass.values()) {
+				deadline(operationClass, deadline, unit);
+			}
+
+			return this;
+		}
+
+
+		/**
+		 * Set the maximum time of a request of an operation class including queueing and retries.
+		 *
+		 * @param operationClass Operation class
+		 * @param deadline Deadline after the start of the request, 0 for no limit
+		 * @param unit Unit of the deadline
+		 * @return This builder
+		 */
+		public Builder deadline(RtRestOperationClass operationClass, long deadline, TimeUnit unit) {
+			if(deadline < 0L) {
+				throw new IllegalArgumentException("Deadline cannot be negative");
+			}
+
+			this.deadlineNanos.put(operationClass, unit.toNanos(deadline));
+			return this;
+		}
+
+
+		/**
+		 * Create the policy with the current settings of this builder.
+		 *
+		 * @return A new timeout policy
+		 */
+		public RtRestTimeoutPolicy build() {
+			return new RtRestTimeoutPolicy(this);
+		}
+
+
+		private static int toMillis(long timeout, TimeUnit unit) {
+			if(timeout < 0L) {
+				throw new IllegalArgumentException("Timeout cannot be negative");
+			}
+
+			long millis = unit.toMillis(timeout);
+
+			if(millis > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Timeout cannot exceed " + Integer.MAX_VALUE + " ms");
+			}
+
+			// A timeout below one millisecond must not turn into "no limit"
+			return timeout > 0L && millis == 0L ? 1 : (int) millis;
+		}
+	}
+}
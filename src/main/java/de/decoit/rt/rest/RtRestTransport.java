@@ -0,0 +1,49 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Service provider interface for the HTTP stack used to send requests to RT.
+ * The REST/1.0 API only needs a form encoded POST with the session cookie, so a transport only has to send a
+ * RtRestTransportRequest and return the status, the headers and the body stream of the response. Everything else,
+ * like retries, timeouts, deadlines and metrics, is handled by the connector.<br>
+ * The connector uses the pooled Apache HttpClient transport by default, RtRestSpringTransport sends the requests
+ * through a Spring ClientHttpRequestFactory. A transport based on the java.net.http client of Java 11 is provided by
+ * the rt-connector-jdk11 module. A transport is installed with RtRestConnector.Builder.transport() and closed
+ * together with the connector.<br>
+ * Implementations must be thread safe, post() is called by all threads using the connector.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface RtRestTransport extends Closeable {
+	/**
+	 * Send a POST request and wait for the headers of the response.
+	 * The transport must apply the timeouts of the request and register a callback with registerAbort() which
+	 * aborts the request and closes its connection. Responses with an HTTP error status are returned like any
+	 * other response, they must not be raised as exception.
+	 *
+	 * @param request Request to send
+	 * @return Response, the caller reads the body and closes it
+	 *
+	 * @throws IOException if the request could not be sent or no response was received
+	 */
+	RtRestTransportResponse post(RtRestTransportRequest request) throws IOException;
+}
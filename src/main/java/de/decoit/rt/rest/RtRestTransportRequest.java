@@ -0,0 +1,156 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Form encoded POST request passed to a RtRestTransport.
+ * The request carries the headers required by RT, including the session cookie, the encoded form body and the
+ * timeouts the transport must apply. Timeouts of 0 mean that the transport must not limit the respective phase.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public final class RtRestTransportRequest {
+	/**
+	 * Content type of the request body, the form is encoded as UTF-8.
+	 */
+	public static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+	private final URI uri;
+	private final String cookie;
+	private final Map<String, String> headers;
+	private final byte[] body;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final int leaseTimeoutMillis;
+	private final RtRestDeadline.Request deadlineRequest;
+
+
+	/**
+	 * Create a request. It belongs to the request registered with the deadline of the calling thread, if any.
+	 *
+	 * @param uri Expanded URI of the request
+	 * @param cookie Session cookie to send, null if the request has no session
+	 * @param acceptLanguage Value of the Accept-Language header
+	 * @param body Encoded form data
+	 * @param connectTimeoutMillis Time to open a connection
+	 * @param readTimeoutMillis Time RT may stay silent while the response is read
+	 * @param leaseTimeoutMillis Time to wait for a pooled connection
+	 */
+	RtRestTransportRequest(URI uri, String cookie, String acceptLanguage, byte[] body, int connectTimeoutMillis, int readTimeoutMillis, int leaseTimeoutMillis) {
+		LinkedHashMap<String, String> requestHeaders = new LinkedHashMap<>();
+		requestHeaders.put("Accept-Language", acceptLanguage);
+
+		if(cookie != null) {
+			requestHeaders.put("Cookie", cookie);
+		}
+
+		this.uri = uri;
+		this.cookie = cookie;
+		this.headers = Collections.unmodifiableMap(requestHeaders);
+		this.body = body;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.leaseTimeoutMillis = leaseTimeoutMillis;
+		this.deadlineRequest = RtRestDeadline.currentRequest();
+	}
+
+
+	/**
+	 * @return URI of the request, all variables are expanded and encoded
+	 */
+	public URI getUri() {
+		return this.uri;
+	}
+
+
+	/**
+	 * @return Session cookie which is also contained in the headers, null if the request has no session
+	 */
+	public String getCookie() {
+		return this.cookie;
+	}
+
+
+	/**
+	 * Get the headers which must be sent with the request, the Content-Type and Content-Length headers are not
+	 * included.
+	 *
+	 * @return Unmodifiable map of header names to values
+	 */
+	public Map<String, String> getHeaders() {
+		return this.headers;
+	}
+
+
+	/**
+	 * Get the form data of the request. The returned array must not be modified.
+	 *
+	 * @return Form data encoded as CONTENT_TYPE
+	 */
+	public byte[] getBody() {
+		return this.body;
+	}
+
+
+	/**
+	 * @return Time to open a connection in milliseconds, 0 if unlimited
+	 */
+	public int getConnectTimeoutMillis() {
+		return this.connectTimeoutMillis;
+	}
+
+
+	/**
+	 * @return Time RT may stay silent while the response is read in milliseconds, 0 if unlimited
+	 */
+	public int getReadTimeoutMillis() {
+		return this.readTimeoutMillis;
+	}
+
+
+	/**
+	 * @return Time to wait for a pooled connection in milliseconds, 0 if unlimited
+	 */
+	public int getLeaseTimeoutMillis() {
+		return this.leaseTimeoutMillis;
+	}
+
+
+	/**
+	 * Register the callback which aborts this request and closes its connection. It is run when the deadline of the
+	 * call expires or is cancelled before the response was read, immediately if that happened already. The
+	 * callback may be run by another thread than the one waiting for the response.
+	 *
+	 * @param abortAction Callback which aborts the request
+	 */
+	public void registerAbort(final Runnable abortAction) {
+		if(this.deadlineRequest != null) {
+			this.deadlineRequest.setAbortable(new RtRestDeadline.Abortable() {
+				@Override
+				public void abort() {
+					abortAction.run();
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Response returned by a RtRestTransport.
+ * The response is closed by the connector after the body was read. If only a part of the body is needed, abort()
+ * is called before close() to drop the connection instead of reading the rest of the body.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public interface RtRestTransportResponse extends Closeable {
+	/**
+	 * @return HTTP status code of the response
+	 */
+	int getStatusCode();
+
+
+	/**
+	 * @return Reason phrase of the status line, an empty string if the transport does not provide it
+	 */
+	String getStatusText();
+
+
+	/**
+	 * Get the first value of a response header.
+	 *
+	 * @param name Name of the header, case insensitive
+	 * @return Value of the header, null if the response does not contain the header
+	 */
+	String getHeader(String name);
+
+
+	/**
+	 * Get the body of the response. The body is read only once.
+	 *
+	 * @return Stream of the response body, an empty stream if the response has no body
+	 *
+	 * @throws IOException if the body cannot be read
+	 */
+	InputStream getBody() throws IOException;
+
+
+	/**
+	 * Discard the unread rest of the body. The connection of the response must not be reused.
+	 */
+	void abort();
+}
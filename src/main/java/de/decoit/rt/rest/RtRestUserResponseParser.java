@@ -18,11 +18,10 @@ package de.decoit.rt.rest;
 
 import de.decoit.rt.RtException;
 import de.decoit.rt.model.RtUser;
+import de.decoit.rt.model.RtUserField;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 
 
@@ -50,6 +49,19 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the response contains invalid values or lines
 	 */
 	static RtUser parseUser(String response) throws RtException {
+		return parseUser(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Parse a user object from the lines ahead of the cursor. Reading stops behind the next list delimiter or at
+	 * the end of the response.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return User object
+	 * @throws RtException if the response contains invalid values or lines
+	 */
+	static RtUser parseUser(RtRestLineCursor cursor) throws RtException {
 		RtUser user = new RtUser();
 
 		StringBuilder contactInfoSb = new StringBuilder();
@@ -57,13 +69,12 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 		StringBuilder signatureSb = new StringBuilder();
 
 		StringBuilder currentMultilineSb = null;
-		Pattern multilinePattern = Pattern.compile("^\\s+(.*)$");
 
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		while (cursor.hasNext() && !cursor.skipDelimiter()) {
+			String line = cursor.nextLine();
 
-		for (String line : responseParts) {
-			Matcher multilineMatcher = multilinePattern.matcher(line);
+			// Lines of multiline values are indented
+			int indent = leadingWhitespace(line);
 
 			if (line.length() == 0) {
 				// Blank line, ignore
@@ -75,42 +86,10 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 				// Message line, in case of ticket query means something went wrong, raise exception
 				throw new RtException(line.substring(2));
 			}
-			else if (line.startsWith("CF.{")) {
-				// New style custom field line, parse and add to custom fields of the user
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				Pattern cfNamePattern = Pattern.compile("^CF\\.\\{(.+?)\\}$");
-				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
-				if(cfNameMatcher.matches()) {
-					String cfName = cfNameMatcher.group(1);
-
-					user.addCustomField(cfName, lineParts[1]);
-				}
-				else {
-					LOG.warn("Invalid custom field line detected: " + line);
-				}
-			}
-			else if (line.startsWith("CF-")) {
-				// Old style custom field line, parse and add to custom fields of the user
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				Pattern cfNamePattern = Pattern.compile("^CF-(.+?)$");
-				Matcher cfNameMatcher = cfNamePattern.matcher(lineParts[0]);
-				if(cfNameMatcher.matches()) {
-					String cfName = cfNameMatcher.group(1);
-
-					user.addCustomField(cfName, lineParts[1]);
-				}
-				else {
-					LOG.warn("Invalid custom field line detected: " + line);
-				}
-			}
-			else if (multilineMatcher.matches()) {
+			else if (indent > 0) {
 				if(currentMultilineSb != null) {
 					currentMultilineSb.append("\n");
-					currentMultilineSb.append(multilineMatcher.group(1));
+					currentMultilineSb.append(line, indent, line.length());
 				}
 				else {
 					throw new RtException("Unexpected multiline line found");
@@ -121,112 +100,122 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 					currentMultilineSb = null;
 				}
 
-				Pattern idPattern = Pattern.compile("^user/(\\d+)$");
-				Matcher idMatcher;
-
-				String[] lineParts = line.split(":", 2);
-				lineParts[1] = lineParts[1].trim();
-
-				switch(lineParts[0]) {
-					case "id":
-						idMatcher = idPattern.matcher(lineParts[1]);
-
-						if(idMatcher.matches()) {
-							user.setId(Long.parseLong(idMatcher.group(1)));
-						}
-						else {
-							throw new RtException("Invalid user ID pattern: " + lineParts[1]);
-						}
-						break;
-					case "Name":
-						user.setName(lineParts[1]);
-						break;
-					case "EmailAddress":
-						user.setEmailAddress(lineParts[1]);
-						break;
-					case "RealName":
-						user.setRealName(lineParts[1]);
-						break;
-					case "NickName":
-						user.setNickName(lineParts[1]);
-						break;
-					case "Gecos":
-						user.setGecos(lineParts[1]);
-						break;
-					case "Organization":
-						user.setOrganization(lineParts[1]);
-						break;
-					case "Address1":
-						user.setAddress1(lineParts[1]);
-						break;
-					case "Address2":
-						user.setAddress2(lineParts[1]);
-						break;
-					case "City":
-						user.setCity(lineParts[1]);
-						break;
-					case "State":
-						user.setState(lineParts[1]);
-						break;
-					case "Zip":
-						user.setZip(lineParts[1]);
-						break;
-					case "Country":
-						user.setCountry(lineParts[1]);
-						break;
-					case "HomePhone":
-						user.setHomePhone(lineParts[1]);
-						break;
-					case "WorkPhone":
-						user.setWorkPhone(lineParts[1]);
-						break;
-					case "MobilePhone":
-						user.setMobilePhone(lineParts[1]);
-						break;
-					case "PagerPhone":
-						user.setPagerPhone(lineParts[1]);
-						break;
-					case "ContactInfo":
-						currentMultilineSb = contactInfoSb;
-						currentMultilineSb.append(lineParts[1]);
-						break;
-					case "Comments":
-						currentMultilineSb = commentsSb;
-						currentMultilineSb.append(lineParts[1]);
-						break;
-					case "Signature":
-						currentMultilineSb = signatureSb;
-						currentMultilineSb.append(lineParts[1]);
-						break;
-					case "Lang":
-						user.setLang(lineParts[1]);
-						break;
-					case "Privileged":
-						switch (lineParts[1]) {
-							case "0":
-								user.setPrivileged(false);
-								break;
-							case "1":
-								user.setPrivileged(true);
-								break;
-							default:
-								throw new RtException("Invalid user privileged status value: " + lineParts[1]);
-						}
-						break;
-					case "Disabled":
-						switch (lineParts[1]) {
-							case "0":
-								user.setDisabled(false);
-								break;
-							case "1":
-								user.setDisabled(true);
-								break;
-							default:
-								throw new RtException("Invalid user disabled status value: " + lineParts[1]);
-						}
-						break;
-					default:
-						/* Ignore */
+				String key = lineKey(line);
+				String value = lineValue(line);
+
+				if (key.startsWith("CF.{") || key.startsWith("CF-")) {
+					// Custom field line (new style CF.{name} or old style CF-name), parse and add to custom fields of the user
+					String cfName = customFieldName(key);
+
+					if(cfName != null) {
+						user.addCustomField(cfName, value);
+					}
+					else {
+						LOG.warn("Invalid custom field line detected: " + line);
+					}
+				}
+				else {
+					switch(key) {
+						case "id":
+							long id = parseObjectId(value, "user/");
+
+							if(id >= 0) {
+								user.setId(id);
+							}
+							else {
+								throw new RtException("Invalid user ID pattern: " + value);
+							}
+							break;
+						case "Name":
+							user.setName(value);
+							break;
+						case "EmailAddress":
+							user.setEmailAddress(value);
+							break;
+						case "RealName":
+							user.setRealName(value);
+							break;
+						case "NickName":
+							user.setNickName(value);
+							break;
+						case "Gecos":
+							user.setGecos(value);
+							break;
+						case "Organization":
+							user.setOrganization(value);
+							break;
+						case "Address1":
+							user.setAddress1(value);
+							break;
+						case "Address2":
+							user.setAddress2(value);
+							break;
+						case "City":
+							user.setCity(value);
+							break;
+						case "State":
+							user.setState(value);
+							break;
+						case "Zip":
+							user.setZip(value);
+							break;
+						case "Country":
+							user.setCountry(value);
+							break;
+						case "HomePhone":
+							user.setHomePhone(value);
+							break;
+						case "WorkPhone":
+							user.setWorkPhone(value);
+							break;
+						case "MobilePhone":
+							user.setMobilePhone(value);
+							break;
+						case "PagerPhone":
+							user.setPagerPhone(value);
+							break;
+						case "ContactInfo":
+							currentMultilineSb = contactInfoSb;
+							currentMultilineSb.append(value);
+							break;
+						case "Comments":
+							currentMultilineSb = commentsSb;
+							currentMultilineSb.append(value);
+							break;
+						case "Signature":
+							currentMultilineSb = signatureSb;
+							currentMultilineSb.append(value);
+							break;
+						case "Lang":
+							user.setLang(value);
+							break;
+						case "Privileged":
+							switch (value) {
+								case "0":
+									user.setPrivileged(false);
+									break;
+								case "1":
+									user.setPrivileged(true);
+									break;
+								default:
+									throw new RtException("Invalid user privileged status value: " + value);
+							}
+							break;
+						case "Disabled":
+							switch (value) {
+								case "0":
+									user.setDisabled(false);
+									break;
+								case "1":
+									user.setDisabled(true);
+									break;
+								default:
+									throw new RtException("Invalid user disabled status value: " + value);
+							}
+							break;
+						default:
+							/* Ignore */
+					}
 				}
 			}
 		}
@@ -236,6 +225,8 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 		user.setComments(commentsSb.toString());
 		user.setSignature(signatureSb.toString());
 
+		user.markUnchanged();
+
 		return user;
 	}
 
@@ -251,18 +242,29 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 	 * @throws RtException
 	 */
 	static List<RtUser> parseUsers(String response) throws RtException {
+		return parseUsers(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Parse a list of users from the lines ahead of the cursor.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return A list of users
+	 * @throws RtException
+	 */
+	static List<RtUser> parseUsers(RtRestLineCursor cursor) throws RtException {
 		ArrayList<RtUser> userList = new ArrayList<>();
 
-		if(response.contains("No matching results.")) {
+		if(cursor.remainingContains("No matching results.")) {
 			// No results found, return empty list
 			return userList;
 		}
 
-		String[] responseParts = response.split(RtRestResponseParser.LIST_DELIMITER);
-
-		for (String part : responseParts) {
-			userList.add(parseUser(part));
+		do {
+			userList.add(parseUser(cursor));
 		}
+		while (cursor.hasNext());
 
 		return userList;
 	}
@@ -276,16 +278,24 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 	 * @throws RtException if the user update failed
 	 */
 	static boolean parseUserEdited(String response) throws RtException {
-		// Split lines in response string
-		String[] responseParts = response.split("\n");
+		return parseUserEdited(new RtRestLineCursor(response));
+	}
+
+
+	/**
+	 * Read the lines ahead of the cursor to decide if a user update was successful.
+	 *
+	 * @param cursor Cursor over the response text received from the RT REST API
+	 * @return true if the user update was succcessful
+	 * @throws RtException if the user update failed
+	 */
+	static boolean parseUserEdited(RtRestLineCursor cursor) throws RtException {
+		while (cursor.hasNext()) {
+			String line = cursor.nextLine();
 
-		for (String line : responseParts) {
 			// Line with status message, it is the only one that is of interest in this case
 			if (line.startsWith("#")) {
-				Pattern p = Pattern.compile("^# User \\d+? updated\\.$");
-				Matcher m = p.matcher(line);
-
-				if(m.matches()) {
+				if(parseMessageId(line, "# User ", " updated.") >= 0) {
 					return true;
 				}
 			}
@@ -323,6 +333,107 @@ public class RtRestUserResponseParser extends RtRestResponseParser {
 	}
 
 
+	/**
+	 * Build a content string for a user update which contains only the fields changed since the user was
+	 * loaded from RT. Unlike userToString() this does not require the current state of the user.
+	 *
+	 * @param user User object with changed fields
+	 * @return The generated content string, empty if no field was changed
+	 */
+	static String changedFieldsToString(RtUser user) {
+		StringBuilder sb = new StringBuilder();
+
+		for(RtUserField field : user.getChangedFields()) {
+			switch(field) {
+				case EMAIL_ADDRESS:
+					appendField(sb, field, user.getEmailAddress());
+					break;
+				case REAL_NAME:
+					appendField(sb, field, user.getRealName());
+					break;
+				case NICK_NAME:
+					appendField(sb, field, user.getNickName());
+					break;
+				case GECOS:
+					appendField(sb, field, user.getGecos());
+					break;
+				case ORGANIZATION:
+					appendField(sb, field, user.getOrganization());
+					break;
+				case ADDRESS1:
+					appendField(sb, field, user.getAddress1());
+					break;
+				case ADDRESS2:
+					appendField(sb, field, user.getAddress2());
+					break;
+				case CITY:
+					appendField(sb, field, user.getCity());
+					break;
+				case STATE:
+					appendField(sb, field, user.getState());
+					break;
+				case ZIP:
+					appendField(sb, field, user.getZip());
+					break;
+				case COUNTRY:
+					appendField(sb, field, user.getCountry());
+					break;
+				case HOME_PHONE:
+					appendField(sb, field, user.getHomePhone());
+					break;
+				case WORK_PHONE:
+					appendField(sb, field, user.getWorkPhone());
+					break;
+				case MOBILE_PHONE:
+					appendField(sb, field, user.getMobilePhone());
+					break;
+				case PAGER_PHONE:
+					appendField(sb, field, user.getPagerPhone());
+					break;
+				case CONTACT_INFO:
+					appendField(sb, field, user.getContactInfo());
+					break;
+				case COMMENTS:
+					appendField(sb, field, user.getComments());
+					break;
+				case SIGNATURE:
+					appendField(sb, field, user.getSignature());
+					break;
+				case LANG:
+					appendField(sb, field, user.getLang());
+					break;
+				case PRIVILEGED:
+					appendField(sb, field, user.isPrivileged() ? "1" : "0");
+					break;
+				case DISABLED:
+					appendField(sb, field, user.isDisabled() ? "1" : "0");
+					break;
+				case CUSTOM_FIELDS:
+					for(String name : user.getChangedCustomFields()) {
+						sb.append("CF-");
+						sb.append(name);
+						sb.append(": ");
+						sb.append(user.getCustomFields().get(name));
+						sb.append("\n");
+					}
+					break;
+				default:
+					/* Ignore */
+			}
+		}
+
+		return sb.toString();
+	}
+
+
+	private static void appendField(StringBuilder sb, RtUserField field, String value) {
+		sb.append(field.getFieldName());
+		sb.append(": ");
+		sb.append(value);
+		sb.append("\n");
+	}
+
+
 	private static String editUserToString(RtUser user, RtUser oldUser) {
 		StringBuilder sb = new StringBuilder();
 
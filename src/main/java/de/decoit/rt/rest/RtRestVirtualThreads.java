@@ -0,0 +1,98 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Access to the virtual threads of Java 21. The connector is compiled for Java 7, so the methods of the JDK are
+ * looked up by reflection when this class is loaded. On older JVMs isAvailable() returns false.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class RtRestVirtualThreads {
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+	private static final Method BUILDER_NAME = findMethod(findClass("java.lang.Thread$Builder"), "name", String.class, long.class);
+	private static final Method BUILDER_FACTORY = findMethod(findClass("java.lang.Thread$Builder"), "factory");
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+
+	private RtRestVirtualThreads() {
+	}
+
+
+	/**
+	 * @return true if the JVM supports virtual threads
+	 */
+	static boolean isAvailable() {
+		return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+
+	/**
+	 * Create an executor which starts a new virtual thread for every task. The threads are named with the prefix
+	 * followed by a counter.
+	 *
+	 * @param namePrefix Prefix of the thread names
+	 * @return A new executor
+	 * @throws IllegalStateException if the JVM does not support virtual threads
+	 */
+	static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		if(!isAvailable()) {
+			throw new IllegalStateException("Virtual threads are not supported by this JVM, Java 21 or later is required");
+		}
+
+		try {
+			Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+		}
+		catch(IllegalAccessException | InvocationTargetException ex) {
+			throw new IllegalStateException("Creating the virtual thread executor failed", ex);
+		}
+	}
+
+
+	private static Class<?> findClass(String name) {
+		try {
+			return Class.forName(name);
+		}
+		catch(ClassNotFoundException ex) {
+			return null;
+		}
+	}
+
+
+	private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		if(type == null) {
+			return null;
+		}
+
+		try {
+			return type.getMethod(name, parameterTypes);
+		}
+		catch(NoSuchMethodException ex) {
+			return null;
+		}
+	}
+}
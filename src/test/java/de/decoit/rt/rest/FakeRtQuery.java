@@ -0,0 +1,469 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Evaluator for the subset of the RT query language used by FakeRtServer.
+ * Supported are conditions combined with AND, OR and parentheses. A condition compares a field with a quoted or
+ * unquoted value using =, !=, &lt;&gt;, &lt;, &gt;, &lt;=, &gt;=, LIKE or NOT LIKE. Numbers are compared
+ * numerically, date fields as dates in either of the formats used by RT, everything else as case insensitive
+ * text. Watcher fields match if any of the addresses matches.<br>
+ * Records are maps from lower case field names to the values shown by RT.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+final class FakeRtQuery {
+	private static final Set<String> DATE_FIELDS = new HashSet<>(Arrays.asList("created", "starts", "started", "due", "resolved", "told", "lastupdated"));
+	private static final Set<String> LIST_FIELDS = new HashSet<>(Arrays.asList("requestors", "cc", "admincc"));
+
+	private final Node root;
+
+
+	private FakeRtQuery(Node root) {
+		this.root = root;
+	}
+
+
+	/**
+	 * Parse a query string. An empty query matches every record.
+	 *
+	 * @param query Query string
+	 * @return Parsed query
+	 * @throws IllegalArgumentException if the query contains a syntax error
+	 */
+	static FakeRtQuery parse(String query) {
+		List<String> tokens = tokenize(query);
+
+		if(tokens.isEmpty()) {
+			return new FakeRtQuery(null);
+		}
+
+		Parser parser = new Parser(tokens);
+		Node root = parser.parseOr();
+
+		if(parser.position != tokens.size()) {
+			throw new IllegalArgumentException("Unexpected token in query: " + tokens.get(parser.position));
+		}
+
+		return new FakeRtQuery(root);
+	}
+
+
+	/**
+	 * Check if a record matches this query.
+	 *
+	 * @param record Field values of the record
+	 * @return true if the record matches
+	 */
+	boolean matches(Map<String, String> record) {
+		return this.root == null || this.root.matches(record);
+	}
+
+
+	/**
+	 * Create a comparator for records from a RT ordering like "-Created" or "+id".
+	 * Records with equal values are ordered by ID.
+	 *
+	 * @param orderby Field and direction, an empty string orders by ID
+	 * @return Comparator for records
+	 */
+	static Comparator<Map<String, String>> ordering(String orderby) {
+		String field = (orderby != null) ? orderby.trim() : "";
+		boolean descending = false;
+
+		if(field.startsWith("-")) {
+			descending = true;
+			field = field.substring(1);
+		}
+		else if(field.startsWith("+")) {
+			field = field.substring(1);
+		}
+
+		final String key = field.isEmpty() ? "id" : normalizeField(field);
+		final int direction = descending ? -1 : 1;
+
+		return new Comparator<Map<String, String>>() {
+			@Override
+			public int compare(Map<String, String> r1, Map<String, String> r2) {
+				int result = compareValues(key, value(r1, key), value(r2, key));
+
+				if(result == 0) {
+					return compareValues("id", value(r1, "id"), value(r2, "id"));
+				}
+
+				return direction * result;
+			}
+		};
+	}
+
+
+	private static String normalizeField(String field) {
+		String lower = field.toLowerCase();
+
+		switch(lower) {
+			case "requestor":
+			case "requestor.emailaddress":
+				return "requestors";
+			case "cc.emailaddress":
+				return "cc";
+			case "admincc.emailaddress":
+				return "admincc";
+			default:
+				if(lower.startsWith("cf-")) {
+					return "cf.{" + lower.substring(3) + "}";
+				}
+
+				return lower;
+		}
+	}
+
+
+	private static String value(Map<String, String> record, String field) {
+		String value = record.get(field);
+		return (value != null) ? value : "";
+	}
+
+
+	/**
+	 * Compare a value of a record with another value, either from the query or from another record.
+	 *
+	 * @return Comparison result like Comparable.compareTo(), null if the values cannot be compared
+	 */
+	private static Integer compareValuesOrNull(String field, String value, String other) {
+		if(DATE_FIELDS.contains(field)) {
+			Date date = parseDate(value);
+			Date otherDate = parseDate(other);
+
+			if(date == null || otherDate == null) {
+				return null;
+			}
+
+			return date.compareTo(otherDate);
+		}
+
+		Long number = parseNumber(value);
+		Long otherNumber = parseNumber(other);
+
+		if(number != null && otherNumber != null) {
+			return number.compareTo(otherNumber);
+		}
+
+		return value.compareToIgnoreCase(other);
+	}
+
+
+	private static int compareValues(String field, String value, String other) {
+		Integer result = compareValuesOrNull(field, value, other);
+
+		if(result != null) {
+			return result;
+		}
+
+		// Unset dates are ordered first
+		return Boolean.compare(parseDate(value) != null, parseDate(other) != null);
+	}
+
+
+	private static Date parseDate(String value) {
+		Date date = RtRestDateCodec.HISTORY_DATE.parse(value);
+
+		if(date == null) {
+			date = RtRestDateCodec.TICKET_DATE.parse(value);
+		}
+
+		return date;
+	}
+
+
+	private static Long parseNumber(String value) {
+		if(value.isEmpty() || value.length() > 18) {
+			return null;
+		}
+
+		for(int i = 0; i < value.length(); i++) {
+			if(!Character.isDigit(value.charAt(i)) && !(i == 0 && value.charAt(i) == '-' && value.length() > 1)) {
+				return null;
+			}
+		}
+
+		return Long.valueOf(value);
+	}
+
+
+	private static List<String> tokenize(String query) {
+		List<String> tokens = new ArrayList<>();
+		int i = 0;
+
+		while(i < query.length()) {
+			char c = query.charAt(i);
+
+			if(Character.isWhitespace(c)) {
+				i++;
+			}
+			else if(c == '(' || c == ')') {
+				tokens.add(String.valueOf(c));
+				i++;
+			}
+			else if(c == '\'' || c == '"') {
+				int end = query.indexOf(c, i + 1);
+
+				if(end < 0) {
+					throw new IllegalArgumentException("Unterminated string in query: " + query);
+				}
+
+				// Quoted tokens are marked with a leading quote to distinguish them from keywords
+				tokens.add("'" + query.substring(i + 1, end));
+				i = end + 1;
+			}
+			else if(c == '=' || c == '!' || c == '<' || c == '>') {
+				int start = i;
+
+				while(i < query.length() && "=!<>".indexOf(query.charAt(i)) >= 0) {
+					i++;
+				}
+
+				tokens.add(query.substring(start, i));
+			}
+			else {
+				int start = i;
+
+				while(i < query.length() && !Character.isWhitespace(query.charAt(i)) && "()'\"=!<>".indexOf(query.charAt(i)) < 0) {
+					i++;
+				}
+
+				tokens.add(query.substring(start, i));
+			}
+		}
+
+		return tokens;
+	}
+
+
+	private static String unquote(String token) {
+		return token.startsWith("'") ? token.substring(1) : token;
+	}
+
+
+	/**
+	 * Recursive descent parser for the token list
+	 */
+	private static class Parser {
+		private final List<String> tokens;
+		private int position = 0;
+
+
+		Parser(List<String> tokens) {
+			this.tokens = tokens;
+		}
+
+
+		Node parseOr() {
+			Node left = parseAnd();
+
+			while(peekKeyword("OR")) {
+				this.position++;
+				left = new Junction(left, parseAnd(), false);
+			}
+
+			return left;
+		}
+
+
+		Node parseAnd() {
+			Node left = parseFactor();
+
+			while(peekKeyword("AND")) {
+				this.position++;
+				left = new Junction(left, parseFactor(), true);
+			}
+
+			return left;
+		}
+
+
+		Node parseFactor() {
+			if("(".equals(peek())) {
+				this.position++;
+				Node node = parseOr();
+				expect(")");
+
+				return node;
+			}
+
+			String field = normalizeField(unquote(next()));
+			String operator = next().toUpperCase();
+
+			if(operator.equals("NOT")) {
+				operator = "NOT " + next().toUpperCase();
+			}
+
+			return new Condition(field, operator, unquote(next()));
+		}
+
+
+		private boolean peekKeyword(String keyword) {
+			String token = peek();
+			return token != null && token.equalsIgnoreCase(keyword);
+		}
+
+
+		private String peek() {
+			return (this.position < this.tokens.size()) ? this.tokens.get(this.position) : null;
+		}
+
+
+		private String next() {
+			String token = peek();
+
+			if(token == null) {
+				throw new IllegalArgumentException("Unexpected end of query");
+			}
+
+			this.position++;
+			return token;
+		}
+
+
+		private void expect(String token) {
+			if(!token.equals(next())) {
+				throw new IllegalArgumentException("Expected " + token + " in query");
+			}
+		}
+	}
+
+
+	private static interface Node {
+		boolean matches(Map<String, String> record);
+	}
+
+
+	private static class Junction implements Node {
+		private final Node left;
+		private final Node right;
+		private final boolean and;
+
+
+		Junction(Node left, Node right, boolean and) {
+			this.left = left;
+			this.right = right;
+			this.and = and;
+		}
+
+
+		@Override
+		public boolean matches(Map<String, String> record) {
+			if(this.and) {
+				return this.left.matches(record) && this.right.matches(record);
+			}
+			else {
+				return this.left.matches(record) || this.right.matches(record);
+			}
+		}
+	}
+
+
+	private static class Condition implements Node {
+		private final String field;
+		private final String operator;
+		private final String value;
+
+
+		Condition(String field, String operator, String value) {
+			this.field = field;
+			this.operator = operator;
+			this.value = value;
+
+			switch(operator) {
+				case "=":
+				case "!=":
+				case "<>":
+				case "<":
+				case ">":
+				case "<=":
+				case ">=":
+				case "LIKE":
+				case "NOT LIKE":
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported operator in query: " + operator);
+			}
+		}
+
+
+		@Override
+		public boolean matches(Map<String, String> record) {
+			String recordValue = value(record, this.field);
+
+			if(LIST_FIELDS.contains(this.field)) {
+				boolean negated = this.operator.equals("!=") || this.operator.equals("<>") || this.operator.equals("NOT LIKE");
+				String positive = negated ? (this.operator.equals("NOT LIKE") ? "LIKE" : "=") : this.operator;
+
+				for(String element : recordValue.split(",")) {
+					if(matchesValue(element.trim(), positive)) {
+						return !negated;
+					}
+				}
+
+				return negated;
+			}
+
+			return matchesValue(recordValue, this.operator);
+		}
+
+
+		private boolean matchesValue(String recordValue, String op) {
+			if(op.equals("LIKE")) {
+				return recordValue.toLowerCase().contains(this.value.toLowerCase());
+			}
+			else if(op.equals("NOT LIKE")) {
+				return !recordValue.toLowerCase().contains(this.value.toLowerCase());
+			}
+
+			Integer result = compareValuesOrNull(this.field, recordValue, this.value);
+
+			if(result == null) {
+				return op.equals("!=") || op.equals("<>");
+			}
+
+			switch(op) {
+				case "=":
+					return result == 0;
+				case "!=":
+				case "<>":
+					return result != 0;
+				case "<":
+					return result < 0;
+				case ">":
+					return result > 0;
+				case "<=":
+					return result <= 0;
+				default:
+					return result >= 0;
+			}
+		}
+	}
+}
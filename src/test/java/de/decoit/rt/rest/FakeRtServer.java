@@ -0,0 +1,1274 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Joiner;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtQueue;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtUser;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * In-process stand-in for the REST/1.0 API of a RT server.
+ * The server listens on a random port of the loopback interface and serves login, logout, ticket
+ * show/edit/new/comment/history, ticket/queue/user search and the queue and user endpoints used by RtRestClient
+ * from an in-memory store. Ticket searches support the subset of the query language implemented by FakeRtQuery.<br>
+ * Like RT, the server answers most errors with HTTP status 200 and a RT status line or a "#" message line.
+ * Sessions are handed out as cookies and can be rotated or expired, and latency, HTTP errors and rejected sessions
+ * can be injected to test and benchmark pooling, batching and retry behavior end to end.<br>
+ * History items can be read in long format, as short listing of IDs and descriptions or one by one.<br>
+ * The store initially contains the user "root" (password "password") and the queue "General" with ID 1.
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+class FakeRtServer implements Closeable {
+	static final String ROOT_USER = "root";
+	static final String ROOT_PASSWORD = "password";
+	static final String SESSION_COOKIE_NAME = "RT_SID_fake.80";
+
+	private static final String REST_PREFIX = "/REST/1.0/";
+	private static final String STATUS_OK = "RT/4.2.3 200 Ok";
+	private static final String STATUS_BAD_REQUEST = "RT/4.2.3 400 Bad Request";
+	private static final String STATUS_UNAUTHORIZED = "RT/4.2.3 401 Credentials required";
+	private static final String LIST_DELIMITER = "\n--\n\n";
+	private static final String NOT_SET = "Not set";
+	private static final int CONTENT_INDENT = 9;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Object lock = new Object();
+
+	// Store, guarded by lock
+	private final TreeMap<Long, LinkedHashMap<String, String>> tickets = new TreeMap<>();
+	private final TreeMap<Long, List<LinkedHashMap<String, String>>> histories = new TreeMap<>();
+	private final TreeMap<Long, LinkedHashMap<String, String>> queues = new TreeMap<>();
+	private final TreeMap<Long, LinkedHashMap<String, String>> users = new TreeMap<>();
+	private final Map<String, String> passwords = new HashMap<>();
+	private long nextTicketId = 1;
+	private long nextQueueId = 1;
+	private long nextUserId = 1;
+	private long nextTransactionId = 1;
+	private String lastTicketEditContent = null;
+
+	// Sessions and fault injection, guarded by lock
+	private final Map<String, Session> sessions = new HashMap<>();
+	private final Random random = new Random(42L);
+	private int rotateSessionsEvery = 0;
+	private long latencyNanos = 0;
+	private int failNextRequests = 0;
+	private int failNextStatus = 503;
+	private double errorRate = 0.0;
+	private int errorRateStatus = 503;
+	private int rejectNextRequests = 0;
+
+	// Statistics
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger loginCount = new AtomicInteger();
+	private final AtomicInteger concurrentRequests = new AtomicInteger();
+	private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+	private final AtomicLong responseBytes = new AtomicLong();
+
+
+	/**
+	 * Create a server bound to a random port of the loopback interface. It does not accept requests before start()
+	 * was called.
+	 *
+	 * @throws IOException if the server socket could not be created
+	 */
+	FakeRtServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fake-rt-" + this.threadCount.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleExchange(exchange);
+			}
+		});
+
+		RtUser root = new RtUser();
+		root.setName(ROOT_USER);
+		root.setEmailAddress("root@localhost");
+		root.setRealName("Enoch Root");
+		root.setPrivileged(true);
+		addUser(root, ROOT_PASSWORD);
+
+		RtQueue general = new RtQueue();
+		general.setName("General");
+		general.setDescription("The default queue");
+		addQueue(general);
+	}
+
+
+	/**
+	 * Start accepting requests.
+	 */
+	void start() {
+		this.server.start();
+	}
+
+
+	/**
+	 * Stop the server and its worker threads.
+	 */
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+
+	/**
+	 * Get the base URI to be passed to RtRestClient, i.e. "http://127.0.0.1:12345/"
+	 *
+	 * @return Base URI of the server
+	 */
+	String getBaseUri() {
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+	}
+
+
+	/**
+	 * Add a user to the store. If the user ID is 0, the next free ID is assigned.
+	 *
+	 * @param user User to add
+	 * @param password Password used for login
+	 * @return ID of the user
+	 */
+	long addUser(RtUser user, String password) {
+		synchronized(this.lock) {
+			long id = (user.getId() > 0) ? user.getId() : this.nextUserId;
+			this.nextUserId = Math.max(this.nextUserId, id + 1);
+
+			LinkedHashMap<String, String> record = new LinkedHashMap<>();
+			record.put("id", "user/" + id);
+			record.put("Name", user.getName());
+			record.put("Password", "********");
+			record.put("EmailAddress", user.getEmailAddress());
+			record.put("RealName", user.getRealName());
+			record.put("NickName", user.getNickName());
+			record.put("Gecos", user.getGecos());
+			record.put("Organization", user.getOrganization());
+			record.put("Address1", user.getAddress1());
+			record.put("Address2", user.getAddress2());
+			record.put("City", user.getCity());
+			record.put("State", user.getState());
+			record.put("Zip", user.getZip());
+			record.put("Country", user.getCountry());
+			record.put("HomePhone", user.getHomePhone());
+			record.put("WorkPhone", user.getWorkPhone());
+			record.put("MobilePhone", user.getMobilePhone());
+			record.put("PagerPhone", user.getPagerPhone());
+			record.put("ContactInfo", user.getContactInfo());
+			record.put("Comments", user.getComments());
+			record.put("Signature", user.getSignature());
+			record.put("Lang", user.getLang());
+			record.put("Privileged", user.isPrivileged() ? "1" : "0");
+			record.put("Disabled", user.isDisabled() ? "1" : "0");
+			putCustomFields(record, user.getCustomFields());
+
+			this.users.put(id, record);
+			this.passwords.put(user.getName(), password);
+
+			return id;
+		}
+	}
+
+
+	/**
+	 * Add a queue to the store. If the queue ID is 0, the next free ID is assigned.
+	 *
+	 * @param queue Queue to add
+	 * @return ID of the queue
+	 */
+	long addQueue(RtQueue queue) {
+		synchronized(this.lock) {
+			long id = (queue.getId() > 0) ? queue.getId() : this.nextQueueId;
+			this.nextQueueId = Math.max(this.nextQueueId, id + 1);
+
+			LinkedHashMap<String, String> record = new LinkedHashMap<>();
+			record.put("id", "queue/" + id);
+			record.put("Name", queue.getName());
+			record.put("Description", queue.getDescription());
+			record.put("CorrespondAddress", queue.getCorrespondAddress());
+			record.put("CommentAddress", queue.getCommentAddress());
+			record.put("InitialPriority", String.valueOf(queue.getInitialPriority()));
+			record.put("FinalPriority", String.valueOf(queue.getFinalPriority()));
+			record.put("DefaultDueIn", String.valueOf(queue.getDefaultDueIn()));
+			record.put("Disabled", queue.isDisabled() ? "1" : "0");
+			putCustomFields(record, queue.getCustomFields());
+
+			this.queues.put(id, record);
+
+			return id;
+		}
+	}
+
+
+	/**
+	 * Add a ticket to the store. If the ticket ID is 0, the next free ID is assigned. Missing values are filled in
+	 * like RT would do for a new ticket and a "Create" history item containing the ticket text is recorded.
+	 *
+	 * @param ticket Ticket to add
+	 * @return ID of the ticket
+	 */
+	long addTicket(RtTicket ticket) {
+		synchronized(this.lock) {
+			long id = (ticket.getId() > 0) ? ticket.getId() : this.nextTicketId;
+			this.nextTicketId = Math.max(this.nextTicketId, id + 1);
+
+			Joiner commaJoiner = Joiner.on(", ").skipNulls();
+			Date created = (ticket.getCreated() != null) ? ticket.getCreated() : now();
+
+			LinkedHashMap<String, String> record = new LinkedHashMap<>();
+			record.put("id", "ticket/" + id);
+			record.put("Queue", (ticket.getQueue() != null) ? ticket.getQueue() : "General");
+			record.put("Owner", ticket.getOwner().isEmpty() ? "Nobody" : ticket.getOwner());
+			record.put("Creator", ticket.getCreator().isEmpty() ? ROOT_USER : ticket.getCreator());
+			record.put("Subject", ticket.getSubject());
+			record.put("Status", (ticket.getStatus() != null) ? ticket.getStatus().toString() : "new");
+			record.put("Priority", String.valueOf(ticket.getPriority()));
+			record.put("InitialPriority", String.valueOf(ticket.getInitialPriority()));
+			record.put("FinalPriority", String.valueOf(ticket.getFinalPriority()));
+			record.put("Requestors", commaJoiner.join(ticket.getRequestors()));
+			record.put("Cc", commaJoiner.join(ticket.getCc()));
+			record.put("AdminCc", commaJoiner.join(ticket.getAdminCc()));
+			record.put("Created", formatDate(created));
+			record.put("Starts", formatDate(ticket.getStarts()));
+			record.put("Started", formatDate(ticket.getStarted()));
+			record.put("Due", formatDate(ticket.getDue()));
+			record.put("Resolved", formatDate(ticket.getResolved()));
+			record.put("Told", formatDate(ticket.getTold()));
+			record.put("LastUpdated", formatDate((ticket.getLastUpdated() != null) ? ticket.getLastUpdated() : created));
+			record.put("TimeEstimated", formatMinutes(String.valueOf(ticket.getTimeEstimated())));
+			record.put("TimeWorked", formatMinutes(String.valueOf(ticket.getTimeWorked())));
+			record.put("TimeLeft", formatMinutes(String.valueOf(ticket.getTimeLeft())));
+			putCustomFields(record, ticket.getCustomFields());
+
+			this.tickets.put(id, record);
+			this.histories.put(id, new ArrayList<LinkedHashMap<String, String>>());
+
+			String text = (ticket.getText() != null) ? ticket.getText() : "";
+			addHistoryRecord(id, "Create", "", "", "", "Ticket created by " + record.get("Creator"), text, record.get("Creator"), created);
+
+			return id;
+		}
+	}
+
+
+	/**
+	 * Get the current state of a ticket from the store.
+	 *
+	 * @param id Ticket ID
+	 * @return Ticket object, null if the ticket does not exist
+	 * @throws RtException if the stored ticket cannot be parsed
+	 */
+	RtTicket getTicket(long id) throws RtException {
+		String text;
+
+		synchronized(this.lock) {
+			LinkedHashMap<String, String> record = this.tickets.get(id);
+
+			if(record == null) {
+				return null;
+			}
+
+			text = renderRecord(record);
+		}
+
+		return RtRestTicketResponseParser.parseTicket(text);
+	}
+
+
+	/**
+	 * Issue a new session cookie every n authenticated requests of a session. The previous session becomes invalid.
+	 *
+	 * @param requests Number of requests per session, 0 disables rotation
+	 */
+	void rotateSessionsEvery(int requests) {
+		synchronized(this.lock) {
+			this.rotateSessionsEvery = requests;
+		}
+	}
+
+
+	/**
+	 * Invalidate all sessions, following requests must login again.
+	 */
+	void expireSessions() {
+		synchronized(this.lock) {
+			this.sessions.clear();
+		}
+	}
+
+
+	/**
+	 * Delay every response by a fixed time.
+	 *
+	 * @param latency Latency added to every request, 0 disables the delay
+	 * @param unit Unit of the latency
+	 */
+	void setLatency(long latency, TimeUnit unit) {
+		synchronized(this.lock) {
+			this.latencyNanos = unit.toNanos(latency);
+		}
+	}
+
+
+	/**
+	 * Answer the next requests with a HTTP error status instead of processing them.
+	 *
+	 * @param count Number of failing requests
+	 * @param httpStatus HTTP status code of the failed responses, i.e. 503
+	 */
+	void failNextRequests(int count, int httpStatus) {
+		synchronized(this.lock) {
+			this.failNextRequests = count;
+			this.failNextStatus = httpStatus;
+		}
+	}
+
+
+	/**
+	 * Answer a random fraction of the requests with a HTTP error status. The random generator uses a fixed seed.
+	 *
+	 * @param rate Fraction of failing requests between 0.0 and 1.0
+	 * @param httpStatus HTTP status code of the failed responses, i.e. 503
+	 */
+	void setErrorRate(double rate, int httpStatus) {
+		synchronized(this.lock) {
+			this.errorRate = rate;
+			this.errorRateStatus = httpStatus;
+		}
+	}
+
+
+	/**
+	 * Answer the next authenticated requests with RT status 401 as if the session had expired.
+	 * The sessions stay valid.
+	 *
+	 * @param count Number of rejected requests
+	 */
+	void rejectNextRequests(int count) {
+		synchronized(this.lock) {
+			this.rejectNextRequests = count;
+		}
+	}
+
+
+	/**
+	 * @return Number of received requests, including failed ones
+	 */
+	int getRequestCount() {
+		return this.requestCount.get();
+	}
+
+
+	/**
+	 * @return Number of successful logins
+	 */
+	int getLoginCount() {
+		return this.loginCount.get();
+	}
+
+
+	/**
+	 * @return Number of valid sessions
+	 */
+	int getActiveSessionCount() {
+		synchronized(this.lock) {
+			return this.sessions.size();
+		}
+	}
+
+
+	/**
+	 * @return Maximum number of requests processed at the same time
+	 */
+	int getMaxConcurrentRequests() {
+		return this.maxConcurrentRequests.get();
+	}
+
+
+	/**
+	 * @return Content of the last ticket edit request, null if no ticket was edited
+	 */
+	String getLastTicketEditContent() {
+		synchronized(this.lock) {
+			return this.lastTicketEditContent;
+		}
+	}
+
+
+	/**
+	 * @return Number of response body bytes sent
+	 */
+	long getResponseBytes() {
+		return this.responseBytes.get();
+	}
+
+
+	private void handleExchange(HttpExchange exchange) throws IOException {
+		this.requestCount.incrementAndGet();
+		int concurrent = this.concurrentRequests.incrementAndGet();
+
+		try {
+			int max;
+			do {
+				max = this.maxConcurrentRequests.get();
+			} while(concurrent > max && !this.maxConcurrentRequests.compareAndSet(max, concurrent));
+
+			Map<String, String> params = new HashMap<>();
+			decodeParams(exchange.getRequestURI().getRawQuery(), params);
+			decodeParams(new String(readFully(exchange.getRequestBody()), StandardCharsets.ISO_8859_1), params);
+
+			Response response = process(exchange.getRequestURI().getRawPath(), params, exchange.getRequestHeaders().getFirst("Cookie"));
+
+			long latency;
+			synchronized(this.lock) {
+				latency = this.latencyNanos;
+			}
+
+			if(latency > 0) {
+				TimeUnit.NANOSECONDS.sleep(latency);
+			}
+
+			if(response.cookie != null) {
+				exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE_NAME + "=" + response.cookie + "; path=/; HttpOnly");
+			}
+
+			byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+			this.responseBytes.addAndGet(body.length);
+			exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(response.httpStatus, (body.length > 0) ? body.length : -1);
+
+			if(body.length > 0) {
+				try(OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			this.concurrentRequests.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+
+	private Response process(String rawPath, Map<String, String> params, String cookieHeader) {
+		synchronized(this.lock) {
+			if(this.failNextRequests > 0) {
+				this.failNextRequests--;
+				return new Response(this.failNextStatus, null, "");
+			}
+
+			if(this.errorRate > 0.0 && this.random.nextDouble() < this.errorRate) {
+				return new Response(this.errorRateStatus, null, "");
+			}
+
+			// Credentials may be sent with any request, like RT the server then opens a new session
+			String sessionId = readSessionId(cookieHeader);
+			Session session = (sessionId != null) ? this.sessions.get(sessionId) : null;
+
+			if(params.containsKey("user")) {
+				String user = params.get("user");
+				String password = this.passwords.get(user);
+
+				if(password == null || !password.equals(params.get("pass"))) {
+					return new Response(200, null, STATUS_UNAUTHORIZED + "\n\n");
+				}
+
+				sessionId = UUID.randomUUID().toString().replace("-", "");
+				session = new Session(user);
+				this.sessions.put(sessionId, session);
+				this.loginCount.incrementAndGet();
+			}
+			else if(session == null) {
+				return new Response(200, null, STATUS_UNAUTHORIZED + "\n\n");
+			}
+			else if(this.rejectNextRequests > 0) {
+				this.rejectNextRequests--;
+				return new Response(200, null, STATUS_UNAUTHORIZED + "\n\n");
+			}
+
+			session.requests++;
+
+			if(this.rotateSessionsEvery > 0 && session.requests >= this.rotateSessionsEvery) {
+				this.sessions.remove(sessionId);
+				sessionId = UUID.randomUUID().toString().replace("-", "");
+				session.requests = 0;
+				this.sessions.put(sessionId, session);
+			}
+
+			String path = rawPath.startsWith(REST_PREFIX) ? rawPath.substring(REST_PREFIX.length()) : rawPath;
+			String body;
+
+			try {
+				body = dispatch(decode(path), params, session, sessionId);
+			}
+			catch(IllegalArgumentException ex) {
+				body = STATUS_BAD_REQUEST + "\n\n# " + ex.getMessage() + "\n\n";
+			}
+
+			return new Response(200, this.sessions.containsKey(sessionId) ? sessionId : null, body);
+		}
+	}
+
+
+	private String dispatch(String path, Map<String, String> params, Session session, String sessionId) {
+		String[] parts = path.split("/");
+		String content = params.containsKey("content") ? params.get("content") : "";
+
+		if(path.equals("logout")) {
+			this.sessions.remove(sessionId);
+			return STATUS_OK + "\n\n";
+		}
+		else if(path.equals("ticket/new")) {
+			return createTicket(parseContent(content), session);
+		}
+		else if(path.equals("queue/new")) {
+			return createQueue(parseContent(content));
+		}
+		else if(parts.length == 2 && parts[0].equals("search")) {
+			String query = params.containsKey("query") ? params.get("query") : "";
+			String orderby = params.containsKey("orderby") ? params.get("orderby") : "";
+			String format = params.containsKey("format") ? params.get("format") : "s";
+
+			switch(parts[1]) {
+				case "ticket":
+					return searchTickets(query, orderby, format, params.get("fields"));
+				case "queue":
+					return listQueues(query, orderby);
+				case "user":
+					return searchUsers(query, orderby);
+				default:
+					throw new IllegalArgumentException("Unknown object type: " + parts[1]);
+			}
+		}
+		else if(parts.length == 2 && parts[0].equals("user")) {
+			// Login request
+			return STATUS_OK + "\n\n";
+		}
+		else if((parts.length == 3 || parts.length == 5) && parts[0].equals("ticket")) {
+			long id = parseId(parts[1]);
+			LinkedHashMap<String, String> record = this.tickets.get(id);
+
+			if(record == null) {
+				return STATUS_OK + "\n\n# Ticket " + parts[1] + " does not exist.\n\n";
+			}
+
+			if(parts.length == 5) {
+				if(!parts[2].equals("history") || !parts[3].equals("id")) {
+					throw new IllegalArgumentException("Unsupported REST path: " + path);
+				}
+
+				return ticketHistoryItem(id, parseId(parts[4]));
+			}
+
+			switch(parts[2]) {
+				case "show":
+					return STATUS_OK + "\n\n" + renderRecord(selectFields(record, params.get("fields"))) + "\n";
+				case "edit":
+					this.lastTicketEditContent = content;
+					return editTicket(id, record, parseContent(content), session);
+				case "comment":
+					return commentTicket(id, record, parseContent(content), session);
+				case "history":
+					return "l".equals(params.get("format")) ? ticketHistory(id) : ticketHistoryIds(id);
+				default:
+					throw new IllegalArgumentException("Unknown ticket action: " + parts[2]);
+			}
+		}
+		else if(parts.length == 3 && parts[0].equals("queue") && parts[2].equals("show")) {
+			LinkedHashMap<String, String> record = findByIdOrName(this.queues, parts[1]);
+
+			if(record == null) {
+				return STATUS_OK + "\n\n# Queue " + parts[1] + " does not exist.\n\n";
+			}
+
+			return STATUS_OK + "\n\n" + renderRecord(record) + "\n";
+		}
+		else if(parts.length == 3 && parts[0].equals("user")) {
+			LinkedHashMap<String, String> record = findByIdOrName(this.users, parts[1]);
+
+			if(record == null) {
+				return STATUS_OK + "\n\n# No user named " + parts[1] + " exists.\n\n";
+			}
+
+			switch(parts[2]) {
+				case "show":
+					return STATUS_OK + "\n\n" + renderRecord(record) + "\n";
+				case "edit":
+					return editUser(record, parseContent(content));
+				default:
+					throw new IllegalArgumentException("Unknown user action: " + parts[2]);
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported REST path: " + path);
+		}
+	}
+
+
+	private String createTicket(LinkedHashMap<String, String> content, Session session) {
+		String queueName = content.containsKey("Queue") ? content.get("Queue") : "";
+		LinkedHashMap<String, String> queue = findByIdOrName(this.queues, queueName);
+
+		if(queue == null) {
+			return STATUS_OK + "\n\n# Could not create ticket.\n# Queue not set\n\n";
+		}
+
+		RtTicket ticket = new RtTicket();
+		ticket.setQueue(queue.get("Name"));
+		ticket.setCreator(session.user);
+		ticket.setText(content.containsKey("Text") ? content.get("Text") : "");
+
+		long id = addTicket(ticket);
+		LinkedHashMap<String, String> record = this.tickets.get(id);
+
+		for(Entry<String, String> e : content.entrySet()) {
+			String key = normalizeKey(e.getKey());
+
+			if(!key.equals("id") && !key.equals("Text") && !key.equals("Queue") && (record.containsKey(key) || key.startsWith("CF.{"))) {
+				record.put(key, normalizeValue(key, e.getValue()));
+			}
+		}
+
+		return STATUS_OK + "\n\n# Ticket " + id + " created.\n\n";
+	}
+
+
+	private String editTicket(long id, LinkedHashMap<String, String> record, LinkedHashMap<String, String> content, Session session) {
+		for(String key : content.keySet()) {
+			String normalized = normalizeKey(key);
+
+			if(!normalized.equals("id") && !record.containsKey(normalized) && !normalized.startsWith("CF.{")) {
+				return STATUS_BAD_REQUEST + "\n\n# " + key + ": Unknown field.\n\n";
+			}
+		}
+
+		Date now = now();
+
+		for(Entry<String, String> e : content.entrySet()) {
+			String key = normalizeKey(e.getKey());
+
+			if(key.equals("id")) {
+				continue;
+			}
+
+			String oldValue = record.containsKey(key) ? record.get(key) : "";
+			String newValue = normalizeValue(key, e.getValue());
+
+			if(!oldValue.equals(newValue)) {
+				record.put(key, newValue);
+
+				if(!key.startsWith("CF.{")) {
+					String type = key.equals("Status") ? "Status" : "Set";
+					addHistoryRecord(id, type, key, oldValue, newValue, key + " changed from '" + oldValue + "' to '" + newValue + "'", "", session.user, now);
+				}
+			}
+		}
+
+		record.put("LastUpdated", formatDate(now));
+
+		return STATUS_OK + "\n\n# Ticket " + id + " updated.\n\n";
+	}
+
+
+	private String commentTicket(long id, LinkedHashMap<String, String> record, LinkedHashMap<String, String> content, Session session) {
+		String action = content.containsKey("Action") ? content.get("Action").toLowerCase() : "";
+		String type;
+
+		switch(action) {
+			case "comment":
+				type = "Comment";
+				break;
+			case "correspond":
+				type = "Correspond";
+				break;
+			default:
+				return STATUS_BAD_REQUEST + "\n\n# Invalid action: `" + action + "'.\n\n";
+		}
+
+		int timeWorked = content.containsKey("TimeWorked") ? Integer.parseInt(content.get("TimeWorked").trim()) : 0;
+		String text = content.containsKey("Text") ? content.get("Text") : "";
+		Date now = now();
+
+		addHistoryRecord(id, type, "", "", "", type + " added by " + session.user, text, session.user, now);
+
+		if(timeWorked > 0) {
+			int total = RtRestResponseParser.parseMinutes(record.get("TimeWorked")) + timeWorked;
+			record.put("TimeWorked", formatMinutes(String.valueOf(total)));
+		}
+
+		record.put("LastUpdated", formatDate(now));
+
+		return STATUS_OK + "\n\n# Message recorded\n\n";
+	}
+
+
+	private String ticketHistory(long id) {
+		List<LinkedHashMap<String, String>> history = this.histories.get(id);
+		StringBuilder sb = new StringBuilder(STATUS_OK);
+		sb.append("\n\n");
+
+		for(int i = 0; i < history.size(); i++) {
+			LinkedHashMap<String, String> item = history.get(i);
+
+			if(i > 0) {
+				sb.append(LIST_DELIMITER);
+			}
+
+			sb.append("# ").append(i + 1).append("/").append(history.size());
+			sb.append(" (id/").append(item.get("id")).append("/total)\n\n");
+			sb.append(renderHistoryItem(item));
+		}
+
+		sb.append("\n");
+
+		return sb.toString();
+	}
+
+
+	private String ticketHistoryIds(long id) {
+		List<LinkedHashMap<String, String>> history = this.histories.get(id);
+		StringBuilder sb = new StringBuilder(STATUS_OK);
+		sb.append("\n\n# ").append(history.size()).append("/").append(history.size()).append(" (/total)\n\n");
+
+		for(LinkedHashMap<String, String> item : history) {
+			sb.append(item.get("id")).append(": ").append(item.get("Description")).append("\n");
+		}
+
+		sb.append("\n");
+
+		return sb.toString();
+	}
+
+
+	private String ticketHistoryItem(long id, long itemId) {
+		for(LinkedHashMap<String, String> item : this.histories.get(id)) {
+			if(item.get("id").equals(String.valueOf(itemId))) {
+				return STATUS_OK + "\n\n# 1/1 (id/" + itemId + "/total)\n\n" + renderHistoryItem(item) + "\n";
+			}
+		}
+
+		return STATUS_OK + "\n\n# Transaction " + itemId + " is not related to Ticket " + id + "\n\n";
+	}
+
+
+	private String searchTickets(String query, String orderby, String format, String fields) {
+		List<LinkedHashMap<String, String>> matches = search(this.tickets, query, orderby);
+
+		if(matches.isEmpty()) {
+			return STATUS_OK + "\n\nNo matching results.\n\n";
+		}
+
+		StringBuilder sb = new StringBuilder(STATUS_OK);
+		sb.append("\n\n");
+
+		for(int i = 0; i < matches.size(); i++) {
+			LinkedHashMap<String, String> record = matches.get(i);
+
+			switch(format) {
+				case "l":
+					if(i > 0) {
+						sb.append(LIST_DELIMITER);
+					}
+
+					sb.append(renderRecord(selectFields(record, fields)));
+					break;
+				case "i":
+					sb.append(record.get("id")).append("\n");
+					break;
+				default:
+					sb.append(record.get("id").substring("ticket/".length())).append(": ").append(record.get("Subject")).append("\n");
+			}
+		}
+
+		sb.append("\n");
+
+		return sb.toString();
+	}
+
+
+	private String listQueues(String query, String orderby) {
+		List<LinkedHashMap<String, String>> matches = search(this.queues, query, orderby);
+
+		if(matches.isEmpty()) {
+			return STATUS_OK + "\n\nNo matching results.\n\n";
+		}
+
+		StringBuilder sb = new StringBuilder(STATUS_OK);
+		sb.append("\n\n");
+
+		for(LinkedHashMap<String, String> record : matches) {
+			sb.append(record.get("id").substring("queue/".length())).append(": ").append(record.get("Name")).append("\n");
+		}
+
+		sb.append("\n");
+
+		return sb.toString();
+	}
+
+
+	private String createQueue(LinkedHashMap<String, String> content) {
+		String name = content.containsKey("Name") ? content.get("Name") : "";
+
+		if(name.isEmpty() || findByIdOrName(this.queues, name) != null) {
+			return STATUS_OK + "\n\n# Could not create queue.\n\n";
+		}
+
+		RtQueue queue = new RtQueue();
+		queue.setName(name);
+
+		long id = addQueue(queue);
+		LinkedHashMap<String, String> record = this.queues.get(id);
+
+		for(Entry<String, String> e : content.entrySet()) {
+			String key = normalizeKey(e.getKey());
+
+			if(!key.equals("id") && (record.containsKey(key) || key.startsWith("CF.{"))) {
+				record.put(key, e.getValue());
+			}
+		}
+
+		return STATUS_OK + "\n\n# Queue " + id + " created.\n\n";
+	}
+
+
+	private String searchUsers(String query, String orderby) {
+		List<LinkedHashMap<String, String>> matches = search(this.users, query, orderby);
+
+		if(matches.isEmpty()) {
+			return STATUS_OK + "\n\nNo matching results.\n\n";
+		}
+
+		StringBuilder sb = new StringBuilder(STATUS_OK);
+		sb.append("\n\n");
+
+		for(int i = 0; i < matches.size(); i++) {
+			if(i > 0) {
+				sb.append(LIST_DELIMITER);
+			}
+
+			sb.append(renderRecord(matches.get(i)));
+		}
+
+		sb.append("\n");
+
+		return sb.toString();
+	}
+
+
+	private String editUser(LinkedHashMap<String, String> record, LinkedHashMap<String, String> content) {
+		for(Entry<String, String> e : content.entrySet()) {
+			String key = normalizeKey(e.getKey());
+
+			if(key.equals("id") || key.equals("Name")) {
+				continue;
+			}
+			else if(!record.containsKey(key) && !key.startsWith("CF.{")) {
+				return STATUS_BAD_REQUEST + "\n\n# " + e.getKey() + ": Unknown field.\n\n";
+			}
+
+			record.put(key, e.getValue());
+		}
+
+		return STATUS_OK + "\n\n# User " + record.get("id").substring("user/".length()) + " updated.\n\n";
+	}
+
+
+	private List<LinkedHashMap<String, String>> search(TreeMap<Long, LinkedHashMap<String, String>> store, String query, String orderby) {
+		FakeRtQuery parsedQuery = FakeRtQuery.parse(query);
+		List<LinkedHashMap<String, String>> matches = new ArrayList<>();
+		final Map<LinkedHashMap<String, String>, Map<String, String>> searchRecords = new HashMap<>();
+
+		for(LinkedHashMap<String, String> record : store.values()) {
+			Map<String, String> searchRecord = toSearchRecord(record);
+
+			if(parsedQuery.matches(searchRecord)) {
+				matches.add(record);
+				searchRecords.put(record, searchRecord);
+			}
+		}
+
+		final Comparator<Map<String, String>> ordering = FakeRtQuery.ordering(orderby);
+		Collections.sort(matches, new Comparator<LinkedHashMap<String, String>>() {
+			@Override
+			public int compare(LinkedHashMap<String, String> r1, LinkedHashMap<String, String> r2) {
+				return ordering.compare(searchRecords.get(r1), searchRecords.get(r2));
+			}
+		});
+
+		return matches;
+	}
+
+
+	/**
+	 * Convert a record into the representation evaluated by FakeRtQuery: lower case keys and numeric IDs.
+	 */
+	private static Map<String, String> toSearchRecord(LinkedHashMap<String, String> record) {
+		HashMap<String, String> searchRecord = new HashMap<>();
+
+		for(Entry<String, String> e : record.entrySet()) {
+			searchRecord.put(e.getKey().toLowerCase(), e.getValue());
+		}
+
+		String id = record.get("id");
+		searchRecord.put("id", id.substring(id.indexOf('/') + 1));
+
+		return searchRecord;
+	}
+
+
+	private void addHistoryRecord(long ticketId, String type, String field, String oldValue, String newValue, String description, String content, String creator, Date created) {
+		LinkedHashMap<String, String> item = new LinkedHashMap<>();
+		item.put("id", String.valueOf(this.nextTransactionId++));
+		item.put("Ticket", String.valueOf(ticketId));
+		item.put("TimeTaken", "0");
+		item.put("Type", type);
+		item.put("Field", field);
+		item.put("OldValue", oldValue);
+		item.put("NewValue", newValue);
+		item.put("Data", "");
+		item.put("Description", description);
+		item.put("Content", content);
+		item.put("Creator", creator);
+		item.put("Created", RtRestDateCodec.HISTORY_DATE.format(created));
+		item.put("Attachments", "");
+
+		this.histories.get(ticketId).add(item);
+	}
+
+
+	private static String renderHistoryItem(Map<String, String> item) {
+		StringBuilder sb = new StringBuilder();
+		String indent = String.format("%" + CONTENT_INDENT + "s", "");
+
+		for(Entry<String, String> e : item.entrySet()) {
+			sb.append(e.getKey()).append(": ");
+
+			if(e.getKey().equals("Content")) {
+				sb.append(e.getValue().replace("\n", "\n" + indent));
+			}
+			else {
+				sb.append(e.getValue());
+			}
+
+			sb.append("\n");
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Select the fields of a ticket record named in the fields parameter of a show or search request. Like RT, the
+	 * names are compared ignoring case and the ID is always included.
+	 */
+	private static Map<String, String> selectFields(Map<String, String> record, String fields) {
+		if(fields == null) {
+			return record;
+		}
+
+		HashSet<String> names = new HashSet<>();
+		for(String name : fields.split(",")) {
+			names.add(name.trim().toLowerCase(Locale.ENGLISH));
+		}
+
+		LinkedHashMap<String, String> result = new LinkedHashMap<>();
+
+		for(Entry<String, String> e : record.entrySet()) {
+			if(e.getKey().equals("id") || names.contains(e.getKey().toLowerCase(Locale.ENGLISH))) {
+				result.put(e.getKey(), e.getValue());
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Render a record in the format of RT's show responses. Multiline values are continued on indented lines.
+	 */
+	private static String renderRecord(Map<String, String> record) {
+		StringBuilder sb = new StringBuilder();
+
+		for(Entry<String, String> e : record.entrySet()) {
+			String value = (e.getValue() != null) ? e.getValue() : "";
+
+			sb.append(e.getKey()).append(": ");
+			sb.append(value.replace("\n", "\n" + String.format("%" + (e.getKey().length() + 2) + "s", "")));
+			sb.append("\n");
+		}
+
+		return sb.toString();
+	}
+
+
+	private static LinkedHashMap<String, String> findByIdOrName(TreeMap<Long, LinkedHashMap<String, String>> store, String idOrName) {
+		if(!idOrName.isEmpty() && idOrName.matches("\\d+")) {
+			return store.get(Long.valueOf(idOrName));
+		}
+
+		for(LinkedHashMap<String, String> record : store.values()) {
+			if(idOrName.equalsIgnoreCase(record.get("Name"))) {
+				return record;
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Parse the content parameter of a request. Lines starting with a space continue the value of the previous line.
+	 */
+	private static LinkedHashMap<String, String> parseContent(String content) {
+		LinkedHashMap<String, String> result = new LinkedHashMap<>();
+		String lastKey = null;
+
+		for(String line : content.split("\n")) {
+			if(line.startsWith(" ") && lastKey != null) {
+				result.put(lastKey, result.get(lastKey) + "\n" + line.substring(1));
+			}
+			else if(!line.trim().isEmpty()) {
+				int separator = line.indexOf(':');
+
+				if(separator < 0) {
+					throw new IllegalArgumentException("Invalid content line: " + line);
+				}
+
+				lastKey = line.substring(0, separator).trim();
+				result.put(lastKey, line.substring(separator + 1).trim());
+			}
+		}
+
+		return result;
+	}
+
+
+	private static String normalizeKey(String key) {
+		if(key.startsWith("CF-")) {
+			return "CF.{" + key.substring(3) + "}";
+		}
+
+		return key;
+	}
+
+
+	private static String normalizeValue(String key, String value) {
+		switch(key) {
+			case "Created":
+			case "Starts":
+			case "Started":
+			case "Due":
+			case "Resolved":
+			case "Told":
+			case "LastUpdated":
+				return formatDate(RtRestDateCodec.TICKET_DATE.parse(value));
+			case "TimeEstimated":
+			case "TimeWorked":
+			case "TimeLeft":
+				return formatMinutes(value);
+			case "Requestors":
+			case "Cc":
+			case "AdminCc":
+				return Joiner.on(", ").join(value.split("\\s*,\\s*"));
+			default:
+				return value;
+		}
+	}
+
+
+	private static void putCustomFields(Map<String, String> record, Map<String, String> customFields) {
+		if(customFields != null) {
+			for(Entry<String, String> e : customFields.entrySet()) {
+				record.put("CF.{" + e.getKey() + "}", e.getValue());
+			}
+		}
+	}
+
+
+	private static String formatDate(Date date) {
+		return (date != null) ? RtRestDateCodec.TICKET_DATE.format(date) : NOT_SET;
+	}
+
+
+	private static String formatMinutes(String value) {
+		String minutes = value.trim();
+		int end = minutes.indexOf(' ');
+
+		if(end >= 0) {
+			minutes = minutes.substring(0, end);
+		}
+
+		return (minutes.isEmpty() || minutes.equals("0")) ? "0" : minutes + " minutes";
+	}
+
+
+	private static Date now() {
+		return new Date(System.currentTimeMillis() / 1000L * 1000L);
+	}
+
+
+	private static long parseId(String value) {
+		try {
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException ex) {
+			throw new IllegalArgumentException("Invalid object ID: " + value);
+		}
+	}
+
+
+	private static String readSessionId(String cookieHeader) {
+		if(cookieHeader == null) {
+			return null;
+		}
+
+		for(String cookie : cookieHeader.split(";")) {
+			String trimmed = cookie.trim();
+
+			if(trimmed.startsWith(SESSION_COOKIE_NAME + "=")) {
+				return trimmed.substring(SESSION_COOKIE_NAME.length() + 1);
+			}
+		}
+
+		return null;
+	}
+
+
+	private static void decodeParams(String encoded, Map<String, String> params) {
+		if(encoded == null || encoded.isEmpty()) {
+			return;
+		}
+
+		for(String pair : encoded.split("&")) {
+			int separator = pair.indexOf('=');
+
+			if(separator < 0) {
+				params.put(decode(pair), "");
+			}
+			else {
+				params.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+			}
+		}
+	}
+
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		}
+		catch(UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+
+		while((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+
+		return out.toByteArray();
+	}
+
+
+	/**
+	 * State of a session opened by a login
+	 */
+	private static class Session {
+		private final String user;
+		private int requests = 0;
+
+
+		Session(String user) {
+			this.user = user;
+		}
+	}
+
+
+	/**
+	 * Response to be sent by the HTTP handler
+	 */
+	private static class Response {
+		private final int httpStatus;
+		private final String cookie;
+		private final String body;
+
+
+		Response(int httpStatus, String cookie, String body) {
+			this.httpStatus = httpStatus;
+			this.cookie = cookie;
+			this.body = body;
+		}
+	}
+}
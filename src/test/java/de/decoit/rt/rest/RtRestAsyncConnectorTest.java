@@ -0,0 +1,139 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestAsyncConnector class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestAsyncConnectorTest extends TestCase {
+	private ExecutorService executor;
+
+
+	public RtRestAsyncConnectorTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		executor = Executors.newCachedThreadPool();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		executor.shutdownNow();
+	}
+
+
+	/**
+	 * Test that no more than the configured number of requests run at the same time.
+	 */
+	public void testInFlightLimit() throws Exception {
+		System.out.println("Testing in-flight limit");
+
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+
+		RtConnector connector = createConnector(new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				int now = running.incrementAndGet();
+				int max = maxRunning.get();
+				while(now > max && !maxRunning.compareAndSet(max, now)) {
+					max = maxRunning.get();
+				}
+
+				Thread.sleep(10);
+				running.decrementAndGet();
+
+				RtTicket ticket = new RtTicket();
+				ticket.setId((Long) args[1]);
+				return ticket;
+			}
+		});
+
+		RtRestAsyncConnector instance = new RtRestAsyncConnector(connector, executor, 3);
+		List<ListenableFuture<RtTicket>> futures = new ArrayList<>();
+
+		for(long i = 1; i <= 30; i++) {
+			futures.add(instance.getTicket("session", i));
+		}
+
+		for(int i = 0; i < futures.size(); i++) {
+			assertEquals("Ticket ID mismatch", i + 1, futures.get(i).get(5, TimeUnit.SECONDS).getId());
+		}
+
+		assertTrue("In-flight limit exceeded: " + maxRunning.get(), maxRunning.get() <= 3);
+		assertEquals("Requests still in flight", 0, instance.getInFlightCount());
+		assertEquals("Requests still queued", 0, instance.getQueuedCount());
+	}
+
+
+	/**
+	 * Test that a RtException thrown by the connector fails the future.
+	 */
+	public void testFailedRequest() throws Exception {
+		System.out.println("Testing failed request");
+
+		RtConnector connector = createConnector(new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				throw new RtException("Ticket not found");
+			}
+		});
+
+		RtRestAsyncConnector instance = new RtRestAsyncConnector(connector, executor, 1);
+
+		try {
+			instance.getTicket("session", 1L).get(5, TimeUnit.SECONDS);
+
+			fail("Exception not propagated");
+		}
+		catch(ExecutionException ex) {
+			assertTrue("Wrong exception type", ex.getCause() instanceof RtException);
+		}
+	}
+
+
+	private RtConnector createConnector(InvocationHandler handler) {
+		return (RtConnector) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RtConnector.class }, handler);
+	}
+}
@@ -0,0 +1,368 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Ticker;
+import de.decoit.rt.RtCircuitOpenException;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtUser;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestCachingConnector class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestCachingConnectorTest extends TestCase {
+	private ConcurrentHashMap<String, AtomicInteger> calls;
+	private Map<Long, RtTicket> tickets;
+	private List<String> searches;
+	private FakeTicker ticker;
+	private RtConnector connector;
+	private volatile boolean circuitOpen;
+
+
+	public RtRestCachingConnectorTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		calls = new ConcurrentHashMap<>();
+		tickets = new ConcurrentHashMap<>();
+		searches = Collections.synchronizedList(new ArrayList<String>());
+		ticker = new FakeTicker();
+		circuitOpen = false;
+
+		for(long i = 1; i <= 5; i++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setId(i);
+			ticket.setSubject("Ticket " + i);
+			ticket.setLastUpdated(new Date(1400000000000L));
+			tickets.put(i, ticket);
+		}
+
+		connector = (RtConnector) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RtConnector.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				countCall(method.getName());
+
+				if(circuitOpen) {
+					throw new RtCircuitOpenException("Circuit breaker is open");
+				}
+
+				switch(method.getName()) {
+					case "getTicket":
+						return new RtTicket(tickets.get((Long) args[1]));
+					case "getTickets":
+						Map<Long, RtTicket> result = new LinkedHashMap<>();
+						for(Object id : (Collection<?>) args[1]) {
+							RtTicket ticket = tickets.get((Long) id);
+							result.put((Long) id, (ticket != null) ? new RtTicket(ticket) : null);
+						}
+						return result;
+					case "searchTickets":
+						searches.add((String) args[1]);
+						// The stub reports every ticket as changed whose subject was modified
+						RtTicket ticket = tickets.get(1L);
+						if(ticket.getSubject().startsWith("Changed")) {
+							return Arrays.asList(new RtTicket(ticket));
+						}
+						else {
+							return new ArrayList<RtTicket>();
+						}
+					case "commentTicket":
+					case "editTicket":
+					case "editUser":
+						return true;
+					case "getUser":
+						RtUser user = new RtUser();
+						user.setId(22L);
+						user.setName("root");
+						return user;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Test that a cached ticket is returned without a request and that hits and misses are counted.
+	 */
+	public void testTicketHit() throws Exception {
+		System.out.println("Testing ticket cache hit");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector).ticker(ticker).build();
+
+		assertEquals("Subject mismatch", "Ticket 1", instance.getTicket("session", 1L).getSubject());
+		assertEquals("Subject mismatch", "Ticket 1", instance.getTicket("session", 1L).getSubject());
+
+		assertEquals("Wrong number of requests", 1, count("getTicket"));
+		assertEquals("Wrong hit count", 1L, instance.getTicketStats().hitCount());
+		assertEquals("Wrong miss count", 1L, instance.getTicketStats().missCount());
+	}
+
+
+	/**
+	 * Test that changing a returned ticket does not change the cached ticket.
+	 */
+	public void testDefensiveCopies() throws Exception {
+		System.out.println("Testing defensive copies");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector).ticker(ticker).build();
+
+		RtTicket first = instance.getTicket("session", 1L);
+		first.setSubject("Modified");
+		first.getRequestors().add("someone@example.com");
+
+		RtTicket second = instance.getTicket("session", 1L);
+		assertNotSame("Cached instance returned", first, second);
+		assertEquals("Cached ticket was modified", "Ticket 1", second.getSubject());
+		assertTrue("Cached requestors were modified", second.getRequestors().isEmpty());
+
+		RtRestCachingConnector shared = RtRestCachingConnector.builder(connector).ticker(ticker).defensiveCopies(false).build();
+		assertSame("Cached instance not shared", shared.getTicket("session", 1L), shared.getTicket("session", 1L));
+	}
+
+
+	/**
+	 * Test that writes through the connector invalidate the ticket.
+	 */
+	public void testInvalidateOnWrite() throws Exception {
+		System.out.println("Testing invalidation on write");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector).ticker(ticker).build();
+
+		instance.getTicket("session", 1L);
+		instance.commentTicket("session", 1L, new RtTicketHistoryItem());
+		instance.getTicket("session", 1L);
+		assertEquals("Comment did not invalidate", 2, count("getTicket"));
+
+		RtTicket ticket = instance.getTicket("session", 1L);
+		instance.editTicket("session", ticket);
+		instance.getTicket("session", 1L);
+		assertEquals("Edit did not invalidate", 3, count("getTicket"));
+	}
+
+
+	/**
+	 * Test that a ticket is fetched again after its time to live.
+	 */
+	public void testExpiry() throws Exception {
+		System.out.println("Testing expiry");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector).ticker(ticker).ticketTtl(1L, TimeUnit.MINUTES).build();
+
+		instance.getTicket("session", 1L);
+		ticker.advance(59L, TimeUnit.SECONDS);
+		instance.getTicket("session", 1L);
+		assertEquals("Ticket expired too early", 1, count("getTicket"));
+
+		ticker.advance(2L, TimeUnit.SECONDS);
+		instance.getTicket("session", 1L);
+		assertEquals("Ticket did not expire", 2, count("getTicket"));
+	}
+
+
+	/**
+	 * Test that a stale ticket is revalidated by a LastUpdated search instead of being fetched again.
+	 */
+	public void testRevalidation() throws Exception {
+		System.out.println("Testing revalidation");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector)
+				.ticker(ticker)
+				.revalidateTicketsAfter(10L, TimeUnit.SECONDS)
+				.build();
+
+		instance.getTicket("session", 1L);
+		ticker.advance(11L, TimeUnit.SECONDS);
+		assertEquals("Subject mismatch", "Ticket 1", instance.getTicket("session", 1L).getSubject());
+
+		assertEquals("Ticket fetched again", 1, count("getTicket"));
+		assertEquals("Wrong number of revalidations", 1L, instance.getRevalidationCount());
+		assertEquals("Wrong number of unchanged revalidations", 1L, instance.getRevalidationUnchangedCount());
+		assertTrue("Wrong revalidation query: " + searches.get(0), searches.get(0).startsWith("id = 1 AND LastUpdated > '"));
+
+		// The revalidation resets the interval
+		instance.getTicket("session", 1L);
+		assertEquals("Revalidated too early", 1L, instance.getRevalidationCount());
+
+		tickets.get(1L).setSubject("Changed");
+		ticker.advance(11L, TimeUnit.SECONDS);
+		assertEquals("Change not detected", "Changed", instance.getTicket("session", 1L).getSubject());
+		assertEquals("Changed ticket not cached", "Changed", instance.getTicket("session", 1L).getSubject());
+		assertEquals("Ticket fetched again", 1, count("getTicket"));
+	}
+
+
+	/**
+	 * Test that a bulk request only fetches the tickets which are not cached.
+	 */
+	public void testGetTickets() throws Exception {
+		System.out.println("Testing bulk request with cached tickets");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector).ticker(ticker).build();
+
+		instance.getTicket("session", 2L);
+		Map<Long, RtTicket> result = instance.getTickets("session", Arrays.asList(3L, 2L, 99L, 1L));
+
+		assertEquals("Order mismatch", Arrays.asList(3L, 2L, 99L, 1L), new ArrayList<>(result.keySet()));
+		assertNull("Missing ticket not null", result.get(99L));
+		assertEquals("Subject mismatch", "Ticket 2", result.get(2L).getSubject());
+		assertEquals("Wrong number of bulk requests", 1, count("getTickets"));
+
+		instance.getTicket("session", 3L);
+		assertEquals("Bulk result not cached", 1, count("getTicket"));
+	}
+
+
+	/**
+	 * Test that users are cached by name and by ID and that an edit invalidates both.
+	 */
+	public void testUserCache() throws Exception {
+		System.out.println("Testing user cache");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector).ticker(ticker).build();
+
+		RtUser user = instance.getUser("session", "root");
+		instance.getUser("session", 22L);
+		assertEquals("User not cached by ID", 1, count("getUser"));
+
+		instance.editUser("session", user);
+		instance.getUser("session", "root");
+		assertEquals("Edit did not invalidate", 2, count("getUser"));
+		assertEquals("Wrong user hit count", 1L, instance.getUserStats().hitCount());
+	}
+
+
+	/**
+	 * Test that expired entries are served while the circuit of the wrapped connector is open.
+	 */
+	public void testServeStaleWhenCircuitOpen() throws Exception {
+		System.out.println("Testing stale entries while the circuit is open");
+
+		RtRestCachingConnector instance = RtRestCachingConnector.builder(connector)
+				.ticker(ticker)
+				.ticketTtl(1L, TimeUnit.MINUTES)
+				.serveStaleWhenCircuitOpen(10L, TimeUnit.MINUTES)
+				.build();
+
+		instance.getTicket("session", 1L);
+		instance.getTicket("session", 2L);
+		ticker.advance(2L, TimeUnit.MINUTES);
+		circuitOpen = true;
+
+		assertEquals("Stale ticket not served", "Ticket 1", instance.getTicket("session", 1L).getSubject());
+		assertEquals("Stale tickets not served", "Ticket 2", instance.getTickets("session", Arrays.asList(1L, 2L)).get(2L).getSubject());
+		assertEquals("Wrong number of stale entries served", 3L, instance.getStaleServedCount());
+
+		try {
+			instance.getTickets("session", Arrays.asList(1L, 3L));
+			fail("Ticket without stale entry was returned");
+		}
+		catch(RtCircuitOpenException ex) {
+			// expected
+		}
+
+		// Writes remove the stale entries as well
+		circuitOpen = false;
+		instance.commentTicket("session", 1L, new RtTicketHistoryItem());
+		circuitOpen = true;
+
+		try {
+			instance.getTicket("session", 1L);
+			fail("Stale entry of a changed ticket was returned");
+		}
+		catch(RtCircuitOpenException ex) {
+			// expected
+		}
+
+		// Entries older than the maximum staleness are not served
+		ticker.advance(10L, TimeUnit.MINUTES);
+
+		try {
+			instance.getTicket("session", 2L);
+			fail("Entry older than the maximum staleness was returned");
+		}
+		catch(RtCircuitOpenException ex) {
+			// expected
+		}
+
+		// Without the option the exception is passed on
+		RtRestCachingConnector strict = RtRestCachingConnector.builder(connector).ticker(ticker).build();
+
+		try {
+			strict.getUser("session", "root");
+			fail("Circuit open exception not passed on");
+		}
+		catch(RtCircuitOpenException ex) {
+			// expected
+		}
+	}
+
+
+	private int count(String method) {
+		AtomicInteger counter = calls.get(method);
+		return (counter != null) ? counter.get() : 0;
+	}
+
+
+	private void countCall(String method) {
+		calls.putIfAbsent(method, new AtomicInteger(0));
+		calls.get(method).incrementAndGet();
+	}
+
+
+	private static class FakeTicker extends Ticker {
+		private final AtomicLong nanos = new AtomicLong(0L);
+
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+
+		void advance(long time, TimeUnit unit) {
+			nanos.addAndGet(unit.toNanos(time));
+		}
+	}
+}
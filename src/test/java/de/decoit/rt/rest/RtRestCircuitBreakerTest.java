@@ -0,0 +1,270 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Ticker;
+import de.decoit.rt.RtCircuitOpenException;
+import de.decoit.rt.model.RtTicket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+
+/**
+ * This test file contains test cases for the RtRestCircuitBreaker and RtRestCircuitBreakerPolicy classes
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestCircuitBreakerTest extends TestCase {
+	private static final Exception FAILURE = new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+
+	private FakeTicker ticker;
+	private RtRestMetricsRecorder recorder;
+
+
+	public RtRestCircuitBreakerTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		ticker = new FakeTicker();
+		recorder = new RtRestMetricsRecorder();
+	}
+
+
+	public void testOpenOnFailureRate() throws Exception {
+		System.out.println("Testing failureRateThreshold()");
+
+		RtRestCircuitBreaker breaker = createBreaker(RtRestCircuitBreakerPolicy.builder().failureRateThreshold(50.0).slidingWindow(4, 4));
+
+		call(breaker, null, 0L);
+		call(breaker, FAILURE, 0L);
+		call(breaker, null, 0L);
+		assertEquals("Opened before the minimum number of calls", RtRestCircuitState.CLOSED, breaker.getState());
+
+		call(breaker, FAILURE, 0L);
+		assertEquals("Circuit not opened", RtRestCircuitState.OPEN, breaker.getState());
+		assertEquals("Transition not reported", 1L, recorder.getCircuitTransitionCount(RtRestCircuitState.CLOSED, RtRestCircuitState.OPEN));
+
+		try {
+			breaker.acquirePermission();
+			fail("Permission granted while the circuit is open");
+		}
+		catch(RtCircuitOpenException ex) {
+			// expected
+		}
+	}
+
+
+	public void testSlidingWindow() throws Exception {
+		System.out.println("Testing slidingWindow()");
+
+		RtRestCircuitBreaker breaker = createBreaker(RtRestCircuitBreakerPolicy.builder().failureRateThreshold(50.0).slidingWindow(4, 4));
+
+		call(breaker, FAILURE, 0L);
+
+		// The failure leaves the window after four successful calls
+		for(int i = 0; i < 4; i++) {
+			call(breaker, null, 0L);
+		}
+
+		call(breaker, FAILURE, 0L);
+		assertEquals("Failure outside the window counted", RtRestCircuitState.CLOSED, breaker.getState());
+	}
+
+
+	public void testClientErrorsIgnored() throws Exception {
+		System.out.println("Testing client errors");
+
+		RtRestCircuitBreaker breaker = createBreaker(RtRestCircuitBreakerPolicy.builder().slidingWindow(2, 2));
+
+		call(breaker, new HttpClientErrorException(HttpStatus.NOT_FOUND), 0L);
+		call(breaker, new HttpClientErrorException(HttpStatus.NOT_FOUND), 0L);
+		assertEquals("Client errors counted as failures", RtRestCircuitState.CLOSED, breaker.getState());
+	}
+
+
+	public void testOpenOnSlowCallRate() throws Exception {
+		System.out.println("Testing slowCallRateThreshold()");
+
+		RtRestCircuitBreaker breaker = createBreaker(RtRestCircuitBreakerPolicy.builder().slowCallRateThreshold(100.0, 1L, TimeUnit.SECONDS).slidingWindow(2, 2));
+
+		call(breaker, null, TimeUnit.SECONDS.toNanos(2L));
+		call(breaker, null, TimeUnit.MILLISECONDS.toNanos(10L));
+		assertEquals("Opened below the slow call rate", RtRestCircuitState.CLOSED, breaker.getState());
+
+		call(breaker, null, TimeUnit.SECONDS.toNanos(1L));
+		call(breaker, null, TimeUnit.SECONDS.toNanos(1L));
+		assertEquals("Circuit not opened", RtRestCircuitState.OPEN, breaker.getState());
+	}
+
+
+	public void testHalfOpen() throws Exception {
+		System.out.println("Testing half-open state");
+
+		RtRestCircuitBreaker breaker = createBreaker(RtRestCircuitBreakerPolicy.builder()
+				.slidingWindow(2, 2)
+				.waitInOpenState(10L, TimeUnit.SECONDS)
+				.permittedCallsInHalfOpenState(2));
+
+		call(breaker, FAILURE, 0L);
+		call(breaker, FAILURE, 0L);
+		ticker.advance(10L, TimeUnit.SECONDS);
+
+		RtRestCircuitBreaker.Permission first = breaker.acquirePermission();
+		RtRestCircuitBreaker.Permission second = breaker.acquirePermission();
+		assertEquals("Not half-open", RtRestCircuitState.HALF_OPEN, breaker.getState());
+
+		try {
+			breaker.acquirePermission();
+			fail("More trial calls than permitted");
+		}
+		catch(RtCircuitOpenException ex) {
+			// expected
+		}
+
+		// A released permission without a result gives back its trial call
+		second.release();
+		second = breaker.acquirePermission();
+
+		first.record(null, 0L);
+		second.record(null, 0L);
+		assertEquals("Circuit not closed", RtRestCircuitState.CLOSED, breaker.getState());
+		assertEquals("Transition not reported", 1L, recorder.getCircuitTransitionCount(RtRestCircuitState.HALF_OPEN, RtRestCircuitState.CLOSED));
+
+		// A failing trial call opens the circuit again
+		call(breaker, FAILURE, 0L);
+		call(breaker, FAILURE, 0L);
+		ticker.advance(10L, TimeUnit.SECONDS);
+		call(breaker, FAILURE, 0L);
+		call(breaker, null, 0L);
+		assertEquals("Circuit not opened again", RtRestCircuitState.OPEN, breaker.getState());
+		assertEquals("Transition not reported", 1L, recorder.getCircuitTransitionCount(RtRestCircuitState.HALF_OPEN, RtRestCircuitState.OPEN));
+	}
+
+
+	public void testOldResultsIgnored() throws Exception {
+		System.out.println("Testing results of permissions from a previous state");
+
+		RtRestCircuitBreaker breaker = createBreaker(RtRestCircuitBreakerPolicy.builder().slidingWindow(2, 2).permittedCallsInHalfOpenState(1));
+
+		RtRestCircuitBreaker.Permission late = breaker.acquirePermission();
+		call(breaker, FAILURE, 0L);
+		call(breaker, FAILURE, 0L);
+		ticker.advance(30L, TimeUnit.SECONDS);
+
+		RtRestCircuitBreaker.Permission trial = breaker.acquirePermission();
+		late.record(FAILURE, 0L);
+		assertEquals("Result of the closed state counted", RtRestCircuitState.HALF_OPEN, breaker.getState());
+
+		trial.record(null, 0L);
+		assertEquals("Circuit not closed", RtRestCircuitState.CLOSED, breaker.getState());
+	}
+
+
+	public void testConnectorCircuitBreaker() throws Exception {
+		System.out.println("Testing RtRestConnector with circuit breaker policy");
+
+		try(FakeRtServer server = new FakeRtServer()) {
+			RtTicket ticket = new RtTicket();
+			ticket.setSubject("Guarded ticket");
+			long ticketId = server.addTicket(ticket);
+			server.start();
+
+			RtRestCircuitBreakerPolicy policy = RtRestCircuitBreakerPolicy.builder()
+					.failureRateThreshold(100.0)
+					.slidingWindow(2, 2)
+					.waitInOpenState(100L, TimeUnit.MILLISECONDS)
+					.permittedCallsInHalfOpenState(1)
+					.build();
+
+			try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).circuitBreakerPolicy(policy).instrumentation(recorder).build()) {
+				String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+				server.setErrorRate(1.0, 503);
+
+				for(int i = 0; i < 2; i++) {
+					try {
+						connector.getTicket(sessionId, ticketId);
+						fail("Request did not fail");
+					}
+					catch(HttpServerErrorException ex) {
+						// expected
+					}
+				}
+
+				assertEquals("Circuit not opened", RtRestCircuitState.OPEN, connector.getCircuitState());
+
+				int requestsBefore = server.getRequestCount();
+
+				try {
+					connector.getTicket(sessionId, ticketId);
+					fail("Request sent while the circuit is open");
+				}
+				catch(RtCircuitOpenException ex) {
+					// expected
+				}
+
+				assertEquals("Request sent to RT", requestsBefore, server.getRequestCount());
+				assertEquals("Rejection not recorded", 1L, recorder.getCircuitRejectedCount(RtRestEndpoint.TICKET_PROPERTIES));
+
+				server.setErrorRate(0.0, 503);
+				Thread.sleep(150L);
+
+				assertEquals("Wrong ticket", "Guarded ticket", connector.getTicket(sessionId, ticketId).getSubject());
+				assertEquals("Circuit not closed", RtRestCircuitState.CLOSED, connector.getCircuitState());
+				assertEquals("Wrong state recorded", RtRestCircuitState.CLOSED, recorder.getCircuitState());
+				assertTrue("Transitions missing in dump", recorder.dump().contains("OPEN->HALF_OPEN=1"));
+			}
+		}
+	}
+
+
+	private RtRestCircuitBreaker createBreaker(RtRestCircuitBreakerPolicy.Builder builder) {
+		return new RtRestCircuitBreaker(builder.build(), recorder, ticker);
+	}
+
+
+	private void call(RtRestCircuitBreaker breaker, Exception failure, long serverNanos) throws RtCircuitOpenException {
+		RtRestCircuitBreaker.Permission permission = breaker.acquirePermission();
+
+		permission.record(failure, serverNanos);
+		permission.release();
+	}
+
+
+	private static class FakeTicker extends Ticker {
+		private final AtomicLong nanos = new AtomicLong(0L);
+
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+
+		void advance(long time, TimeUnit unit) {
+			nanos.addAndGet(unit.toNanos(time));
+		}
+	}
+}
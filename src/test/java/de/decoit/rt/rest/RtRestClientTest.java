@@ -17,15 +17,19 @@
 package de.decoit.rt.rest;
 
 import com.google.common.base.Joiner;
+import de.decoit.rt.RtAuthenticationException;
 import de.decoit.rt.RtException;
+import de.decoit.rt.RtSessionListener;
 import de.decoit.rt.model.RtQueue;
 import de.decoit.rt.model.RtTicket;
 import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import de.decoit.rt.model.RtTicketField;
 import de.decoit.rt.model.RtUser;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.TestCase;
 
 
@@ -34,402 +38,583 @@ import junit.framework.TestCase;
  * @author Thomas Rix (rix@decoit.de)
  */
 public class RtRestClientTest extends TestCase {
-//	private final String baseUri;
-//	private final String username;
-//	private final String password;
-//	private RtRestClient instance;
-//	private String sessionId;
-//
-//
-//	public RtRestClientTest(String testName) throws IOException {
-//		super(testName);
-//
-//		Properties prop = new Properties();
-//		prop.load(getClass().getClassLoader().getResourceAsStream("rt.properties"));
-//
-//		System.setProperty("javax.net.ssl.trustStore", prop.getProperty("ssl.truststore.file"));
-//		System.setProperty("javax.net.ssl.trustStorePassword", prop.getProperty("ssl.truststore.pass"));
-//
-//		baseUri = prop.getProperty("rt.baseuri");
-//		username = prop.getProperty("rt.username");
-//		password = prop.getProperty("rt.password");
-//	}
-//
-//
-//	@Override
-//	protected void setUp() throws Exception {
-//		super.setUp();
-//
-//		instance = new RtRestClient(baseUri);
-//		sessionId = instance.login(username, password);
-//	}
-//
-//
-//	@Override
-//	protected void tearDown() throws Exception {
-//		super.tearDown();
-//
-//		instance.logout(sessionId);
-//	}
-//
-//
+	private FakeRtServer server;
+	private RtRestClient instance;
+	private String sessionId;
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+		addFixtures(server);
+		server.start();
+
+		instance = new RtRestClient(server.getBaseUri());
+		sessionId = instance.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		instance.logout(sessionId);
+		server.close();
+	}
+
+
 	public void testTicketProperties() {
-//		System.out.println("Testing ticketProperties()");
-//
-//		try {
-//			Joiner commaJoiner = Joiner.on(",").skipNulls();
-//
-//			RtTicket ticket = instance.ticketProperties(sessionId, "ticket/1");
-//
-//			assertEquals("Ticket ID mismatch", 1, ticket.getId());
-//			assertEquals("Queue mismatch", "General", ticket.getQueue());
-//			assertEquals("Owner mismatch", "root", ticket.getOwner());
-//			assertEquals("Creator mismatch", "root", ticket.getCreator());
-//			assertEquals("Subject mismatch", "Testticket 1", ticket.getSubject());
-//			assertEquals("Status mismatch", RtTicketStatus.NEW, ticket.getStatus());
-//			assertEquals("Priority mismatch", 0, ticket.getPriority());
-//			assertEquals("InitialPriority mismatch", 0, ticket.getInitialPriority());
-//			assertEquals("FinalPriority mismatch", 0, ticket.getFinalPriority());
-//			assertEquals("Requestors mismatch", "rix@decoit.de", commaJoiner.join(ticket.getRequestors()));
-//			assertEquals("CC mismatch", "", commaJoiner.join(ticket.getCc()));
-//			assertEquals("AdminCC mismatch", "", commaJoiner.join(ticket.getAdminCc()));
-//			assertEquals("Created mismatch", "Wed Feb 26 15:59:56 2014", RtRestTicketResponseParser.formatDateString(ticket.getCreated()));
-//			assertEquals("Starts mismatch", null, ticket.getStarts());
-//			assertEquals("Started mismatch", null, ticket.getStarted());
-//			assertEquals("Due mismatch", null, ticket.getDue());
-//			assertEquals("Resolved mismatch", null, ticket.getResolved());
-//			assertEquals("Told mismatch", null, ticket.getTold());
-//			assertEquals("LastUpdated mismatch", "Thu Mar 13 12:23:44 2014", RtRestTicketResponseParser.formatDateString(ticket.getLastUpdated()));
-//			assertEquals("TimeEstimated mismatch", 0, ticket.getTimeEstimated());
-//			assertEquals("TimeWorked mismatch", 0, ticket.getTimeWorked());
-//			assertEquals("TimeLeft mismatch", 0, ticket.getTimeLeft());
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
+		System.out.println("Testing ticketProperties()");
+
+		try {
+			Joiner commaJoiner = Joiner.on(",").skipNulls();
+
+			RtTicket ticket = instance.ticketProperties(sessionId, "ticket/1");
+
+			assertEquals("Ticket ID mismatch", 1, ticket.getId());
+			assertEquals("Queue mismatch", "General", ticket.getQueue());
+			assertEquals("Owner mismatch", "root", ticket.getOwner());
+			assertEquals("Creator mismatch", "root", ticket.getCreator());
+			assertEquals("Subject mismatch", "Testticket 1", ticket.getSubject());
+			assertEquals("Status mismatch", RtTicketStatus.NEW, ticket.getStatus());
+			assertEquals("Priority mismatch", 0, ticket.getPriority());
+			assertEquals("InitialPriority mismatch", 0, ticket.getInitialPriority());
+			assertEquals("FinalPriority mismatch", 0, ticket.getFinalPriority());
+			assertEquals("Requestors mismatch", "rix@decoit.de", commaJoiner.join(ticket.getRequestors()));
+			assertEquals("CC mismatch", "", commaJoiner.join(ticket.getCc()));
+			assertEquals("AdminCC mismatch", "", commaJoiner.join(ticket.getAdminCc()));
+			assertEquals("Created mismatch", "Wed Feb 26 15:59:56 2014", RtRestTicketResponseParser.formatDateString(ticket.getCreated()));
+			assertEquals("Starts mismatch", null, ticket.getStarts());
+			assertEquals("Started mismatch", null, ticket.getStarted());
+			assertEquals("Due mismatch", null, ticket.getDue());
+			assertEquals("Resolved mismatch", null, ticket.getResolved());
+			assertEquals("Told mismatch", null, ticket.getTold());
+			assertEquals("LastUpdated mismatch", "Thu Mar 13 12:23:44 2014", RtRestTicketResponseParser.formatDateString(ticket.getLastUpdated()));
+			assertEquals("TimeEstimated mismatch", 0, ticket.getTimeEstimated());
+			assertEquals("TimeWorked mismatch", 0, ticket.getTimeWorked());
+			assertEquals("TimeLeft mismatch", 0, ticket.getTimeLeft());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testTicketPropertiesAbsentId() {
+		System.out.println("Testing ticketProperties() with absent ticket ID");
+
+		try {
+			RtTicket ticket = instance.ticketProperties(sessionId, "ticket/0");
+
+			fail("Absent ticket ID not detected: " + ticket.getId());
+		}
+		catch(RtException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+	}
+
+
+	public void testSearchTickets() {
+		System.out.println("Testing searchTickets()");
+
+		try {
+			List<RtTicket> list = instance.searchTickets(sessionId, "Queue='General' AND id < 3", "-id");
+
+			assertEquals("Wrong list size", 2, list.size());
+			assertEquals("First list item ticket ID mismatch", 2, list.get(0).getId());
+			assertEquals("Second list item ticket ID mismatch", 1, list.get(1).getId());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testTicketPropertiesFields() {
+		System.out.println("Testing ticketProperties() with field selection");
+
+		try {
+			EnumSet<RtTicketField> fields = EnumSet.of(RtTicketField.SUBJECT, RtTicketField.LAST_UPDATED);
+
+			long bytesBefore = server.getResponseBytes();
+			instance.ticketProperties(sessionId, "ticket/1");
+			long fullBytes = server.getResponseBytes() - bytesBefore;
+
+			bytesBefore = server.getResponseBytes();
+			RtTicket ticket = instance.ticketProperties(sessionId, "ticket/1", fields);
+			long selectedBytes = server.getResponseBytes() - bytesBefore;
+
+			assertEquals("Ticket ID mismatch", 1, ticket.getId());
+			assertEquals("Subject mismatch", "Testticket 1", ticket.getSubject());
+			assertEquals("LastUpdated mismatch", "Thu Mar 13 12:23:44 2014", RtRestTicketResponseParser.formatDateString(ticket.getLastUpdated()));
+			assertNull("Queue was loaded", ticket.getQueue());
+			assertEquals("Loaded fields mismatch", fields, ticket.getLoadedFields());
+			assertTrue("Response not smaller: " + selectedBytes + " of " + fullBytes, selectedBytes * 2 < fullBytes);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testSearchTicketsFields() {
+		System.out.println("Testing searchTickets() with field selection");
+
+		try {
+			EnumSet<RtTicketField> fields = EnumSet.of(RtTicketField.STATUS);
+			List<RtTicket> list = instance.searchTickets(sessionId, "Queue='General' AND id < 3", "-id", fields);
+
+			assertEquals("Wrong list size", 2, list.size());
+			assertEquals("First list item ticket ID mismatch", 2, list.get(0).getId());
+			assertEquals("First list item status mismatch", RtTicketStatus.NEW, list.get(0).getStatus());
+			assertNull("First list item queue was loaded", list.get(0).getQueue());
+			assertEquals("Second list item loaded fields mismatch", fields, list.get(1).getLoadedFields());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testFieldsParameter() {
+		System.out.println("Testing fieldsParameter()");
+
+		assertEquals("Fields parameter mismatch", "id,Subject,LastUpdated", RtRestClient.fieldsParameter(EnumSet.of(RtTicketField.SUBJECT, RtTicketField.TEXT, RtTicketField.LAST_UPDATED)));
+		assertEquals("Fields parameter for empty selection mismatch", "id", RtRestClient.fieldsParameter(EnumSet.noneOf(RtTicketField.class)));
+		assertNull("Custom fields not requested with all fields", RtRestClient.fieldsParameter(EnumSet.of(RtTicketField.STATUS, RtTicketField.CUSTOM_FIELDS)));
+	}
+
+
+	public void testCreateTicket() {
+		System.out.println("Testing createTicket()");
+
+		String ticketString = "id: ticket/new\n" +
+				"Queue: General\n" +
+				"Requestors: root\n" +
+				"Subject: createTicket-Test " + System.currentTimeMillis() + "\n" +
+				"Starts: Wed Mar 10 08:00:00 2014\n" +
+				"Text: Dies ist\n" +
+				" ein multiline\n" +
+				" Text!\n" +
+				"CF.{Risk}: 10\n" +
+				"CF.{Incident}: 101";
+
+		try {
+			long newId = instance.createTicket(sessionId, ticketString);
+
+			assertTrue("New ID less or equal 0", newId > 0);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testEditTicket() {
+		System.out.println("Testing editTicket()");
+
+		String newSubject = "editTicket-Test " + System.currentTimeMillis();
+
+		String ticketString = "Subject: " + newSubject + "\n" +
+				"Status: " + RtTicketStatus.NEW.toString();
+
+		try {
+			boolean result = instance.editTicket(sessionId, "ticket/6", ticketString);
+
+			assertEquals("Ticket edit failed", true, result);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testWriteTicketHistoryItemComment() {
+		System.out.println("Testing writeTicketHistoryItem() with action comment");
+
+		String itemString = "id: 18\n" +
+				"Action: comment\n" +
+				"Text: Multiline Kommentartext\n" +
+				" " + System.currentTimeMillis() + "ms";
+
+		try {
+			boolean result = instance.writeTicketHistoryItem(sessionId, "ticket/18", itemString);
+
+			assertEquals("Ticket commenting failed", true, result);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testWriteTicketHistoryItemCorrespond() {
+		System.out.println("Testing writeTicketHistoryItem() with action correspond");
+
+		String itemString = "id: 18\n" +
+				"Action: correspond\n" +
+				"Text: Multiline Antworttext\n" +
+				" " + System.currentTimeMillis() + "ms";
+
+		try {
+			boolean result = instance.writeTicketHistoryItem(sessionId, "ticket/18", itemString);
+
+			assertEquals("Ticket commenting failed", true, result);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testWriteTicketHistoryItemInvalidAction() {
+		System.out.println("Testing writeTicketHistoryItem() with action correspond");
+
+		String itemString = "id: 18\n" +
+				"Action: set\n" +
+				"Text: Multiline Antworttext\n" +
+				" " + System.currentTimeMillis() + "ms";
+
+		try {
+			boolean result = instance.writeTicketHistoryItem(sessionId, "ticket/18", itemString);
+
+			fail("Invalid action not detected");
+		}
+		catch(RtException ex) {
+			/* Ignore, this should happen here */
+		}
+	}
+
+
+	public void testQueueProperties() {
+		System.out.println("Testing queueProperties() with existing queue ID");
+
+		try {
+			RtQueue queue = instance.queueProperties(sessionId, "queue/3");
+
+			assertEquals("Queue ID mismatch", 3, queue.getId());
+			assertEquals("Queue name mismatch", "Connector queueProperties testing", queue.getName());
+			assertEquals("Queue description mismatch", "Queue for testing the RT connector, DO NOT CHANGE!", queue.getDescription());
+			assertEquals("Queue correspond address mismatch", "", queue.getCorrespondAddress());
+			assertEquals("Queue comment address mismatch", "", queue.getCommentAddress());
+			assertEquals("Queue initial priority mismatch", 0, queue.getInitialPriority());
+			assertEquals("Queue final priority mismatch", 10, queue.getFinalPriority());
+			assertEquals("Queue default due in mismatch", 5, queue.getDefaultDueIn());
+			assertEquals("Queue disabled mismatch", false, queue.isDisabled());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testQueuePropertiesAbsentId() {
+		System.out.println("Testing queueProperties() with absent queue ID");
+
+		try {
+			RtQueue queue = instance.queueProperties(sessionId, "queue/0");
+
+			fail("Absent queue ID not detected: " + queue.getId());
+		}
+		catch(RtException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+	}
+
+
+	public void testListQueues() {
+		System.out.println("Testing listQueues()");
+
+		try {
+			Map<Long, String> queueMap = instance.listQueues(sessionId);
+
+			assertTrue("Queue map empty", queueMap.size() > 0);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testCreateQueue() {
+		System.out.println("Testing createQueue()");
+
+		String queueString = "id: queue/new\n" +
+			"Name: createQueue-Test " + System.currentTimeMillis() + "\n" +
+			"Description: Created during createQueue() test of the RT REST connector\n" +
+			"CorrespondAddress: \n" +
+			"CommentAddress: \n" +
+			"InitialPriority: 0\n" +
+			"FinalPriority: 5\n" +
+			"DefaultDueIn: 10\n" +
+			"Disabled: 0";
+
+		try {
+			long newId = instance.createQueue(sessionId, queueString);
+
+			assertTrue("New ID less or equal 0", newId > 0);
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testUserProperties() {
+		System.out.println("Testing userProperties() with username");
+
+		try {
+			RtUser result = instance.userProperties(sessionId, "user/Testbenutzer");
+
+			assertEquals("User ID mismatch", 100, result.getId());
+			assertEquals("User name mismatch", "Testbenutzer", result.getName());
+			assertEquals("User email mismatch", "test@decoit.de", result.getEmailAddress());
+			assertEquals("User real name mismatch", "Test User", result.getRealName());
+			assertEquals("User nick name mismatch", "Testy", result.getNickName());
+			assertEquals("User gecos mismatch", "testy", result.getGecos());
+			assertEquals("User organization mismatch", "DECOIT GmbH", result.getOrganization());
+			assertEquals("User address 1 mismatch", "Fahrenheitstraße 9", result.getAddress1());
+			assertEquals("User address 2 mismatch", "Blubb?", result.getAddress2());
+			assertEquals("User city mismatch", "Bremen", result.getCity());
+			assertEquals("User state mismatch", "HB", result.getState());
+			assertEquals("User zip mismatch", "12345", result.getZip());
+			assertEquals("User country mismatch", "Deutschland", result.getCountry());
+			assertEquals("User home phone mismatch", "123", result.getHomePhone());
+			assertEquals("User work phone mismatch", "456", result.getWorkPhone());
+			assertEquals("User mobile phone mismatch", "789", result.getMobilePhone());
+			assertEquals("User pager phone mismatch", "0123", result.getPagerPhone());
+			assertEquals("User contact info mismatch", "Dies\nist\neine\nZusatzinfo", result.getContactInfo());
+			assertEquals("User comments mismatch", "Dies ist ein\nKommentar", result.getComments());
+			assertEquals("User signature mismatch", "Dies ist eine\nSignatur", result.getSignature());
+			assertEquals("User lang mismatch", "de", result.getLang());
+			assertEquals("User privileged mismatch", true, result.isPrivileged());
+			assertEquals("User disabled mismatch", false, result.isDisabled());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testUserPropertiesAbsentUsername() {
+		System.out.println("Testing userProperties() with absent username");
+
+		try {
+			RtUser result = instance.userProperties(sessionId, "user/Testbenutzer0815");
+
+			fail("Absent username not detected");
+		}
+		catch(RtException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+	}
+
+
+	public void testUserPropertiesById() {
+		System.out.println("Testing userProperties() with user ID");
+
+		try {
+			RtUser result = instance.userProperties(sessionId, "user/100");
+
+			assertEquals("User ID mismatch", 100, result.getId());
+			assertEquals("User name mismatch", "Testbenutzer", result.getName());
+			assertEquals("User email mismatch", "test@decoit.de", result.getEmailAddress());
+			assertEquals("User real name mismatch", "Test User", result.getRealName());
+			assertEquals("User nick name mismatch", "Testy", result.getNickName());
+			assertEquals("User gecos mismatch", "testy", result.getGecos());
+			assertEquals("User organization mismatch", "DECOIT GmbH", result.getOrganization());
+			assertEquals("User address 1 mismatch", "Fahrenheitstraße 9", result.getAddress1());
+			assertEquals("User address 2 mismatch", "Blubb?", result.getAddress2());
+			assertEquals("User city mismatch", "Bremen", result.getCity());
+			assertEquals("User state mismatch", "HB", result.getState());
+			assertEquals("User zip mismatch", "12345", result.getZip());
+			assertEquals("User country mismatch", "Deutschland", result.getCountry());
+			assertEquals("User home phone mismatch", "123", result.getHomePhone());
+			assertEquals("User work phone mismatch", "456", result.getWorkPhone());
+			assertEquals("User mobile phone mismatch", "789", result.getMobilePhone());
+			assertEquals("User pager phone mismatch", "0123", result.getPagerPhone());
+			assertEquals("User contact info mismatch", "Dies\nist\neine\nZusatzinfo", result.getContactInfo());
+			assertEquals("User comments mismatch", "Dies ist ein\nKommentar", result.getComments());
+			assertEquals("User signature mismatch", "Dies ist eine\nSignatur", result.getSignature());
+			assertEquals("User lang mismatch", "de", result.getLang());
+			assertEquals("User privileged mismatch", true, result.isPrivileged());
+			assertEquals("User disabled mismatch", false, result.isDisabled());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Test of login method, of class RtRestClient.
+	 */
+	public void testLogin() {
+		System.out.println("Testing login()");
+
+		try {
+			String sId = instance.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+
+			assertNotNull("Login failed", sId);
+		}
+		catch (RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Test of logout method, of class RtRestClient.
+	 */
+	public void testLogout() {
+		System.out.println("Testing logout()");
+
+		try {
+			String sId = instance.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			instance.logout(sId);
+		}
+		catch (RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testLoginInvalidCredentials() {
+		System.out.println("Testing login() with invalid credentials");
+
+		try {
+			instance.login(FakeRtServer.ROOT_USER, "wrong");
+
+			fail("Invalid credentials not detected");
+		}
+		catch(RtAuthenticationException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testRejectedSession() {
+		System.out.println("Testing rejected session");
+
+		server.rejectNextRequests(1);
+
+		try {
+			instance.ticketProperties(sessionId, "ticket/1");
+
+			fail("Rejected session not detected");
+		}
+		catch(RtAuthenticationException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testSessionRotation() {
+		System.out.println("Testing session rotation");
+
+		final AtomicInteger rotations = new AtomicInteger();
+		instance.addSessionListener(new RtSessionListener() {
+			@Override
+			public void sessionRotated(String oldSessionId, String newSessionId) {
+				rotations.incrementAndGet();
+				sessionId = newSessionId;
+			}
+		});
+
+		server.rotateSessionsEvery(2);
+
+		try {
+			for(int i = 0; i < 4; i++) {
+				instance.ticketProperties(sessionId, "ticket/1");
+			}
+
+			assertEquals("Wrong number of rotations", 2, rotations.get());
+			assertEquals("Wrong number of sessions", 1, server.getActiveSessionCount());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	public void testEditTicketUpdatesStore() {
+		System.out.println("Testing editTicket() result in the server store");
+
+		try {
+			instance.editTicket(sessionId, "ticket/6", "Subject: Changed subject\nStatus: open\nCF.{Risk}: 5");
+
+			RtTicket ticket = server.getTicket(6);
+
+			assertEquals("Subject mismatch", "Changed subject", ticket.getSubject());
+			assertEquals("Status mismatch", RtTicketStatus.OPEN, ticket.getStatus());
+			assertEquals("Custom field mismatch", "5", ticket.getCustomFields().get("Risk"));
+			assertEquals("History size mismatch", 3, instance.getTicketHistory(sessionId, "ticket/6").size());
+		}
+		catch(RtException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	private static void addFixtures(FakeRtServer server) {
+		RtTicket ticket = new RtTicket();
+		ticket.setId(1);
+		ticket.setQueue("General");
+		ticket.setOwner("root");
+		ticket.setSubject("Testticket 1");
+		ticket.setRequestors(Arrays.asList("rix@decoit.de"));
+		ticket.setCreated(RtRestDateCodec.TICKET_DATE.parse("Wed Feb 26 15:59:56 2014"));
+		ticket.setLastUpdated(RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:23:44 2014"));
+		server.addTicket(ticket);
+
+		for(long id : new long[] { 2, 6, 18 }) {
+			ticket = new RtTicket();
+			ticket.setId(id);
+			ticket.setQueue("General");
+			ticket.setSubject("Testticket " + id);
+			ticket.setRequestors(Arrays.asList("root"));
+			server.addTicket(ticket);
+		}
+
+		RtQueue queue = new RtQueue();
+		queue.setId(3);
+		queue.setName("Connector queueProperties testing");
+		queue.setDescription("Queue for testing the RT connector, DO NOT CHANGE!");
+		queue.setFinalPriority(10);
+		queue.setDefaultDueIn(5);
+		server.addQueue(queue);
+
+		RtUser user = new RtUser();
+		user.setId(100);
+		user.setName("Testbenutzer");
+		user.setEmailAddress("test@decoit.de");
+		user.setRealName("Test User");
+		user.setNickName("Testy");
+		user.setGecos("testy");
+		user.setOrganization("DECOIT GmbH");
+		user.setAddress1("Fahrenheitstraße 9");
+		user.setAddress2("Blubb?");
+		user.setCity("Bremen");
+		user.setState("HB");
+		user.setZip("12345");
+		user.setCountry("Deutschland");
+		user.setHomePhone("123");
+		user.setWorkPhone("456");
+		user.setMobilePhone("789");
+		user.setPagerPhone("0123");
+		user.setContactInfo("Dies\nist\neine\nZusatzinfo");
+		user.setComments("Dies ist ein\nKommentar");
+		user.setSignature("Dies ist eine\nSignatur");
+		user.setLang("de");
+		user.setPrivileged(true);
+		server.addUser(user, "secret");
 	}
-//
-//
-//	public void testTicketPropertiesAbsentId() {
-//		System.out.println("Testing ticketProperties() with absent ticket ID");
-//
-//		try {
-//			RtTicket ticket = instance.ticketProperties(sessionId, "ticket/0");
-//
-//			fail("Absent ticket ID not detected: " + ticket.getId());
-//		}
-//		catch(RtException ex) {
-//			/* Ignore, this is what should happen here! */
-//		}
-//	}
-//
-//
-//	public void testSearchTickets() {
-//		System.out.println("Testing searchTickets()");
-//
-//		try {
-//			List<RtTicket> list = instance.searchTickets(sessionId, "Queue='General' AND id < 3", "-id");
-//
-//			assertEquals("Wrong list size", 2, list.size());
-//			assertEquals("First list item ticket ID mismatch", 2, list.get(0).getId());
-//			assertEquals("Second list item ticket ID mismatch", 1, list.get(1).getId());
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testCreateTicket() {
-//		System.out.println("Testing createTicket()");
-//
-//		String ticketString = "id: ticket/new\n" +
-//				"Queue: General\n" +
-//				"Requestors: root\n" +
-//				"Subject: createTicket-Test " + System.currentTimeMillis() + "\n" +
-//				"Starts: Wed Mar 10 08:00:00 2014\n" +
-//				"Text: Dies ist\n" +
-//				" ein multiline\n" +
-//				" Text!\n" +
-//				"CF.{Risk}: 10\n" +
-//				"CF.{Incident}: 101";
-//
-//		try {
-//			long newId = instance.createTicket(sessionId, ticketString);
-//
-//			assertTrue("New ID less or equal 0", newId > 0);
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testEditTicket() {
-//		System.out.println("Testing editTicket()");
-//
-//		String newSubject = "editTicket-Test " + System.currentTimeMillis();
-//
-//		String ticketString = "Subject: " + newSubject + "\n" +
-//				"Status: " + RtTicketStatus.NEW.toString();
-//
-//		try {
-//			boolean result = instance.editTicket(sessionId, "ticket/6", ticketString);
-//
-//			assertEquals("Ticket edit failed", true, result);
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testWriteTicketHistoryItemComment() {
-//		System.out.println("Testing writeTicketHistoryItem() with action comment");
-//
-//		String itemString = "id: 18\n" +
-//				"Action: comment\n" +
-//				"Text: Multiline Kommentartext\n" +
-//				" " + System.currentTimeMillis() + "ms";
-//
-//		try {
-//			boolean result = instance.writeTicketHistoryItem(sessionId, "ticket/18", itemString);
-//
-//			assertEquals("Ticket commenting failed", true, result);
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testWriteTicketHistoryItemCorrespond() {
-//		System.out.println("Testing writeTicketHistoryItem() with action correspond");
-//
-//		String itemString = "id: 18\n" +
-//				"Action: correspond\n" +
-//				"Text: Multiline Antworttext\n" +
-//				" " + System.currentTimeMillis() + "ms";
-//
-//		try {
-//			boolean result = instance.writeTicketHistoryItem(sessionId, "ticket/18", itemString);
-//
-//			assertEquals("Ticket commenting failed", true, result);
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testWriteTicketHistoryItemInvalidAction() {
-//		System.out.println("Testing writeTicketHistoryItem() with action correspond");
-//
-//		String itemString = "id: 18\n" +
-//				"Action: set\n" +
-//				"Text: Multiline Antworttext\n" +
-//				" " + System.currentTimeMillis() + "ms";
-//
-//		try {
-//			boolean result = instance.writeTicketHistoryItem(sessionId, "ticket/18", itemString);
-//
-//			fail("Invalid action not detected");
-//		}
-//		catch(RtException ex) {
-//			/* Ignore, this should happen here */
-//		}
-//	}
-//
-//
-//	public void testQueueProperties() {
-//		System.out.println("Testing queueProperties() with existing queue ID");
-//
-//		try {
-//			RtQueue queue = instance.queueProperties(sessionId, "queue/3");
-//
-//			assertEquals("Queue ID mismatch", 3, queue.getId());
-//			assertEquals("Queue name mismatch", "Connector queueProperties testing", queue.getName());
-//			assertEquals("Queue description mismatch", "Queue for testing the RT connector, DO NOT CHANGE!", queue.getDescription());
-//			assertEquals("Queue correspond address mismatch", "", queue.getCorrespondAddress());
-//			assertEquals("Queue comment address mismatch", "", queue.getCommentAddress());
-//			assertEquals("Queue initial priority mismatch", 0, queue.getInitialPriority());
-//			assertEquals("Queue final priority mismatch", 10, queue.getFinalPriority());
-//			assertEquals("Queue default due in mismatch", 5, queue.getDefaultDueIn());
-//			assertEquals("Queue disabled mismatch", false, queue.isDisabled());
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testQueuePropertiesAbsentId() {
-//		System.out.println("Testing queueProperties() with absent queue ID");
-//
-//		try {
-//			RtQueue queue = instance.queueProperties(sessionId, "queue/0");
-//
-//			fail("Absent queue ID not detected: " + queue.getId());
-//		}
-//		catch(RtException ex) {
-//			/* Ignore, this is what should happen here! */
-//		}
-//	}
-//
-//
-//	public void testListQueues() {
-//		System.out.println("Testing listQueues()");
-//
-//		try {
-//			Map<Long, String> queueMap = instance.listQueues(sessionId);
-//
-//			assertTrue("Queue map empty", queueMap.size() > 0);
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testCreateQueue() {
-//		System.out.println("Testing createQueue()");
-//
-//		String queueString = "id: queue/new\n" +
-//			"Name: createQueue-Test " + System.currentTimeMillis() + "\n" +
-//			"Description: Created during createQueue() test of the RT REST connector\n" +
-//			"CorrespondAddress: \n" +
-//			"CommentAddress: \n" +
-//			"InitialPriority: 0\n" +
-//			"FinalPriority: 5\n" +
-//			"DefaultDueIn: 10\n" +
-//			"Disabled: 0";
-//
-//		try {
-//			long newId = instance.createQueue(sessionId, queueString);
-//
-//			assertTrue("New ID less or equal 0", newId > 0);
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testUserProperties() {
-//		System.out.println("Testing userProperties() with username");
-//
-//		try {
-//			RtUser result = instance.userProperties(sessionId, "Testbenutzer");
-//
-//			assertEquals("User ID mismatch", 100, result.getId());
-//			assertEquals("User name mismatch", "Testbenutzer", result.getName());
-//			assertEquals("User email mismatch", "test@decoit.de", result.getEmailAddress());
-//			assertEquals("User real name mismatch", "Test User", result.getRealName());
-//			assertEquals("User nick name mismatch", "Testy", result.getNickName());
-//			assertEquals("User gecos mismatch", "testy", result.getGecos());
-//			assertEquals("User organization mismatch", "DECOIT GmbH", result.getOrganization());
-//			assertEquals("User address 1 mismatch", "Fahrenheitstraße 9", result.getAddress1());
-//			assertEquals("User address 2 mismatch", "Blubb?", result.getAddress2());
-//			assertEquals("User city mismatch", "Bremen", result.getCity());
-//			assertEquals("User state mismatch", "HB", result.getState());
-//			assertEquals("User zip mismatch", "12345", result.getZip());
-//			assertEquals("User country mismatch", "Deutschland", result.getCountry());
-//			assertEquals("User home phone mismatch", "123", result.getHomePhone());
-//			assertEquals("User work phone mismatch", "456", result.getWorkPhone());
-//			assertEquals("User mobile phone mismatch", "789", result.getMobilePhone());
-//			assertEquals("User pager phone mismatch", "0123", result.getPagerPhone());
-//			assertEquals("User contact info mismatch", "Dies\nist\neine\nZusatzinfo", result.getContactInfo());
-//			assertEquals("User comments mismatch", "Dies ist ein\nKommentar", result.getComments());
-//			assertEquals("User signature mismatch", "Dies ist eine\nSignatur", result.getSignature());
-//			assertEquals("User lang mismatch", "de", result.getLang());
-//			assertEquals("User privileged mismatch", true, result.isPrivileged());
-//			assertEquals("User disabled mismatch", false, result.isDisabled());
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	public void testUserPropertiesAbsentUsername() {
-//		System.out.println("Testing userProperties() with absent username");
-//
-//		try {
-//			RtUser result = instance.userProperties(sessionId, "Testbenutzer0815");
-//
-//			fail("Absent username not detected");
-//		}
-//		catch(RtException ex) {
-//			/* Ignore, this is what should happen here! */
-//		}
-//	}
-//
-//
-//	public void testUserPropertiesById() {
-//		System.out.println("Testing userProperties() with user ID");
-//
-//		try {
-//			RtUser result = instance.userProperties(sessionId, 100L);
-//
-//			assertEquals("User ID mismatch", 100, result.getId());
-//			assertEquals("User name mismatch", "Testbenutzer", result.getName());
-//			assertEquals("User email mismatch", "test@decoit.de", result.getEmailAddress());
-//			assertEquals("User real name mismatch", "Test User", result.getRealName());
-//			assertEquals("User nick name mismatch", "Testy", result.getNickName());
-//			assertEquals("User gecos mismatch", "testy", result.getGecos());
-//			assertEquals("User organization mismatch", "DECOIT GmbH", result.getOrganization());
-//			assertEquals("User address 1 mismatch", "Fahrenheitstraße 9", result.getAddress1());
-//			assertEquals("User address 2 mismatch", "Blubb?", result.getAddress2());
-//			assertEquals("User city mismatch", "Bremen", result.getCity());
-//			assertEquals("User state mismatch", "HB", result.getState());
-//			assertEquals("User zip mismatch", "12345", result.getZip());
-//			assertEquals("User country mismatch", "Deutschland", result.getCountry());
-//			assertEquals("User home phone mismatch", "123", result.getHomePhone());
-//			assertEquals("User work phone mismatch", "456", result.getWorkPhone());
-//			assertEquals("User mobile phone mismatch", "789", result.getMobilePhone());
-//			assertEquals("User pager phone mismatch", "0123", result.getPagerPhone());
-//			assertEquals("User contact info mismatch", "Dies\nist\neine\nZusatzinfo", result.getContactInfo());
-//			assertEquals("User comments mismatch", "Dies ist ein\nKommentar", result.getComments());
-//			assertEquals("User signature mismatch", "Dies ist eine\nSignatur", result.getSignature());
-//			assertEquals("User lang mismatch", "de", result.getLang());
-//			assertEquals("User privileged mismatch", true, result.isPrivileged());
-//			assertEquals("User disabled mismatch", false, result.isDisabled());
-//		}
-//		catch(RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	/**
-//	 * Test of login method, of class RtRestClient.
-//	 */
-//	public void testLogin() {
-//		System.out.println("Testing login()");
-//
-//		try {
-//			String sId = instance.login(username, password);
-//
-//			assertNotNull("Login failed", sId);
-//		}
-//		catch (RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
-//
-//
-//	/**
-//	 * Test of logout method, of class RtRestClient.
-//	 */
-//	public void testLogout() {
-//		System.out.println("Testing logout()");
-//
-//		try {
-//			String sId = instance.login(username, password);
-//			instance.logout(sId);
-//		}
-//		catch (RtException ex) {
-//			fail(ex.getMessage());
-//		}
-//	}
 }
@@ -0,0 +1,355 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtConflictException;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicket.RtTicketStatus;
+import de.decoit.rt.model.RtTicketField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.springframework.web.client.HttpServerErrorException;
+
+
+/**
+ * This test file contains test cases for the RtRestConnector class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestConnectorTest extends TestCase {
+	private FakeRtServer server;
+	private RtRestConnector connector;
+	private String sessionId;
+
+
+	public RtRestConnectorTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		for(long id = 1; id <= 3; id++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setId(id);
+			ticket.setQueue("General");
+			ticket.setSubject("Testticket " + id);
+			ticket.setRequestors(Arrays.asList("rix@decoit.de"));
+			ticket.addCustomField("Risk", "10");
+			server.addTicket(ticket);
+		}
+
+		server.start();
+
+		connector = RtRestConnector.builder(server.getBaseUri()).build();
+		sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		connector.close();
+		server.close();
+	}
+
+
+	public void testGetTickets() throws RtException {
+		System.out.println("Testing getTickets()");
+
+		int requestsBefore = server.getRequestCount();
+		Map<Long, RtTicket> tickets = connector.getTickets(sessionId, Arrays.asList(3L, 1L, 99L, 3L, 2L));
+
+		assertEquals("Duplicate IDs not removed", Arrays.asList(3L, 1L, 99L, 2L), new ArrayList<>(tickets.keySet()));
+		assertEquals("Ticket 3 mismatch", "Testticket 3", tickets.get(3L).getSubject());
+		assertEquals("Ticket 1 mismatch", "Testticket 1", tickets.get(1L).getSubject());
+		assertEquals("Ticket 2 mismatch", "Testticket 2", tickets.get(2L).getSubject());
+		assertTrue("Missing ticket not mapped", tickets.containsKey(99L));
+		assertNull("Missing ticket not mapped to null", tickets.get(99L));
+		assertEquals("IDs not requested with a single query", 1, server.getRequestCount() - requestsBefore);
+	}
+
+
+	public void testGetTicketsChunkedSerial() throws Exception {
+		System.out.println("Testing getTickets() with several chunks in the calling thread");
+
+		checkChunkedGetTickets(RtRestConnector.builder(server.getBaseUri()).bulkChunkSize(4).bulkParallelism(1).build());
+	}
+
+
+	public void testGetTicketsChunkedParallel() throws Exception {
+		System.out.println("Testing getTickets() with several chunks in parallel");
+
+		checkChunkedGetTickets(RtRestConnector.builder(server.getBaseUri()).bulkChunkSize(4).bulkParallelism(3).build());
+	}
+
+
+	public void testGetTicketsChunkFailed() throws Exception {
+		System.out.println("Testing getTickets() with a failing chunk");
+
+		addTickets(4, 10);
+		List<Long> ids = new ArrayList<>();
+		for(long id = 1; id <= 10; id++) {
+			ids.add(id);
+		}
+
+		for(int parallelism : new int[] { 1, 3 }) {
+			RtRestConnector chunked = RtRestConnector.builder(server.getBaseUri()).bulkChunkSize(4).bulkParallelism(parallelism).retryPolicy(RtRestRetryPolicy.NONE).build();
+
+			try {
+				String chunkedSessionId = chunked.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+
+				// RT rejects the session for one of the chunks
+				server.rejectNextRequests(1);
+
+				try {
+					chunked.getTickets(chunkedSessionId, ids);
+					fail("Failed chunk not detected with parallelism " + parallelism);
+				}
+				catch(RtAuthenticationException ex) {
+					/* Ignore, this is what should happen here! */
+				}
+
+				// HTTP errors of a chunk are passed on unchanged
+				server.failNextRequests(1, 503);
+
+				try {
+					chunked.getTickets(chunkedSessionId, ids);
+					fail("Failed chunk not detected with parallelism " + parallelism);
+				}
+				catch(HttpServerErrorException ex) {
+					assertEquals("HTTP status mismatch", 503, ex.getStatusCode().value());
+				}
+			}
+			finally {
+				chunked.close();
+			}
+		}
+	}
+
+
+	public void testGetTicketFields() throws RtException {
+		System.out.println("Testing getTicket() with field selection");
+
+		EnumSet<RtTicketField> fields = EnumSet.of(RtTicketField.SUBJECT, RtTicketField.CUSTOM_FIELDS);
+		RtTicket ticket = connector.getTicket(sessionId, 2, fields);
+
+		assertEquals("Ticket ID mismatch", 2, ticket.getId());
+		assertEquals("Subject mismatch", "Testticket 2", ticket.getSubject());
+		assertEquals("Custom field mismatch", "10", ticket.getCustomFields().get("Risk"));
+		assertNull("Queue was loaded", ticket.getQueue());
+		assertEquals("Loaded fields mismatch", fields, ticket.getLoadedFields());
+
+		try {
+			connector.getTicket(sessionId, 2, null);
+			fail("Missing fields not detected");
+		}
+		catch(IllegalArgumentException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+	}
+
+
+	public void testSearchTicketsFields() throws RtException {
+		System.out.println("Testing searchTickets() with field selection");
+
+		List<RtTicket> tickets = connector.searchTickets(sessionId, "Queue = 'General'", "+id", EnumSet.of(RtTicketField.STATUS));
+
+		assertEquals("Wrong list size", 3, tickets.size());
+
+		for(RtTicket ticket : tickets) {
+			assertEquals("Status mismatch", RtTicketStatus.NEW, ticket.getStatus());
+			assertEquals("Subject was loaded", "", ticket.getSubject());
+			assertTrue("Ticket not partially loaded", ticket.isPartiallyLoaded());
+		}
+	}
+
+
+	public void testEditChangedFields() throws Exception {
+		System.out.println("Testing editTicket() in mode CHANGED_FIELDS");
+
+		RtRestConnector changedFields = RtRestConnector.builder(server.getBaseUri()).editMode(RtRestEditMode.CHANGED_FIELDS).build();
+
+		try {
+			String changedSessionId = changedFields.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			RtTicket ticket = changedFields.getTicket(changedSessionId, 1);
+			ticket.setSubject("Changed subject");
+			ticket.addCustomField("Risk", "20");
+
+			int requestsBefore = server.getRequestCount();
+			assertTrue("Edit failed", changedFields.editTicket(changedSessionId, ticket));
+
+			assertEquals("Edit content mismatch", "Subject: Changed subject\nCF.{Risk}: 20\n", server.getLastTicketEditContent());
+			assertEquals("Current state fetched", 1, server.getRequestCount() - requestsBefore);
+			assertEquals("Queue was changed", "General", server.getTicket(1).getQueue());
+
+			// Nothing changed since the last edit, no request is sent
+			requestsBefore = server.getRequestCount();
+			assertTrue("Edit failed", changedFields.editTicket(changedSessionId, ticket));
+			assertEquals("Unchanged ticket sent", 0, server.getRequestCount() - requestsBefore);
+		}
+		finally {
+			changedFields.close();
+		}
+	}
+
+
+	public void testEditCompareAndSetConflict() throws Exception {
+		System.out.println("Testing editTicket() in mode COMPARE_AND_SET with a concurrent edit");
+
+		long id = addOldTicket();
+		RtRestConnector compareAndSet = RtRestConnector.builder(server.getBaseUri()).editMode(RtRestEditMode.COMPARE_AND_SET).build();
+
+		try {
+			String casSessionId = compareAndSet.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			RtTicket ticket = compareAndSet.getTicket(casSessionId, id);
+
+			// Another client edits the ticket after it was loaded
+			RtTicket other = connector.getTicket(sessionId, id);
+			other.setSubject("Concurrent subject");
+			assertTrue("Concurrent edit failed", connector.editTicket(sessionId, other));
+
+			ticket.setSubject("Stale subject");
+
+			try {
+				compareAndSet.editTicket(casSessionId, ticket);
+				fail("Concurrent edit not detected");
+			}
+			catch(RtConflictException ex) {
+				/* Ignore, this is what should happen here! */
+			}
+
+			assertEquals("Concurrent edit was overwritten", "Concurrent subject", server.getTicket(id).getSubject());
+		}
+		finally {
+			compareAndSet.close();
+		}
+	}
+
+
+	public void testEditCompareAndSetTwice() throws Exception {
+		System.out.println("Testing editTicket() in mode COMPARE_AND_SET twice without reloading");
+
+		long id = addOldTicket();
+		RtRestConnector compareAndSet = RtRestConnector.builder(server.getBaseUri()).editMode(RtRestEditMode.COMPARE_AND_SET).build();
+
+		try {
+			String casSessionId = compareAndSet.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			RtTicket ticket = compareAndSet.getTicket(casSessionId, id);
+
+			ticket.setStatus(RtTicketStatus.OPEN);
+			assertTrue("First edit failed", compareAndSet.editTicket(casSessionId, ticket));
+			assertEquals("LastUpdated not refreshed", server.getTicket(id).getLastUpdated(), ticket.getLastUpdated());
+
+			ticket.setSubject("Second edit");
+			assertTrue("Second edit failed", compareAndSet.editTicket(casSessionId, ticket));
+
+			RtTicket stored = server.getTicket(id);
+			assertEquals("Status mismatch", RtTicketStatus.OPEN, stored.getStatus());
+			assertEquals("Subject mismatch", "Second edit", stored.getSubject());
+		}
+		finally {
+			compareAndSet.close();
+		}
+	}
+
+
+	public void testEditPartialTicket() throws RtException {
+		System.out.println("Testing editTicket() with a partially loaded ticket");
+
+		RtTicket ticket = connector.getTicket(sessionId, 1, EnumSet.of(RtTicketField.STATUS));
+		ticket.setStatus(RtTicketStatus.OPEN);
+
+		assertTrue("Edit failed", connector.editTicket(sessionId, ticket));
+		assertTrue("Fields still changed", ticket.getChangedFields().isEmpty());
+
+		// Fields which were not loaded must keep their values in RT
+		RtTicket stored = server.getTicket(1);
+		assertEquals("Status mismatch", RtTicketStatus.OPEN, stored.getStatus());
+		assertEquals("Subject was cleared", "Testticket 1", stored.getSubject());
+		assertEquals("Queue was changed", "General", stored.getQueue());
+		assertEquals("Requestors were cleared", Arrays.asList("rix@decoit.de"), stored.getRequestors());
+		assertEquals("Custom field was cleared", "10", stored.getCustomFields().get("Risk"));
+	}
+
+
+	/**
+	 * Request more tickets than fit into a single chunk and check the result.
+	 */
+	private void checkChunkedGetTickets(RtRestConnector chunked) throws Exception {
+		addTickets(4, 10);
+
+		try {
+			String chunkedSessionId = chunked.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+
+			List<Long> ids = Arrays.asList(10L, 2L, 42L, 7L, 1L, 9L, 3L, 8L, 2L, 4L, 6L, 5L);
+			int requestsBefore = server.getRequestCount();
+			Map<Long, RtTicket> tickets = chunked.getTickets(chunkedSessionId, ids);
+
+			assertEquals("Result order mismatch", Arrays.asList(10L, 2L, 42L, 7L, 1L, 9L, 3L, 8L, 4L, 6L, 5L), new ArrayList<>(tickets.keySet()));
+			assertNull("Missing ticket not mapped to null", tickets.get(42L));
+
+			for(Map.Entry<Long, RtTicket> e : tickets.entrySet()) {
+				if(e.getKey() != 42L) {
+					assertEquals("Ticket " + e.getKey() + " mismatch", "Testticket " + e.getKey(), e.getValue().getSubject());
+				}
+			}
+
+			// 11 distinct IDs in chunks of 4
+			assertEquals("Chunk count mismatch", 3, server.getRequestCount() - requestsBefore);
+		}
+		finally {
+			chunked.close();
+		}
+	}
+
+
+	private void addTickets(long from, long to) {
+		for(long id = from; id <= to; id++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setId(id);
+			ticket.setQueue("General");
+			ticket.setSubject("Testticket " + id);
+			server.addTicket(ticket);
+		}
+	}
+
+
+	/**
+	 * Add a ticket which was last updated long ago, so an edit always changes its LastUpdated value.
+	 */
+	private long addOldTicket() {
+		RtTicket ticket = new RtTicket();
+		ticket.setQueue("General");
+		ticket.setSubject("Old ticket");
+		ticket.setCreated(RtRestDateCodec.TICKET_DATE.parse("Wed Feb 26 15:59:56 2014"));
+		ticket.setLastUpdated(RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:23:44 2014"));
+
+		return server.addTicket(ticket);
+	}
+}
@@ -0,0 +1,119 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestDateCodec class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestDateCodecTest extends TestCase {
+	public RtRestDateCodecTest(String testName) {
+		super(testName);
+	}
+
+
+	/**
+	 * Test of parse and format methods, of class RtRestDateCodec.
+	 */
+	public void testParseFormat() {
+		System.out.println("Testing parse() and format()");
+
+		assertEquals("Ticket date mismatch", "Wed Feb 26 15:59:56 2014", RtRestDateCodec.TICKET_DATE.format(RtRestDateCodec.TICKET_DATE.parse("Wed Feb 26 15:59:56 2014")));
+		assertEquals("History date mismatch", "2014-03-13 11:11:07", RtRestDateCodec.HISTORY_DATE.format(RtRestDateCodec.HISTORY_DATE.parse("2014-03-13 11:11:07")));
+		assertEquals("Null date not formatted as empty string", "", RtRestDateCodec.TICKET_DATE.format(null));
+
+		// Parse twice to hit the cache
+		for(int i = 0; i < 2; i++) {
+			assertNull("Unset date parsed", RtRestDateCodec.TICKET_DATE.parse("Not set"));
+			assertNull("Null string parsed", RtRestDateCodec.TICKET_DATE.parse(null));
+		}
+	}
+
+
+	/**
+	 * Test that cached timestamps are returned as separate Date objects.
+	 */
+	public void testCachedCopies() {
+		System.out.println("Testing cached copies");
+
+		Date first = RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:23:44 2014");
+		first.setTime(0L);
+		Date second = RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:23:44 2014");
+
+		assertEquals("Cached date was modified", "Thu Mar 13 12:23:44 2014", RtRestDateCodec.TICKET_DATE.format(second));
+	}
+
+
+	/**
+	 * Test parsing from multiple threads, this corrupted dates with the shared SimpleDateFormat.
+	 */
+	public void testConcurrentParse() throws Exception {
+		System.out.println("Testing concurrent parse()");
+
+		final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+		final RtRestDateCodec instance = new RtRestDateCodec("yyyy-MM-dd HH:mm:ss", 16);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+
+			for(int t = 0; t < 4; t++) {
+				final int thread = t;
+
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						for(int i = 0; i < 5000; i++) {
+							String text = String.format("20%02d-%02d-%02d %02d:%02d:%02d", 10 + thread, 1 + i % 12, 1 + i % 28, i % 24, i % 60, (i * 7) % 60);
+
+							Date expected;
+							synchronized(sdf) {
+								expected = sdf.parse(text);
+							}
+
+							if(!expected.equals(instance.parse(text))) {
+								return text;
+							}
+						}
+
+						return null;
+					}
+				}));
+			}
+
+			for(Future<String> future : futures) {
+				assertNull("Date parsed incorrectly", future.get());
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtUser;
+import java.util.List;
+import junit.framework.TestCase;
+
+
+/**
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestLineCursorTest extends TestCase {
+
+	public RtRestLineCursorTest(String testName) {
+		super(testName);
+	}
+
+
+	/**
+	 * Test of nextLine and hasNext methods, of class RtRestLineCursor.
+	 */
+	public void testNextLine() {
+		System.out.println("Testing nextLine()");
+		RtRestLineCursor cursor = new RtRestLineCursor("RT/4.2.3 200 Ok\n\nid: ticket/1\nSubject: Test");
+
+		assertEquals("Status line mismatch", "RT/4.2.3 200 Ok", cursor.nextLine());
+		assertEquals("Position behind status line wrong", 16, cursor.position());
+		assertEquals("Blank line mismatch", "", cursor.nextLine());
+		assertEquals("Field line mismatch", "id: ticket/1", cursor.nextLine());
+		assertTrue("Last line without line break lost", cursor.hasNext());
+		assertEquals("Last line mismatch", "Subject: Test", cursor.nextLine());
+		assertFalse("Cursor not at end", cursor.hasNext());
+		assertNull("Line returned at end", cursor.nextLine());
+	}
+
+
+	/**
+	 * Test of skipDelimiter method, of class RtRestLineCursor.
+	 */
+	public void testSkipDelimiter() {
+		System.out.println("Testing skipDelimiter()");
+		RtRestLineCursor cursor = new RtRestLineCursor("a\n--\n  --\n---\n--");
+
+		assertFalse("Field line taken as delimiter", cursor.skipDelimiter());
+		assertEquals("Cursor moved by failed skip", "a", cursor.nextLine());
+		assertTrue("Delimiter not skipped", cursor.skipDelimiter());
+		assertFalse("Indented line taken as delimiter", cursor.skipDelimiter());
+		assertEquals("Indented line mismatch", "  --", cursor.nextLine());
+		assertFalse("Longer line taken as delimiter", cursor.skipDelimiter());
+		cursor.skipLine();
+		assertTrue("Delimiter at end not skipped", cursor.skipDelimiter());
+		assertFalse("Cursor not at end", cursor.hasNext());
+	}
+
+
+	/**
+	 * Test of parsing a list response through the body cursor of a response envelope.
+	 *
+	 * @throws Exception
+	 */
+	public void testParseTicketsFromEnvelope() throws Exception {
+		System.out.println("Testing parseTickets() with body cursor");
+		String body = "RT/4.2.3 200 Ok\n\nid: ticket/1\nSubject: First\n\n--\n\nid: ticket/2\nSubject: Second\n\n";
+		RtRestLineCursor statusCursor = new RtRestLineCursor(body);
+		RtRestStatus status = RtRestResponseParser.parseStatusLine(statusCursor.nextLine());
+		RtRestResponse response = new RtRestResponse(status, null, body, statusCursor.position());
+
+		assertEquals("Status mismatch", RtRestStatus.STATUS_200, response.getRtStatus());
+
+		List<RtTicket> tickets = RtRestTicketResponseParser.parseTickets(response.getBodyCursor());
+
+		assertEquals("Ticket count mismatch", 2, tickets.size());
+		assertEquals("First ticket ID mismatch", 1L, tickets.get(0).getId());
+		assertEquals("Second ticket subject mismatch", "Second", tickets.get(1).getSubject());
+	}
+
+
+	/**
+	 * Test that only delimiter lines separate list items, indented lines of multiline values containing "--" do
+	 * not split an item.
+	 *
+	 * @throws Exception
+	 */
+	public void testMultilineValueWithDelimiter() throws Exception {
+		System.out.println("Testing parseUsers() with delimiter in multiline value");
+		String body = "RT/4.2.3 200 Ok\n\nid: user/1\nName: alice\nSignature: Regards\n          --\n          Alice\n\n--\n\nid: user/2\nName: bob\n";
+
+		List<RtUser> users = RtRestUserResponseParser.parseUsers(body);
+
+		assertEquals("User count mismatch", 2, users.size());
+		assertEquals("Signature mismatch", "Regards\n--\nAlice", users.get(0).getSignature());
+		assertEquals("Second user name mismatch", "bob", users.get(1).getName());
+	}
+}
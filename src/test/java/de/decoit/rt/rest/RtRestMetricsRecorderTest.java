@@ -0,0 +1,218 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtSessionCallback;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.rest.RtRestMetricsRecorder.Phase;
+import java.util.EnumSet;
+import junit.framework.TestCase;
+import org.springframework.web.client.HttpServerErrorException;
+
+
+/**
+ * This test file contains test cases for the RtRestMetricsRecorder and RtRestHistogram classes
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestMetricsRecorderTest extends TestCase {
+	private FakeRtServer server;
+	private RtRestMetricsRecorder recorder;
+	private RtRestConnector connector;
+	private long ticketId;
+
+
+	public RtRestMetricsRecorderTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		RtTicket ticket = new RtTicket();
+		ticket.setSubject("Metrics ticket");
+		ticketId = server.addTicket(ticket);
+
+		server.start();
+
+		recorder = new RtRestMetricsRecorder();
+		connector = RtRestConnector.builder(server.getBaseUri()).instrumentation(recorder).build();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		connector.close();
+		server.close();
+	}
+
+
+	public void testHistogramPercentiles() {
+		System.out.println("Testing RtRestHistogram.getValueAtPercentile()");
+
+		RtRestHistogram histogram = new RtRestHistogram();
+		for(long i = 1L; i <= 10000L; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		assertEquals("Wrong count", 10000L, histogram.getCount());
+		assertEquals("Wrong maximum", 10000000L, histogram.getMax());
+		assertEquals("Wrong maximum percentile", 10000000L, histogram.getValueAtPercentile(100.0));
+		assertEquals("Wrong mean", 5000500.0, histogram.getMean(), 0.001);
+
+		long p50 = histogram.getValueAtPercentile(50.0);
+		assertTrue("Median below exact value: " + p50, p50 >= 5000000L);
+		assertTrue("Median error too large: " + p50, p50 <= 5000000L * 1.032);
+
+		long p99 = histogram.getValueAtPercentile(99.0);
+		assertTrue("99th percentile below exact value: " + p99, p99 >= 9900000L);
+		assertTrue("99th percentile error too large: " + p99, p99 <= 9900000L * 1.032);
+	}
+
+
+	public void testHistogramBuckets() {
+		System.out.println("Testing RtRestHistogram.indexOf()");
+
+		int lastIndex = -1;
+		for(long value = 0L; value < 100000L; value++) {
+			int index = RtRestHistogram.indexOf(value);
+
+			assertTrue("Bucket index decreased at " + value, index >= lastIndex);
+			assertTrue("Bucket too small for " + value, RtRestHistogram.highestValueOf(index) >= value);
+			if(index > 0) {
+				assertTrue("Bucket too large for " + value, RtRestHistogram.highestValueOf(index - 1) < value);
+			}
+
+			lastIndex = index;
+		}
+
+		int highestIndex = RtRestHistogram.indexOf(RtRestHistogram.HIGHEST_TRACKABLE_VALUE);
+		assertEquals("Wrong highest bucket", RtRestHistogram.HIGHEST_TRACKABLE_VALUE, RtRestHistogram.highestValueOf(highestIndex));
+
+		RtRestHistogram histogram = new RtRestHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-1L);
+
+		assertEquals("Negative value recorded", 1L, histogram.getCount());
+		assertEquals("Maximum not tracked exactly", Long.MAX_VALUE, histogram.getValueAtPercentile(50.0));
+	}
+
+
+	public void testExchangeRecorded() throws RtException {
+		System.out.println("Testing RtRestMetricsRecorder.exchangeCompleted()");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+		connector.getTicket(sessionId, ticketId);
+
+		assertEquals("Wrong login count", 1L, recorder.getRequestCount(RtRestEndpoint.LOGIN));
+		assertEquals("Wrong request count", 1L, recorder.getRequestCount(RtRestEndpoint.TICKET_PROPERTIES));
+		assertEquals("Wrong failure count", 0L, recorder.getFailureCount(RtRestEndpoint.TICKET_PROPERTIES));
+		assertEquals("Wrong RT status count", 1L, recorder.getRtStatusCount(RtRestEndpoint.TICKET_PROPERTIES, RtRestStatus.STATUS_200));
+		assertEquals("Wrong HTTP status count", 2L, recorder.getHttpStatusCount(200));
+
+		// The pooled transport measures the connect phase separately, no throttle is configured
+		assertEquals("Throttle wait recorded", 0L, recorder.getPhaseCount(RtRestEndpoint.TICKET_PROPERTIES, Phase.THROTTLE_WAIT));
+		for(Phase phase : EnumSet.complementOf(EnumSet.of(Phase.THROTTLE_WAIT))) {
+			assertEquals("Phase not recorded: " + phase, 1L, recorder.getPhaseCount(RtRestEndpoint.TICKET_PROPERTIES, phase));
+		}
+
+		long exchange = recorder.getPhaseNanosAtPercentile(RtRestEndpoint.TICKET_PROPERTIES, Phase.EXCHANGE, 100.0);
+		long serverWait = recorder.getPhaseNanosAtPercentile(RtRestEndpoint.TICKET_PROPERTIES, Phase.SERVER_WAIT, 100.0);
+		assertTrue("Exchange shorter than server wait", exchange >= serverWait);
+		assertTrue("Response size not recorded", recorder.getResponseBytesAtPercentile(RtRestEndpoint.TICKET_PROPERTIES, 50.0) > 0L);
+	}
+
+
+	public void testStreamingExchangeRecorded() throws RtException {
+		System.out.println("Testing RtRestMetricsRecorder with streaming responses");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+		assertEquals("Wrong search result", 1, connector.searchTickets(sessionId, "Queue = 'General'", "+id").size());
+
+		assertEquals("Wrong request count", 1L, recorder.getRequestCount(RtRestEndpoint.TICKET_SEARCH));
+		assertEquals("Body read not recorded", 1L, recorder.getPhaseCount(RtRestEndpoint.TICKET_SEARCH, Phase.BODY_READ));
+		assertEquals("Status parse recorded separately", 0L, recorder.getPhaseCount(RtRestEndpoint.TICKET_SEARCH, Phase.STATUS_PARSE));
+		assertTrue("Response size not recorded", recorder.getResponseBytesAtPercentile(RtRestEndpoint.TICKET_SEARCH, 50.0) > 0L);
+	}
+
+
+	public void testFailureRecorded() throws RtException {
+		System.out.println("Testing RtRestMetricsRecorder with failed requests");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+		server.failNextRequests(1, 503);
+
+		try {
+			connector.getTicket(sessionId, ticketId);
+			fail("HTTP error not raised");
+		}
+		catch(HttpServerErrorException ex) {
+			// Expected
+		}
+
+		assertEquals("Wrong failure count", 1L, recorder.getFailureCount(RtRestEndpoint.TICKET_PROPERTIES));
+		assertEquals("Wrong HTTP status count", 1L, recorder.getHttpStatusCount(503));
+		assertEquals("Entity parse recorded for failed request", 0L, recorder.getPhaseCount(RtRestEndpoint.TICKET_PROPERTIES, Phase.ENTITY_PARSE));
+	}
+
+
+	public void testReloginRecorded() throws Exception {
+		System.out.println("Testing RtRestMetricsRecorder.sessionRelogin()");
+
+		try(RtRestSessionPool pool = RtRestSessionPool.builder(connector, FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD).build()) {
+			RtSessionCallback<RtTicket> callback = new RtSessionCallback<RtTicket>() {
+				@Override
+				public RtTicket doInSession(RtConnector connector, String sessionId) throws RtException {
+					return connector.getTicket(sessionId, ticketId);
+				}
+			};
+
+			pool.execute(callback);
+			server.expireSessions();
+			pool.execute(callback);
+
+			assertEquals("Wrong relogin count", 1L, recorder.getReloginCount());
+			assertEquals("Wrong RT status count", 1L, recorder.getRtStatusCount(RtRestEndpoint.TICKET_PROPERTIES, RtRestStatus.STATUS_401));
+		}
+	}
+
+
+	public void testDump() throws RtException {
+		System.out.println("Testing dump()");
+
+		String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+		connector.getTicket(sessionId, ticketId);
+
+		String report = recorder.dump();
+
+		assertTrue("Endpoint missing in report", report.contains("TICKET_PROPERTIES: requests=1"));
+		assertTrue("Phase missing in report", report.contains("entity_parse"));
+		assertTrue("HTTP status missing in report", report.contains("HTTP status: 200=2"));
+		assertFalse("Unused endpoint in report", report.contains("QUEUE_LIST"));
+
+		recorder.reset();
+		assertEquals("Reset did not clear counts", 0L, recorder.getRequestCount(RtRestEndpoint.TICKET_PROPERTIES));
+	}
+}
@@ -59,4 +59,45 @@ public class RtRestResponseParserTest extends TestCase {
 		RtRestStatus result2 = RtRestResponseParser.parseStatus(response2);
 		assertEquals("Status 401 not recognized", expResult2, result2);
 	}
+
+
+	/**
+	 * Test of customFieldName method, of class RtRestResponseParser.
+	 */
+	public void testCustomFieldName() {
+		System.out.println("Testing customFieldName()");
+
+		assertEquals("New style name mismatch", "Some Field", RtRestResponseParser.customFieldName("CF.{Some Field}"));
+		assertEquals("Old style name mismatch", "Some Field", RtRestResponseParser.customFieldName("CF-Some Field"));
+		assertNull("Empty name accepted", RtRestResponseParser.customFieldName("CF.{}"));
+		assertNull("Unterminated name accepted", RtRestResponseParser.customFieldName("CF.{Some Field"));
+	}
+
+
+	/**
+	 * Test of parseObjectId and parseMessageId methods, of class RtRestResponseParser.
+	 */
+	public void testParseIds() {
+		System.out.println("Testing parseObjectId() and parseMessageId()");
+
+		assertEquals("Object ID mismatch", 123L, RtRestResponseParser.parseObjectId("ticket/123", "ticket/"));
+		assertEquals("Wrong prefix accepted", -1L, RtRestResponseParser.parseObjectId("user/123", "ticket/"));
+		assertEquals("Missing ID accepted", -1L, RtRestResponseParser.parseObjectId("ticket/", "ticket/"));
+		assertEquals("Non-numeric ID accepted", -1L, RtRestResponseParser.parseObjectId("ticket/new", "ticket/"));
+
+		assertEquals("Message ID mismatch", 42L, RtRestResponseParser.parseMessageId("# Ticket 42 created.", "# Ticket ", " created."));
+		assertEquals("Wrong message accepted", -1L, RtRestResponseParser.parseMessageId("# Ticket 42 updated.", "# Ticket ", " created."));
+	}
+
+
+	/**
+	 * Test of parseMinutes method, of class RtRestResponseParser.
+	 */
+	public void testParseMinutes() {
+		System.out.println("Testing parseMinutes()");
+
+		assertEquals("Minutes mismatch", 30, RtRestResponseParser.parseMinutes("30 minutes"));
+		assertEquals("Unset time not parsed as 0", 0, RtRestResponseParser.parseMinutes("0"));
+		assertEquals("Invalid time not parsed as 0", 0, RtRestResponseParser.parseMinutes("many minutes"));
+	}
 }
@@ -0,0 +1,210 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTransientException;
+import de.decoit.rt.model.RtTicket;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+
+/**
+ * This test file contains test cases for the RtRestRetryPolicy class and the retries done by RtRestClient
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestRetryPolicyTest extends TestCase {
+	private FakeRtServer server;
+	private RtRestClient client;
+	private RtRestMetricsRecorder recorder;
+	private String sessionId;
+	private long ticketId;
+
+
+	public RtRestRetryPolicyTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		RtTicket ticket = new RtTicket();
+		ticket.setSubject("Retry ticket");
+		ticketId = server.addTicket(ticket);
+
+		server.start();
+
+		recorder = new RtRestMetricsRecorder();
+		client = new RtRestClient(server.getBaseUri());
+		client.setInstrumentation(recorder);
+		client.setRetryPolicy(RtRestRetryPolicy.builder().backoff(1L, 5L, TimeUnit.MILLISECONDS).build());
+
+		sessionId = client.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		server.close();
+	}
+
+
+	public void testRetryTransientFailure() throws RtException {
+		System.out.println("Testing retry of transient failures");
+
+		server.failNextRequests(2, 503);
+
+		RtTicket ticket = client.ticketProperties(sessionId, "ticket/" + ticketId);
+
+		assertEquals("Wrong ticket", "Retry ticket", ticket.getSubject());
+		assertEquals("Wrong retry count", 2L, recorder.getRetryCount(RtRestEndpoint.TICKET_PROPERTIES));
+		assertEquals("Wrong failure count", 2L, recorder.getFailureCount(RtRestEndpoint.TICKET_PROPERTIES));
+	}
+
+
+	public void testRetryStreamingResponse() throws RtException {
+		System.out.println("Testing retry of streaming requests");
+
+		server.failNextRequests(1, 502);
+
+		assertEquals("Wrong search result", 1, client.searchTickets(sessionId, "Queue = 'General'", "+id").size());
+		assertEquals("Wrong retry count", 1L, recorder.getRetryCount(RtRestEndpoint.TICKET_SEARCH));
+	}
+
+
+	public void testMaxAttempts() throws RtException {
+		System.out.println("Testing getMaxAttempts()");
+
+		server.failNextRequests(5, 503);
+		int requestsBefore = server.getRequestCount();
+
+		try {
+			client.ticketProperties(sessionId, "ticket/" + ticketId);
+			fail("Failure not raised after last attempt");
+		}
+		catch(HttpServerErrorException ex) {
+			assertEquals("Wrong exception", HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+		}
+
+		assertEquals("Wrong number of attempts", 3, server.getRequestCount() - requestsBefore);
+	}
+
+
+	public void testNonIdempotentNotRetried() throws RtException {
+		System.out.println("Testing retry of non-idempotent requests");
+
+		server.failNextRequests(1, 503);
+		int requestsBefore = server.getRequestCount();
+
+		try {
+			client.createTicket(sessionId, "id: ticket/new\nQueue: General\nRequestors: root\nSubject: Not retried");
+			fail("Failed create request was retried");
+		}
+		catch(HttpServerErrorException ex) {
+			// Expected
+		}
+
+		assertEquals("Create request retried", 1, server.getRequestCount() - requestsBefore);
+		assertEquals("Wrong retry count", 0L, recorder.getRetryCount(RtRestEndpoint.TICKET_CREATE));
+	}
+
+
+	public void testPermanentFailureNotRetried() throws RtException {
+		System.out.println("Testing retry of permanent failures");
+
+		server.failNextRequests(1, 404);
+		int requestsBefore = server.getRequestCount();
+
+		try {
+			client.ticketProperties(sessionId, "ticket/" + ticketId);
+			fail("HTTP error not raised");
+		}
+		catch(HttpClientErrorException ex) {
+			// Expected
+		}
+
+		assertEquals("Permanent failure retried", 1, server.getRequestCount() - requestsBefore);
+	}
+
+
+	public void testRetryBudget() throws RtException {
+		System.out.println("Testing retry budget");
+
+		client.setRetryPolicy(RtRestRetryPolicy.builder().backoff(1L, 5L, TimeUnit.MILLISECONDS).retryBudget(2, 0.0).build());
+		server.setErrorRate(1.0, 503);
+
+		int requestsBefore = server.getRequestCount();
+		for(int i = 0; i < 3; i++) {
+			try {
+				client.ticketProperties(sessionId, "ticket/" + ticketId);
+				fail("HTTP error not raised");
+			}
+			catch(HttpServerErrorException ex) {
+				// Expected
+			}
+		}
+
+		// Only a single retry fits into a budget of 2 tokens
+		assertEquals("Retries exceeded the budget", 4, server.getRequestCount() - requestsBefore);
+		assertEquals("Wrong retry count", 1L, recorder.getRetryCount(RtRestEndpoint.TICKET_PROPERTIES));
+	}
+
+
+	public void testIsRetryable() {
+		System.out.println("Testing isRetryable()");
+
+		RtRestRetryPolicy policy = RtRestRetryPolicy.builder().retryEndpoint(RtRestEndpoint.TICKET_COMMENT, true).retryEndpoint(RtRestEndpoint.TICKET_EDIT, false).build();
+
+		assertTrue("I/O error not retryable", policy.isRetryable(RtRestEndpoint.TICKET_PROPERTIES, new ResourceAccessException("I/O error", new IOException())));
+		assertTrue("Transient exception not retryable", policy.isRetryable(RtRestEndpoint.LOGIN, new RtTransientException("No cookie")));
+		assertTrue("HTTP 429 not retryable", policy.isRetryable(RtRestEndpoint.USER_SEARCH, new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+		assertFalse("Generic exception retryable", policy.isRetryable(RtRestEndpoint.TICKET_PROPERTIES, new RtException("Parse error")));
+		assertFalse("Create retryable", policy.isRetryable(RtRestEndpoint.TICKET_CREATE, new RtTransientException("No cookie")));
+		assertTrue("Override not applied", policy.isRetryEnabled(RtRestEndpoint.TICKET_COMMENT));
+		assertFalse("Override not applied", policy.isRetryEnabled(RtRestEndpoint.TICKET_EDIT));
+		assertFalse("NONE allows retries", RtRestRetryPolicy.NONE.getMaxAttempts() > 1);
+	}
+
+
+	public void testGetBackoffNanos() {
+		System.out.println("Testing getBackoffNanos()");
+
+		RtRestRetryPolicy policy = RtRestRetryPolicy.builder().backoff(100L, 1000L, TimeUnit.MILLISECONDS).build();
+
+		for(int i = 0; i < 1000; i++) {
+			long first = policy.getBackoffNanos(1);
+			long fourth = policy.getBackoffNanos(4);
+			long tenth = policy.getBackoffNanos(10);
+
+			assertTrue("First backoff out of range: " + first, first >= 0L && first <= TimeUnit.MILLISECONDS.toNanos(100L));
+			assertTrue("Fourth backoff out of range: " + fourth, fourth >= 0L && fourth <= TimeUnit.MILLISECONDS.toNanos(800L));
+			assertTrue("Backoff not capped: " + tenth, tenth >= 0L && tenth <= TimeUnit.MILLISECONDS.toNanos(1000L));
+		}
+	}
+}
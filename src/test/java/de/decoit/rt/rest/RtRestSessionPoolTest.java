@@ -0,0 +1,212 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtSessionCallback;
+import de.decoit.rt.model.RtTicket;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestSessionPool class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestSessionPoolTest extends TestCase {
+	private AtomicInteger logins;
+	private Set<String> rejectedSessions;
+	private List<String> loggedOut;
+	private RtConnector connector;
+
+
+	public RtRestSessionPoolTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		logins = new AtomicInteger(0);
+		rejectedSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		loggedOut = Collections.synchronizedList(new ArrayList<String>());
+
+		connector = (RtConnector) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RtConnector.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				switch(method.getName()) {
+					case "login":
+						return "session-" + logins.incrementAndGet();
+					case "logout":
+						loggedOut.add((String) args[0]);
+						return null;
+					case "getTicket":
+						if(rejectedSessions.contains((String) args[0])) {
+							throw new RtAuthenticationException("Session was rejected by RT, login required");
+						}
+
+						Thread.sleep(5);
+
+						RtTicket ticket = new RtTicket();
+						ticket.setId((Long) args[1]);
+						ticket.setSubject((String) args[0]);
+						return ticket;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Test that sessions are reused and not opened for every callback.
+	 */
+	public void testSessionReuse() throws Exception {
+		System.out.println("Testing session reuse");
+
+		RtRestSessionPool instance = RtRestSessionPool.builder(connector, "user", "password").build();
+
+		for(long i = 1; i <= 5; i++) {
+			assertEquals("Wrong session used", "session-1", instance.execute(getTicket(i)).getSubject());
+		}
+
+		assertEquals("Login count mismatch", 1L, instance.getLoginCount());
+	}
+
+
+	/**
+	 * Test that a rejected session is replaced by a new login and the callback is repeated.
+	 */
+	public void testRelogin() throws Exception {
+		System.out.println("Testing re-login on rejected session");
+
+		RtRestSessionPool instance = RtRestSessionPool.builder(connector, "user", "password").build();
+		instance.execute(getTicket(1L));
+
+		rejectedSessions.add("session-1");
+
+		assertEquals("Wrong session used", "session-2", instance.execute(getTicket(2L)).getSubject());
+		assertEquals("Re-login count mismatch", 1L, instance.getReloginCount());
+		assertEquals("Session count mismatch", 1, instance.getSessionCount());
+	}
+
+
+	/**
+	 * Test that sessions which were idle too long are replaced before they are used.
+	 */
+	public void testRefresh() throws Exception {
+		System.out.println("Testing refresh of idle sessions");
+
+		RtRestSessionPool instance = RtRestSessionPool.builder(connector, "user", "password").refreshAfter(10, TimeUnit.MILLISECONDS).build();
+		instance.execute(getTicket(1L));
+
+		Thread.sleep(50);
+
+		assertEquals("Idle session not refreshed", "session-2", instance.execute(getTicket(2L)).getSubject());
+		assertTrue("Old session not logged out", loggedOut.contains("session-1"));
+		assertEquals("Refresh counted as re-login", 0L, instance.getReloginCount());
+	}
+
+
+	/**
+	 * Test that a new session cookie sent by RT is used for following callbacks.
+	 */
+	public void testRotation() throws Exception {
+		System.out.println("Testing session rotation");
+
+		final RtRestSessionPool instance = RtRestSessionPool.builder(connector, "user", "password").build();
+
+		instance.execute(new RtSessionCallback<Void>() {
+			@Override
+			public Void doInSession(RtConnector connector, String sessionId) throws RtException {
+				instance.getRotationListener().sessionRotated(sessionId, "session-rotated");
+				return null;
+			}
+		});
+
+		assertEquals("Rotated session not used", "session-rotated", instance.execute(getTicket(1L)).getSubject());
+	}
+
+
+	/**
+	 * Test that no more than the configured number of sessions is opened and all are logged out on close.
+	 */
+	public void testMaxSessions() throws Exception {
+		System.out.println("Testing session limit");
+
+		final RtRestSessionPool instance = RtRestSessionPool.builder(connector, "user", "password").maxSessions(2).build();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			List<Future<RtTicket>> futures = new ArrayList<>();
+
+			for(long i = 1; i <= 20; i++) {
+				final long id = i;
+
+				futures.add(executor.submit(new Callable<RtTicket>() {
+					@Override
+					public RtTicket call() throws Exception {
+						return instance.execute(getTicket(id));
+					}
+				}));
+			}
+
+			for(Future<RtTicket> future : futures) {
+				future.get(5, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertTrue("Too many sessions opened: " + instance.getLoginCount(), instance.getLoginCount() <= 2);
+
+		instance.close();
+
+		assertEquals("Sessions not logged out", instance.getLoginCount(), loggedOut.size());
+		assertEquals("Sessions left after close", 0, instance.getSessionCount());
+	}
+
+
+	private RtSessionCallback<RtTicket> getTicket(final long id) {
+		return new RtSessionCallback<RtTicket>() {
+			@Override
+			public RtTicket doInSession(RtConnector connector, String sessionId) throws RtException {
+				return connector.getTicket(sessionId, id);
+			}
+		};
+	}
+}
@@ -0,0 +1,250 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import com.google.common.base.Function;
+import de.decoit.rt.RtAuthenticationException;
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestSingleFlight class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestSingleFlightTest extends TestCase {
+	private static final Function<RtTicket, RtTicket> COPIER = new Function<RtTicket, RtTicket>() {
+		@Override
+		public RtTicket apply(RtTicket ticket) {
+			return new RtTicket(ticket);
+		}
+	};
+
+	private RtRestSingleFlight singleFlight;
+	private ExecutorService executor;
+	private AtomicInteger calls;
+	private CountDownLatch release;
+	private AtomicReference<RtTicket> produced;
+
+
+	public RtRestSingleFlightTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		singleFlight = new RtRestSingleFlight();
+		executor = Executors.newCachedThreadPool();
+		calls = new AtomicInteger(0);
+		release = new CountDownLatch(1);
+		produced = new AtomicReference<>();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		executor.shutdownNow();
+	}
+
+
+	public void testCoalescing() throws Exception {
+		System.out.println("Testing execute() with concurrent calls");
+
+		List<Future<RtTicket>> results = startCalls(5, "session", null);
+		release.countDown();
+
+		List<RtTicket> tickets = new ArrayList<>();
+		for(Future<RtTicket> result : results) {
+			tickets.add(result.get(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals("Wrong number of requests", 1, calls.get());
+		assertEquals("Wrong executed count", 1L, singleFlight.getExecutedCount());
+		assertEquals("Wrong coalesced count", 4L, singleFlight.getCoalescedCount());
+
+		for(int i = 1; i < tickets.size(); i++) {
+			assertEquals("Result mismatch", tickets.get(0).getSubject(), tickets.get(i).getSubject());
+			assertNotSame("Result shared between callers", tickets.get(0), tickets.get(i));
+		}
+	}
+
+
+	public void testSequentialCalls() throws RtException {
+		System.out.println("Testing execute() with sequential calls");
+
+		release.countDown();
+
+		singleFlight.execute("ticket/1", "session", new TicketCall(null), COPIER);
+		singleFlight.execute("ticket/1", "session", new TicketCall(null), COPIER);
+
+		assertEquals("Wrong number of requests", 2, calls.get());
+		assertEquals("Wrong coalesced count", 0L, singleFlight.getCoalescedCount());
+	}
+
+
+	public void testFirstCallerGetsCopy() throws Exception {
+		System.out.println("Testing execute() with modified result of the first caller");
+
+		List<Future<RtTicket>> results = startCalls(2, "session", null);
+		release.countDown();
+
+		RtTicket first = results.get(0).get(5, TimeUnit.SECONDS);
+		first.setSubject("Changed");
+		RtTicket second = results.get(1).get(5, TimeUnit.SECONDS);
+
+		assertNotSame("Fetched object returned to first caller", produced.get(), first);
+		assertEquals("Modification of first caller visible to waiting caller", "Ticket", second.getSubject());
+	}
+
+
+	public void testSharedFailure() throws Exception {
+		System.out.println("Testing execute() with failing call");
+
+		List<Future<RtTicket>> results = startCalls(3, "session", new RtException("Request failed"));
+		release.countDown();
+
+		for(Future<RtTicket> result : results) {
+			try {
+				result.get(5, TimeUnit.SECONDS);
+
+				fail("Failure not passed to caller");
+			}
+			catch(ExecutionException ex) {
+				assertEquals("Wrong exception", "Request failed", ex.getCause().getMessage());
+			}
+		}
+
+		assertEquals("Wrong number of requests", 1, calls.get());
+	}
+
+
+	public void testRejectedSession() throws Exception {
+		System.out.println("Testing execute() with rejected session of the first caller");
+
+		List<Future<RtTicket>> first = startCalls(1, "expired-session", new RtAuthenticationException("Session was rejected"));
+		Future<RtTicket> second = startCall("valid-session", null);
+		waitForCoalescedCalls(1);
+		release.countDown();
+
+		try {
+			first.get(0).get(5, TimeUnit.SECONDS);
+
+			fail("Rejected session not detected");
+		}
+		catch(ExecutionException ex) {
+			assertTrue("Wrong exception", ex.getCause() instanceof RtAuthenticationException);
+		}
+
+		assertEquals("Caller with valid session failed", "Ticket", second.get(5, TimeUnit.SECONDS).getSubject());
+		assertEquals("Wrong number of requests", 2, calls.get());
+	}
+
+
+	/**
+	 * Start a number of calls for the same key and wait until all but the first are waiting for its result
+	 */
+	private List<Future<RtTicket>> startCalls(int count, String sessionId, RtException failure) throws InterruptedException {
+		List<Future<RtTicket>> results = new ArrayList<>();
+		results.add(startCall(sessionId, failure));
+
+		// Make sure the first call is in flight before the others are started
+		while(singleFlight.getExecutedCount() == 0L) {
+			Thread.sleep(1);
+		}
+
+		for(int i = 1; i < count; i++) {
+			results.add(startCall(sessionId, failure));
+		}
+
+		waitForCoalescedCalls(count - 1);
+
+		return results;
+	}
+
+
+	private Future<RtTicket> startCall(final String sessionId, final RtException failure) {
+		return executor.submit(new Callable<RtTicket>() {
+			@Override
+			public RtTicket call() throws RtException {
+				return singleFlight.execute("ticket/1", sessionId, new TicketCall(failure), COPIER);
+			}
+		});
+	}
+
+
+	private void waitForCoalescedCalls(int count) throws InterruptedException {
+		while(singleFlight.getCoalescedCount() < count) {
+			Thread.sleep(1);
+		}
+	}
+
+
+	/**
+	 * Call which blocks until the test releases it and then returns a ticket or fails
+	 */
+	private class TicketCall implements RtRestSingleFlight.Call<RtTicket> {
+		private final RtException failure;
+
+
+		TicketCall(RtException failure) {
+			this.failure = failure;
+		}
+
+
+		@Override
+		public RtTicket call() throws RtException {
+			calls.incrementAndGet();
+
+			try {
+				release.await();
+			}
+			catch(InterruptedException ex) {
+				throw new RtException("Interrupted");
+			}
+
+			// Only the first call fails, retries succeed
+			if(this.failure != null && calls.get() == 1) {
+				throw this.failure;
+			}
+
+			RtTicket ticket = new RtTicket();
+			ticket.setId(1);
+			ticket.setSubject("Ticket");
+			produced.set(ticket);
+
+			return ticket;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtThrottledException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.rest.RtRestMetricsRecorder.Phase;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestThrottle and RtRestThrottlePolicy classes
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestThrottleTest extends TestCase {
+	public RtRestThrottleTest(String testName) {
+		super(testName);
+	}
+
+
+	public void testConcurrencyLimit() throws Exception {
+		System.out.println("Testing maxConcurrentRequests()");
+
+		final RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().maxConcurrentRequests(1).build());
+		RtRestThrottle.Permit permit = throttle.acquire(RtRestOperationClass.READ);
+
+		final List<RtRestThrottle.Permit> granted = Collections.synchronizedList(new ArrayList<RtRestThrottle.Permit>());
+		Thread waiter = startAcquire(throttle, RtRestOperationClass.WRITE, granted);
+
+		awaitQueueDepth(throttle, 1);
+		assertTrue("Second request not blocked", granted.isEmpty());
+
+		permit.release();
+		waiter.join(5000L);
+
+		assertEquals("Waiting request not released", 1, granted.size());
+		assertEquals("Wrong queue depth on arrival", 0, granted.get(0).getQueueDepth());
+		assertEquals("Queue not empty", 0, throttle.getQueueDepth());
+	}
+
+
+	public void testPriority() throws Exception {
+		System.out.println("Testing priority()");
+
+		RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().maxConcurrentRequests(1).build());
+		RtRestThrottle.Permit permit = throttle.acquire(RtRestOperationClass.WRITE);
+
+		List<RtRestOperationClass> order = Collections.synchronizedList(new ArrayList<RtRestOperationClass>());
+
+		Thread search = startAcquireAndRelease(throttle, RtRestOperationClass.SEARCH, order);
+		awaitQueueDepth(throttle, 1);
+		Thread read = startAcquireAndRelease(throttle, RtRestOperationClass.READ, order);
+		awaitQueueDepth(throttle, 2);
+
+		permit.release();
+		search.join(5000L);
+		read.join(5000L);
+
+		assertEquals("Wrong number of granted requests", 2, order.size());
+		assertEquals("Interactive read not served first", RtRestOperationClass.READ, order.get(0));
+		assertEquals("Search not served", RtRestOperationClass.SEARCH, order.get(1));
+	}
+
+
+	public void testClassLimitDoesNotBlockOtherClasses() throws Exception {
+		System.out.println("Testing maxConcurrentRequests(RtRestOperationClass)");
+
+		RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().maxConcurrentRequests(RtRestOperationClass.SEARCH, 1).build());
+		RtRestThrottle.Permit search = throttle.acquire(RtRestOperationClass.SEARCH);
+
+		List<RtRestThrottle.Permit> granted = Collections.synchronizedList(new ArrayList<RtRestThrottle.Permit>());
+		Thread waiter = startAcquire(throttle, RtRestOperationClass.SEARCH, granted);
+		awaitQueueDepth(throttle, 1);
+
+		RtRestThrottle.Permit read = throttle.acquire(RtRestOperationClass.READ);
+		assertEquals("Read request waited", 1, read.getQueueDepth());
+		read.release();
+
+		search.release();
+		waiter.join(5000L);
+		assertEquals("Waiting search not released", 1, granted.size());
+	}
+
+
+	public void testFailFast() throws RtException {
+		System.out.println("Testing failFast()");
+
+		RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().maxConcurrentRequests(RtRestOperationClass.SEARCH, 1).failFast(RtRestOperationClass.SEARCH).build());
+		RtRestThrottle.Permit permit = throttle.acquire(RtRestOperationClass.SEARCH);
+
+		try {
+			throttle.acquire(RtRestOperationClass.SEARCH);
+			fail("Request not rejected");
+		}
+		catch(RtThrottledException ex) {
+			// Expected
+		}
+
+		assertEquals("Rejected request still queued", 0, throttle.getQueueDepth());
+
+		permit.release();
+		throttle.acquire(RtRestOperationClass.SEARCH).release();
+	}
+
+
+	public void testMaxWait() throws RtException {
+		System.out.println("Testing maxWait()");
+
+		RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().maxConcurrentRequests(1).maxWait(RtRestOperationClass.READ, 50L, TimeUnit.MILLISECONDS).build());
+		throttle.acquire(RtRestOperationClass.WRITE);
+
+		long start = System.nanoTime();
+		try {
+			throttle.acquire(RtRestOperationClass.READ);
+			fail("Request not rejected");
+		}
+		catch(RtThrottledException ex) {
+			// Expected
+		}
+
+		assertTrue("Request did not wait", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(45L));
+	}
+
+
+	public void testRateLimit() throws RtException {
+		System.out.println("Testing rateLimit()");
+
+		RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().rateLimit(RtRestOperationClass.HISTORY, 20.0, 2).build());
+
+		long start = System.nanoTime();
+		for(int i = 0; i < 6; i++) {
+			throttle.acquire(RtRestOperationClass.HISTORY).release();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// The burst of 2 is sent at once, the other 4 requests need 50 ms each
+		assertTrue("Rate limit not enforced: " + elapsed, elapsed >= TimeUnit.MILLISECONDS.toNanos(180L));
+
+		start = System.nanoTime();
+		throttle.acquire(RtRestOperationClass.READ).release();
+		assertTrue("Other class rate limited", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40L));
+	}
+
+
+	public void testUnlimited() {
+		System.out.println("Testing isUnlimited()");
+
+		assertTrue("Default policy has limits", RtRestThrottlePolicy.UNLIMITED.isUnlimited());
+		assertTrue("Priority counted as limit", RtRestThrottlePolicy.builder().priority(RtRestOperationClass.SEARCH, 5).build().isUnlimited());
+		assertFalse("Rate limit not detected", RtRestThrottlePolicy.builder().rateLimit(RtRestOperationClass.READ, 1.0, 1).build().isUnlimited());
+	}
+
+
+	public void testConnectorThrottle() throws Exception {
+		System.out.println("Testing RtRestConnector with throttle policy");
+
+		try(FakeRtServer server = new FakeRtServer()) {
+			RtTicket ticket = new RtTicket();
+			ticket.setSubject("Throttled ticket");
+			long ticketId = server.addTicket(ticket);
+			server.start();
+
+			RtRestMetricsRecorder recorder = new RtRestMetricsRecorder();
+			RtRestThrottlePolicy policy = RtRestThrottlePolicy.builder().maxConcurrentRequests(2).build();
+
+			try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).throttlePolicy(policy).instrumentation(recorder).build()) {
+				String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+
+				assertEquals("Wrong ticket", "Throttled ticket", connector.getTicket(sessionId, ticketId).getSubject());
+				assertEquals("Throttle wait not recorded", 1L, recorder.getPhaseCount(RtRestEndpoint.TICKET_PROPERTIES, Phase.THROTTLE_WAIT));
+				assertEquals("Queue not empty", 0, connector.getQueuedRequestCount());
+			}
+		}
+	}
+
+
+	private Thread startAcquire(final RtRestThrottle throttle, final RtRestOperationClass operationClass, final List<RtRestThrottle.Permit> granted) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					granted.add(throttle.acquire(operationClass));
+				}
+				catch(RtThrottledException ex) {
+					// Test fails on the missing permit
+				}
+			}
+		};
+
+		thread.start();
+		return thread;
+	}
+
+
+	private Thread startAcquireAndRelease(final RtRestThrottle throttle, final RtRestOperationClass operationClass, final List<RtRestOperationClass> order) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					RtRestThrottle.Permit permit = throttle.acquire(operationClass);
+					order.add(operationClass);
+					permit.release();
+				}
+				catch(RtThrottledException ex) {
+					// Test fails on the missing entry
+				}
+			}
+		};
+
+		thread.start();
+		return thread;
+	}
+
+
+	private void awaitQueueDepth(RtRestThrottle throttle, int depth) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000L;
+
+		while(throttle.getQueueDepth() < depth && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5L);
+		}
+
+		assertEquals("Requests not queued", depth, throttle.getQueueDepth());
+	}
+}
@@ -0,0 +1,175 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtTicket;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestTicketChangeFeed class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTicketChangeFeedTest extends TestCase {
+	private FakeRtServer server;
+	private RtRestConnector connector;
+	private String sessionId;
+	private List<Long> received;
+	private File checkpointFile;
+
+
+	public RtRestTicketChangeFeedTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+		addTicket(1, "Thu Mar 13 12:00:00 2014");
+		addTicket(2, "Thu Mar 13 12:00:05 2014");
+		addTicket(3, "Thu Mar 13 12:00:05 2014");
+		addTicket(4, "Thu Mar 13 12:00:10 2014");
+		server.start();
+
+		connector = RtRestConnector.builder(server.getBaseUri()).build();
+		sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+		received = new ArrayList<>();
+
+		checkpointFile = File.createTempFile("rt-change-feed", ".properties");
+		checkpointFile.delete();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		connector.close();
+		server.close();
+		checkpointFile.delete();
+	}
+
+
+	public void testPoll() throws RtException {
+		System.out.println("Testing poll()");
+
+		RtRestTicketChangeFeed feed = RtRestTicketChangeFeed.builder(connector, "Queue = 'General'").build();
+		feed.addSubscriber(new RecordingSubscriber(Integer.MAX_VALUE));
+
+		assertEquals("Wrong number of tickets in first poll", 4, feed.poll(sessionId));
+		assertEquals("Wrong delivery order", 1L, (long) received.get(0));
+		assertEquals("Wrong delivery order", 4L, (long) received.get(3));
+		assertEquals("Watermark mismatch", RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:00:10 2014"), feed.getWatermark());
+
+		assertEquals("Unchanged tickets delivered again", 0, feed.poll(sessionId));
+
+		RtTicket ticket = connector.getTicket(sessionId, 2);
+		ticket.setSubject("Changed");
+		connector.editTicket(sessionId, ticket);
+
+		assertEquals("Wrong number of changed tickets", 1, feed.poll(sessionId));
+		assertEquals("Wrong changed ticket", 2L, (long) received.get(4));
+	}
+
+
+	public void testPollBackpressure() throws RtException {
+		System.out.println("Testing poll() with a subscriber requesting to stop");
+
+		RtRestTicketChangeFeed feed = RtRestTicketChangeFeed.builder(connector, "").build();
+		feed.addSubscriber(new RecordingSubscriber(2));
+
+		// Stops within the second shared by tickets 2 and 3
+		assertEquals("Wrong number of tickets in first poll", 2, feed.poll(sessionId));
+		assertEquals("Wrong number of tickets in second poll", 2, feed.poll(sessionId));
+		assertEquals("Wrong tickets delivered", "[1, 2, 3, 4]", received.toString());
+	}
+
+
+	public void testCheckpoint() throws RtException {
+		System.out.println("Testing restart from checkpoint");
+
+		RtRestTicketChangeFeed feed = RtRestTicketChangeFeed.builder(connector, "").checkpointFile(checkpointFile).build();
+		feed.addSubscriber(new RecordingSubscriber(2));
+		feed.poll(sessionId);
+
+		RtRestTicketChangeFeed restarted = RtRestTicketChangeFeed.builder(connector, "").checkpointFile(checkpointFile).build();
+		restarted.addSubscriber(new RecordingSubscriber(Integer.MAX_VALUE));
+
+		assertEquals("Watermark not restored", feed.getWatermark(), restarted.getWatermark());
+		assertEquals("Wrong number of tickets after restart", 2, restarted.poll(sessionId));
+		assertEquals("Wrong tickets delivered", "[1, 2, 3, 4]", received.toString());
+	}
+
+
+	public void testStartAt() throws RtException {
+		System.out.println("Testing startAt()");
+
+		Date start = RtRestDateCodec.TICKET_DATE.parse("Thu Mar 13 12:00:05 2014");
+		RtRestTicketChangeFeed feed = RtRestTicketChangeFeed.builder(connector, "").startAt(start).build();
+		feed.addSubscriber(new RecordingSubscriber(Integer.MAX_VALUE));
+
+		assertEquals("Wrong number of tickets", 3, feed.poll(sessionId));
+		assertEquals("Wrong tickets delivered", "[2, 3, 4]", received.toString());
+	}
+
+
+	private void addTicket(long id, String lastUpdated) {
+		RtTicket ticket = new RtTicket();
+		ticket.setId(id);
+		ticket.setSubject("Change feed ticket " + id);
+		ticket.setCreated(RtRestDateCodec.TICKET_DATE.parse("Wed Feb 26 15:59:56 2014"));
+		ticket.setLastUpdated(RtRestDateCodec.TICKET_DATE.parse(lastUpdated));
+		server.addTicket(ticket);
+	}
+
+
+	/**
+	 * Subscriber recording the received ticket IDs, requests to stop after a number of tickets per poll
+	 */
+	private class RecordingSubscriber implements RtTicketHandler {
+		private final int ticketsPerPoll;
+		private int count = 0;
+
+
+		RecordingSubscriber(int ticketsPerPoll) {
+			this.ticketsPerPoll = ticketsPerPoll;
+		}
+
+
+		@Override
+		public boolean handleTicket(RtTicket ticket) {
+			received.add(ticket.getId());
+
+			if(++this.count >= this.ticketsPerPoll) {
+				this.count = 0;
+				return false;
+			}
+
+			return true;
+		}
+	}
+}
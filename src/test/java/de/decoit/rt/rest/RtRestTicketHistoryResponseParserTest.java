@@ -19,6 +19,7 @@ package de.decoit.rt.rest;
 import de.decoit.rt.RtException;
 import de.decoit.rt.model.RtTicketHistoryItem;
 import de.decoit.rt.model.RtTicketHistoryItem.RtTicketHistoryItemType;
+import java.util.Arrays;
 import java.util.List;
 import junit.framework.TestCase;
 
@@ -297,4 +298,25 @@ public class RtRestTicketHistoryResponseParserTest extends TestCase {
 			fail(ex.getMessage());
 		}
 	}
+
+
+	/**
+	 * Test of parseHistoryItemIds method, of class RtRestTicketHistoryResponseParser.
+	 */
+	public void testParseHistoryItemIds() {
+		System.out.println("Testing parseHistoryItemIds()");
+
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"# 3/3 (/total)\n" +
+			"\n" +
+			"210: Ticket created by root\n" +
+			"211: Requestor root (Enoch Root) added by root\n" +
+			"231: Comments added by root\n" +
+			"\n";
+
+		List<Long> result = RtRestTicketHistoryResponseParser.parseHistoryItemIds(response);
+
+		assertEquals("ID list mismatch", Arrays.asList(210L, 211L, 231L), result);
+	}
 }
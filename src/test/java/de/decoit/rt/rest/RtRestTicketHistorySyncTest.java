@@ -0,0 +1,138 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketHistoryItem;
+import de.decoit.rt.model.RtTicketHistoryItem.RtTicketHistoryItemType;
+import java.util.List;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestTicketHistorySync class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTicketHistorySyncTest extends TestCase {
+	private FakeRtServer server;
+	private RtRestConnector connector;
+	private String sessionId;
+	private long ticketId;
+
+
+	public RtRestTicketHistorySyncTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		RtTicket ticket = new RtTicket();
+		ticket.setSubject("History sync ticket");
+		ticket.setText("Initial text");
+		ticketId = server.addTicket(ticket);
+
+		server.start();
+
+		connector = RtRestConnector.builder(server.getBaseUri()).build();
+		sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		connector.close();
+		server.close();
+	}
+
+
+	public void testSync() throws RtException {
+		System.out.println("Testing sync()");
+
+		RtRestTicketHistorySync sync = new RtRestTicketHistorySync(connector);
+
+		List<RtTicketHistoryItem> first = sync.sync(sessionId, ticketId);
+		assertEquals("Wrong number of items in first sync", 1, first.size());
+		assertEquals("Wrong item content", "Initial text", first.get(0).getContent());
+
+		comment("First comment");
+		comment("Second comment");
+
+		int requestsBefore = server.getRequestCount();
+		List<RtTicketHistoryItem> second = sync.sync(sessionId, ticketId);
+
+		assertEquals("Wrong number of new items", 2, second.size());
+		assertEquals("Wrong item content", "Second comment", second.get(1).getContent());
+		assertEquals("Short listing and new items expected", 3, server.getRequestCount() - requestsBefore);
+
+		List<RtTicketHistoryItem> full = connector.getTicketHistory(sessionId, ticketId);
+		List<RtTicketHistoryItem> local = sync.getHistory(ticketId);
+
+		assertEquals("Local history size mismatch", full.size(), local.size());
+		for(int i = 0; i < full.size(); i++) {
+			assertEquals("Local history item mismatch", full.get(i).getId(), local.get(i).getId());
+		}
+
+		assertEquals("Last item ID mismatch", full.get(full.size() - 1).getId(), sync.getLastItemId(ticketId));
+		assertTrue("Unchanged history returned items", sync.sync(sessionId, ticketId).isEmpty());
+	}
+
+
+	public void testForget() throws RtException {
+		System.out.println("Testing forget()");
+
+		RtRestTicketHistorySync sync = new RtRestTicketHistorySync(connector);
+		sync.sync(sessionId, ticketId);
+		sync.forget(ticketId);
+
+		assertTrue("History not removed", sync.getHistory(ticketId).isEmpty());
+		assertEquals("Complete history expected", 1, sync.sync(sessionId, ticketId).size());
+	}
+
+
+	public void testGetTicketHistoryAbsentItem() {
+		System.out.println("Testing getTicketHistoryItem() with absent item ID");
+
+		try {
+			RtRestClient client = new RtRestClient(server.getBaseUri());
+			client.getTicketHistoryItem(sessionId, "ticket/" + ticketId, 999L);
+
+			fail("Absent history item not detected");
+		}
+		catch(RtException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+	}
+
+
+	private void comment(String text) throws RtException {
+		RtTicketHistoryItem item = new RtTicketHistoryItem();
+		item.setTicketId(ticketId);
+		item.setType(RtTicketHistoryItemType.COMMENT);
+		item.setContent(text);
+
+		connector.commentTicket(sessionId, ticketId, item);
+	}
+}
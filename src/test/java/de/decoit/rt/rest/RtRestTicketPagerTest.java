@@ -0,0 +1,200 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestTicketPager class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTicketPagerTest extends TestCase {
+	private static final String QUERY = "Queue = 'General'";
+	private static final Pattern RANGE_PATTERN = Pattern.compile("^\\(" + Pattern.quote(QUERY) + "\\) AND id > (\\d+)(?: AND id <= (\\d+))?$");
+
+	private ExecutorService executor;
+
+
+	public RtRestTicketPagerTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		executor.shutdownNow();
+	}
+
+
+	/**
+	 * Test reading a result with gaps between the ticket IDs, with and without background prefetching.
+	 */
+	public void testNextTicket() throws Exception {
+		System.out.println("Testing paged ticket search");
+
+		List<Long> ids = Arrays.asList(1L, 2L, 3L, 50L, 51L, 1000L);
+
+		assertEquals("Ticket IDs mismatch (on demand)", ids, readAll(new RtRestTicketPager(new StubClient(ids), "session", QUERY, 2, null)));
+		assertEquals("Ticket IDs mismatch (prefetch)", ids, readAll(new RtRestTicketPager(new StubClient(ids), "session", QUERY, 2, executor)));
+	}
+
+
+	/**
+	 * Test that empty ID windows are skipped with a single request.
+	 */
+	public void testSkipGap() throws Exception {
+		System.out.println("Testing paged ticket search gap skipping");
+
+		StubClient client = new StubClient(Arrays.asList(1L, 1000000L));
+
+		assertEquals("Ticket IDs mismatch", Arrays.asList(1L, 1000000L), readAll(new RtRestTicketPager(client, "session", QUERY, 10, null)));
+		assertTrue("Too many requests: " + client.requests.get(), client.requests.get() <= 6);
+	}
+
+
+	/**
+	 * Test searches without results.
+	 */
+	public void testNoResults() throws Exception {
+		System.out.println("Testing paged ticket search without results");
+
+		RtRestTicketPager instance = new RtRestTicketPager(new StubClient(new ArrayList<Long>()), "session", QUERY, 10, executor);
+
+		assertNull("Ticket returned for empty result", instance.nextTicket());
+	}
+
+
+	/**
+	 * Test that closing the cursor stops reading.
+	 */
+	public void testClose() throws Exception {
+		System.out.println("Testing paged ticket search close");
+
+		StubClient client = new StubClient(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L));
+		RtRestTicketPager instance = new RtRestTicketPager(client, "session", QUERY, 2, null);
+
+		assertEquals("Ticket ID mismatch", 1L, instance.nextTicket().getId());
+
+		instance.close();
+
+		assertNull("Ticket returned after close", instance.nextTicket());
+		assertEquals("Unexpected requests after close", 3, client.requests.get());
+	}
+
+
+	private List<Long> readAll(RtRestTicketPager pager) {
+		ArrayList<Long> result = new ArrayList<>();
+
+		for(RtTicket ticket : pager) {
+			result.add(ticket.getId());
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Client answering the ID range queries built by the pager from a fixed set of ticket IDs.
+	 */
+	private static class StubClient extends RtRestClient {
+		private final TreeSet<Long> ids;
+		private final AtomicInteger requests = new AtomicInteger(0);
+
+
+		StubClient(List<Long> ids) {
+			super("http://localhost/");
+
+			this.ids = new TreeSet<>(ids);
+		}
+
+
+		@Override
+		List<RtTicket> searchTickets(String sessionId, String query, String orderby) throws RtException {
+			requests.incrementAndGet();
+
+			ArrayList<RtTicket> result = new ArrayList<>();
+
+			for(Long id : select(query)) {
+				RtTicket ticket = new RtTicket();
+				ticket.setId(id);
+				result.add(ticket);
+			}
+
+			return result;
+		}
+
+
+		@Override
+		long findTicketId(String sessionId, String query, String orderby) throws RtException {
+			requests.incrementAndGet();
+
+			TreeSet<Long> selected = select(query);
+
+			if(selected.isEmpty()) {
+				return -1L;
+			}
+			else if(orderby.equals("-id")) {
+				return selected.last();
+			}
+			else {
+				return selected.first();
+			}
+		}
+
+
+		private TreeSet<Long> select(String query) {
+			if(query.equals(QUERY)) {
+				return ids;
+			}
+
+			Matcher m = RANGE_PATTERN.matcher(query);
+			assertTrue("Unexpected query: " + query, m.matches());
+
+			long lower = Long.parseLong(m.group(1));
+
+			if(m.group(2) != null) {
+				return new TreeSet<>(ids.subSet(lower, false, Long.parseLong(m.group(2)), true));
+			}
+			else {
+				return new TreeSet<>(ids.tailSet(lower, false));
+			}
+		}
+	}
+}
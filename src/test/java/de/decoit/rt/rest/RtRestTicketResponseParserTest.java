@@ -19,6 +19,10 @@ package de.decoit.rt.rest;
 import com.google.common.base.Joiner;
 import de.decoit.rt.RtException;
 import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.fail;
@@ -371,4 +375,80 @@ public class RtRestTicketResponseParserTest extends TestCase {
 			/* Ignore, this is what should happen here! */
 		}
 	}
+
+
+	/**
+	 * Test of changedFieldsToString method, of class RtRestTicketResponseParser.
+	 */
+	public void testChangedFieldsToString() throws Exception {
+		System.out.println("Testing changedFieldsToString()");
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"id: ticket/1\n" +
+			"Queue: General\n" +
+			"Subject: Testticket 1\n" +
+			"Status: new\n" +
+			"Requestors: rix@decoit.de, test@decoit.de\n" +
+			"CF.{Risk}: 10\n" +
+			"CF.{Incident}: 101";
+
+		RtTicket ticket = RtRestTicketResponseParser.parseTicket(response);
+
+		assertTrue("Parsed ticket has changed fields", ticket.getChangedFields().isEmpty());
+		assertEquals("Content for unchanged ticket", "", RtRestTicketResponseParser.changedFieldsToString(ticket));
+
+		ticket.setStatus(RtTicket.RtTicketStatus.OPEN);
+		ticket.setPriority(50);
+		// Same requestors in a different order are not a change
+		ticket.setRequestors(new ArrayList<>(Arrays.asList("test@decoit.de", "rix@decoit.de")));
+		ticket.getCc().add("cc@decoit.de");
+		ticket.addCustomField("Risk", "20");
+
+		assertEquals("Changed fields mismatch", EnumSet.of(RtTicketField.STATUS, RtTicketField.PRIORITY, RtTicketField.CC, RtTicketField.CUSTOM_FIELDS), ticket.getChangedFields());
+		assertEquals("Content mismatch", "Status: open\nPriority: 50\nCc: cc@decoit.de\nCF.{Risk}: 20\n", RtRestTicketResponseParser.changedFieldsToString(ticket));
+
+		RtTicket copy = new RtTicket(ticket);
+		assertEquals("Copy lost changed fields", ticket.getChangedFields(), copy.getChangedFields());
+
+		ticket.markUnchanged();
+		assertTrue("Fields still changed", ticket.getChangedFields().isEmpty());
+	}
+
+
+	/**
+	 * Test of parseTicket method, of class RtRestTicketResponseParser, with a field selection.
+	 */
+	public void testParseTicketFields() throws Exception {
+		System.out.println("Testing parseTicket() with field selection");
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"id: ticket/1\n" +
+			"Queue: General\n" +
+			"Owner: root\n" +
+			"Subject: Testticket 1\n" +
+			"Status: new\n" +
+			"LastUpdated: Wed Feb 26 16:00:57 2014\n" +
+			"CF.{Risk}: 10";
+
+		EnumSet<RtTicketField> fields = EnumSet.of(RtTicketField.SUBJECT, RtTicketField.STATUS);
+		RtTicket ticket = RtRestTicketResponseParser.parseTicket(new RtRestLineCursor(response), fields);
+
+		assertEquals("Ticket ID mismatch", 1, ticket.getId());
+		assertEquals("Subject mismatch", "Testticket 1", ticket.getSubject());
+		assertEquals("Status mismatch", RtTicket.RtTicketStatus.NEW, ticket.getStatus());
+		// Lines of fields which were not selected are ignored
+		assertNull("Queue was loaded", ticket.getQueue());
+		assertEquals("Owner was loaded", "", ticket.getOwner());
+		assertNull("LastUpdated was loaded", ticket.getLastUpdated());
+		assertTrue("Custom fields were loaded", ticket.getCustomFields().isEmpty());
+
+		assertEquals("Loaded fields mismatch", fields, ticket.getLoadedFields());
+		assertTrue("Ticket not partially loaded", ticket.isPartiallyLoaded());
+		assertFalse("Queue marked as loaded", ticket.isLoaded(RtTicketField.QUEUE));
+		assertTrue("Parsed ticket has changed fields", ticket.getChangedFields().isEmpty());
+		assertEquals("Copy lost loaded fields", fields, new RtTicket(ticket).getLoadedFields());
+
+		RtTicket full = RtRestTicketResponseParser.parseTicket(response);
+		assertFalse("Ticket without selection partially loaded", full.isPartiallyLoaded());
+	}
 }
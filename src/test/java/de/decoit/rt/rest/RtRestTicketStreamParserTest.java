@@ -0,0 +1,209 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtException;
+import de.decoit.rt.model.RtTicket;
+import de.decoit.rt.model.RtTicketField;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.EnumSet;
+import junit.framework.TestCase;
+
+
+/**
+ * This test file contains test cases for the RtRestTicketStreamParser class
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTicketStreamParserTest extends TestCase {
+	public RtRestTicketStreamParserTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+
+	/**
+	 * Test of nextTicket method, of class RtRestTicketStreamParser.
+	 */
+	public void testNextTicket() {
+		System.out.println("Testing nextTicket()");
+
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"id: ticket/2\n" +
+			"Queue: General\n" +
+			"Owner: root\n" +
+			"Subject: Testticket 2\n" +
+			"Status: new\n" +
+			"LastUpdated: Wed Feb 26 10:03:53 2014\n" +
+			"CF.{Risk}: 10\n" +
+			"\n" +
+			"--\n" +
+			"\n" +
+			"id: ticket/1\n" +
+			"Queue: General\n" +
+			"Owner: Nobody\n" +
+			"Subject: Testticket 1\n" +
+			"Status: open\n" +
+			"LastUpdated: Wed Feb 26 16:00:57 2014\n" +
+			"\n";
+
+		try {
+			RtRestTicketStreamParser parser = new RtRestTicketStreamParser(new StringReader(response));
+
+			RtTicket ticket = parser.nextTicket();
+			assertEquals("First ticket ID mismatch", 2, ticket.getId());
+			assertEquals("First ticket subject mismatch", "Testticket 2", ticket.getSubject());
+			assertEquals("First ticket status mismatch", RtTicket.RtTicketStatus.NEW, ticket.getStatus());
+			assertEquals("First ticket custom field mismatch", "10", ticket.getCustomFields().get("Risk"));
+			assertEquals("First ticket LastUpdated mismatch", "Wed Feb 26 10:03:53 2014", RtRestTicketResponseParser.formatDateString(ticket.getLastUpdated()));
+
+			ticket = parser.nextTicket();
+			assertEquals("Second ticket ID mismatch", 1, ticket.getId());
+			assertEquals("Second ticket owner mismatch", "Nobody", ticket.getOwner());
+			assertEquals("Second ticket status mismatch", RtTicket.RtTicketStatus.OPEN, ticket.getStatus());
+
+			assertNull("Unexpected third ticket", parser.nextTicket());
+			assertNull("Parser did not stay at end of response", parser.nextTicket());
+		}
+		catch(RtException | IOException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Test of nextTicket method, of class RtRestTicketStreamParser, with a field selection.
+	 */
+	public void testNextTicketFields() {
+		System.out.println("Testing nextTicket() with field selection");
+
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"id: ticket/2\n" +
+			"Status: new\n" +
+			"CF.{Risk}: 10\n" +
+			"\n" +
+			"--\n" +
+			"\n" +
+			"id: ticket/1\n" +
+			"Status: open\n" +
+			"\n";
+
+		try {
+			EnumSet<RtTicketField> fields = EnumSet.of(RtTicketField.STATUS);
+			RtRestTicketStreamParser parser = new RtRestTicketStreamParser(new StringReader(response), fields);
+
+			RtTicket ticket = parser.nextTicket();
+			assertEquals("First ticket ID mismatch", 2, ticket.getId());
+			assertEquals("First ticket status mismatch", RtTicket.RtTicketStatus.NEW, ticket.getStatus());
+			assertTrue("First ticket custom fields were loaded", ticket.getCustomFields().isEmpty());
+			assertEquals("First ticket loaded fields mismatch", fields, ticket.getLoadedFields());
+
+			ticket = parser.nextTicket();
+			assertEquals("Second ticket ID mismatch", 1, ticket.getId());
+			assertEquals("Second ticket loaded fields mismatch", fields, ticket.getLoadedFields());
+
+			assertNull("Unexpected third ticket", parser.nextTicket());
+		}
+		catch(RtException | IOException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Test of nextTicket method, of class RtRestTicketStreamParser, with an empty search result.
+	 */
+	public void testNextTicketNoResults() {
+		System.out.println("Testing nextTicket() with empty search result");
+
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"No matching results.\n" +
+			"\n";
+
+		try {
+			RtRestTicketStreamParser parser = new RtRestTicketStreamParser(new StringReader(response));
+
+			assertNull("Ticket found in empty result", parser.nextTicket());
+		}
+		catch(RtException | IOException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Test of nextTicket method, of class RtRestTicketStreamParser, with an error status.
+	 */
+	public void testNextTicketErrorStatus() {
+		System.out.println("Testing nextTicket() with error status");
+
+		String response = "RT/4.2.3 401 Credentials required\n";
+
+		try {
+			RtRestTicketStreamParser parser = new RtRestTicketStreamParser(new StringReader(response));
+			parser.nextTicket();
+
+			fail("Error status not detected");
+		}
+		catch(RtException ex) {
+			/* Ignore, this is what should happen here! */
+		}
+		catch(IOException ex) {
+			fail(ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Test of nextTicketId method, of class RtRestTicketStreamParser.
+	 */
+	public void testNextTicketId() {
+		System.out.println("Testing nextTicketId()");
+
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"ticket/12\n" +
+			"ticket/345\n" +
+			"\n";
+
+		try {
+			RtRestTicketStreamParser parser = new RtRestTicketStreamParser(new StringReader(response));
+
+			assertEquals("Ticket ID mismatch", 12L, parser.nextTicketId());
+			assertEquals("Ticket ID mismatch", 345L, parser.nextTicketId());
+			assertEquals("End of result not detected", -1L, parser.nextTicketId());
+		}
+		catch(RtException | IOException ex) {
+			fail(ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtConnector;
+import de.decoit.rt.RtDeadlineExceededException;
+import de.decoit.rt.RtException;
+import de.decoit.rt.RtThrottledException;
+import de.decoit.rt.model.RtTicket;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.springframework.web.client.ResourceAccessException;
+
+
+/**
+ * This test file contains test cases for the RtRestTimeoutPolicy and RtRestDeadline classes
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTimeoutPolicyTest extends TestCase {
+	private FakeRtServer server;
+	private long ticketId;
+
+
+	public RtRestTimeoutPolicyTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		RtTicket ticket = new RtTicket();
+		ticket.setSubject("Timeout ticket");
+		ticketId = server.addTicket(ticket);
+
+		server.start();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		server.close();
+	}
+
+
+	public void testBuilder() {
+		System.out.println("Testing RtRestTimeoutPolicy.builder()");
+
+		RtRestTimeoutPolicy policy = RtRestTimeoutPolicy.builder()
+				.readTimeout(RtRestOperationClass.READ, 500L, TimeUnit.MICROSECONDS)
+				.deadline(RtRestOperationClass.SEARCH, 10L, TimeUnit.MINUTES)
+				.build();
+
+		assertEquals("Wrong default connect timeout", 10000, policy.getConnectTimeoutMillis());
+		assertEquals("Short timeout rounded to no limit", 1, policy.getReadTimeoutMillis(RtRestOperationClass.READ));
+		assertEquals("Wrong default read timeout", 300000, policy.getReadTimeoutMillis(RtRestOperationClass.HISTORY));
+		assertEquals("Wrong deadline", TimeUnit.MINUTES.toNanos(10L), policy.getDeadlineNanos(RtRestOperationClass.SEARCH));
+		assertEquals("Wrong default deadline", TimeUnit.SECONDS.toNanos(60L), policy.getDeadlineNanos(RtRestOperationClass.READ));
+
+		for(RtRestOperationClass operationClass : RtRestOperationClass.values()) {
+			assertEquals("Read timeout of NONE", 0, RtRestTimeoutPolicy.NONE.getReadTimeoutMillis(operationClass));
+			assertEquals("Deadline of NONE", 0L, RtRestTimeoutPolicy.NONE.getDeadlineNanos(operationClass));
+		}
+
+		try {
+			RtRestTimeoutPolicy.builder().connectTimeout(-1L, TimeUnit.SECONDS);
+			fail("Negative timeout accepted");
+		}
+		catch(IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+
+	public void testReadTimeout() throws Exception {
+		System.out.println("Testing readTimeout()");
+
+		RtRestTimeoutPolicy policy = RtRestTimeoutPolicy.builder().readTimeout(RtRestOperationClass.READ, 100L, TimeUnit.MILLISECONDS).build();
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).timeoutPolicy(policy).build()) {
+			// The first request to the server may take longer than the read timeout, login with the default policy
+			String sessionId = new RtRestConnector(server.getBaseUri()).login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			server.setLatency(1L, TimeUnit.SECONDS);
+
+			long start = System.nanoTime();
+
+			try {
+				connector.getTicket(sessionId, ticketId);
+				fail("Read timeout not applied");
+			}
+			catch(ResourceAccessException ex) {
+				// expected
+			}
+
+			assertTrue("Request not aborted by the read timeout", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800L));
+		}
+	}
+
+
+	public void testDeadline() throws Exception {
+		System.out.println("Testing withDeadline()");
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).maxConnectionsTotal(1).maxConnectionsPerRoute(1).timeoutPolicy(RtRestTimeoutPolicy.NONE).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			server.setLatency(2L, TimeUnit.SECONDS);
+
+			long start = System.nanoTime();
+
+			try {
+				connector.withDeadline(200L, TimeUnit.MILLISECONDS).getTicket(sessionId, ticketId);
+				fail("Deadline not applied");
+			}
+			catch(RtDeadlineExceededException ex) {
+				// expected
+			}
+
+			assertTrue("Request not aborted at the deadline", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500L));
+
+			// The only pooled connection must be available again
+			server.setLatency(0L, TimeUnit.SECONDS);
+			assertEquals("Wrong ticket", "Timeout ticket", connector.withDeadline(5L, TimeUnit.SECONDS).getTicket(sessionId, ticketId).getSubject());
+		}
+	}
+
+
+	public void testCancel() throws Exception {
+		System.out.println("Testing RtRestDeadline.cancel()");
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).maxConnectionsTotal(1).maxConnectionsPerRoute(1).timeoutPolicy(RtRestTimeoutPolicy.NONE).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			server.setLatency(5L, TimeUnit.SECONDS);
+
+			final RtRestDeadline deadline = RtRestDeadline.none();
+			Thread canceller = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(200L);
+					}
+					catch(InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+
+					deadline.cancel();
+				}
+			};
+
+			long start = System.nanoTime();
+			canceller.start();
+
+			try {
+				connector.withDeadline(deadline).getTicket(sessionId, ticketId);
+				fail("Call not cancelled");
+			}
+			catch(RtDeadlineExceededException ex) {
+				assertTrue("Wrong message: " + ex.getMessage(), ex.getMessage().contains("cancelled"));
+			}
+
+			assertTrue("Request not aborted by the cancellation", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3L));
+			canceller.join();
+
+			server.setLatency(0L, TimeUnit.SECONDS);
+			assertEquals("Wrong ticket", "Timeout ticket", connector.getTicket(sessionId, ticketId).getSubject());
+
+			// Further calls with the cancelled deadline are not sent
+			int requestsBefore = server.getRequestCount();
+
+			try {
+				connector.withDeadline(deadline).getTicket(sessionId, ticketId);
+				fail("Call with cancelled deadline sent");
+			}
+			catch(RtDeadlineExceededException ex) {
+				// expected
+			}
+
+			assertEquals("Request sent to RT", requestsBefore, server.getRequestCount());
+		}
+	}
+
+
+	public void testDeadlineStopsRetries() throws Exception {
+		System.out.println("Testing deadline with retries");
+
+		RtRestRetryPolicy retryPolicy = RtRestRetryPolicy.builder().maxAttempts(100).backoff(50L, 50L, TimeUnit.MILLISECONDS).retryBudget(1000, 1.0).build();
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).retryPolicy(retryPolicy).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			server.setErrorRate(1.0, 503);
+
+			int requestsBefore = server.getRequestCount();
+			long start = System.nanoTime();
+
+			try {
+				connector.withDeadline(300L, TimeUnit.MILLISECONDS).getTicket(sessionId, ticketId);
+				fail("Request did not fail");
+			}
+			catch(RtException | RuntimeException ex) {
+				// The last attempt fails with the error of RT or the deadline
+			}
+
+			assertTrue("Retries exceeded the deadline", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1L));
+			assertTrue("Too many attempts", server.getRequestCount() - requestsBefore < 100);
+		}
+	}
+
+
+	public void testThrottleWaitLimited() throws Exception {
+		System.out.println("Testing throttle wait with deadline");
+
+		RtRestThrottle throttle = new RtRestThrottle(RtRestThrottlePolicy.builder().maxConcurrentRequests(1).build());
+		RtRestThrottle.Permit permit = throttle.acquire(RtRestOperationClass.READ);
+		long start = System.nanoTime();
+
+		try {
+			throttle.acquire(RtRestOperationClass.READ, TimeUnit.MILLISECONDS.toNanos(50L));
+			fail("Slot granted");
+		}
+		catch(RtThrottledException ex) {
+			// expected
+		}
+
+		assertTrue("Waited too long", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1L));
+		assertEquals("Waiter not removed", 0, throttle.getQueueDepth());
+		permit.release();
+	}
+
+
+	public void testDeadlineView() throws Exception {
+		System.out.println("Testing deadline of the calling thread");
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).build()) {
+			RtRestDeadline deadline = RtRestDeadline.after(1L, TimeUnit.MINUTES);
+			RtConnector view = connector.withDeadline(deadline);
+
+			String sessionId = view.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			assertEquals("Wrong ticket", "Timeout ticket", view.getTicket(sessionId, ticketId).getSubject());
+			assertNull("Deadline left on the thread", RtRestDeadline.current());
+			assertTrue("Wrong remaining time", deadline.getRemaining(TimeUnit.SECONDS) > 50L);
+			assertEquals("Unlimited deadline has a remaining time", Long.MAX_VALUE, RtRestDeadline.none().getRemaining(TimeUnit.SECONDS));
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/* 
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.rt.rest;
+
+import de.decoit.rt.RtTicketHandler;
+import de.decoit.rt.model.RtTicket;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+
+/**
+ * This test file contains test cases for the RtRestTransport implementations
+ *
+ * @author Thomas Rix (rix@decoit.de)
+ */
+public class RtRestTransportTest extends TestCase {
+	private static final String SUBJECT = "Transport über & = ticket";
+
+	private FakeRtServer server;
+
+
+	public RtRestTransportTest(String testName) {
+		super(testName);
+	}
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		server = new FakeRtServer();
+
+		for(int i = 0; i < 5; i++) {
+			RtTicket ticket = new RtTicket();
+			ticket.setSubject("Search ticket " + i);
+			server.addTicket(ticket);
+		}
+
+		server.start();
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+
+		server.close();
+	}
+
+
+	public void testConnectionPoolTransport() throws Exception {
+		System.out.println("Testing RtRestConnectionPool.post()");
+
+		runRequests(new RtRestConnectionPool(2, 2, 60000L, 30000L));
+	}
+
+
+	public void testSpringTransport() throws Exception {
+		System.out.println("Testing RtRestSpringTransport.post()");
+
+		runRequests(new RtRestSpringTransport(RtRestConnectionPool.createUnpooledRequestFactory()));
+
+		try(RtRestConnectionPool pool = new RtRestConnectionPool(2, 2, 60000L, 30000L)) {
+			runRequests(new RtRestSpringTransport(pool.getRequestFactory()));
+		}
+	}
+
+
+	public void testHttpErrorStatus() throws Exception {
+		System.out.println("Testing HTTP error status of a transport");
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+
+			server.failNextRequests(1, 503);
+
+			try {
+				connector.getTicket(sessionId, 1L);
+				fail("HTTP 503 not raised");
+			}
+			catch(HttpServerErrorException ex) {
+				assertEquals("Wrong status", 503, ex.getStatusCode().value());
+			}
+
+			server.failNextRequests(1, 404);
+
+			try {
+				connector.getTicket(sessionId, 1L);
+				fail("HTTP 404 not raised");
+			}
+			catch(HttpClientErrorException ex) {
+				assertEquals("Wrong status", 404, ex.getStatusCode().value());
+			}
+		}
+	}
+
+
+	public void testCustomTransport() throws Exception {
+		System.out.println("Testing Builder.transport()");
+
+		CountingTransport transport = new CountingTransport(new RtRestSpringTransport(RtRestConnectionPool.createUnpooledRequestFactory()));
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).transport(transport).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			connector.getTicket(sessionId, 1L);
+		}
+
+		assertEquals("Requests not sent through the transport", 2, transport.posts.get());
+		assertTrue("Transport not closed with the connector", transport.closed);
+	}
+
+
+	public void testJdkTransportUnavailable() {
+		System.out.println("Testing Builder.jdkTransport() without the jdk11 module");
+
+		assertFalse("JDK transport available without the module", RtRestConnector.isJdkTransportAvailable());
+
+		try {
+			RtRestConnector.builder(server.getBaseUri()).jdkTransport();
+			fail("Unavailable JDK transport accepted");
+		}
+		catch(IllegalStateException ex) {
+			// expected
+		}
+	}
+
+
+	public void testVirtualThreads() throws Exception {
+		System.out.println("Testing Builder.virtualThreads()");
+
+		if(!RtRestConnector.isVirtualThreadsAvailable()) {
+			try {
+				RtRestConnector.builder(server.getBaseUri()).virtualThreads();
+				fail("Virtual threads accepted by a JVM without virtual threads");
+			}
+			catch(IllegalStateException ex) {
+				// expected
+			}
+
+			return;
+		}
+
+		try {
+			RtRestConnector.builder(server.getBaseUri()).virtualThreads().withoutConnectionPool().build();
+			fail("Virtual threads accepted with the transport without connection pool");
+		}
+		catch(IllegalStateException ex) {
+			// expected
+		}
+
+		// Record the virtual threads which executed requests, instrumentation is called on the requesting thread
+		final Method isVirtual = Thread.class.getMethod("isVirtual");
+		final List<String> virtualThreads = new CopyOnWriteArrayList<>();
+		RtRestInstrumentation instrumentation = new RtRestInstrumentation() {
+			@Override
+			public void exchangeCompleted(RtRestExchangeMetrics metrics) {
+				try {
+					if((Boolean) isVirtual.invoke(Thread.currentThread())) {
+						virtualThreads.add(Thread.currentThread().getName());
+					}
+				}
+				catch(ReflectiveOperationException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).virtualThreads().bulkChunkSize(2).instrumentation(instrumentation).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			assertEquals("Bulk request on virtual threads failed", 5, connector.getTickets(sessionId, Arrays.asList(1L, 2L, 3L, 4L, 5L)).size());
+
+			// Three chunks, each on its own virtual thread
+			assertEquals("Chunks not requested on virtual threads: " + virtualThreads, 3, new HashSet<>(virtualThreads).size());
+
+			for(String name : virtualThreads) {
+				assertTrue("Unexpected thread name: " + name, name.startsWith("rt-bulk-"));
+			}
+
+			virtualThreads.clear();
+
+			RtRestAsyncConnector asyncConnector = RtRestAsyncConnector.withVirtualThreads(connector, 100);
+			assertEquals("Call on a virtual thread failed", "Search ticket 0", asyncConnector.getTicket(sessionId, 1L).get().getSubject());
+			assertEquals("Call not executed on a virtual thread: " + virtualThreads, 1, virtualThreads.size());
+			assertTrue("Unexpected thread name: " + virtualThreads.get(0), virtualThreads.get(0).startsWith("rt-async-"));
+		}
+	}
+
+
+	/**
+	 * Send requests of all kinds through the transport: login with form data, a request carrying form data with
+	 * characters that must be encoded, a buffered read and a streaming search.
+	 */
+	private void runRequests(RtRestTransport transport) throws Exception {
+		try(RtRestConnector connector = RtRestConnector.builder(server.getBaseUri()).transport(transport).build()) {
+			String sessionId = connector.login(FakeRtServer.ROOT_USER, FakeRtServer.ROOT_PASSWORD);
+			assertNotNull("No session cookie read", sessionId);
+
+			RtTicket ticket = new RtTicket();
+			ticket.setQueue("General");
+			ticket.setSubject(SUBJECT);
+			long id = connector.createTicket(sessionId, ticket);
+
+			assertEquals("Form data not encoded correctly", SUBJECT, connector.getTicket(sessionId, id).getSubject());
+
+			final List<RtTicket> found = new ArrayList<>();
+
+			connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'", "+id", new RtTicketHandler() {
+				@Override
+				public boolean handleTicket(RtTicket ticket) {
+					found.add(ticket);
+					return found.size() < 3;
+				}
+			});
+
+			assertEquals("Streaming search not stopped by the handler", 3, found.size());
+			assertEquals("Request after aborted search failed", 5, connector.searchTickets(sessionId, "Subject LIKE 'Search ticket'").size());
+		}
+	}
+
+
+	/**
+	 * Transport which counts the requests and records whether it was closed.
+	 */
+	private static class CountingTransport implements RtRestTransport {
+		private final RtRestTransport delegate;
+		private final AtomicInteger posts = new AtomicInteger();
+		private volatile boolean closed = false;
+
+
+		CountingTransport(RtRestTransport delegate) {
+			this.delegate = delegate;
+		}
+
+
+		@Override
+		public RtRestTransportResponse post(RtRestTransportRequest request) throws IOException {
+			this.posts.incrementAndGet();
+			return this.delegate.post(request);
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			this.closed = true;
+			this.delegate.close();
+		}
+	}
+}
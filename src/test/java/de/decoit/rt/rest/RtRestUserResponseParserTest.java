@@ -18,6 +18,8 @@ package de.decoit.rt.rest;
 
 import de.decoit.rt.RtException;
 import de.decoit.rt.model.RtUser;
+import de.decoit.rt.model.RtUserField;
+import java.util.EnumSet;
 import static junit.framework.Assert.fail;
 import junit.framework.TestCase;
 
@@ -269,4 +271,30 @@ public class RtRestUserResponseParserTest extends TestCase {
 			/* Ignore, this is what should happen here! */
 		}
 	}
+
+
+	public void testChangedFieldsToString() throws Exception {
+		System.out.println("Testing changedFieldsToString()");
+
+		String response = "RT/4.2.3 200 Ok\n" +
+			"\n" +
+			"id: user/100\n" +
+			"Name: Testbenutzer\n" +
+			"EmailAddress: test@decoit.de\n" +
+			"RealName: Test User\n" +
+			"Privileged: 1\n" +
+			"Disabled: 0\n" +
+			"CF-Department: IT";
+
+		RtUser user = RtRestUserResponseParser.parseUser(response);
+
+		assertTrue("Parsed user has changed fields", user.getChangedFields().isEmpty());
+
+		user.setRealName("Renamed User");
+		user.setDisabled(true);
+		user.addCustomField("Department", "Sales");
+
+		assertEquals("Changed fields mismatch", EnumSet.of(RtUserField.REAL_NAME, RtUserField.DISABLED, RtUserField.CUSTOM_FIELDS), user.getChangedFields());
+		assertEquals("Content mismatch", "RealName: Renamed User\nDisabled: 1\nCF-Department: Sales\n", RtRestUserResponseParser.changedFieldsToString(user));
+	}
 }